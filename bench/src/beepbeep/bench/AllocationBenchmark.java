@@ -0,0 +1,114 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.json.ParseJson;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Benchmark of the memory allocated by the pipeline
+ * <tt>ApplyFunction(Plus(NumberValue(JPathFunction("a")),
+ * NumberValue(JPathFunction("b")))) | Cumulate(Numbers.addition)</tt>,
+ * which sums two numerical fields of JSON objects, against the same
+ * pipeline made with {@link beepbeep.groovy#PrimitivePlus(Object, Object)}
+ * and {@link beepbeep.groovy#PrimitiveSum()}. The JSON objects are parsed
+ * before the measurements, so that their parsing is not counted.
+ * <p>
+ * An operation is one event; when the benchmark is run with the
+ * <tt>gc</tt> profiler of JMH, as the <tt>bench</tt> target of
+ * <tt>bench.xml</tt> does, the <tt>gc.alloc.rate.norm</tt> metric is
+ * therefore the number of bytes allocated per event.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(AllocationBenchmark.NUM_EVENTS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AllocationBenchmark
+{
+	/**
+	 * The functions used by the pipeline: "numbers" or "primitive".
+	 */
+	@Param({"numbers", "primitive"})
+	public String functions;
+
+	/**
+	 * The number of events of each invocation.
+	 */
+	public static final int NUM_EVENTS = 100000;
+
+	/**
+	 * The parsed JSON objects.
+	 */
+	protected Object[] m_events;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random r = new Random(BenchData.SEED);
+		m_events = new Object[NUM_EVENTS];
+		Object[] out = new Object[1];
+		for (int i = 0; i < NUM_EVENTS; i++)
+		{
+			ParseJson.instance.evaluate(new Object[] {"{\"a\":" + r.nextInt(1000) + ",\"b\":" + r.nextInt(1000) + "}"}, out);
+			m_events[i] = out[0];
+		}
+	}
+
+	@Benchmark
+	public Object sumFields()
+	{
+		Processor source = new QueueSource().setEvents(m_events).loop(false);
+		Processor add, sum;
+		if (functions.equals("primitive"))
+		{
+			add = ApplyFunction(PrimitivePlus(NumberValue(JPathFunction("a")), NumberValue(JPathFunction("b"))));
+			sum = PrimitiveSum();
+		}
+		else
+		{
+			add = ApplyFunction(Plus(NumberValue(JPathFunction("a")), NumberValue(JPathFunction("b"))));
+			sum = Cumulate(Numbers.addition);
+		}
+		return BenchData.drain(BenchData.chain(source, add, sum));
+	}
+}
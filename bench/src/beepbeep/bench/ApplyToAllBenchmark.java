@@ -0,0 +1,118 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.StreamVariable;
+
+/**
+ * Benchmark of the function made with
+ * {@link beepbeep.groovy.Bags#ParallelApplyToAll(Object, Object, int)},
+ * with a threshold of 1 so that every list is processed in parallel,
+ * against the sequential {@link ca.uqac.lif.cep.util.Bags.ApplyToAll}.
+ * Each invocation maps a function tree over a list of numbers; the list
+ * size where both variants take the same time is the threshold to use on
+ * the machine running the benchmark.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApplyToAllBenchmark
+{
+	/**
+	 * The number of elements of the list.
+	 */
+	@Param({"100", "1000", "5000", "10000", "50000", "200000"})
+	public int size;
+
+	/**
+	 * The list.
+	 */
+	protected List<Object> m_list;
+
+	/**
+	 * The sequential function.
+	 */
+	protected Function m_sequential;
+
+	/**
+	 * The parallel function.
+	 */
+	protected Function m_parallel;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_list = new ArrayList<Object>(size);
+		for (int i = 0; i < size; i++)
+		{
+			m_list.add(i);
+		}
+		Function f = LessThan(Plus(StreamVariable.X, 1), size / 2);
+		m_sequential = Bags.ApplyToAll(f, StreamVariable.X);
+		m_parallel = Bags.ParallelApplyToAll(f, StreamVariable.X, 1);
+	}
+
+	@Benchmark
+	public Object sequential()
+	{
+		return evaluate(m_sequential);
+	}
+
+	@Benchmark
+	public Object parallel()
+	{
+		return evaluate(m_parallel);
+	}
+
+	/**
+	 * Evaluates a function on the list.
+	 * @param f The function
+	 * @return The output
+	 */
+	protected Object evaluate(Function f)
+	{
+		Object[] out = new Object[1];
+		f.evaluate(new Object[] {m_list}, out);
+		return out[0];
+	}
+}
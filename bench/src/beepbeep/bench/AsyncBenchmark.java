@@ -0,0 +1,180 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Benchmark of an asynchronous connection made with
+ * {@link beepbeep.groovy#Async(Object, int)}, against the synchronous
+ * connection of the same two stages. The upstream stage replaces tokens in
+ * lines of text, and the downstream stage searches them with a regular
+ * expression.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AsyncBenchmark
+{
+	/**
+	 * Whether the downstream stage runs on its own thread.
+	 */
+	@Param({"false", "true"})
+	public boolean async;
+
+	/**
+	 * The number of lines pushed by each invocation of the throughput
+	 * benchmark.
+	 */
+	public static final int NUM_LINES = 10000;
+
+	/**
+	 * The lines of text.
+	 */
+	protected String[] m_lines;
+
+	/**
+	 * The input of the pipeline used by the latency benchmark.
+	 */
+	protected Pushable m_input;
+
+	/**
+	 * The sink of the pipeline used by the latency benchmark.
+	 */
+	protected Counter m_counter;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_lines = BenchData.textLines(NUM_LINES, 100);
+		m_counter = new Counter();
+		m_input = pipeline(m_counter).getPushableInput(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		m_input.notifyEndOfTrace();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long throughput()
+	{
+		Counter c = new Counter();
+		Pushable p = pipeline(c).getPushableInput(0);
+		for (String line : m_lines)
+		{
+			p.push(line);
+		}
+		p.notifyEndOfTrace();
+		return c.m_count;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long latency()
+	{
+		long target = m_counter.m_count + 1;
+		m_input.push(m_lines[(int) (target % NUM_LINES)]);
+		while (m_counter.m_count < target)
+		{
+			Thread.yield();
+		}
+		return target;
+	}
+
+	/**
+	 * Creates the pipeline.
+	 * @param sink The processor receiving the outputs of the pipeline
+	 * @return The first processor of the pipeline
+	 */
+	protected Processor pipeline(Processor sink)
+	{
+		String[] from = new String[100];
+		String[] to = new String[100];
+		for (int i = 0; i < from.length; i++)
+		{
+			from[i] = BenchData.token(i);
+			to[i] = "[REDACTED]";
+		}
+		Processor upstream = ApplyFunction(CompiledReplaceAll(from, to));
+		Processor downstream = ApplyFunction(CompiledFindRegex("[a-z]+[0-9]"));
+		if (async)
+		{
+			downstream = Async(downstream, 1024);
+		}
+		BenchData.chain(upstream, downstream, sink);
+		return upstream;
+	}
+
+	/**
+	 * A sink counting the events it receives.
+	 */
+	protected static class Counter extends SynchronousProcessor
+	{
+		/**
+		 * The number of events received.
+		 */
+		protected volatile long m_count = 0;
+
+		public Counter()
+		{
+			super(1, 0);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_count++;
+			return true;
+		}
+
+		@Override
+		public Counter duplicate(boolean with_state)
+		{
+			return new Counter();
+		}
+	}
+}
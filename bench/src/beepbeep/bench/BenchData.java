@@ -0,0 +1,287 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+
+/**
+ * Generates the input data of the benchmarks, and provides a few
+ * utility methods to run pipelines.
+ *
+ * @author Sylvain Hallé
+ */
+public class BenchData
+{
+	/**
+	 * The seed of the random generator, so that all runs process the same
+	 * data.
+	 */
+	public static final long SEED = 42;
+
+	private BenchData()
+	{
+		super();
+	}
+
+	/**
+	 * Writes temporary files of JSON objects, one per line, of the form
+	 * <tt>{"a":<i>n</i>,"b":"<i>s</i>"}</tt>.
+	 * @param num_files The number of files
+	 * @param num_lines The number of lines of each file
+	 * @return The names of the files
+	 * @throws IOException If writing the files fails
+	 */
+	public static String[] jsonFiles(int num_files, int num_lines) throws IOException
+	{
+		Random r = new Random(SEED);
+		String[] names = new String[num_files];
+		for (int i = 0; i < num_files; i++)
+		{
+			File f = File.createTempFile("bench", ".json");
+			f.deleteOnExit();
+			PrintWriter pw = new PrintWriter(f, "UTF-8");
+			for (int j = 0; j < num_lines; j++)
+			{
+				pw.println("{\"a\":" + r.nextInt(1000) + ",\"b\":\"" + Integer.toHexString(r.nextInt()) + "\"}");
+			}
+			pw.close();
+			names[i] = f.getAbsolutePath();
+		}
+		return names;
+	}
+
+	/**
+	 * Creates a JSON document of approximately a given size. The document is
+	 * an object with a member <tt>items</tt>, an array of small objects
+	 * making up most of its size, and a member <tt>stats</tt> of the form
+	 * <tt>{"count":<i>n</i>,"name":"<i>s</i>"}</tt>, which is placed either
+	 * before or after the array.
+	 * @param size The approximate size of the document, in characters
+	 * @param stats_first Set to {@code true} to place <tt>stats</tt> before
+	 * <tt>items</tt>
+	 * @return The document
+	 */
+	public static String jsonDocument(int size, boolean stats_first)
+	{
+		Random r = new Random(SEED);
+		String stats = "\"stats\":{\"count\":" + r.nextInt(1000) + ",\"name\":\"" + Integer.toHexString(r.nextInt()) + "\"}";
+		StringBuilder items = new StringBuilder("\"items\":[");
+		for (int i = 0; items.length() < size; i++)
+		{
+			if (i > 0)
+			{
+				items.append(",");
+			}
+			items.append("{\"id\":").append(i).append(",\"value\":").append(r.nextDouble())
+				.append(",\"tags\":[\"").append(token(r.nextInt(100))).append("\",\"").append(token(r.nextInt(100)))
+				.append("\"],\"ok\":").append(r.nextBoolean()).append("}");
+		}
+		items.append("]");
+		return "{" + (stats_first ? stats + "," + items : items + "," + stats) + "}";
+	}
+
+	/**
+	 * Writes a temporary file of JSON objects of the same form as
+	 * {@link #jsonFiles(int, int)}, one per line, until the file reaches a
+	 * given size.
+	 * @param size The minimum size of the file, in bytes
+	 * @return The name of the file
+	 * @throws IOException If writing the file fails
+	 */
+	public static String largeJsonFile(long size) throws IOException
+	{
+		Random r = new Random(SEED);
+		File f = File.createTempFile("bench", ".json");
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f, "UTF-8");
+		for (long written = 0; written < size; )
+		{
+			String line = "{\"a\":" + r.nextInt(1000) + ",\"b\":\"" + Integer.toHexString(r.nextInt()) + "\"}";
+			pw.println(line);
+			written += line.length() + 1;
+		}
+		pw.close();
+		return f.getAbsolutePath();
+	}
+
+	/**
+	 * Writes a temporary CSV file with columns <tt>a</tt>, <tt>b</tt> and
+	 * <tt>c</tt>.
+	 * @param num_lines The number of lines of the file, excluding the header
+	 * @return The name of the file
+	 * @throws IOException If writing the file fails
+	 */
+	public static String csvFile(int num_lines) throws IOException
+	{
+		Random r = new Random(SEED);
+		File f = File.createTempFile("bench", ".csv");
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f, "UTF-8");
+		pw.println("a,b,c");
+		for (int j = 0; j < num_lines; j++)
+		{
+			pw.println(r.nextInt(1000) + "," + r.nextInt(1000) + "," + Integer.toHexString(r.nextInt()));
+		}
+		pw.close();
+		return f.getAbsolutePath();
+	}
+
+	/**
+	 * Writes a temporary CSV file with columns <tt>c0</tt> to
+	 * <tt>c<i>n</i></tt>, whose values are integers.
+	 * @param num_lines The number of lines of the file, excluding the header
+	 * @param num_columns The number of columns
+	 * @return The name of the file
+	 * @throws IOException If writing the file fails
+	 */
+	public static String wideCsvFile(int num_lines, int num_columns) throws IOException
+	{
+		Random r = new Random(SEED);
+		File f = File.createTempFile("bench", ".csv");
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f, "UTF-8");
+		StringBuilder header = new StringBuilder();
+		for (int i = 0; i < num_columns; i++)
+		{
+			header.append(i > 0 ? "," : "").append("c").append(i);
+		}
+		pw.println(header);
+		for (int j = 0; j < num_lines; j++)
+		{
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < num_columns; i++)
+			{
+				line.append(i > 0 ? "," : "").append(r.nextInt(1000));
+			}
+			pw.println(line);
+		}
+		pw.close();
+		return f.getAbsolutePath();
+	}
+
+	/**
+	 * Generates lines of text made of random words, some of which are
+	 * tokens of the form <tt>tok<i>n</i>_</tt>.
+	 * @param num_lines The number of lines
+	 * @param num_tokens The number of distinct tokens
+	 * @return The lines
+	 */
+	public static String[] textLines(int num_lines, int num_tokens)
+	{
+		Random r = new Random(SEED);
+		String[] lines = new String[num_lines];
+		for (int i = 0; i < num_lines; i++)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 20; j++)
+			{
+				if (r.nextInt(5) == 0)
+				{
+					sb.append(token(r.nextInt(num_tokens)));
+				}
+				else
+				{
+					sb.append(Integer.toString(r.nextInt(1 << 20), 36));
+				}
+				sb.append(' ');
+			}
+			lines[i] = sb.toString();
+		}
+		return lines;
+	}
+
+	/**
+	 * Gets the token of a given index.
+	 * @param i The index
+	 * @return The token
+	 */
+	public static String token(int i)
+	{
+		return "tok" + i + "_";
+	}
+
+	/**
+	 * Generates events of the form [<i>key</i>, <i>value</i>], where the key
+	 * is taken uniformly at random from a given number of values.
+	 * @param num_events The number of events
+	 * @param num_keys The number of distinct keys
+	 * @return The events
+	 */
+	public static List<Object> keyedEvents(int num_events, int num_keys)
+	{
+		Random r = new Random(SEED);
+		List<Object> events = new ArrayList<Object>(num_events);
+		for (int i = 0; i < num_events; i++)
+		{
+			events.add(Arrays.asList((Object) r.nextInt(num_keys), r.nextInt(100)));
+		}
+		return events;
+	}
+
+	/**
+	 * Deletes files.
+	 * @param filenames The names of the files
+	 */
+	public static void delete(String ... filenames)
+	{
+		for (String s : filenames)
+		{
+			new File(s).delete();
+		}
+	}
+
+	/**
+	 * Connects processors one after the other.
+	 * @param processors The processors
+	 * @return The last processor
+	 */
+	public static Processor chain(Processor ... processors)
+	{
+		for (int i = 1; i < processors.length; i++)
+		{
+			Connector.connect(processors[i - 1], processors[i]);
+		}
+		return processors[processors.length - 1];
+	}
+
+	/**
+	 * Pulls all the events out of a processor.
+	 * @param p The processor
+	 * @return The last event, or {@code null} if there is none
+	 */
+	public static Object drain(Processor p)
+	{
+		Pullable pl = p.getPullableOutput(0);
+		Object last = null;
+		while (pl.hasNext())
+		{
+			last = pl.pull();
+		}
+		return last;
+	}
+}
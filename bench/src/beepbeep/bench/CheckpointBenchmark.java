@@ -0,0 +1,148 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beepbeep.CheckpointedGroup;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+
+/**
+ * Benchmark of the checkpoints of a group made with
+ * {@link beepbeep.groovy#Checkpointed(Object...)}, holding a slice with
+ * {@value #NUM_SLICES} live slices. Each slice computes the cumulative sum
+ * of its events and keeps the last one; the {@code KeepLast} of each slice
+ * is replaced by its checkpointable variant by the inner
+ * {@code Checkpointed}. The benchmark measures the time
+ * to save the state of the group to a file, the time to restore it into a
+ * new group, and, for comparison, the time to rebuild the same state by
+ * pushing again all the events received by the group. At the end of each
+ * trial, the size of the checkpoint is printed.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CheckpointBenchmark
+{
+	/**
+	 * The number of live slices.
+	 */
+	public static final int NUM_SLICES = 1000000;
+
+	/**
+	 * The number of events received by each slice.
+	 */
+	public static final int EVENTS_PER_SLICE = 2;
+
+	/**
+	 * The name of the file where the checkpoint is saved.
+	 */
+	protected String m_filename;
+
+	/**
+	 * The group whose state is saved.
+	 */
+	protected CheckpointedGroup m_group;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		m_filename = File.createTempFile("checkpoint", ".bin").getPath();
+		m_group = fill(newGroup());
+		m_group.save(m_filename);
+	}
+
+	/**
+	 * Creates the group: a slice on each number, whose processor sums the
+	 * events of the slice and keeps the last sum.
+	 * @return The group
+	 */
+	protected static CheckpointedGroup newGroup()
+	{
+		CheckpointedGroup g = Checkpointed(Slice(IdentityFunction(1), Checkpointed(PrimitiveSum(), KeepLast()), MaxSlices(0)));
+		BenchData.chain(g, new BlackHole());
+		return g;
+	}
+
+	/**
+	 * Pushes the events of the benchmark to a group.
+	 * @param g The group
+	 * @return The group
+	 */
+	protected static CheckpointedGroup fill(CheckpointedGroup g)
+	{
+		Pushable p = g.getPushableInput(0);
+		for (int i = 0; i < EVENTS_PER_SLICE * NUM_SLICES; i++)
+		{
+			p.push((long) (i % NUM_SLICES));
+		}
+		return g;
+	}
+
+	@Benchmark
+	public CheckpointedGroup save() throws IOException
+	{
+		m_group.save(m_filename);
+		return m_group;
+	}
+
+	@Benchmark
+	public CheckpointedGroup restore() throws IOException
+	{
+		CheckpointedGroup g = newGroup();
+		g.restore(m_filename);
+		return g;
+	}
+
+	@Benchmark
+	public CheckpointedGroup replay()
+	{
+		return fill(newGroup());
+	}
+
+	@TearDown(Level.Trial)
+	public void report()
+	{
+		System.out.printf("checkpoint: %d bytes for %d slices%n", new File(m_filename).length(), NUM_SLICES);
+		BenchData.delete(m_filename);
+		m_group = null;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+
+/**
+ * Benchmark of the distinct counters made with
+ * {@link beepbeep.groovy#DistinctCount()} and
+ * {@link beepbeep.groovy#ApproximateDistinctCount()}, against
+ * {@link ca.uqac.lif.cep.util.Sets.PutInto} followed by
+ * {@link ca.uqac.lif.cep.util.Size}. Each invocation pushes
+ * {@value #NUM_EVENTS} distinct numbers to the counter. At the end of each
+ * iteration, the heap memory in use while the counter is still reachable
+ * and the last count are printed.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class DistinctCountBenchmark
+{
+	/**
+	 * The counter: "putInto", "exact" or "approximate".
+	 */
+	@Param({"putInto", "exact", "approximate"})
+	public String counter;
+
+	/**
+	 * The number of distinct events pushed by each invocation.
+	 */
+	public static final int NUM_EVENTS = 10000000;
+
+	/**
+	 * The first processor of the counter of the last invocation.
+	 */
+	protected Processor m_counter;
+
+	/**
+	 * The last count output by the counter.
+	 */
+	protected final Object[] m_last = new Object[1];
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Object[] count()
+	{
+		Processor last;
+		if (counter.equals("putInto"))
+		{
+			m_counter = Sets.PutInto();
+			last = BenchData.chain(m_counter, ApplyFunction(Size()));
+		}
+		else
+		{
+			m_counter = counter.equals("exact") ? DistinctCount() : ApproximateDistinctCount();
+			last = m_counter;
+		}
+		BenchData.chain(last, new BlackHole()
+		{
+			@Override
+			protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+			{
+				m_last[0] = inputs[0];
+				return true;
+			}
+		});
+		Pushable p = m_counter.getPushableInput(0);
+		for (long i = 0; i < NUM_EVENTS; i++)
+		{
+			p.push(i * 2654435761L);
+		}
+		return m_last;
+	}
+
+	@TearDown(Level.Iteration)
+	public void report()
+	{
+		Runtime r = Runtime.getRuntime();
+		System.gc();
+		long used = r.totalMemory() - r.freeMemory();
+		System.out.printf("count: %s; heap in use: %d MB%n", m_last[0], used / (1024 * 1024));
+		m_counter = null;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.json.ParseJson;
+
+/**
+ * Benchmark of function trees built by the facade, which are simplified and
+ * evaluated on primitive values, against the same trees built directly
+ * out of BeepBeep's functions.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FunctionBenchmark
+{
+	/**
+	 * The number of evaluations of each invocation.
+	 */
+	public static final int NUM_EVALUATIONS = 100000;
+
+	/**
+	 * The comparison <tt>x + 1 &lt; 10</tt>, built from BeepBeep's functions.
+	 */
+	protected Function m_compareTree;
+
+	/**
+	 * The comparison <tt>x + 1 &lt; 10</tt>, built by the facade.
+	 */
+	protected Function m_compareFacade;
+
+	/**
+	 * The sum of a JSON field with itself, built from BeepBeep's functions.
+	 */
+	protected Function m_jsonTree;
+
+	/**
+	 * The sum of a JSON field with itself, built by the facade.
+	 */
+	protected Function m_jsonFacade;
+
+	/**
+	 * The JSON element on which the sums are evaluated.
+	 */
+	protected Object m_json;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_compareTree = new FunctionTree(Numbers.isLessThan, new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(1)), new Constant(10));
+		m_compareFacade = LessThan(Plus(StreamVariable.X, 1), 10);
+		m_jsonTree = new FunctionTree(Numbers.addition, new FunctionTree(NumberValue(), new ca.uqac.lif.cep.json.JPathFunction("a.b")), new FunctionTree(NumberValue(), new ca.uqac.lif.cep.json.JPathFunction("a.b")));
+		m_jsonFacade = PrimitivePlus(NumberValue(JPathFunction("a.b")), NumberValue(JPathFunction("a.b")));
+		Object[] out = new Object[1];
+		ParseJson.instance.evaluate(new Object[] {"{\"a\":{\"b\":3}}"}, out);
+		m_json = out[0];
+	}
+
+	@Benchmark
+	public Object compareTree()
+	{
+		return evaluate(m_compareTree);
+	}
+
+	@Benchmark
+	public Object compareFacade()
+	{
+		return evaluate(m_compareFacade);
+	}
+
+	@Benchmark
+	public Object jsonTree()
+	{
+		return evaluateJson(m_jsonTree);
+	}
+
+	@Benchmark
+	public Object jsonFacade()
+	{
+		return evaluateJson(m_jsonFacade);
+	}
+
+	@Benchmark
+	public Object sumGeneric()
+	{
+		return cumulate(new CumulativeFunction<Number>(Numbers.addition));
+	}
+
+	@Benchmark
+	public Object sumPrimitive()
+	{
+		return cumulate(new beepbeep.PrimitiveNumbers.CumulativeSum());
+	}
+
+	/**
+	 * Evaluates a function on successive integers.
+	 * @param f The function
+	 * @return The last output
+	 */
+	protected Object evaluate(Function f)
+	{
+		Object[] out = new Object[1];
+		for (int i = 0; i < NUM_EVALUATIONS; i++)
+		{
+			f.evaluate(new Object[] {i % 20}, out);
+		}
+		return out[0];
+	}
+
+	/**
+	 * Evaluates a function repeatedly on the JSON element.
+	 * @param f The function
+	 * @return The last output
+	 */
+	protected Object evaluateJson(Function f)
+	{
+		Object[] in = new Object[] {m_json};
+		Object[] out = new Object[1];
+		for (int i = 0; i < NUM_EVALUATIONS; i++)
+		{
+			f.evaluate(in, out);
+		}
+		return out[0];
+	}
+
+	/**
+	 * Cumulates successive integers with a function.
+	 * @param f The function
+	 * @return The last output
+	 */
+	protected Object cumulate(Function f)
+	{
+		Object[] out = new Object[1];
+		for (int i = 0; i < NUM_EVALUATIONS; i++)
+		{
+			f.evaluate(new Object[] {i}, out);
+		}
+		return out[0];
+	}
+}
@@ -0,0 +1,157 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Benchmark of a chain of {@value #NUM_STAGES} {@link ApplyFunction}
+ * processors, connected one after the other or collapsed into a single
+ * processor by {@link beepbeep.groovy#Fuse(Object...)}. The score is the
+ * number of events per second going through the chain. Before the
+ * measurements, the setup checks that the fused and the unfused chains
+ * output the same events.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FusionBenchmark.NUM_EVENTS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FusionBenchmark
+{
+	/**
+	 * Whether the stages of the chain are fused.
+	 */
+	@Param({"false", "true"})
+	public boolean fused;
+
+	/**
+	 * The number of events of each invocation.
+	 */
+	public static final int NUM_EVENTS = 100000;
+
+	/**
+	 * The number of stages of the chain.
+	 */
+	public static final int NUM_STAGES = 10;
+
+	/**
+	 * The events.
+	 */
+	protected Object[] m_events;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_events = new Object[NUM_EVENTS];
+		for (int i = 0; i < NUM_EVENTS; i++)
+		{
+			m_events[i] = i % 1000;
+		}
+		List<Object> unfused = outputs(false);
+		List<Object> fused = outputs(true);
+		if (!unfused.equals(fused))
+		{
+			throw new IllegalStateException("The fused chain does not produce the same output as the unfused chain");
+		}
+	}
+
+	@Benchmark
+	public Object chain()
+	{
+		return BenchData.drain(newChain(fused));
+	}
+
+	/**
+	 * Creates the chain, fed by a source of the events of the benchmark.
+	 * Each stage applies a different arithmetic operation to its input.
+	 * @param fuse Set to {@code true} to fuse the stages
+	 * @return The last processor of the chain
+	 */
+	protected Processor newChain(boolean fuse)
+	{
+		Processor[] stages = new Processor[NUM_STAGES + 1];
+		stages[0] = new QueueSource().setEvents(m_events).loop(false);
+		for (int i = 1; i <= NUM_STAGES; i++)
+		{
+			switch (i % 3)
+			{
+			case 0:
+				stages[i] = new ApplyFunction(new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(i)));
+				break;
+			case 1:
+				stages[i] = new ApplyFunction(new FunctionTree(Numbers.multiplication, StreamVariable.X, new Constant(2)));
+				break;
+			default:
+				stages[i] = new ApplyFunction(new FunctionTree(Numbers.subtraction, StreamVariable.X, new Constant(i)));
+				break;
+			}
+		}
+		if (fuse)
+		{
+			return Fuse((Object[]) stages);
+		}
+		return BenchData.chain(stages);
+	}
+
+	/**
+	 * Collects all the events output by the chain.
+	 * @param fuse Set to {@code true} to fuse the stages
+	 * @return The events
+	 */
+	protected List<Object> outputs(boolean fuse)
+	{
+		Pullable p = newChain(fuse).getPullableOutput(0);
+		List<Object> events = new ArrayList<Object>(NUM_EVENTS);
+		while (p.hasNext())
+		{
+			events.add(p.pull());
+		}
+		return events;
+	}
+}
@@ -0,0 +1,297 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.json.ParseJson;
+
+/**
+ * Compares the compiled JSON extractors of
+ * {@link beepbeep.groovy#CompiledJPath(String...)},
+ * {@link beepbeep.groovy#CompiledNumberValue(String...)} and
+ * {@link beepbeep.groovy#CompiledStringValue(String...)} with the
+ * composition of {@link ParseJson}, <tt>JPathFunction</tt> and
+ * <tt>NumberValue</tt> or <tt>StringValue</tt>, on random documents and
+ * paths. The documents are made of nested objects and arrays whose member
+ * names are drawn from a small set, so that the same name often occurs more
+ * than once in an object; they contain integers of various lengths,
+ * decimal numbers, numbers with exponents, and strings with escape
+ * sequences. Each document is given to the extractors both as a string and
+ * as an array of bytes.
+ * <p>
+ * Elements are compared through their JSON text, and numbers and strings
+ * with {@link Object#equals(Object)}, so that a number boxed in another
+ * type or rounded differently is reported as a difference. When a
+ * function throws an exception, the other one must also throw one. The
+ * program prints the first document and path on which the results differ
+ * and exits with status 1, or exits with status 0 if all the results are
+ * identical. Usage:
+ * <pre>
+ * java beepbeep.bench.JsonExtractorCheck [<i>number of documents</i>]</pre>
+ * The default number of documents is {@value #DEFAULT_DOCUMENTS}.
+ *
+ * @author Sylvain Hallé
+ */
+public class JsonExtractorCheck
+{
+	/**
+	 * The default number of random documents.
+	 */
+	public static final int DEFAULT_DOCUMENTS = 20000;
+
+	/**
+	 * The number of paths extracted from each document.
+	 */
+	public static final int PATHS_PER_DOCUMENT = 10;
+
+	/**
+	 * The member names used in the documents and the paths.
+	 */
+	protected static final String[] NAMES = {"a", "b", "c", "d"};
+
+	/**
+	 * The marker standing for an exception thrown by a function.
+	 */
+	protected static final Object FAILURE = new Object();
+
+	private JsonExtractorCheck()
+	{
+		super();
+	}
+
+	public static void main(String[] args)
+	{
+		int documents = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DOCUMENTS;
+		Random r = new Random(BenchData.SEED);
+		for (int d = 0; d < documents; d++)
+		{
+			StringBuilder sb = new StringBuilder();
+			object(r, sb, 0);
+			String doc = sb.toString();
+			Object[] parsed = new Object[1];
+			ParseJson.instance.evaluate(new Object[] {doc}, parsed);
+			for (int k = 0; k < PATHS_PER_DOCUMENT; k++)
+			{
+				String path = path(r);
+				Object element = evaluate(JPathFunction(path), parsed[0]);
+				check(doc, path, "element", element == FAILURE ? FAILURE : String.valueOf(element), CompiledJPath(path), true);
+				check(doc, path, "number", evaluate(NumberValue(), element), CompiledNumberValue(path), false);
+				check(doc, path, "string", evaluate(StringValue(), element), CompiledStringValue(path), false);
+			}
+		}
+		System.out.println(documents + " documents checked, no mismatch");
+	}
+
+	/**
+	 * Compares the output of a compiled extractor with the expected value,
+	 * on a document given as a string and as bytes.
+	 * @param doc The document
+	 * @param path The path
+	 * @param kind The kind of extractor, for the error message
+	 * @param expected The expected value
+	 * @param f The compiled extractor
+	 * @param as_text Set to {@code true} to compare the JSON text of the
+	 * outputs
+	 */
+	protected static void check(String doc, String path, String kind, Object expected, Function f, boolean as_text)
+	{
+		for (Object input : new Object[] {doc, doc.getBytes(StandardCharsets.UTF_8)})
+		{
+			Object actual = evaluate(f, input);
+			if (as_text && actual != FAILURE)
+			{
+				actual = String.valueOf(actual);
+			}
+			if (!same(expected, actual))
+			{
+				System.out.println("Mismatch on " + kind + " at path " + path + (input instanceof String ? "" : " (bytes)") + " of document:");
+				System.out.println(doc);
+				System.out.println("expected " + describe(expected) + ", got " + describe(actual));
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a unary function.
+	 * @param f The function
+	 * @param input The input of the function
+	 * @return The output, or {@link #FAILURE} if the function throws an
+	 * exception
+	 */
+	protected static Object evaluate(Function f, Object input)
+	{
+		if (input == FAILURE)
+		{
+			return FAILURE;
+		}
+		try
+		{
+			Object[] out = new Object[1];
+			f.evaluate(new Object[] {input}, out);
+			return out[0];
+		}
+		catch (RuntimeException e)
+		{
+			return FAILURE;
+		}
+	}
+
+	/**
+	 * Determines if two outputs are the same.
+	 * @param x The first output
+	 * @param y The second output
+	 * @return {@code true} if the outputs are the same
+	 */
+	protected static boolean same(Object x, Object y)
+	{
+		return x == null ? y == null : x.equals(y);
+	}
+
+	/**
+	 * Describes an output in an error message.
+	 * @param o The output
+	 * @return The description
+	 */
+	protected static String describe(Object o)
+	{
+		if (o == FAILURE)
+		{
+			return "an exception";
+		}
+		return o == null ? "null" : o + " (" + o.getClass().getSimpleName() + ")";
+	}
+
+	/**
+	 * Generates a random path, made of member names and array indices.
+	 * @param r The random generator
+	 * @return The path
+	 */
+	protected static String path(Random r)
+	{
+		StringBuilder sb = new StringBuilder(NAMES[r.nextInt(NAMES.length)]);
+		int length = r.nextInt(3);
+		for (int i = 0; i < length; i++)
+		{
+			if (r.nextBoolean())
+			{
+				sb.append(".").append(NAMES[r.nextInt(NAMES.length)]);
+			}
+			else
+			{
+				sb.append("[").append(r.nextInt(3)).append("]");
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a random value to a document.
+	 * @param r The random generator
+	 * @param sb The document
+	 * @param depth The nesting depth of the value
+	 */
+	protected static void value(Random r, StringBuilder sb, int depth)
+	{
+		switch (r.nextInt(depth < 3 ? 9 : 7))
+		{
+		case 0:
+			sb.append(r.nextInt(2000) - 1000);
+			break;
+		case 1:
+			sb.append(r.nextLong());
+			break;
+		case 2:
+			sb.append(r.nextInt(100000) / 100.0);
+			break;
+		case 3:
+			sb.append(r.nextInt(100) - 50).append(r.nextBoolean() ? "e" : "E").append(r.nextInt(10));
+			break;
+		case 4:
+			string(r, sb);
+			break;
+		case 5:
+			sb.append(r.nextBoolean() ? "true" : "null");
+			break;
+		case 6:
+			sb.append("\"").append(r.nextInt(100)).append("\"");
+			break;
+		case 7:
+			object(r, sb, depth + 1);
+			break;
+		default:
+			sb.append("[");
+			int length = r.nextInt(4);
+			for (int i = 0; i < length; i++)
+			{
+				if (i > 0)
+				{
+					sb.append(r.nextBoolean() ? "," : " , ");
+				}
+				value(r, sb, depth + 1);
+			}
+			sb.append("]");
+		}
+	}
+
+	/**
+	 * Appends a random object to a document. The names of its members are
+	 * drawn with replacement, so that a name may occur more than once.
+	 * @param r The random generator
+	 * @param sb The document
+	 * @param depth The nesting depth of the object
+	 */
+	protected static void object(Random r, StringBuilder sb, int depth)
+	{
+		sb.append("{");
+		int length = 1 + r.nextInt(5);
+		for (int i = 0; i < length; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(",");
+			}
+			sb.append(r.nextInt(4) == 0 ? " \"" : "\"").append(NAMES[r.nextInt(NAMES.length)]).append("\":");
+			value(r, sb, depth);
+		}
+		sb.append("}");
+	}
+
+	/**
+	 * Appends a random string, possibly with escape sequences and non-ASCII
+	 * characters, to a document.
+	 * @param r The random generator
+	 * @param sb The document
+	 */
+	protected static void string(Random r, StringBuilder sb)
+	{
+		String[] parts = {"x", "yz", "\\\"", "\\\\", "\\n", "\\u00e9", "é", "€", " "};
+		sb.append("\"");
+		int length = r.nextInt(5);
+		for (int i = 0; i < length; i++)
+		{
+			sb.append(parts[r.nextInt(parts.length)]);
+		}
+		sb.append("\"");
+	}
+}
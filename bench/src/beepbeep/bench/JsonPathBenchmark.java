@@ -0,0 +1,136 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.json.ParseJson;
+
+/**
+ * Benchmark of the extraction of two fields out of a JSON document, with
+ * {@link beepbeep.groovy#CompiledNumberValue(String...)} and
+ * {@link beepbeep.groovy#CompiledStringValue(String...)}, against parsing
+ * the document and applying <tt>NumberValue(JPathFunction)</tt> and
+ * <tt>StringValue(JPathFunction)</tt>. The fields are placed either at the
+ * start of the document or at its end; since a later member with the same
+ * name replaces an earlier one, the compiled extractor reads the whole
+ * document in both cases.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonPathBenchmark
+{
+	/**
+	 * The approximate size of the document, in characters.
+	 */
+	@Param({"1024", "10240", "102400"})
+	public int size;
+
+	/**
+	 * Whether the fields are at the start of the document.
+	 */
+	@Param({"true", "false"})
+	public boolean first;
+
+	/**
+	 * The document.
+	 */
+	protected String m_document;
+
+	/**
+	 * The function extracting the number from the parsed document.
+	 */
+	protected Function m_number;
+
+	/**
+	 * The function extracting the string from the parsed document.
+	 */
+	protected Function m_string;
+
+	/**
+	 * The compiled function extracting the number.
+	 */
+	protected Function m_compiledNumber;
+
+	/**
+	 * The compiled function extracting the string.
+	 */
+	protected Function m_compiledString;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_document = BenchData.jsonDocument(size, first);
+		m_number = NumberValue(JPathFunction("stats.count"));
+		m_string = StringValue(JPathFunction("stats.name"));
+		m_compiledNumber = CompiledNumberValue("stats.count");
+		m_compiledString = CompiledStringValue("stats.name");
+	}
+
+	@Benchmark
+	public Object[] parsed()
+	{
+		Object[] doc = new Object[1];
+		ParseJson.instance.evaluate(new Object[] {m_document}, doc);
+		return extract(m_number, m_string, doc);
+	}
+
+	@Benchmark
+	public Object[] compiled()
+	{
+		return extract(m_compiledNumber, m_compiledString, new Object[] {m_document});
+	}
+
+	/**
+	 * Extracts the two fields.
+	 * @param number The function extracting the number
+	 * @param string The function extracting the string
+	 * @param doc The input of the functions
+	 * @return The two fields
+	 */
+	protected static Object[] extract(Function number, Function string, Object[] doc)
+	{
+		Object[] n = new Object[1];
+		Object[] s = new Object[1];
+		number.evaluate(doc, n);
+		string.evaluate(doc, s);
+		return new Object[] {n[0], s[0]};
+	}
+}
@@ -0,0 +1,114 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.json.ParseJson;
+
+/**
+ * Benchmark of the pipeline
+ * <tt>ReadLinesFrom | ApplyFunction(ParseJson) |
+ * ApplyFunction(NumberValue(JPathFunction)) | Cumulate</tt>, which sums a
+ * numerical field in files of JSON objects. The source reading the files
+ * can be the splice source, the memory-mapped source or the prefetching
+ * source; the two function applications can be fused or not.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonSumBenchmark
+{
+	/**
+	 * The source reading the files.
+	 */
+	@Param({"splice", "mapped", "prefetch"})
+	public String source;
+
+	/**
+	 * Whether the function applications are fused.
+	 */
+	@Param({"false", "true"})
+	public boolean fused;
+
+	/**
+	 * The files to read.
+	 */
+	protected String[] m_files;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		m_files = BenchData.jsonFiles(4, 25000);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		BenchData.delete(m_files);
+	}
+
+	@Benchmark
+	public Object sumField()
+	{
+		Processor src;
+		if (source.equals("mapped"))
+		{
+			src = MappedReadLinesFrom(m_files);
+		}
+		else if (source.equals("prefetch"))
+		{
+			src = ReadLinesFrom(2, m_files);
+		}
+		else
+		{
+			src = ReadLinesFrom(m_files);
+		}
+		Processor parse = ApplyFunction(ParseJson.instance);
+		Processor value = ApplyFunction(NumberValue(JPathFunction("a")));
+		Processor sum = Cumulate(Numbers.addition);
+		if (fused)
+		{
+			return BenchData.drain(Fuse(src, parse, value, sum));
+		}
+		return BenchData.drain(BenchData.chain(src, parse, value, sum));
+	}
+}
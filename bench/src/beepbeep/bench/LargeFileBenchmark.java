@@ -0,0 +1,123 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beepbeep.MappedLineSource;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+
+/**
+ * Benchmark of the sources reading the lines of a file of
+ * {@value #FILE_SIZE} bytes: the splice source made by
+ * {@link beepbeep.groovy#ReadLinesFrom(String...)}, and the memory-mapped
+ * source made by {@link beepbeep.groovy#MappedReadLinesFrom(String...)},
+ * which decodes each line into a string or, in lazy mode, only when its
+ * contents are accessed. The score is the time taken to read all the lines
+ * of the file; at the end of the trial, the number of lines read is
+ * printed.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LargeFileBenchmark
+{
+	/**
+	 * The size of the file, in bytes (1 GB).
+	 */
+	public static final long FILE_SIZE = 1L << 30;
+
+	/**
+	 * The source: "splice", "mapped" or "lazy".
+	 */
+	@Param({"splice", "mapped", "lazy"})
+	public String source;
+
+	/**
+	 * The file to read.
+	 */
+	protected String m_file;
+
+	/**
+	 * The number of lines read by the last invocation.
+	 */
+	protected long m_lines;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		m_file = BenchData.largeJsonFile(FILE_SIZE);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		System.out.printf("lines read: %d%n", m_lines);
+		BenchData.delete(m_file);
+	}
+
+	@Benchmark
+	public long readLines()
+	{
+		Processor src;
+		if (source.equals("mapped"))
+		{
+			src = MappedReadLinesFrom(m_file);
+		}
+		else if (source.equals("lazy"))
+		{
+			src = new MappedLineSource(m_file).setLazy(true);
+		}
+		else
+		{
+			src = ReadLinesFrom(m_file);
+		}
+		Pullable p = src.getPullableOutput(0);
+		long lines = 0;
+		while (p.hasNext())
+		{
+			p.pull();
+			lines++;
+		}
+		m_lines = lines;
+		return lines;
+	}
+}
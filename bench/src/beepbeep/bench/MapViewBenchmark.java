@@ -0,0 +1,152 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.StreamVariable;
+
+/**
+ * Benchmark of the map views made with
+ * {@link beepbeep.groovy.Maps#FilterMapView(Object)} and
+ * {@link beepbeep.groovy.Maps#KeysView()}, and of the count made by
+ * {@link beepbeep.groovy#Size(Object)} applied to a filtered view, against
+ * the functions of {@link ca.uqac.lif.cep.util.Maps}, which copy their
+ * input map. Each invocation evaluates the functions repeatedly on a map of
+ * numbers; running with <tt>-prof gc</tt> shows the allocation rate of
+ * each variant.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MapViewBenchmark
+{
+	/**
+	 * The number of entries of the map.
+	 */
+	@Param({"10", "1000"})
+	public int size;
+
+	/**
+	 * The number of evaluations of each invocation.
+	 */
+	public static final int NUM_EVALUATIONS = 1000;
+
+	/**
+	 * The map.
+	 */
+	protected Map<Object,Object> m_map;
+
+	/**
+	 * The number of entries of the filtered map, computed by BeepBeep's
+	 * functions.
+	 */
+	protected Function m_sizeCopy;
+
+	/**
+	 * The number of entries of the filtered map, computed by the facade.
+	 */
+	protected Function m_sizeView;
+
+	/**
+	 * The number of keys of the map, computed by BeepBeep's functions.
+	 */
+	protected Function m_keysCopy;
+
+	/**
+	 * The number of keys of the map, computed on a view.
+	 */
+	protected Function m_keysView;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_map = new HashMap<Object,Object>();
+		for (int i = 0; i < size; i++)
+		{
+			m_map.put(BenchData.token(i), i % 100);
+		}
+		m_sizeCopy = Size(Maps.FilterMap(LessThan(StreamVariable.Y, 50)));
+		m_sizeView = Size(Maps.FilterMapView(LessThan(StreamVariable.Y, 50)));
+		m_keysCopy = Size(Maps.Keys());
+		m_keysView = Size(Maps.KeysView());
+	}
+
+	@Benchmark
+	public Object filterSizeCopy()
+	{
+		return evaluate(m_sizeCopy);
+	}
+
+	@Benchmark
+	public Object filterSizeView()
+	{
+		return evaluate(m_sizeView);
+	}
+
+	@Benchmark
+	public Object keysSizeCopy()
+	{
+		return evaluate(m_keysCopy);
+	}
+
+	@Benchmark
+	public Object keysSizeView()
+	{
+		return evaluate(m_keysView);
+	}
+
+	/**
+	 * Evaluates a function repeatedly on the map.
+	 * @param f The function
+	 * @return The last output
+	 */
+	protected Object evaluate(Function f)
+	{
+		Object[] in = new Object[] {m_map};
+		Object[] out = new Object[1];
+		for (int i = 0; i < NUM_EVALUATIONS; i++)
+		{
+			f.evaluate(in, out);
+		}
+		return out[0];
+	}
+}
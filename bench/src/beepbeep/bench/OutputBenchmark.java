@@ -0,0 +1,176 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+
+/**
+ * Benchmark of the buffered output sinks made with
+ * {@link beepbeep.groovy#BufferedPrintln(OutputStream)} and
+ * {@link beepbeep.groovy#BufferedWrite(OutputStream)}, against the
+ * {@link ca.uqac.lif.cep.io.Print.Println} sink of BeepBeep writing to an
+ * auto-flushing print stream, as the standard output does, and the
+ * {@link ca.uqac.lif.cep.io.WriteOutputStream} sink. Each invocation
+ * pushes either lines of text and numbers to the <tt>Println</tt> sinks,
+ * or arrays of bytes to the <tt>Write</tt> sinks; the sink writes them
+ * either to <tt>/dev/null</tt> or to a temporary file.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OutputBenchmark
+{
+	/**
+	 * Whether the sink is buffered.
+	 */
+	@Param({"false", "true"})
+	public boolean buffered;
+
+	/**
+	 * Where the events are written: "null" for <tt>/dev/null</tt>, "file"
+	 * for a temporary file.
+	 */
+	@Param({"null", "file"})
+	public String target;
+
+	/**
+	 * The events pushed: "text" for lines of text and numbers, "bytes" for
+	 * arrays of bytes.
+	 */
+	@Param({"text", "bytes"})
+	public String events;
+
+	/**
+	 * The number of events pushed by each invocation.
+	 */
+	public static final int NUM_EVENTS = 10000;
+
+	/**
+	 * The events.
+	 */
+	protected Object[] m_events;
+
+	/**
+	 * The file written to, if any.
+	 */
+	protected File m_file;
+
+	/**
+	 * The stream written to.
+	 */
+	protected OutputStream m_out;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		String[] lines = BenchData.textLines(NUM_EVENTS / 2, 100);
+		m_events = new Object[NUM_EVENTS];
+		for (int i = 0; i < NUM_EVENTS; i++)
+		{
+			if (events.equals("bytes"))
+			{
+				m_events[i] = lines[i / 2].getBytes(StandardCharsets.UTF_8);
+			}
+			else
+			{
+				m_events[i] = i % 2 == 0 ? lines[i / 2] : (Object) i;
+			}
+		}
+		if (target.equals("file"))
+		{
+			m_file = File.createTempFile("bench", ".txt");
+			m_file.deleteOnExit();
+		}
+		else
+		{
+			m_file = new File("/dev/null");
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws FileNotFoundException
+	{
+		m_out = new FileOutputStream(m_file);
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws Exception
+	{
+		m_out.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		if (target.equals("file"))
+		{
+			BenchData.delete(m_file.getPath());
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Processor write()
+	{
+		Processor sink;
+		if (events.equals("bytes"))
+		{
+			sink = buffered ? BufferedWrite(m_out) : Write(m_out);
+		}
+		else
+		{
+			sink = buffered ? BufferedPrintln(m_out) : Println(new PrintStream(m_out, true));
+		}
+		Pushable p = sink.getPushableInput(0);
+		for (Object o : m_events)
+		{
+			p.push(o);
+		}
+		p.notifyEndOfTrace();
+		return sink;
+	}
+}
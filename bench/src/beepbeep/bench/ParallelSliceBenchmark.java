@@ -0,0 +1,107 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Benchmark of the scaling of a {@link beepbeep.ParallelSlice} with the
+ * number of threads, on {@value #NUM_KEYS} distinct keys. As in
+ * {@link SliceBenchmark}, each slice computes the cumulative sum of the
+ * values of its key.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParallelSliceBenchmark
+{
+	/**
+	 * The number of threads of the slice.
+	 */
+	@Param({"1", "2", "4", "8", "16"})
+	public int threads;
+
+	/**
+	 * Whether the outputs are produced in the order of the input events.
+	 */
+	@Param({"false", "true"})
+	public boolean ordered;
+
+	/**
+	 * The number of distinct keys.
+	 */
+	public static final int NUM_KEYS = 100000;
+
+	/**
+	 * The input events.
+	 */
+	protected List<Object> m_events;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_events = BenchData.keyedEvents(200000, NUM_KEYS);
+	}
+
+	@Benchmark
+	public int sumPerKey()
+	{
+		Object sum = Fuse(ApplyFunction(Element(1)), Cumulate(Numbers.addition));
+		Processor slice = ParallelSlice(Element(0), sum, threads, ordered);
+		QueueSink sink = new QueueSink(1);
+		Connector.connect(slice, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = slice.getPushableInput(0);
+		int count = 0;
+		for (Object e : m_events)
+		{
+			p.push(e);
+			count += q.size();
+			q.clear();
+		}
+		p.notifyEndOfTrace();
+		return count + q.size();
+	}
+}
@@ -0,0 +1,121 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beepbeep.TimedPump;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Benchmark of many {@link TimedPump}s running at the same time. Each
+ * invocation starts the pumps, each pulling a fixed number of events from
+ * its own source, and waits until all of them have reached the end of
+ * their input. At the end of each iteration, the scheduling jitter of the
+ * pumps and the number of threads they used are printed.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PumpBenchmark
+{
+	/**
+	 * The number of pumps running at the same time.
+	 */
+	@Param({"1000"})
+	public int pumps;
+
+	/**
+	 * The number of events pulled on each tick.
+	 */
+	@Param({"1", "16"})
+	public int batch;
+
+	/**
+	 * The number of events pulled by each pump.
+	 */
+	public static final int NUM_EVENTS = 256;
+
+	/**
+	 * The interval between two ticks, in milliseconds.
+	 */
+	public static final int INTERVAL = 1;
+
+	/**
+	 * The pumps of the last invocation.
+	 */
+	protected TimedPump[] m_pumps;
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public TimedPump[] run()
+	{
+		Object[] events = new Object[NUM_EVENTS];
+		for (int i = 0; i < events.length; i++)
+		{
+			events[i] = i;
+		}
+		m_pumps = new TimedPump[pumps];
+		for (int i = 0; i < pumps; i++)
+		{
+			QueueSource source = new QueueSource().setEvents(events).loop(false);
+			m_pumps[i] = new TimedPump(INTERVAL, batch);
+			BenchData.chain(source, m_pumps[i], new BlackHole());
+		}
+		for (TimedPump p : m_pumps)
+		{
+			p.start();
+		}
+		for (TimedPump p : m_pumps)
+		{
+			p.waitFor();
+		}
+		return m_pumps;
+	}
+
+	@TearDown(Level.Iteration)
+	public void report()
+	{
+		long max = 0;
+		long mean = 0;
+		for (TimedPump p : m_pumps)
+		{
+			max = Math.max(max, p.getMaxJitter());
+			mean += p.getMeanJitter();
+		}
+		System.out.printf("jitter: mean %d us, max %d us; threads: %d%n", mean / m_pumps.length / 1000, max / 1000, TimedPump.getThreadCount());
+	}
+}
@@ -0,0 +1,121 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import java.util.Random;
+
+import beepbeep.CompiledStrings;
+
+/**
+ * Compares {@link CompiledStrings.ReplaceAll} with the sequential
+ * application of {@link String#replaceAll(String, String)}, which is what
+ * {@link ca.uqac.lif.cep.util.Strings.ReplaceAll} does, on random
+ * replacement tables and strings. The patterns and replacements are drawn
+ * from a small alphabet, so that they often overlap or create occurrences
+ * of one another, and may contain the regex characters <tt>.</tt> and
+ * <tt>?</tt>, which force the sequential fallback. The program prints the
+ * first table on which the results differ and exits with status 1, or
+ * exits with status 0 if all the results are identical. Usage:
+ * <pre>
+ * java beepbeep.bench.ReplaceAllCheck [<i>number of tables</i>]</pre>
+ * The default number of tables is {@value #DEFAULT_TABLES}.
+ *
+ * @author Sylvain Hallé
+ */
+public class ReplaceAllCheck
+{
+	/**
+	 * The default number of random tables.
+	 */
+	public static final int DEFAULT_TABLES = 100000;
+
+	/**
+	 * The number of strings on which each table is evaluated.
+	 */
+	public static final int STRINGS_PER_TABLE = 5;
+
+	private ReplaceAllCheck()
+	{
+		super();
+	}
+
+	public static void main(String[] args)
+	{
+		int tables = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TABLES;
+		Random r = new Random(BenchData.SEED);
+		int single_pass = 0;
+		for (int t = 0; t < tables; t++)
+		{
+			int size = 1 + r.nextInt(5);
+			String[] from = new String[size];
+			String[] to = new String[size];
+			for (int i = 0; i < size; i++)
+			{
+				from[i] = randomString(r, 1 + r.nextInt(3), "abc");
+				if (r.nextInt(10) == 0)
+				{
+					from[i] += r.nextBoolean() ? "." : "?";
+				}
+				to[i] = randomString(r, r.nextInt(4), "abcd");
+			}
+			CompiledStrings.ReplaceAll f = new CompiledStrings.ReplaceAll(from, to);
+			if (f.isSinglePass())
+			{
+				single_pass++;
+			}
+			for (int k = 0; k < STRINGS_PER_TABLE; k++)
+			{
+				String s = randomString(r, r.nextInt(30), "abcd");
+				String expected = s;
+				for (int i = 0; i < size; i++)
+				{
+					expected = expected.replaceAll(from[i], to[i]);
+				}
+				String actual = f.getValue(s);
+				if (!expected.equals(actual))
+				{
+					System.out.println("Mismatch on table " + t + ":");
+					for (int i = 0; i < size; i++)
+					{
+						System.out.println("  \"" + from[i] + "\" -> \"" + to[i] + "\"");
+					}
+					System.out.println("string \"" + s + "\": expected \"" + expected + "\", got \"" + actual + "\"");
+					System.exit(1);
+				}
+			}
+		}
+		System.out.println(tables + " tables checked (" + single_pass + " in a single pass), no mismatch");
+	}
+
+	/**
+	 * Generates a random string.
+	 * @param r The random generator
+	 * @param length The length of the string
+	 * @param alphabet The characters of the string
+	 * @return The string
+	 */
+	protected static String randomString(Random r, int length, String alphabet)
+	{
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+		{
+			sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+}
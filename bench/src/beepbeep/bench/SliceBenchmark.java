@@ -0,0 +1,125 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Benchmark of a slice over a large number of keys, where each slice
+ * computes the cumulative sum of the values of its key. The slice can be
+ * the plain {@link ca.uqac.lif.cep.tmf.Slice}, a
+ * {@link beepbeep.EvictingSlice} bounded to a number of live slices, with
+ * or without reuse of the evicted instances, or a
+ * {@link beepbeep.ParallelSlice}.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SliceBenchmark
+{
+	/**
+	 * The slice processor.
+	 */
+	@Param({"slice", "evicting", "pooled", "parallel"})
+	public String impl;
+
+	/**
+	 * The number of distinct keys.
+	 */
+	@Param({"1000", "100000"})
+	public int keys;
+
+	/**
+	 * The maximum number of live slices of the evicting slices.
+	 */
+	public static final int MAX_SLICES = 1000;
+
+	/**
+	 * The input events.
+	 */
+	protected List<Object> m_events;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_events = BenchData.keyedEvents(200000, keys);
+	}
+
+	@Benchmark
+	public int sumPerKey()
+	{
+		Object sum = Fuse(ApplyFunction(Element(1)), Cumulate(Numbers.addition));
+		Processor slice;
+		if (impl.equals("evicting"))
+		{
+			slice = Slice(Element(0), sum, MaxSlices(MAX_SLICES));
+		}
+		else if (impl.equals("pooled"))
+		{
+			slice = Slice(Element(0), sum, MaxSlices(MAX_SLICES).poolSize(MAX_SLICES));
+		}
+		else if (impl.equals("parallel"))
+		{
+			slice = ParallelSlice(Element(0), sum, 4);
+		}
+		else
+		{
+			slice = Slice(Element(0), sum);
+		}
+		QueueSink sink = new QueueSink(1);
+		Connector.connect(slice, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = slice.getPushableInput(0);
+		int count = 0;
+		for (Object e : m_events)
+		{
+			p.push(e);
+			count += q.size();
+			q.clear();
+		}
+		p.notifyEndOfTrace();
+		return count + q.size();
+	}
+}
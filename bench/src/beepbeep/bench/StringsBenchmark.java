@@ -0,0 +1,145 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Benchmark of the string functions based on regular expressions. The
+ * replacement table of {@link beepbeep.groovy#ReplaceAll(String[], String[])}
+ * and {@link beepbeep.groovy#CompiledReplaceAll(String[], String[])} maps
+ * tokens to a placeholder, and its size varies.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StringsBenchmark
+{
+	/**
+	 * Whether the compiled variants of the functions are used.
+	 */
+	@Param({"false", "true"})
+	public boolean compiled;
+
+	/**
+	 * The number of entries of the replacement table.
+	 */
+	@Param({"10", "100", "300"})
+	public int tableSize;
+
+	/**
+	 * The lines of text.
+	 */
+	protected String[] m_lines;
+
+	/**
+	 * The replacement function.
+	 */
+	protected Function m_replace;
+
+	/**
+	 * The function finding all occurrences of a pattern.
+	 */
+	protected Function m_find;
+
+	/**
+	 * The function finding the first occurrence of a pattern.
+	 */
+	protected Function m_findOnce;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_lines = BenchData.textLines(1000, tableSize);
+		String[] from = new String[tableSize];
+		String[] to = new String[tableSize];
+		for (int i = 0; i < tableSize; i++)
+		{
+			from[i] = BenchData.token(i);
+			to[i] = "[REDACTED]";
+		}
+		String regex = "tok[0-9]+_";
+		if (compiled)
+		{
+			m_replace = CompiledReplaceAll(from, to);
+			m_find = CompiledFindRegex(regex);
+			m_findOnce = CompiledFindRegexOnce(regex);
+		}
+		else
+		{
+			m_replace = ReplaceAll(from, to);
+			m_find = FindRegex(regex);
+			m_findOnce = FindRegexOnce(regex);
+		}
+	}
+
+	@Benchmark
+	public Object replaceAll()
+	{
+		return evaluateAll(m_replace);
+	}
+
+	@Benchmark
+	public Object findRegex()
+	{
+		return evaluateAll(m_find);
+	}
+
+	@Benchmark
+	public Object findRegexOnce()
+	{
+		return evaluateAll(m_findOnce);
+	}
+
+	/**
+	 * Evaluates a function on all the lines.
+	 * @param f The function
+	 * @return The output for the last line
+	 */
+	protected Object evaluateAll(Function f)
+	{
+		Object[] out = new Object[1];
+		for (String line : m_lines)
+		{
+			f.evaluate(new Object[] {line}, out);
+		}
+		return out[0];
+	}
+}
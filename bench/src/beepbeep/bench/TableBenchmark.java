@@ -0,0 +1,109 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Benchmark of {@link beepbeep.groovy#UpdateTableStream(String...)}, which
+ * accumulates pairs of values into a table and outputs the table after each
+ * of them, and of {@link beepbeep.groovy#BoundedTableStream(int, String...)},
+ * which keeps only the last {@value #CAPACITY} rows, with and without
+ * decimation of the old rows.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TableBenchmark
+{
+	/**
+	 * The number of rows added to the table by each invocation.
+	 */
+	@Param({"1000", "10000"})
+	public int rows;
+
+	/**
+	 * The capacity of the bounded tables.
+	 */
+	public static final int CAPACITY = 500;
+
+	@Benchmark
+	public Object updateTable()
+	{
+		return fill(UpdateTableStream("x", "y"));
+	}
+
+	@Benchmark
+	public Object boundedTable()
+	{
+		return fill(BoundedTableStream(CAPACITY, "x", "y"));
+	}
+
+	@Benchmark
+	public Object boundedTableDecimated()
+	{
+		return fill(BoundedTableStream(CAPACITY, "x", "y").setDecimation(CAPACITY / 2, 10));
+	}
+
+	/**
+	 * Pushes pairs of values to a table.
+	 * @param table The processor accumulating the values into a table
+	 * @return The last output of the processor
+	 */
+	protected Object fill(Processor table)
+	{
+		QueueSink sink = new QueueSink(1);
+		Connector.connect(table, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable px = table.getPushableInput(0);
+		Pushable py = table.getPushableInput(1);
+		Object last = null;
+		for (int i = 0; i < rows; i++)
+		{
+			px.push(i);
+			py.push(i * i);
+			last = q.poll();
+		}
+		return last;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Benchmark of the functions made with {@link beepbeep.groovy.Lists#TopK(int)},
+ * {@link beepbeep.groovy.Lists#TopKOn(Object, int)} and
+ * {@link beepbeep.groovy.Lists#SortOn(Object)}, against the full sort of
+ * BeepBeep's {@link ca.uqac.lif.cep.util.Lists.Sort} and
+ * {@link ca.uqac.lif.cep.util.Lists.SortOn}. Each invocation ranks a list of
+ * [<i>key</i>, <i>value</i>] pairs, either by the pairs themselves or by
+ * their second element.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TopKBenchmark
+{
+	/**
+	 * The number of elements of the list.
+	 */
+	@Param({"1000", "100000"})
+	public int size;
+
+	/**
+	 * The number of elements to keep.
+	 */
+	public static final int K = 10;
+
+	/**
+	 * The list of values to rank.
+	 */
+	protected List<Object> m_values;
+
+	/**
+	 * The list of pairs to rank.
+	 */
+	protected List<Object> m_pairs;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_pairs = BenchData.keyedEvents(size, 100);
+		m_values = new ArrayList<Object>(size);
+		for (Object o : m_pairs)
+		{
+			m_values.add(((List<?>) o).get(1));
+		}
+	}
+
+	@Benchmark
+	public Object sort()
+	{
+		Function f = Lists.Sort();
+		Object[] out = new Object[1];
+		f.evaluate(new Object[] {m_values}, out);
+		List<?> l = (List<?>) out[0];
+		return l.subList(l.size() - K, l.size());
+	}
+
+	@Benchmark
+	public Object topK()
+	{
+		Object[] out = new Object[1];
+		Lists.TopK(K).evaluate(new Object[] {m_values}, out);
+		return out[0];
+	}
+
+	@Benchmark
+	public Object sortOnOriginal()
+	{
+		Object[] out = new Object[1];
+		new ca.uqac.lif.cep.util.Lists.SortOn<Object>(new NthElement(1)).evaluate(new Object[] {m_pairs}, out);
+		return out[0];
+	}
+
+	@Benchmark
+	public Object sortOn()
+	{
+		Object[] out = new Object[1];
+		Lists.SortOn(new NthElement(1)).evaluate(new Object[] {m_pairs}, out);
+		return out[0];
+	}
+
+	@Benchmark
+	public Object topKOn()
+	{
+		Object[] out = new Object[1];
+		Lists.TopKOn(new NthElement(1), K).evaluate(new Object[] {m_pairs}, out);
+		return out[0];
+	}
+}
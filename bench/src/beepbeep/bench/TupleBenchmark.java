@@ -0,0 +1,108 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Benchmark of the creation of tuples with
+ * {@link beepbeep.groovy#MergeScalars(String...)} and of the access to
+ * their attributes with {@link beepbeep.groovy#FetchAttribute(String)},
+ * both on tuples created in memory and on tuples read from a CSV file.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TupleBenchmark
+{
+	/**
+	 * The number of tuples processed by each invocation.
+	 */
+	public static final int NUM_TUPLES = 100000;
+
+	/**
+	 * The CSV file to read.
+	 */
+	protected String m_file;
+
+	/**
+	 * The function creating the tuples.
+	 */
+	protected Function m_merge;
+
+	/**
+	 * The function fetching an attribute of a tuple.
+	 */
+	protected Function m_fetch;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		m_file = BenchData.csvFile(NUM_TUPLES);
+		m_merge = MergeScalars("a", "b", "c");
+		m_fetch = FetchAttribute("b");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		BenchData.delete(m_file);
+	}
+
+	@Benchmark
+	public Object mergeAndFetch()
+	{
+		Object[] tuple = new Object[1];
+		Object[] value = new Object[1];
+		for (int i = 0; i < NUM_TUPLES; i++)
+		{
+			m_merge.evaluate(new Object[] {i, "foo", i * 2}, tuple);
+			m_fetch.evaluate(tuple, value);
+		}
+		return value[0];
+	}
+
+	@Benchmark
+	public Object readAndFetch()
+	{
+		return BenchData.drain(BenchData.chain(ReadTuplesFrom(m_file), ApplyFunction(FetchAttribute("b"))));
+	}
+}
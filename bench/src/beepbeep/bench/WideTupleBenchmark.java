@@ -0,0 +1,143 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beepbeep.TupleSchema;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Benchmark of tuples with a schema, made with
+ * {@link beepbeep.groovy#ReadSchemaTuplesFrom(String...)} and
+ * {@link beepbeep.groovy#SlotMergeScalars(String...)}, and fetched with
+ * {@link beepbeep.groovy#SlotFetchAttribute(String)}, against the tuples of
+ * the BeepBeep palette, on CSV files and tuples of various widths. Running
+ * JMH with <tt>-prof gc</tt> also shows the memory allocated per tuple.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WideTupleBenchmark
+{
+	/**
+	 * The number of attributes of each tuple.
+	 */
+	@Param({"3", "50"})
+	public int columns;
+
+	/**
+	 * Whether the tuples have a schema.
+	 */
+	@Param({"false", "true"})
+	public boolean schema;
+
+	/**
+	 * The number of tuples processed by each invocation.
+	 */
+	public static final int NUM_TUPLES = 20000;
+
+	/**
+	 * The CSV file to read.
+	 */
+	protected String m_file;
+
+	/**
+	 * The names of the attributes.
+	 */
+	protected String[] m_names;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		m_file = BenchData.wideCsvFile(NUM_TUPLES, columns);
+		m_names = new String[columns];
+		for (int i = 0; i < columns; i++)
+		{
+			m_names[i] = "c" + i;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		BenchData.delete(m_file);
+	}
+
+	@Benchmark
+	public Object readAndFetch()
+	{
+		String last = m_names[columns - 1];
+		Processor source;
+		Function fetch;
+		if (schema)
+		{
+			source = ReadSchemaTuplesFrom(m_file).setType(last, TupleSchema.Type.LONG);
+			fetch = SlotFetchAttribute(last);
+		}
+		else
+		{
+			source = ReadTuplesFrom(m_file);
+			fetch = FetchAttribute(last);
+		}
+		return BenchData.drain(BenchData.chain(source, ApplyFunction(fetch)));
+	}
+
+	@Benchmark
+	public Object mergeAndFetch()
+	{
+		Function merge = schema ? SlotMergeScalars(m_names) : MergeScalars(m_names);
+		Function fetch = schema ? SlotFetchAttribute(m_names[columns - 1]) : FetchAttribute(m_names[columns - 1]);
+		Object[] values = new Object[columns];
+		Object[] tuple = new Object[1];
+		Object[] value = new Object[1];
+		for (int i = 0; i < NUM_TUPLES; i++)
+		{
+			for (int j = 0; j < columns; j++)
+			{
+				values[j] = i + j;
+			}
+			merge.evaluate(values, tuple);
+			fetch.evaluate(tuple, value);
+		}
+		return value[0];
+	}
+}
@@ -0,0 +1,174 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep.bench;
+
+import static beepbeep.groovy.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Window;
+
+/**
+ * Benchmark of the incremental window aggregates made with
+ * {@link beepbeep.groovy#WindowSum(int)} and
+ * {@link beepbeep.groovy#WindowMax(int)}, against a
+ * {@link ca.uqac.lif.cep.tmf.Window} around a cumulative function, which
+ * recomputes the aggregate on the whole window for each event. Before the
+ * measurements, the setup checks that both processors output the same
+ * numbers; the types of these numbers differ, as explained in
+ * {@link beepbeep.WindowAggregate}.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WindowBenchmark
+{
+	/**
+	 * The width of the window.
+	 */
+	@Param({"10", "100", "1000"})
+	public int width;
+
+	/**
+	 * The number of events of each invocation.
+	 */
+	public static final int NUM_EVENTS = 10000;
+
+	/**
+	 * The events.
+	 */
+	protected Object[] m_events;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random r = new Random(BenchData.SEED);
+		m_events = new Object[NUM_EVENTS];
+		for (int i = 0; i < NUM_EVENTS; i++)
+		{
+			m_events[i] = r.nextInt(1000);
+		}
+		check("sum", new Window(Cumulate(Numbers.addition), width), WindowSum(width));
+		check("max", new Window(Cumulate(Numbers.maximum), width), WindowMax(width));
+	}
+
+	@Benchmark
+	public Object sumWindow()
+	{
+		return run(new Window(Cumulate(Numbers.addition), width));
+	}
+
+	@Benchmark
+	public Object sumIncremental()
+	{
+		return run(WindowSum(width));
+	}
+
+	@Benchmark
+	public Object maxWindow()
+	{
+		return run(new Window(Cumulate(Numbers.maximum), width));
+	}
+
+	@Benchmark
+	public Object maxIncremental()
+	{
+		return run(WindowMax(width));
+	}
+
+	/**
+	 * Checks that an incremental aggregate outputs the same numbers as a
+	 * window around a cumulative function. The events are integers below
+	 * 1000, whose sums over a window are represented exactly by the
+	 * {@link Float}s output by the window; the numbers are therefore
+	 * compared exactly.
+	 * @param name The name of the aggregate
+	 * @param window The window around a cumulative function
+	 * @param incremental The incremental aggregate
+	 */
+	protected void check(String name, Processor window, Processor incremental)
+	{
+		List<Object> expected = outputs(window);
+		List<Object> actual = outputs(incremental);
+		if (expected.size() != actual.size())
+		{
+			throw new IllegalStateException("The incremental " + name + " outputs " + actual.size() + " events instead of " + expected.size());
+		}
+		for (int i = 0; i < expected.size(); i++)
+		{
+			double x = ((Number) expected.get(i)).doubleValue();
+			double y = ((Number) actual.get(i)).doubleValue();
+			if (x != y)
+			{
+				throw new IllegalStateException("The incremental " + name + " outputs " + y + " instead of " + x + " at position " + i);
+			}
+		}
+	}
+
+	/**
+	 * Pulls all the events out of a window processor.
+	 * @param p The processor
+	 * @return The events
+	 */
+	protected List<Object> outputs(Processor p)
+	{
+		QueueSource source = new QueueSource().setEvents(m_events).loop(false);
+		Pullable pl = BenchData.chain(source, p).getPullableOutput(0);
+		List<Object> events = new ArrayList<Object>(NUM_EVENTS);
+		while (pl.hasNext())
+		{
+			events.add(pl.pull());
+		}
+		return events;
+	}
+
+	/**
+	 * Pulls all the events out of a window processor.
+	 * @param p The processor
+	 * @return The last output
+	 */
+	protected Object run(Processor p)
+	{
+		QueueSource source = new QueueSource().setEvents(m_events).loop(false);
+		return BenchData.drain(BenchData.chain(source, p));
+	}
+}
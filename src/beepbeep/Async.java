@@ -0,0 +1,260 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Processor that runs another processor on its own thread. The input
+ * fronts pushed to this processor are put in a bounded {@link RingBuffer};
+ * a worker thread takes them out of the buffer, pushes them to the inner
+ * processor, and pushes the outputs of the inner processor to the
+ * processors connected downstream of this one. The thread that pushes
+ * events to this processor thus never waits for the inner processor and
+ * the rest of the pipeline, unless the buffer is full.
+ * <p>
+ * What happens when the buffer is full is decided by the
+ * {@link Backpressure} policy: the upstream thread can wait until there is
+ * room for the new front, or the oldest or newest front can be discarded.
+ * <p>
+ * This processor only works in push mode. When the end of the trace is
+ * reached, it waits until the worker has processed all the fronts in the
+ * buffer before notifying the processors downstream.
+ *
+ * @author Sylvain Hallé
+ */
+public class Async extends SynchronousProcessor
+{
+	/**
+	 * What to do with an input front when the buffer is full.
+	 */
+	public static enum Backpressure
+	{
+		/**
+		 * Wait until there is room in the buffer.
+		 */
+		BLOCK,
+
+		/**
+		 * Discard the oldest front in the buffer.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Discard the new front.
+		 */
+		DROP_NEWEST
+	}
+
+	/**
+	 * The factory creating the worker threads.
+	 */
+	protected static final DaemonThreadFactory s_threads = new DaemonThreadFactory("Async");
+
+	/**
+	 * The processor run by the worker.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The capacity of the buffer.
+	 */
+	protected final int m_capacity;
+
+	/**
+	 * The policy applied when the buffer is full.
+	 */
+	protected final Backpressure m_backpressure;
+
+	/**
+	 * The worker pushing the fronts to the inner processor.
+	 */
+	protected final Worker m_worker;
+
+	/**
+	 * The number of fronts discarded because the buffer was full.
+	 */
+	protected long m_dropped = 0;
+
+	/**
+	 * Creates a new asynchronous processor.
+	 * @param p The processor to run on the worker thread, which must not be
+	 * connected to anything
+	 * @param capacity The capacity of the buffer; it is rounded up to a power
+	 * of two
+	 * @param backpressure The policy applied when the buffer is full
+	 */
+	public Async(Processor p, int capacity, Backpressure backpressure)
+	{
+		super(p.getInputArity(), p.getOutputArity());
+		m_processor = p;
+		m_capacity = capacity;
+		m_backpressure = backpressure;
+		m_worker = new Worker(capacity);
+		if (p.getOutputArity() > 0)
+		{
+			Connector.connect(p, new Forward(p.getOutputArity()));
+		}
+	}
+
+	/**
+	 * Gets the number of input fronts discarded because the buffer was full.
+	 * @return The number of fronts
+	 */
+	public long getDropped()
+	{
+		return m_dropped;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_worker.checkFailure();
+		m_worker.start(s_threads);
+		Object front = inputs.length == 1 ? inputs[0] : inputs.clone();
+		switch (m_backpressure)
+		{
+		case DROP_NEWEST:
+			if (!m_worker.offer(front))
+			{
+				m_dropped++;
+			}
+			break;
+		case DROP_OLDEST:
+			if (m_worker.offerDiscardingOldest(front))
+			{
+				m_dropped++;
+			}
+			break;
+		default:
+			m_worker.put(front);
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEnd(Queue<Object[]> outputs)
+	{
+		m_worker.finish();
+		return true;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_worker.shutdown();
+		m_dropped = 0;
+		m_processor.reset();
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+		m_worker.shutdown();
+	}
+
+	@Override
+	public Async duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate an asynchronous processor with its state");
+		}
+		return new Async(m_processor.duplicate(), m_capacity, m_backpressure);
+	}
+
+	/**
+	 * The worker pushing the input fronts to the inner processor.
+	 */
+	protected class Worker extends BufferedWorker
+	{
+		public Worker(int capacity)
+		{
+			super(capacity);
+		}
+
+		@Override
+		protected void process(Object o)
+		{
+			if (m_processor.getInputArity() == 1)
+			{
+				m_processor.getPushableInput(0).push(o);
+				return;
+			}
+			Object[] front = (Object[]) o;
+			for (int i = 0; i < front.length; i++)
+			{
+				m_processor.getPushableInput(i).push(front[i]);
+			}
+		}
+
+		@Override
+		protected void end()
+		{
+			for (int i = 0; i < m_processor.getInputArity(); i++)
+			{
+				m_processor.getPushableInput(i).notifyEndOfTrace();
+			}
+		}
+	}
+
+	/**
+	 * Pushes the outputs of the inner processor to the processors connected
+	 * downstream of this one, on the worker thread.
+	 */
+	protected class Forward extends SynchronousProcessor
+	{
+		public Forward(int arity)
+		{
+			super(arity, 0);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			for (int i = 0; i < inputs.length; i++)
+			{
+				Pushable p = Async.this.getPushableOutput(i);
+				if (p != null)
+				{
+					p.push(inputs[i]);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Creates a processor forwarding events to the same {@link Async}
+		 * processor as this one. {@link Async#duplicate(boolean)} does not
+		 * use this method, and connects a new forwarder to the copy of the
+		 * inner processor instead.
+		 */
+		@Override
+		public Forward duplicate(boolean with_state)
+		{
+			return new Forward(getInputArity());
+		}
+	}
+}
@@ -0,0 +1,439 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Processor accumulating its input events into the rows of a table of
+ * bounded size, as an alternative to
+ * {@link ca.uqac.lif.cep.mtnp.UpdateTableStream} and
+ * {@link ca.uqac.lif.cep.mtnp.UpdateTableArray} in long-running
+ * dashboards.
+ * <p>
+ * <strong>This processor is not a drop-in replacement for
+ * UpdateTableStream and UpdateTableArray:</strong> its output events are
+ * {@link View}s, not tables. It cannot be connected directly to
+ * {@link ca.uqac.lif.cep.mtnp.DrawPlot} or to any other processor that
+ * expects a table; the views must first go through a
+ * {@link ThrottledRender}, which converts them itself, or through an
+ * {@link ca.uqac.lif.cep.functions.ApplyFunction} of {@link ToTable}.
+ * <p>
+ * The rows are kept in a ring buffer: once the table holds its maximum
+ * number of rows, each new row evicts the oldest one. Optionally, old rows
+ * can be <em>decimated</em> instead of being dropped right away: the most
+ * recent rows are all kept, and only one in <i>k</i> of the rows older
+ * than them is kept in a second ring buffer, which then covers a period
+ * <i>k</i> times longer for the same number of rows.
+ * <p>
+ * Adding a row takes constant time. For each input event, the processor
+ * outputs a {@link View} of the table in its current state, which is
+ * converted into a {@link HardTable} only when needed, for example by a
+ * {@link ThrottledRender} once per render. A view must be used before the
+ * next event is received; {@link ToTable} converts it into a table in a
+ * chain of processors.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class BoundedTable extends SynchronousProcessor
+{
+	/**
+	 * The names of the columns of the table.
+	 */
+	protected final String[] m_columnNames;
+
+	/**
+	 * The maximum number of rows of the table.
+	 */
+	protected final int m_capacity;
+
+	/**
+	 * The most recent rows, used as a ring buffer.
+	 */
+	protected Object[][] m_recent;
+
+	/**
+	 * The position of the oldest row in {@link #m_recent}.
+	 */
+	protected int m_recentStart = 0;
+
+	/**
+	 * The number of rows in {@link #m_recent}.
+	 */
+	protected int m_recentSize = 0;
+
+	/**
+	 * The decimated old rows, used as a ring buffer.
+	 */
+	protected Object[][] m_old;
+
+	/**
+	 * The position of the oldest row in {@link #m_old}.
+	 */
+	protected int m_oldStart = 0;
+
+	/**
+	 * The number of rows in {@link #m_old}.
+	 */
+	protected int m_oldSize = 0;
+
+	/**
+	 * The fraction of old rows that are kept: one in this number.
+	 */
+	protected int m_factor = 1;
+
+	/**
+	 * The number of rows evicted from the most recent rows.
+	 */
+	protected long m_evicted = 0;
+
+	/**
+	 * The number of rows added to the table, used to detect stale views.
+	 */
+	protected long m_version = 0;
+
+	/**
+	 * Creates a new bounded table.
+	 * @param in_arity The input arity of the processor
+	 * @param capacity The maximum number of rows of the table
+	 * @param column_names The names of the columns of the table
+	 */
+	public BoundedTable(int in_arity, int capacity, String ... column_names)
+	{
+		super(in_arity, 1);
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("The capacity of a table must be positive");
+		}
+		m_columnNames = column_names;
+		m_capacity = capacity;
+		m_recent = new Object[capacity][];
+		m_old = new Object[0][];
+	}
+
+	/**
+	 * Decimates the old rows of the table. The given number of most recent
+	 * rows are all kept; of the rows before them, only one in <i>k</i> is
+	 * kept, up to the capacity of the table.
+	 * @param recent The number of most recent rows that are all kept; it
+	 * must be smaller than the capacity of the table
+	 * @param factor The decimation factor <i>k</i>
+	 * @return This processor
+	 */
+	public BoundedTable setDecimation(int recent, int factor)
+	{
+		if (recent < 1 || recent >= m_capacity || factor < 1)
+		{
+			throw new IllegalArgumentException("Invalid decimation parameters");
+		}
+		m_recent = new Object[recent][];
+		m_old = new Object[m_capacity - recent][];
+		m_factor = factor;
+		clear();
+		return this;
+	}
+
+	/**
+	 * Gets the values of the row corresponding to an input front.
+	 * @param inputs The input front
+	 * @return The values, in the order of the columns
+	 */
+	protected abstract Object[] getRow(Object[] inputs);
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		add(getRow(inputs));
+		outputs.add(new Object[] {new View(this, m_version)});
+		return true;
+	}
+
+	/**
+	 * Adds a row to the table, evicting or decimating the oldest row if the
+	 * table is full.
+	 * @param row The values of the row
+	 */
+	protected void add(Object[] row)
+	{
+		m_version++;
+		if (m_recentSize < m_recent.length)
+		{
+			m_recent[(m_recentStart + m_recentSize++) % m_recent.length] = row;
+			return;
+		}
+		Object[] evicted = m_recent[m_recentStart];
+		m_recent[m_recentStart] = row;
+		m_recentStart = (m_recentStart + 1) % m_recent.length;
+		if (m_old.length > 0 && m_evicted++ % m_factor == 0)
+		{
+			if (m_oldSize < m_old.length)
+			{
+				m_old[(m_oldStart + m_oldSize++) % m_old.length] = evicted;
+			}
+			else
+			{
+				m_old[m_oldStart] = evicted;
+				m_oldStart = (m_oldStart + 1) % m_old.length;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of rows of the table.
+	 * @return The number of rows
+	 */
+	public int getRowCount()
+	{
+		return m_oldSize + m_recentSize;
+	}
+
+	/**
+	 * Gets a row of the table.
+	 * @param index The index of the row, from the oldest row to the most
+	 * recent
+	 * @return The values of the row
+	 */
+	public Object[] getRowAt(int index)
+	{
+		if (index < m_oldSize)
+		{
+			return m_old[(m_oldStart + index) % m_old.length];
+		}
+		return m_recent[(m_recentStart + index - m_oldSize) % m_recent.length];
+	}
+
+	/**
+	 * Creates a table with the current rows of this table.
+	 * @return The table
+	 */
+	public HardTable toTable()
+	{
+		HardTable table = new HardTable(m_columnNames);
+		int rows = getRowCount();
+		for (int i = 0; i < rows; i++)
+		{
+			Object[] row = getRowAt(i);
+			TableEntry e = new TableEntry();
+			for (int j = 0; j < m_columnNames.length; j++)
+			{
+				e.put(m_columnNames[j], j < row.length ? row[j] : null);
+			}
+			table.add(e);
+		}
+		return table;
+	}
+
+	/**
+	 * Removes all the rows of the table.
+	 */
+	protected void clear()
+	{
+		Arrays.fill(m_recent, null);
+		Arrays.fill(m_old, null);
+		m_recentStart = 0;
+		m_recentSize = 0;
+		m_oldStart = 0;
+		m_oldSize = 0;
+		m_evicted = 0;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+		m_version = 0;
+	}
+
+	/**
+	 * Copies the settings of this table into another one.
+	 * @param t The other table
+	 * @return The other table
+	 */
+	protected BoundedTable copySettingsInto(BoundedTable t)
+	{
+		if (m_old.length > 0)
+		{
+			t.setDecimation(m_recent.length, m_factor);
+		}
+		return t;
+	}
+
+	/**
+	 * The state of a table after a given input event.
+	 */
+	public static class View
+	{
+		/**
+		 * The table.
+		 */
+		protected final BoundedTable m_table;
+
+		/**
+		 * The version of the table this view refers to.
+		 */
+		protected final long m_version;
+
+		public View(BoundedTable table, long version)
+		{
+			super();
+			m_table = table;
+			m_version = version;
+		}
+
+		/**
+		 * Gets the number of rows of the table.
+		 * @return The number of rows
+		 */
+		public int getRowCount()
+		{
+			check();
+			return m_table.getRowCount();
+		}
+
+		/**
+		 * Creates a table with the rows of the table.
+		 * @return The table
+		 */
+		public HardTable toTable()
+		{
+			check();
+			return m_table.toTable();
+		}
+
+		/**
+		 * Checks that the table has not received other rows since this view
+		 * was created.
+		 */
+		protected void check()
+		{
+			if (m_table.m_version != m_version)
+			{
+				throw new ConcurrentModificationException("The table has changed since this view was created");
+			}
+		}
+	}
+
+	/**
+	 * Function converting a {@link View} into a {@link HardTable}, so that
+	 * it can be passed to processors that expect a table, such as
+	 * {@link ca.uqac.lif.cep.mtnp.DrawPlot}.
+	 */
+	public static class ToTable extends UnaryFunction<View,HardTable>
+	{
+		/**
+		 * A single publicly visible instance of the function.
+		 */
+		public static final ToTable instance = new ToTable();
+
+		protected ToTable()
+		{
+			super(View.class, HardTable.class);
+		}
+
+		@Override
+		public HardTable getValue(View x)
+		{
+			return x.toTable();
+		}
+
+		@Override
+		public ToTable duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Bounded table receiving the value of each column on a different input
+	 * stream, like {@link ca.uqac.lif.cep.mtnp.UpdateTableStream}.
+	 */
+	public static class Stream extends BoundedTable
+	{
+		/**
+		 * Creates a new bounded table.
+		 * @param capacity The maximum number of rows of the table
+		 * @param column_names The names of the columns of the table
+		 */
+		public Stream(int capacity, String ... column_names)
+		{
+			super(column_names.length, capacity, column_names);
+		}
+
+		@Override
+		protected Object[] getRow(Object[] inputs)
+		{
+			return inputs.clone();
+		}
+
+		@Override
+		public Stream duplicate(boolean with_state)
+		{
+			if (with_state)
+			{
+				throw new UnsupportedOperationException("Cannot duplicate a table with its state");
+			}
+			return (Stream) copySettingsInto(new Stream(m_capacity, m_columnNames));
+		}
+	}
+
+	/**
+	 * Bounded table receiving the values of a row as an array or a list,
+	 * like {@link ca.uqac.lif.cep.mtnp.UpdateTableArray}.
+	 */
+	public static class Array extends BoundedTable
+	{
+		/**
+		 * Creates a new bounded table.
+		 * @param capacity The maximum number of rows of the table
+		 * @param column_names The names of the columns of the table
+		 */
+		public Array(int capacity, String ... column_names)
+		{
+			super(1, capacity, column_names);
+		}
+
+		@Override
+		protected Object[] getRow(Object[] inputs)
+		{
+			if (inputs[0] instanceof List)
+			{
+				return ((List<?>) inputs[0]).toArray();
+			}
+			return ((Object[]) inputs[0]).clone();
+		}
+
+		@Override
+		public Array duplicate(boolean with_state)
+		{
+			if (with_state)
+			{
+				throw new UnsupportedOperationException("Cannot duplicate a table with its state");
+			}
+			return (Array) copySettingsInto(new Array(m_capacity, m_columnNames));
+		}
+	}
+}
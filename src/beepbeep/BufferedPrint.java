@@ -0,0 +1,549 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * A variant of {@link ca.uqac.lif.cep.io.Print} that accumulates the
+ * events it receives before writing them to an output stream. The events
+ * are appended to a {@link StringBuilder} that is reused from one event to
+ * the next; numbers and character sequences are appended directly, without
+ * creating an intermediate string. When the buffer is flushed, its
+ * contents are encoded into a reusable byte buffer with a
+ * {@link CharsetEncoder}, and written to the stream in as few calls as
+ * possible.
+ * <p>
+ * The buffer is flushed when one of the following conditions holds:
+ * <ul>
+ * <li>the number of characters in the buffer reaches the buffer size</li>
+ * <li>a flush interval is set, and this interval has elapsed since the
+ * last flush while the buffer holds events</li>
+ * <li>the end of the trace is reached, or the processor is stopped</li>
+ * </ul>
+ * When a flush interval is set, the first event written to an empty
+ * buffer schedules a flush at the end of the interval on the thread pool
+ * shared by the {@link TimedPump}s; the events therefore never remain in
+ * the buffer much longer than this interval, even if the input stream
+ * becomes idle. No flush is scheduled while the buffer is empty. The
+ * processor synchronizes on itself, so that a scheduled flush never runs
+ * at the same time as an event is received. An exception thrown by a
+ * scheduled flush is thrown again when the next event is received, or at
+ * the end of the trace.
+ *
+ * @author Sylvain Hallé
+ */
+public class BufferedPrint extends SynchronousProcessor
+{
+	/**
+	 * The default size of the buffer, in characters.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The stream to write to.
+	 */
+	protected final OutputStream m_out;
+
+	/**
+	 * The charset used to encode the characters.
+	 */
+	protected final Charset m_charset;
+
+	/**
+	 * The size of the buffer, in characters.
+	 */
+	protected final int m_bufferSize;
+
+	/**
+	 * The string written between two events.
+	 */
+	protected String m_separator = ",";
+
+	/**
+	 * The string written after each event.
+	 */
+	protected String m_suffix = "";
+
+	/**
+	 * The maximum interval between two flushes, in nanoseconds, or 0 for no
+	 * limit.
+	 */
+	protected long m_flushInterval = 0;
+
+	/**
+	 * The characters not yet written.
+	 */
+	protected final StringBuilder m_text;
+
+	/**
+	 * A buffer into which the characters are copied before being encoded.
+	 */
+	protected final CharBuffer m_chars;
+
+	/**
+	 * The buffer into which the characters are encoded.
+	 */
+	protected final ByteBuffer m_bytes;
+
+	/**
+	 * The encoder of the characters.
+	 */
+	protected final CharsetEncoder m_encoder;
+
+	/**
+	 * Whether an event has been written since the processor was reset.
+	 */
+	protected boolean m_started = false;
+
+	/**
+	 * The time of the last flush, in nanoseconds.
+	 */
+	protected long m_lastFlush = System.nanoTime();
+
+	/**
+	 * The flush scheduled at the end of the flush interval, or {@code null}
+	 * if none is scheduled.
+	 */
+	protected Future<?> m_scheduledFlush;
+
+	/**
+	 * The exception thrown by the last scheduled flush, if any.
+	 */
+	protected ProcessorException m_failure;
+
+	/**
+	 * Creates a new buffered printer.
+	 * @param out The stream to write to
+	 * @param charset The charset used to encode the characters
+	 * @param buffer_size The size of the buffer, in characters
+	 */
+	public BufferedPrint(OutputStream out, Charset charset, int buffer_size)
+	{
+		super(1, 0);
+		m_out = out;
+		m_charset = charset;
+		m_bufferSize = Math.max(16, buffer_size);
+		m_text = new StringBuilder(m_bufferSize + 256);
+		m_chars = CharBuffer.allocate(m_bufferSize);
+		m_encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		m_bytes = ByteBuffer.allocate((int) Math.ceil(m_bufferSize * (double) m_encoder.maxBytesPerChar()));
+	}
+
+	/**
+	 * Creates a new buffered printer using the default charset and buffer
+	 * size.
+	 * @param out The stream to write to
+	 */
+	public BufferedPrint(OutputStream out)
+	{
+		this(out, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new buffered printer writing to the standard output.
+	 */
+	public BufferedPrint()
+	{
+		this(System.out);
+	}
+
+	/**
+	 * Sets the string written between two events.
+	 * @param separator The string
+	 * @return This processor
+	 */
+	public BufferedPrint setSeparator(String separator)
+	{
+		m_separator = separator;
+		return this;
+	}
+
+	/**
+	 * Sets the string written after each event.
+	 * @param suffix The string
+	 * @return This processor
+	 */
+	public BufferedPrint setSuffix(String suffix)
+	{
+		m_suffix = suffix;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum interval between two flushes. Events written to the
+	 * buffer are flushed at most this interval after the last flush, even if
+	 * no other event is received.
+	 * @param interval The interval, in milliseconds, or 0 to flush only
+	 * when the buffer is full or at the end of the trace
+	 * @return This processor
+	 */
+	public BufferedPrint setFlushInterval(long interval)
+	{
+		m_flushInterval = TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval));
+		return this;
+	}
+
+	@Override
+	protected synchronized boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		checkFailure();
+		if (m_started)
+		{
+			m_text.append(m_separator);
+		}
+		m_started = true;
+		append(inputs[0]);
+		m_text.append(m_suffix);
+		if (m_text.length() >= m_bufferSize || (m_flushInterval > 0 && System.nanoTime() - m_lastFlush >= m_flushInterval))
+		{
+			flush();
+		}
+		else if (m_flushInterval > 0 && m_scheduledFlush == null)
+		{
+			scheduleFlush();
+		}
+		return true;
+	}
+
+	/**
+	 * Schedules a flush at the end of the flush interval.
+	 */
+	protected void scheduleFlush()
+	{
+		long delay = Math.max(0, m_lastFlush + m_flushInterval - System.nanoTime());
+		m_scheduledFlush = TimedPump.s_scheduler.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				scheduledFlush();
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Flushes the buffer at the end of the flush interval, if it holds
+	 * events and has not been flushed in the meantime.
+	 */
+	protected synchronized void scheduledFlush()
+	{
+		m_scheduledFlush = null;
+		if (m_failure != null || (m_text.length() == 0 && m_bytes.position() == 0))
+		{
+			return;
+		}
+		if (System.nanoTime() - m_lastFlush < m_flushInterval)
+		{
+			scheduleFlush();
+			return;
+		}
+		try
+		{
+			flush();
+		}
+		catch (ProcessorException e)
+		{
+			m_failure = e;
+		}
+	}
+
+	/**
+	 * Throws the exception thrown by the last scheduled flush, if any.
+	 */
+	protected void checkFailure()
+	{
+		if (m_failure != null)
+		{
+			ProcessorException e = m_failure;
+			m_failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancels the flush scheduled at the end of the flush interval, if any.
+	 */
+	protected void cancelFlush()
+	{
+		if (m_scheduledFlush != null)
+		{
+			m_scheduledFlush.cancel(false);
+			m_scheduledFlush = null;
+		}
+	}
+
+	/**
+	 * Appends an event to the buffer.
+	 * @param o The event
+	 */
+	protected void append(Object o)
+	{
+		if (o instanceof CharSequence)
+		{
+			m_text.append((CharSequence) o);
+		}
+		else if (o instanceof Integer || o instanceof Short || o instanceof Byte)
+		{
+			m_text.append(((Number) o).intValue());
+		}
+		else if (o instanceof Long)
+		{
+			m_text.append(((Long) o).longValue());
+		}
+		else if (o instanceof Double)
+		{
+			m_text.append(((Double) o).doubleValue());
+		}
+		else if (o instanceof Float)
+		{
+			m_text.append(((Float) o).floatValue());
+		}
+		else
+		{
+			m_text.append(o);
+		}
+	}
+
+	/**
+	 * Encodes the characters in the buffer and writes them to the stream.
+	 */
+	public synchronized void flush()
+	{
+		try
+		{
+			encode();
+			m_out.flush();
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+		m_lastFlush = System.nanoTime();
+	}
+
+	/**
+	 * Encodes the characters in the buffer and writes them to the stream,
+	 * without flushing the stream. Characters that cannot be encoded yet,
+	 * such as the first half of a surrogate pair, are kept in the buffer.
+	 * @throws IOException If writing to the stream fails
+	 */
+	protected void encode() throws IOException
+	{
+		encodeText();
+		writeBytes();
+	}
+
+	/**
+	 * Encodes the characters in the buffer into the byte buffer. The byte
+	 * buffer is only written to the stream when it does not have room for
+	 * the next block of characters. Characters that cannot be encoded yet,
+	 * such as the first half of a surrogate pair, are kept in the buffer.
+	 * @throws IOException If writing to the stream fails
+	 */
+	protected void encodeText() throws IOException
+	{
+		int start = 0;
+		int length = m_text.length();
+		while (start < length)
+		{
+			int n = Math.min(length - start, m_chars.capacity());
+			if (m_bytes.remaining() < n * m_encoder.maxBytesPerChar())
+			{
+				writeBytes();
+			}
+			m_chars.clear();
+			m_text.getChars(start, start + n, m_chars.array(), 0);
+			m_chars.limit(n);
+			m_encoder.encode(m_chars, m_bytes, false);
+			if (m_chars.position() == 0)
+			{
+				break;
+			}
+			start += m_chars.position();
+		}
+		m_text.delete(0, start);
+	}
+
+	/**
+	 * Writes the contents of the byte buffer to the stream and empties it.
+	 * @throws IOException If writing to the stream fails
+	 */
+	protected void writeBytes() throws IOException
+	{
+		if (m_bytes.position() > 0)
+		{
+			m_out.write(m_bytes.array(), 0, m_bytes.position());
+			m_bytes.clear();
+		}
+	}
+
+	@Override
+	protected synchronized boolean onEnd(Queue<Object[]> outputs)
+	{
+		cancelFlush();
+		checkFailure();
+		flush();
+		return true;
+	}
+
+	@Override
+	public synchronized void stop()
+	{
+		super.stop();
+		cancelFlush();
+		flush();
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		super.reset();
+		cancelFlush();
+		m_failure = null;
+		m_text.setLength(0);
+		m_bytes.clear();
+		m_encoder.reset();
+		m_started = false;
+		m_lastFlush = System.nanoTime();
+	}
+
+	@Override
+	public BufferedPrint duplicate(boolean with_state)
+	{
+		return copySettings(new BufferedPrint(m_out, m_charset, m_bufferSize));
+	}
+
+	/**
+	 * Copies the settings of this processor into another one.
+	 * @param p The other processor
+	 * @return The other processor
+	 */
+	protected <T extends BufferedPrint> T copySettings(T p)
+	{
+		p.m_separator = m_separator;
+		p.m_suffix = m_suffix;
+		p.m_flushInterval = m_flushInterval;
+		return p;
+	}
+
+	/**
+	 * A variant of {@link BufferedPrint} writing each event on its own line,
+	 * like {@link ca.uqac.lif.cep.io.Print.Println}.
+	 */
+	public static class Println extends BufferedPrint
+	{
+		public Println(OutputStream out, Charset charset, int buffer_size)
+		{
+			super(out, charset, buffer_size);
+			m_separator = "";
+			m_suffix = System.lineSeparator();
+		}
+
+		public Println(OutputStream out)
+		{
+			this(out, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+		}
+
+		public Println()
+		{
+			this(System.out);
+		}
+
+		@Override
+		public Println duplicate(boolean with_state)
+		{
+			return copySettings(new Println(m_out, m_charset, m_bufferSize));
+		}
+	}
+
+	/**
+	 * A variant of {@link BufferedPrint} writing the events without
+	 * separators, like {@link ca.uqac.lif.cep.io.WriteOutputStream}. Arrays
+	 * of bytes are written as is; other events are written as text. Arrays
+	 * of bytes are accumulated in the byte buffer, after the text that
+	 * precedes them, and the buffer is only written to the stream when an
+	 * array does not fit in it; an array larger than the buffer is written
+	 * directly.
+	 */
+	public static class Write extends BufferedPrint
+	{
+		public Write(OutputStream out, Charset charset, int buffer_size)
+		{
+			super(out, charset, buffer_size);
+			m_separator = "";
+		}
+
+		public Write(OutputStream out)
+		{
+			this(out, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+		}
+
+		@Override
+		protected void append(Object o)
+		{
+			if (!(o instanceof byte[]))
+			{
+				super.append(o);
+				return;
+			}
+			byte[] b = (byte[]) o;
+			try
+			{
+				if (m_text.length() > 0)
+				{
+					encodeText();
+				}
+				if (m_bytes.remaining() < b.length)
+				{
+					writeBytes();
+				}
+				if (m_bytes.remaining() < b.length)
+				{
+					m_out.write(b);
+				}
+				else
+				{
+					m_bytes.put(b);
+				}
+			}
+			catch (IOException e)
+			{
+				throw new ProcessorException(e);
+			}
+		}
+
+		@Override
+		public Write duplicate(boolean with_state)
+		{
+			return copySettings(new Write(m_out, m_charset, m_bufferSize));
+		}
+	}
+}
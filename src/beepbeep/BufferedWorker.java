@@ -0,0 +1,232 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.concurrent.ThreadFactory;
+
+import ca.uqac.lif.cep.ProcessorException;
+
+/**
+ * A thread that takes elements out of a {@link RingBuffer} filled by
+ * another thread, and processes them one by one in the order in which they
+ * were added.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class BufferedWorker implements Runnable
+{
+	/**
+	 * The marker put in the buffer when there are no more elements.
+	 */
+	protected static final Object END = new Object();
+
+	/**
+	 * The marker put in the buffer in place of a {@code null} element.
+	 */
+	protected static final Object NULL = new Object();
+
+	/**
+	 * The buffer.
+	 */
+	protected final RingBuffer m_buffer;
+
+	/**
+	 * The thread of the worker, or {@code null} if it has not been started.
+	 */
+	protected Thread m_thread;
+
+	/**
+	 * The exception or error thrown while processing an element, if any.
+	 */
+	protected volatile Throwable m_failure;
+
+	/**
+	 * Creates a new worker.
+	 * @param capacity The capacity of the buffer
+	 */
+	public BufferedWorker(int capacity)
+	{
+		super();
+		m_buffer = new RingBuffer(capacity);
+	}
+
+	/**
+	 * Processes an element, on the thread of the worker.
+	 * @param o The element
+	 */
+	protected abstract void process(Object o);
+
+	/**
+	 * Called on the thread of the worker after the last element has been
+	 * processed.
+	 */
+	protected abstract void end();
+
+	/**
+	 * Starts the thread of the worker, if it is not running.
+	 * @param factory The factory creating the thread
+	 */
+	public void start(ThreadFactory factory)
+	{
+		if (m_thread == null)
+		{
+			m_thread = factory.newThread(this);
+			m_thread.start();
+		}
+	}
+
+	/**
+	 * Adds an element, waiting until there is room for it in the buffer.
+	 * @param o The element
+	 */
+	public void put(Object o)
+	{
+		Object e = o == null ? NULL : o;
+		try
+		{
+			int tries = 0;
+			while (!m_buffer.offer(e))
+			{
+				// The worker no longer empties the buffer if it has failed
+				checkFailure();
+				tries = m_buffer.awaitNotFull(tries);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(ex);
+		}
+	}
+
+	/**
+	 * Adds an element, if there is room for it in the buffer.
+	 * @param o The element
+	 * @return {@code true} if the element was added, {@code false} if it was
+	 * discarded
+	 */
+	public boolean offer(Object o)
+	{
+		return m_buffer.offer(o == null ? NULL : o);
+	}
+
+	/**
+	 * Adds an element, discarding the oldest element of the buffer if it is
+	 * full.
+	 * @param o The element
+	 * @return {@code true} if an element was discarded, {@code false}
+	 * otherwise
+	 */
+	public boolean offerDiscardingOldest(Object o)
+	{
+		return m_buffer.offerDiscardingOldest(o == null ? NULL : o);
+	}
+
+	/**
+	 * Signals that there are no more elements, and waits until the worker
+	 * has processed all the elements of the buffer.
+	 */
+	public void finish()
+	{
+		if (m_thread != null)
+		{
+			put(END);
+			try
+			{
+				m_thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new ProcessorException(e);
+			}
+			m_thread = null;
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Stops the worker, discarding the elements of the buffer.
+	 */
+	public void shutdown()
+	{
+		if (m_thread != null)
+		{
+			m_thread.interrupt();
+			try
+			{
+				m_thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			m_thread = null;
+		}
+		m_buffer.clear();
+		m_failure = null;
+	}
+
+	/**
+	 * Rethrows the exception thrown by the worker, if any.
+	 */
+	public void checkFailure()
+	{
+		Throwable t = m_failure;
+		if (t != null)
+		{
+			throw new ProcessorException(t);
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			int tries = 0;
+			while (true)
+			{
+				Object o = m_buffer.poll();
+				if (o == null)
+				{
+					tries = m_buffer.awaitNotEmpty(tries);
+					continue;
+				}
+				tries = 0;
+				if (o == END)
+				{
+					end();
+					return;
+				}
+				process(o == NULL ? null : o);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// The worker has been shut down
+		}
+		catch (Throwable t)
+		{
+			// The producer may be parked waiting for room in the buffer; closing
+			// it wakes the producer up, which then finds the failure
+			m_failure = t;
+			m_buffer.close();
+		}
+	}
+}
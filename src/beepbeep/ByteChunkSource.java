@@ -0,0 +1,424 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Source reading a list of files one after the other, and outputting their
+ * contents as read-only {@link ByteBuffer}s of a fixed size, instead of the
+ * arrays of bytes output by
+ * {@link ca.uqac.lif.cep.io.SpliceSource.SpliceByteSource}. The bytes are
+ * never copied into a new array; they can be read directly out of each
+ * buffer, for example with the functions of {@link ByteFunctions}. When the
+ * chunk size is set to the size of a binary record, each event is a single
+ * record. The last chunk of a file is shorter if the size of the file is
+ * not a multiple of the chunk size; a chunk never spans two files.
+ * <p>
+ * The bytes of a chunk are those between the position and the limit of
+ * the buffer; the position is not necessarily 0. How long a chunk remains
+ * valid depends on the mode of the source:
+ * <ul>
+ * <li>By default, the files are read into a buffer, and each chunk is a
+ * distinct view over this buffer. When the buffer is refilled, a new
+ * buffer is allocated, and only the bytes of the last partial chunk are
+ * copied into it; the chunks already output are never overwritten. A chunk
+ * therefore remains valid as long as it is referenced, for example by a
+ * window or through a {@link ca.uqac.lif.cep.tmf.Fork}.</li>
+ * <li>In <em>reuse</em> mode, enabled with {@link #setReuse(boolean)}, the
+ * files are read into a single direct buffer, which is reused from one
+ * chunk to the next. Every chunk is a view over this buffer, and the same
+ * view object is output each time; no object is created per chunk. A chunk
+ * is therefore only valid until the next chunk is requested from the
+ * source. This mode must only be used when each chunk is consumed before
+ * the next one is read, as by a chain of functions; a processor that keeps
+ * chunks, such as a window, or a fork pulled on one branch ahead of the
+ * other, would see its chunks change.</li>
+ * <li>In <em>mapped</em> mode, the files are memory-mapped in windows, and
+ * each chunk is a distinct view over the mapped window. A chunk remains
+ * valid as long as it is referenced, even after the source has moved on to
+ * other chunks or files.</li>
+ * </ul>
+ * The byte order of the chunks is big-endian unless set otherwise with
+ * {@link #setOrder(ByteOrder)}.
+ *
+ * @author Sylvain Hallé
+ */
+public class ByteChunkSource extends SynchronousProcessor
+{
+	/**
+	 * The default size of the buffer into which files are read (64 kB).
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default size of the window of a file that is mapped at any given
+	 * time (64 MB).
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The names of the files to read.
+	 */
+	protected final String[] m_filenames;
+
+	/**
+	 * The size of each chunk, in bytes.
+	 */
+	protected final int m_chunkSize;
+
+	/**
+	 * Whether the files are memory-mapped.
+	 */
+	protected final boolean m_mapped;
+
+	/**
+	 * The size of the buffer into which files are read, or of the windows
+	 * into which files are mapped.
+	 */
+	protected int m_bufferSize;
+
+	/**
+	 * Whether a single buffer and a single view are reused for all the
+	 * chunks, in buffered mode.
+	 */
+	protected boolean m_reuse = false;
+
+	/**
+	 * The byte order of the chunks.
+	 */
+	protected ByteOrder m_order = ByteOrder.BIG_ENDIAN;
+
+	/**
+	 * The index of the file currently read, in {@link #m_filenames}.
+	 */
+	protected int m_fileIndex = 0;
+
+	/**
+	 * The channel to the file currently read, or {@code null} if no file is
+	 * open.
+	 */
+	protected FileChannel m_channel;
+
+	/**
+	 * The size of the file currently read.
+	 */
+	protected long m_fileSize;
+
+	/**
+	 * The offset in the file of the first byte of the current window, in
+	 * mapped mode.
+	 */
+	protected long m_windowStart;
+
+	/**
+	 * Whether the end of the file currently read has been reached, in
+	 * buffered mode.
+	 */
+	protected boolean m_eof;
+
+	/**
+	 * The bytes read from the current file and not yet output. In buffered
+	 * mode, it is the buffer last filled from the file; in mapped mode, it
+	 * is the current window of the file.
+	 */
+	protected ByteBuffer m_buffer;
+
+	/**
+	 * The read-only view over {@link #m_buffer} output in reuse mode.
+	 */
+	protected ByteBuffer m_view;
+
+	/**
+	 * Creates a new source.
+	 * @param chunk_size The size of each chunk, in bytes
+	 * @param mapped Set to {@code true} to memory-map the files
+	 * @param filenames The names of the files to read
+	 */
+	public ByteChunkSource(int chunk_size, boolean mapped, String ... filenames)
+	{
+		super(0, 1);
+		if (chunk_size <= 0)
+		{
+			throw new IllegalArgumentException("The chunk size must be positive");
+		}
+		m_chunkSize = chunk_size;
+		m_mapped = mapped;
+		m_filenames = filenames;
+		m_bufferSize = mapped ? DEFAULT_WINDOW_SIZE : DEFAULT_BUFFER_SIZE;
+	}
+
+	/**
+	 * Creates a new source reading the files into a reusable buffer.
+	 * @param chunk_size The size of each chunk, in bytes
+	 * @param filenames The names of the files to read
+	 */
+	public ByteChunkSource(int chunk_size, String ... filenames)
+	{
+		this(chunk_size, false, filenames);
+	}
+
+	/**
+	 * Sets the size of the buffer into which files are read, or of the
+	 * windows into which files are mapped. The size is rounded down to a
+	 * multiple of the chunk size, so that fewer bytes are moved when the
+	 * buffer is refilled.
+	 * @param size The size, in bytes
+	 * @return This processor
+	 */
+	public ByteChunkSource setBufferSize(int size)
+	{
+		m_bufferSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets whether a single buffer and a single view are reused for all the
+	 * chunks. This mode avoids creating any object per chunk, but each chunk
+	 * is then only valid until the next one is read; see the description of
+	 * the class. It has no effect in mapped mode.
+	 * @param reuse Set to {@code true} to reuse the buffer
+	 * @return This processor
+	 */
+	public ByteChunkSource setReuse(boolean reuse)
+	{
+		m_reuse = reuse;
+		return this;
+	}
+
+	/**
+	 * Sets the byte order of the chunks.
+	 * @param order The byte order
+	 * @return This processor
+	 */
+	public ByteChunkSource setOrder(ByteOrder order)
+	{
+		m_order = order;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		try
+		{
+			ByteBuffer chunk = nextChunk();
+			if (chunk == null)
+			{
+				return false;
+			}
+			outputs.add(new Object[] {chunk});
+			return true;
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+	}
+
+	/**
+	 * Reads the next chunk.
+	 * @return The chunk, or {@code null} if all files have been read
+	 * @throws IOException If reading a file fails
+	 */
+	protected ByteBuffer nextChunk() throws IOException
+	{
+		while (true)
+		{
+			if (m_channel == null && !openNext())
+			{
+				return null;
+			}
+			if (m_buffer.remaining() < m_chunkSize)
+			{
+				refill();
+			}
+			int start = m_buffer.position();
+			int n = Math.min(m_chunkSize, m_buffer.remaining());
+			if (n == 0)
+			{
+				close();
+				m_fileIndex++;
+				continue;
+			}
+			m_buffer.position(start + n);
+			if (m_mapped || !m_reuse)
+			{
+				ByteBuffer chunk = m_buffer.asReadOnlyBuffer();
+				chunk.limit(start + n);
+				chunk.position(start);
+				return chunk.slice().order(m_order);
+			}
+			m_view.limit(start + n);
+			m_view.position(start);
+			return m_view;
+		}
+	}
+
+	/**
+	 * Opens the next file to read.
+	 * @return {@code true} if a file was opened, {@code false} if all files
+	 * have been read
+	 * @throws IOException If opening a file fails
+	 */
+	@SuppressWarnings("resource")
+	protected boolean openNext() throws IOException
+	{
+		if (m_fileIndex >= m_filenames.length)
+		{
+			return false;
+		}
+		m_channel = new RandomAccessFile(m_filenames[m_fileIndex], "r").getChannel();
+		m_fileSize = m_channel.size();
+		m_eof = false;
+		int size = Math.max(m_chunkSize, m_bufferSize / m_chunkSize * m_chunkSize);
+		if (m_mapped)
+		{
+			map(0, size);
+		}
+		else if (m_reuse)
+		{
+			if (m_buffer == null || m_view == null || m_buffer.capacity() != size)
+			{
+				m_buffer = ByteBuffer.allocateDirect(size);
+				m_view = m_buffer.asReadOnlyBuffer();
+			}
+			m_view.order(m_order);
+			m_buffer.clear();
+			m_buffer.flip();
+		}
+		else
+		{
+			m_buffer = ByteBuffer.allocate(size);
+			m_view = null;
+			m_buffer.flip();
+		}
+		return true;
+	}
+
+	/**
+	 * Makes more bytes of the current file available in {@link #m_buffer}.
+	 * In buffered mode, the bytes not yet output are moved to the start of
+	 * a new buffer, or of the same buffer in reuse mode, and the rest of the
+	 * buffer is filled from the file; in mapped mode, the next window of the
+	 * file is mapped.
+	 * @throws IOException If reading the file fails
+	 */
+	protected void refill() throws IOException
+	{
+		if (m_mapped)
+		{
+			long start = m_windowStart + m_buffer.position();
+			if (m_windowStart + m_buffer.limit() < m_fileSize)
+			{
+				map(start, m_buffer.capacity());
+			}
+			return;
+		}
+		if (m_eof)
+		{
+			return;
+		}
+		if (m_reuse)
+		{
+			m_buffer.compact();
+		}
+		else
+		{
+			ByteBuffer b = ByteBuffer.allocate(m_buffer.capacity());
+			b.put(m_buffer);
+			m_buffer = b;
+		}
+		while (m_buffer.hasRemaining())
+		{
+			if (m_channel.read(m_buffer) < 0)
+			{
+				m_eof = true;
+				break;
+			}
+		}
+		m_buffer.flip();
+	}
+
+	/**
+	 * Maps a window of the current file.
+	 * @param start The offset of the window in the file
+	 * @param size The size of the window; it is truncated to the end of the
+	 * file
+	 * @throws IOException If mapping the file fails
+	 */
+	protected void map(long start, long size) throws IOException
+	{
+		m_windowStart = start;
+		m_buffer = m_channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, m_fileSize - start));
+	}
+
+	/**
+	 * Closes the file currently read.
+	 * @throws IOException If closing the file fails
+	 */
+	protected void close() throws IOException
+	{
+		if (m_mapped)
+		{
+			m_buffer = null;
+		}
+		if (m_channel != null)
+		{
+			m_channel.close();
+			m_channel = null;
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+		m_fileIndex = 0;
+	}
+
+	@Override
+	public ByteChunkSource duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a source with its state");
+		}
+		ByteChunkSource s = new ByteChunkSource(m_chunkSize, m_mapped, m_filenames);
+		s.m_bufferSize = m_bufferSize;
+		s.m_order = m_order;
+		s.m_reuse = m_reuse;
+		return s;
+	}
+}
@@ -0,0 +1,408 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import beepbeep.PrimitiveNumbers.NumericFunction;
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+
+/**
+ * Functions extracting fixed-width values out of a {@link ByteBuffer}, such
+ * as the chunks output by {@link ByteChunkSource}. The offset of a value is
+ * counted from the position of the buffer, and the values are read with
+ * the absolute methods of {@link ByteBuffer}, so that the position of the
+ * buffer is never changed and no bytes are copied. Values are decoded in
+ * the byte order of the buffer.
+ * <p>
+ * The numeric functions implement {@link NumericFunction}; when they are
+ * the operands of the functions of {@link PrimitiveNumbers}, their value is
+ * therefore obtained without being boxed.
+ *
+ * @author Sylvain Hallé
+ */
+public class ByteFunctions
+{
+	private ByteFunctions()
+	{
+		super();
+	}
+
+	/**
+	 * A function reading a number at a fixed offset of a buffer.
+	 */
+	protected abstract static class NumberAt extends UnaryFunction<ByteBuffer,Number> implements NumericFunction
+	{
+		/**
+		 * The offset of the number, from the position of the buffer.
+		 */
+		protected final int m_offset;
+
+		/**
+		 * Creates a new function.
+		 * @param offset The offset of the number, from the position of the
+		 * buffer
+		 */
+		public NumberAt(int offset)
+		{
+			super(ByteBuffer.class, Number.class);
+			m_offset = offset;
+		}
+
+		/**
+		 * Reads the number as a <tt>long</tt>.
+		 * @param b The buffer
+		 * @param index The absolute index of the number in the buffer
+		 * @return The number
+		 */
+		protected abstract long readLong(ByteBuffer b, int index);
+
+		/**
+		 * Reads the number as a <tt>double</tt>.
+		 * @param b The buffer
+		 * @param index The absolute index of the number in the buffer
+		 * @return The number
+		 */
+		protected double readDouble(ByteBuffer b, int index)
+		{
+			return readLong(b, index);
+		}
+
+		@Override
+		public boolean isIntegral()
+		{
+			return true;
+		}
+
+		@Override
+		public long evaluateLong(Object[] inputs, Context context, EventTracker tracker)
+		{
+			ByteBuffer b = (ByteBuffer) inputs[0];
+			return readLong(b, b.position() + m_offset);
+		}
+
+		@Override
+		public double evaluateDouble(Object[] inputs, Context context, EventTracker tracker)
+		{
+			ByteBuffer b = (ByteBuffer) inputs[0];
+			return readDouble(b, b.position() + m_offset);
+		}
+
+		@Override
+		public NumberAt duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Reads a signed byte.
+	 */
+	public static class ByteAt extends NumberAt
+	{
+		public ByteAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.get(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return (int) b.get(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads a signed 16-bit integer.
+	 */
+	public static class ShortAt extends NumberAt
+	{
+		public ShortAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.getShort(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return (int) b.getShort(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads an unsigned 16-bit integer.
+	 */
+	public static class UnsignedShortAt extends NumberAt
+	{
+		public UnsignedShortAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.getShort(index) & 0xffff;
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getShort(b.position() + m_offset) & 0xffff;
+		}
+	}
+
+	/**
+	 * Reads a signed 32-bit integer.
+	 */
+	public static class IntAt extends NumberAt
+	{
+		public IntAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.getInt(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getInt(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads an unsigned 32-bit integer.
+	 */
+	public static class UnsignedIntAt extends NumberAt
+	{
+		public UnsignedIntAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.getInt(index) & 0xffffffffL;
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getInt(b.position() + m_offset) & 0xffffffffL;
+		}
+	}
+
+	/**
+	 * Reads a signed 64-bit integer.
+	 */
+	public static class LongAt extends NumberAt
+	{
+		public LongAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return b.getLong(index);
+		}
+
+		@Override
+		protected double readDouble(ByteBuffer b, int index)
+		{
+			return b.getLong(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getLong(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads a 32-bit floating point number.
+	 */
+	public static class FloatAt extends NumberAt
+	{
+		public FloatAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		public boolean isIntegral()
+		{
+			return false;
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return (long) b.getFloat(index);
+		}
+
+		@Override
+		protected double readDouble(ByteBuffer b, int index)
+		{
+			return b.getFloat(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getFloat(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads a 64-bit floating point number.
+	 */
+	public static class DoubleAt extends NumberAt
+	{
+		public DoubleAt(int offset)
+		{
+			super(offset);
+		}
+
+		@Override
+		public boolean isIntegral()
+		{
+			return false;
+		}
+
+		@Override
+		protected long readLong(ByteBuffer b, int index)
+		{
+			return (long) b.getDouble(index);
+		}
+
+		@Override
+		protected double readDouble(ByteBuffer b, int index)
+		{
+			return b.getDouble(index);
+		}
+
+		@Override
+		public Number getValue(ByteBuffer b)
+		{
+			return b.getDouble(b.position() + m_offset);
+		}
+	}
+
+	/**
+	 * Reads a string stored in a field of fixed width. The string ends at the
+	 * end of the field, or at the first null byte it contains, whichever
+	 * comes first. The bytes of the field are copied into an array reused
+	 * from one evaluation to the next before being decoded.
+	 */
+	public static class StringAt extends UnaryFunction<ByteBuffer,String>
+	{
+		/**
+		 * The offset of the field, from the position of the buffer.
+		 */
+		protected final int m_offset;
+
+		/**
+		 * The width of the field, in bytes.
+		 */
+		protected final int m_length;
+
+		/**
+		 * The charset used to decode the string.
+		 */
+		protected final Charset m_charset;
+
+		/**
+		 * The array into which the bytes of the field are copied.
+		 */
+		protected final byte[] m_bytes;
+
+		/**
+		 * Creates a new function.
+		 * @param offset The offset of the field, from the position of the
+		 * buffer
+		 * @param length The width of the field, in bytes
+		 * @param charset The charset used to decode the string
+		 */
+		public StringAt(int offset, int length, Charset charset)
+		{
+			super(ByteBuffer.class, String.class);
+			m_offset = offset;
+			m_length = length;
+			m_charset = charset;
+			m_bytes = new byte[length];
+		}
+
+		/**
+		 * Creates a new function decoding the string in UTF-8.
+		 * @param offset The offset of the field, from the position of the
+		 * buffer
+		 * @param length The width of the field, in bytes
+		 */
+		public StringAt(int offset, int length)
+		{
+			this(offset, length, Charset.forName("UTF-8"));
+		}
+
+		@Override
+		public String getValue(ByteBuffer b)
+		{
+			int start = b.position() + m_offset;
+			int len = 0;
+			while (len < m_length)
+			{
+				byte c = b.get(start + len);
+				if (c == 0)
+				{
+					break;
+				}
+				m_bytes[len++] = c;
+			}
+			return new String(m_bytes, 0, len, m_charset);
+		}
+
+		@Override
+		public StringAt duplicate(boolean with_state)
+		{
+			return new StringAt(m_offset, m_length, m_charset);
+		}
+	}
+}
@@ -0,0 +1,757 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Utility methods to write the state of processors in a compact binary
+ * form, and to read it back. The state of a processor is written either
+ * by the processor itself, if it implements {@link Checkpointable}, or by
+ * this class for a few processors of BeepBeep:
+ * <ul>
+ * <li>an {@link ApplyFunction} is considered stateless, unless its function
+ * is {@link Checkpointable};</li>
+ * <li>a {@link Cumulate} is checkpointed only if its function is
+ * {@link Checkpointable}, which is the case of the sum produced by
+ * {@link groovy#PrimitiveSum()};</li>
+ * <li>{@link Profiled} processors and {@link ProfiledGroup}s are checkpointed
+ * through the processors they contain;</li>
+ * <li>{@link ca.uqac.lif.cep.io.Print} is stateless.</li>
+ * </ul>
+ * Any other processor causes an {@link UnsupportedOperationException}.
+ * This is notably the case of {@link ca.uqac.lif.cep.tmf.Slice}, whose
+ * slices are not accessible; an {@link EvictingSlice} should be used
+ * instead.
+ * <p>
+ * Integers are written as variable-length quantities, and events are
+ * written with a one-byte tag followed by their value for the common types
+ * (numbers, Booleans, strings, lists, sets, maps and arrays); other events
+ * must be {@link Serializable}.
+ * <p>
+ * This class also provides variants of {@link ca.uqac.lif.cep.tmf.CountDecimate},
+ * {@link ca.uqac.lif.cep.tmf.Trim} and {@link ca.uqac.lif.cep.tmf.KeepLast}
+ * that are {@link Checkpointable}. These variants reimplement the
+ * processing of the original processors, and are only substituted for
+ * them by {@link #checkpointable(Processor)} in the chains given to
+ * {@link groovy#Checkpointed(Object...)} and
+ * {@link groovy#CheckpointEvery(long, String, Object...)}.
+ *
+ * @author Sylvain Hallé
+ */
+public class Checkpoint
+{
+	/**
+	 * The number written at the beginning of a checkpoint.
+	 */
+	public static final int MAGIC = 0x42424350;
+
+	/**
+	 * The version of the format of checkpoints.
+	 */
+	public static final int VERSION = 1;
+
+	protected static final int TAG_NULL = 0;
+	protected static final int TAG_FALSE = 1;
+	protected static final int TAG_TRUE = 2;
+	protected static final int TAG_INTEGER = 3;
+	protected static final int TAG_LONG = 4;
+	protected static final int TAG_SHORT = 5;
+	protected static final int TAG_BYTE = 6;
+	protected static final int TAG_DOUBLE = 7;
+	protected static final int TAG_FLOAT = 8;
+	protected static final int TAG_STRING = 9;
+	protected static final int TAG_ARRAY = 10;
+	protected static final int TAG_LIST = 11;
+	protected static final int TAG_SET = 12;
+	protected static final int TAG_MAP = 13;
+	protected static final int TAG_SERIALIZED = 14;
+
+	private Checkpoint()
+	{
+		super();
+	}
+
+	/**
+	 * Writes the state of a processor.
+	 * @param p The processor
+	 * @param out The output where the state is written
+	 * @throws IOException If writing the state fails
+	 * @throws UnsupportedOperationException If the state of the processor
+	 * cannot be written
+	 */
+	public static void writeProcessor(Processor p, DataOutput out) throws IOException
+	{
+		if (p instanceof Checkpointable)
+		{
+			((Checkpointable) p).writeState(out);
+			return;
+		}
+		if (p instanceof Profiled)
+		{
+			writeProcessor(((Profiled) p).getProcessor(), out);
+			return;
+		}
+		if (p instanceof ProfiledGroup)
+		{
+			for (Profiled s : ((ProfiledGroup) p).getStages())
+			{
+				writeProcessor(s, out);
+			}
+			return;
+		}
+		Checkpointable f = getStatefulFunction(p);
+		if (f != null)
+		{
+			f.writeState(out);
+		}
+	}
+
+	/**
+	 * Replaces the state of a processor by a state written by
+	 * {@link #writeProcessor(Processor, DataOutput)}.
+	 * @param p The processor, which must have been created with the same
+	 * parameters as the processor whose state was written
+	 * @param in The input from which the state is read
+	 * @throws IOException If reading the state fails
+	 * @throws UnsupportedOperationException If the state of the processor
+	 * cannot be read
+	 */
+	public static void readProcessor(Processor p, DataInput in) throws IOException
+	{
+		if (p instanceof Checkpointable)
+		{
+			((Checkpointable) p).readState(in);
+			return;
+		}
+		if (p instanceof Profiled)
+		{
+			readProcessor(((Profiled) p).getProcessor(), in);
+			return;
+		}
+		if (p instanceof ProfiledGroup)
+		{
+			for (Profiled s : ((ProfiledGroup) p).getStages())
+			{
+				readProcessor(s, in);
+			}
+			return;
+		}
+		Checkpointable f = getStatefulFunction(p);
+		if (f != null)
+		{
+			f.readState(in);
+		}
+	}
+
+	/**
+	 * Replaces a {@link ca.uqac.lif.cep.tmf.CountDecimate},
+	 * {@link ca.uqac.lif.cep.tmf.Trim} or {@link ca.uqac.lif.cep.tmf.KeepLast}
+	 * by its variant whose state can be checkpointed, created with the same
+	 * parameters. Subclasses of these processors, whose behavior may differ,
+	 * are not replaced.
+	 * @param p The processor, which must not be connected to anything
+	 * @return The variant of the processor, or the processor itself if it
+	 * has no variant
+	 */
+	public static Processor checkpointable(Processor p)
+	{
+		Class<?> c = p.getClass();
+		if (c == ca.uqac.lif.cep.tmf.CountDecimate.class)
+		{
+			return new CountDecimate(((ca.uqac.lif.cep.tmf.CountDecimate) p).getInterval());
+		}
+		if (c == ca.uqac.lif.cep.tmf.Trim.class)
+		{
+			return new Trim(((ca.uqac.lif.cep.tmf.Trim) p).getDelay());
+		}
+		if (c == ca.uqac.lif.cep.tmf.KeepLast.class)
+		{
+			return new KeepLast();
+		}
+		return p;
+	}
+
+	/**
+	 * Gets the function holding the state of a processor that is not
+	 * itself {@link Checkpointable}.
+	 * @param p The processor
+	 * @return The function, or {@code null} if the processor is stateless
+	 * @throws UnsupportedOperationException If the state of the processor
+	 * cannot be checkpointed
+	 */
+	protected static Checkpointable getStatefulFunction(Processor p)
+	{
+		if (p instanceof Cumulate)
+		{
+			Function f = ((Cumulate) p).getFunction();
+			if (f instanceof Checkpointable)
+			{
+				return (Checkpointable) f;
+			}
+		}
+		else if (p instanceof ApplyFunction)
+		{
+			Function f = ((ApplyFunction) p).getFunction();
+			return f instanceof Checkpointable ? (Checkpointable) f : null;
+		}
+		else if (p instanceof ca.uqac.lif.cep.io.Print)
+		{
+			return null;
+		}
+		throw new UnsupportedOperationException("Cannot checkpoint the state of " + p.getClass().getName());
+	}
+
+	/**
+	 * Writes a signed integer as a variable-length quantity of 1 to 10
+	 * bytes; small absolute values use fewer bytes.
+	 * @param out The output
+	 * @param x The integer
+	 * @throws IOException If writing fails
+	 */
+	public static void writeVarLong(DataOutput out, long x) throws IOException
+	{
+		long v = (x << 1) ^ (x >> 63);
+		while ((v & ~0x7FL) != 0)
+		{
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	/**
+	 * Reads an integer written by {@link #writeVarLong(DataOutput, long)}.
+	 * @param in The input
+	 * @return The integer
+	 * @throws IOException If reading fails
+	 */
+	public static long readVarLong(DataInput in) throws IOException
+	{
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return (v >>> 1) ^ -(v & 1);
+			}
+		}
+		throw new StreamCorruptedException("Malformed integer");
+	}
+
+	/**
+	 * Reads an integer written by {@link #writeVarLong(DataOutput, long)}
+	 * that must be a valid size.
+	 * @param in The input
+	 * @return The size
+	 * @throws IOException If reading fails or if the integer is not a valid
+	 * size
+	 */
+	public static int readSize(DataInput in) throws IOException
+	{
+		long n = readVarLong(in);
+		if (n < 0 || n > Integer.MAX_VALUE)
+		{
+			throw new StreamCorruptedException("Invalid size: " + n);
+		}
+		return (int) n;
+	}
+
+	/**
+	 * Writes a string in UTF-8, preceded by its length. Contrary to
+	 * {@link DataOutput#writeUTF(String)}, the length of the string is not
+	 * limited.
+	 * @param out The output
+	 * @param s The string
+	 * @throws IOException If writing fails
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutput, String)}.
+	 * @param in The input
+	 * @return The string
+	 * @throws IOException If reading fails
+	 */
+	public static String readString(DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[readSize(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes an event.
+	 * @param out The output
+	 * @param o The event
+	 * @throws IOException If writing fails, or if the event is of a type
+	 * that is not handled and is not {@link Serializable}
+	 */
+	public static void writeObject(DataOutput out, Object o) throws IOException
+	{
+		if (o == null)
+		{
+			out.writeByte(TAG_NULL);
+		}
+		else if (o instanceof Boolean)
+		{
+			out.writeByte((Boolean) o ? TAG_TRUE : TAG_FALSE);
+		}
+		else if (o instanceof Integer)
+		{
+			out.writeByte(TAG_INTEGER);
+			writeVarLong(out, (Integer) o);
+		}
+		else if (o instanceof Long)
+		{
+			out.writeByte(TAG_LONG);
+			writeVarLong(out, (Long) o);
+		}
+		else if (o instanceof Short)
+		{
+			out.writeByte(TAG_SHORT);
+			writeVarLong(out, (Short) o);
+		}
+		else if (o instanceof Byte)
+		{
+			out.writeByte(TAG_BYTE);
+			out.writeByte((Byte) o);
+		}
+		else if (o instanceof Double)
+		{
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble((Double) o);
+		}
+		else if (o instanceof Float)
+		{
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat((Float) o);
+		}
+		else if (o instanceof String)
+		{
+			out.writeByte(TAG_STRING);
+			writeString(out, (String) o);
+		}
+		else if (o.getClass() == Object[].class)
+		{
+			Object[] a = (Object[]) o;
+			out.writeByte(TAG_ARRAY);
+			writeVarLong(out, a.length);
+			for (Object x : a)
+			{
+				writeObject(out, x);
+			}
+		}
+		else if (o.getClass() == ArrayList.class)
+		{
+			out.writeByte(TAG_LIST);
+			writeElements(out, (Collection<?>) o);
+		}
+		else if (o.getClass() == HashSet.class || o.getClass() == LinkedHashSet.class)
+		{
+			out.writeByte(TAG_SET);
+			writeElements(out, (Collection<?>) o);
+		}
+		else if (o.getClass() == HashMap.class || o.getClass() == LinkedHashMap.class)
+		{
+			Map<?,?> m = (Map<?,?>) o;
+			out.writeByte(TAG_MAP);
+			writeVarLong(out, m.size());
+			for (Map.Entry<?,?> e : m.entrySet())
+			{
+				writeObject(out, e.getKey());
+				writeObject(out, e.getValue());
+			}
+		}
+		else if (o instanceof Serializable)
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(o);
+			oos.close();
+			out.writeByte(TAG_SERIALIZED);
+			writeVarLong(out, bos.size());
+			out.write(bos.toByteArray());
+		}
+		else
+		{
+			throw new NotSerializableException(o.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes the elements of a collection, preceded by their number.
+	 * @param out The output
+	 * @param c The collection
+	 * @throws IOException If writing fails
+	 */
+	protected static void writeElements(DataOutput out, Collection<?> c) throws IOException
+	{
+		writeVarLong(out, c.size());
+		for (Object x : c)
+		{
+			writeObject(out, x);
+		}
+	}
+
+	/**
+	 * Reads an event written by {@link #writeObject(DataOutput, Object)}.
+	 * Lists are read as {@link ArrayList}s, sets as {@link LinkedHashSet}s
+	 * and maps as {@link LinkedHashMap}s, which preserves the order of their
+	 * elements.
+	 * @param in The input
+	 * @return The event
+	 * @throws IOException If reading fails
+	 */
+	public static Object readObject(DataInput in) throws IOException
+	{
+		int tag = in.readUnsignedByte();
+		switch (tag)
+		{
+		case TAG_NULL:
+			return null;
+		case TAG_FALSE:
+			return Boolean.FALSE;
+		case TAG_TRUE:
+			return Boolean.TRUE;
+		case TAG_INTEGER:
+			return (int) readVarLong(in);
+		case TAG_LONG:
+			return readVarLong(in);
+		case TAG_SHORT:
+			return (short) readVarLong(in);
+		case TAG_BYTE:
+			return in.readByte();
+		case TAG_DOUBLE:
+			return in.readDouble();
+		case TAG_FLOAT:
+			return in.readFloat();
+		case TAG_STRING:
+			return readString(in);
+		case TAG_ARRAY:
+		{
+			Object[] a = new Object[readSize(in)];
+			for (int i = 0; i < a.length; i++)
+			{
+				a[i] = readObject(in);
+			}
+			return a;
+		}
+		case TAG_LIST:
+		{
+			int n = readSize(in);
+			List<Object> l = new ArrayList<Object>(n);
+			for (int i = 0; i < n; i++)
+			{
+				l.add(readObject(in));
+			}
+			return l;
+		}
+		case TAG_SET:
+		{
+			int n = readSize(in);
+			LinkedHashSet<Object> s = new LinkedHashSet<Object>();
+			for (int i = 0; i < n; i++)
+			{
+				s.add(readObject(in));
+			}
+			return s;
+		}
+		case TAG_MAP:
+		{
+			int n = readSize(in);
+			Map<Object,Object> m = new LinkedHashMap<Object,Object>();
+			for (int i = 0; i < n; i++)
+			{
+				Object k = readObject(in);
+				m.put(k, readObject(in));
+			}
+			return m;
+		}
+		case TAG_SERIALIZED:
+		{
+			byte[] bytes = new byte[readSize(in)];
+			in.readFully(bytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try
+			{
+				return ois.readObject();
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				ois.close();
+			}
+		}
+		default:
+			throw new StreamCorruptedException("Unknown tag: " + tag);
+		}
+	}
+
+	/**
+	 * Checks that a parameter read from a checkpoint has the same value as
+	 * the corresponding parameter of the object whose state is read.
+	 * @param name The name of the parameter
+	 * @param expected The value of the parameter in the object
+	 * @param actual The value read from the checkpoint
+	 * @throws IOException If the two values differ
+	 */
+	public static void checkParameter(String name, long expected, long actual) throws IOException
+	{
+		if (expected != actual)
+		{
+			throw new IOException("Checkpoint does not match: " + name + " is " + actual + " instead of " + expected);
+		}
+	}
+
+	/**
+	 * A {@link ca.uqac.lif.cep.tmf.CountDecimate} whose state can be
+	 * checkpointed.
+	 */
+	public static class CountDecimate extends ca.uqac.lif.cep.tmf.CountDecimate implements Checkpointable
+	{
+		/**
+		 * The decimation interval.
+		 */
+		protected final int m_interval;
+
+		/**
+		 * The position of the next event in the current interval.
+		 */
+		protected int m_current = 0;
+
+		public CountDecimate(int interval)
+		{
+			super(interval);
+			m_interval = interval;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			if (m_current == 0)
+			{
+				outputs.add(inputs);
+			}
+			m_current = (m_current + 1) % m_interval;
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_current = 0;
+		}
+
+		@Override
+		public CountDecimate duplicate(boolean with_state)
+		{
+			CountDecimate d = new CountDecimate(m_interval);
+			if (with_state)
+			{
+				d.m_current = m_current;
+			}
+			return d;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			writeVarLong(out, m_interval);
+			writeVarLong(out, m_current);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			checkParameter("interval", m_interval, readVarLong(in));
+			m_current = readSize(in) % m_interval;
+		}
+	}
+
+	/**
+	 * A {@link ca.uqac.lif.cep.tmf.Trim} whose state can be checkpointed.
+	 */
+	public static class Trim extends ca.uqac.lif.cep.tmf.Trim implements Checkpointable
+	{
+		/**
+		 * The number of events to discard.
+		 */
+		protected final int m_delay;
+
+		/**
+		 * The number of events received so far, up to the delay.
+		 */
+		protected int m_received = 0;
+
+		public Trim(int delay)
+		{
+			super(delay);
+			m_delay = delay;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			if (m_received < m_delay)
+			{
+				m_received++;
+				return true;
+			}
+			outputs.add(inputs);
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_received = 0;
+		}
+
+		@Override
+		public Trim duplicate(boolean with_state)
+		{
+			Trim t = new Trim(m_delay);
+			if (with_state)
+			{
+				t.m_received = m_received;
+			}
+			return t;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			writeVarLong(out, m_delay);
+			writeVarLong(out, m_received);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			checkParameter("delay", m_delay, readVarLong(in));
+			m_received = Math.min(m_delay, readSize(in));
+		}
+	}
+
+	/**
+	 * A {@link ca.uqac.lif.cep.tmf.KeepLast} whose state can be
+	 * checkpointed.
+	 */
+	public static class KeepLast extends ca.uqac.lif.cep.tmf.KeepLast implements Checkpointable
+	{
+		/**
+		 * The last event front received, or {@code null} if no event has been
+		 * received yet.
+		 */
+		protected Object[] m_last = null;
+
+		public KeepLast()
+		{
+			super();
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_last = inputs;
+			return true;
+		}
+
+		@Override
+		protected boolean onEnd(Queue<Object[]> outputs)
+		{
+			if (m_last != null)
+			{
+				outputs.add(m_last);
+			}
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_last = null;
+		}
+
+		@Override
+		public KeepLast duplicate(boolean with_state)
+		{
+			KeepLast k = new KeepLast();
+			if (with_state)
+			{
+				k.m_last = m_last;
+			}
+			return k;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			writeObject(out, m_last);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			Object o = readObject(in);
+			if (o != null && !(o instanceof Object[]))
+			{
+				throw new StreamCorruptedException("Invalid event front");
+			}
+			m_last = (Object[]) o;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface implemented by processors and functions whose state can be
+ * written to a {@link Checkpoint} and read back. The state written by
+ * {@link #writeState(DataOutput)} does not include the parameters of the
+ * object (such as the width of a window); it is meant to be read by
+ * {@link #readState(DataInput)} on an object created with the same
+ * parameters, which then behaves as if it had processed the same events
+ * as the object whose state was written.
+ *
+ * @author Sylvain Hallé
+ */
+public interface Checkpointable
+{
+	/**
+	 * Writes the state of this object.
+	 * @param out The output where the state is written
+	 * @throws IOException If writing the state fails
+	 */
+	public void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Replaces the state of this object by a state written by
+	 * {@link #writeState(DataOutput)}.
+	 * @param in The input from which the state is read
+	 * @throws IOException If reading the state fails, or if it does not
+	 * match the parameters of this object
+	 */
+	public void readState(DataInput in) throws IOException;
+}
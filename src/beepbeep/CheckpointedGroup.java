@@ -0,0 +1,489 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * A chain of processors encapsulated in a group, whose state can be saved
+ * to a {@link Checkpoint} and restored. Restoring a checkpoint in a group
+ * made of the same processors, created with the same parameters, puts
+ * each processor in the state it was in when the checkpoint was saved,
+ * without processing again the events received up to that point. If the
+ * first processor of the chain is a source reading files, such as a
+ * {@link MappedLineSource}, the position of the source in the files is
+ * part of its state; the group then resumes reading right after the last
+ * event processed before the checkpoint.
+ * <p>
+ * The processors of the chain are checkpointed as described in
+ * {@link Checkpoint}; a processor whose state cannot be saved causes an
+ * {@link UnsupportedOperationException} when saving or restoring the
+ * group. A checkpoint records the class of each processor of the chain, and restoring
+ * it in a group made of different processors fails with an
+ * {@link IOException}.
+ * <p>
+ * A checkpoint is saved between two event fronts received by a processor
+ * of the chain. A {@link Trigger} saves its checkpoints once the front that
+ * triggers them has been pushed to the rest of the chain, so that this
+ * front has been processed by all the processors in the checkpoint. If a
+ * processor outputs more than one front for a single input front, these
+ * checkpoints may fall between these fronts; the fronts not yet pushed
+ * downstream are then not part of the checkpoint.
+ *
+ * @author Sylvain Hallé
+ */
+public class CheckpointedGroup extends groovy.Group implements Checkpointable
+{
+	/**
+	 * The processors of the chain, in order.
+	 */
+	protected final Processor[] m_stages;
+
+	/**
+	 * The time taken by the last save, in nanoseconds.
+	 */
+	protected long m_saveNanos = 0;
+
+	/**
+	 * The time taken by the last restore, in nanoseconds.
+	 */
+	protected long m_restoreNanos = 0;
+
+	/**
+	 * The number of checkpoints saved so far.
+	 */
+	protected long m_saveCount = 0;
+
+	/**
+	 * Creates a new group.
+	 * @param stages The processors of the chain, in order, which must not be
+	 * connected to anything
+	 */
+	public CheckpointedGroup(List<? extends Processor> stages)
+	{
+		super(stages.get(0).getInputArity(), stages.get(stages.size() - 1).getOutputArity());
+		m_stages = stages.toArray(new Processor[stages.size()]);
+		groovy.connectChain(this, stages);
+		for (Processor p : m_stages)
+		{
+			if (p instanceof Trigger)
+			{
+				((Trigger) p).m_group = this;
+			}
+		}
+	}
+
+	/**
+	 * Gets the processors of the chain.
+	 * @return The processors, in order
+	 */
+	public Processor[] getStages()
+	{
+		return m_stages;
+	}
+
+	/**
+	 * Saves the state of the chain.
+	 * @param os The stream where the checkpoint is written; it is flushed
+	 * but not closed
+	 * @throws IOException If writing the checkpoint fails
+	 */
+	public synchronized void save(OutputStream os) throws IOException
+	{
+		long start = System.nanoTime();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+		out.writeInt(Checkpoint.MAGIC);
+		out.writeByte(Checkpoint.VERSION);
+		Checkpoint.writeVarLong(out, m_stages.length);
+		for (Processor p : m_stages)
+		{
+			Checkpoint.writeString(out, p.getClass().getName());
+		}
+		writeState(out);
+		out.flush();
+		m_saveNanos = System.nanoTime() - start;
+		m_saveCount++;
+	}
+
+	/**
+	 * Saves the state of the chain to a file. The checkpoint is first
+	 * written to a temporary file, which then replaces the file; an
+	 * interrupted save therefore leaves the previous checkpoint intact.
+	 * @param filename The name of the file
+	 * @throws IOException If writing the checkpoint fails
+	 */
+	public synchronized void save(String filename) throws IOException
+	{
+		File target = new File(filename);
+		File tmp = new File(filename + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try
+		{
+			save(fos);
+			fos.getFD().sync();
+		}
+		finally
+		{
+			fos.close();
+		}
+		try
+		{
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Restores the state of the chain.
+	 * @param is The stream from which the checkpoint is read; it is not
+	 * closed
+	 * @throws IOException If reading the checkpoint fails, or if it has not
+	 * been saved by a chain made of the same processors
+	 */
+	public synchronized void restore(InputStream is) throws IOException
+	{
+		long start = System.nanoTime();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+		if (in.readInt() != Checkpoint.MAGIC)
+		{
+			throw new IOException("Not a checkpoint");
+		}
+		int version = in.readUnsignedByte();
+		if (version != Checkpoint.VERSION)
+		{
+			throw new IOException("Unsupported checkpoint version: " + version);
+		}
+		Checkpoint.checkParameter("number of processors", m_stages.length, Checkpoint.readVarLong(in));
+		for (Processor p : m_stages)
+		{
+			String name = Checkpoint.readString(in);
+			if (!name.equals(p.getClass().getName()))
+			{
+				throw new IOException("Checkpoint does not match: expected a " + p.getClass().getName() + ", found a " + name);
+			}
+		}
+		readState(in);
+		m_restoreNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Restores the state of the chain from a file.
+	 * @param filename The name of the file
+	 * @throws IOException If reading the checkpoint fails, or if it has not
+	 * been saved by a chain made of the same processors
+	 */
+	public synchronized void restore(String filename) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(filename);
+		try
+		{
+			restore(fis);
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	/**
+	 * Gets the time taken by the last save.
+	 * @return The time, in nanoseconds
+	 */
+	public long getSaveTime()
+	{
+		return m_saveNanos;
+	}
+
+	/**
+	 * Gets the time taken by the last restore.
+	 * @return The time, in nanoseconds
+	 */
+	public long getRestoreTime()
+	{
+		return m_restoreNanos;
+	}
+
+	/**
+	 * Gets the number of checkpoints saved so far.
+	 * @return The number of checkpoints
+	 */
+	public long getSaveCount()
+	{
+		return m_saveCount;
+	}
+
+	/**
+	 * Duplicates the group. Contrary to other groups, the copy is also a
+	 * {@link CheckpointedGroup}; a checkpointed chain can thus be used as the
+	 * processor of an {@link EvictingSlice}, whose checkpoint then includes
+	 * the state of the chain of each slice.
+	 */
+	@Override
+	public CheckpointedGroup duplicate(boolean with_state)
+	{
+		List<Processor> stages = new ArrayList<Processor>(m_stages.length);
+		for (Processor p : m_stages)
+		{
+			stages.add(p.duplicate(with_state));
+		}
+		return new CheckpointedGroup(stages);
+	}
+
+	/**
+	 * Writes the state of the processors of the chain, in order. The classes
+	 * of the processors are only written by {@link #save(OutputStream)}, so
+	 * that the state of a group used as the processor of a slice takes no
+	 * more space than the state of its processors.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		for (Processor p : m_stages)
+		{
+			Checkpoint.writeProcessor(p, out);
+		}
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		for (Processor p : m_stages)
+		{
+			Checkpoint.readProcessor(p, in);
+		}
+	}
+
+	/**
+	 * A processor that lets event fronts through unchanged, and saves the
+	 * state of the group that contains it to a file every <i>n</i> fronts.
+	 * Its count of fronts is part of this state. Once an event has been
+	 * pushed to the trigger, the <i>n</i>-th front is pushed downstream
+	 * before the state is saved; in pull mode, the state is saved before the
+	 * front is returned.
+	 */
+	public static class Trigger extends SynchronousProcessor implements Checkpointable
+	{
+		/**
+		 * The number of fronts between two checkpoints.
+		 */
+		protected final long m_interval;
+
+		/**
+		 * The name of the file where the checkpoints are saved.
+		 */
+		protected final String m_filename;
+
+		/**
+		 * The group whose state is saved.
+		 */
+		protected CheckpointedGroup m_group;
+
+		/**
+		 * The number of fronts received so far.
+		 */
+		protected long m_count = 0;
+
+		/**
+		 * Whether an event has been pushed to the trigger. The pushables of
+		 * the outputs are also set in a chain used in pull mode, and
+		 * therefore do not tell the mode of the chain.
+		 */
+		protected boolean m_pushMode = false;
+
+		/**
+		 * The pushables recording the mode of the trigger, created on demand.
+		 */
+		protected final Pushable[] m_pushables;
+
+		/**
+		 * Creates a new trigger.
+		 * @param arity The input and output arity of the processor
+		 * @param interval The number of fronts between two checkpoints
+		 * @param filename The name of the file where the checkpoints are saved
+		 */
+		public Trigger(int arity, long interval, String filename)
+		{
+			super(arity, arity);
+			m_interval = Math.max(1, interval);
+			m_filename = filename;
+			m_pushables = new Pushable[arity];
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_count++;
+			if (m_count % m_interval != 0 || m_group == null)
+			{
+				outputs.add(inputs);
+				return true;
+			}
+			if (m_pushMode)
+			{
+				push(inputs);
+			}
+			else
+			{
+				outputs.add(inputs);
+			}
+			try
+			{
+				m_group.save(m_filename);
+			}
+			catch (IOException e)
+			{
+				throw new ProcessorException(e);
+			}
+			return true;
+		}
+
+		/**
+		 * Pushes a front to the processors connected to the outputs of the
+		 * trigger.
+		 * @param front The front
+		 */
+		protected void push(Object[] front)
+		{
+			for (int i = 0; i < front.length; i++)
+			{
+				getPushableOutput(i).push(front[i]);
+			}
+		}
+
+		@Override
+		public synchronized Pushable getPushableInput(int index)
+		{
+			if (m_pushables[index] == null)
+			{
+				m_pushables[index] = new ModePushable(index, super.getPushableInput(index));
+			}
+			return m_pushables[index];
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_count = 0;
+			m_pushMode = false;
+		}
+
+		@Override
+		public Trigger duplicate(boolean with_state)
+		{
+			Trigger t = new Trigger(getInputArity(), m_interval, m_filename);
+			if (with_state)
+			{
+				t.m_count = m_count;
+			}
+			return t;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			Checkpoint.writeVarLong(out, m_count);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			m_count = Checkpoint.readVarLong(in);
+		}
+
+		/**
+		 * Pushable passing the events to an input of the trigger, and
+		 * recording that the trigger is used in push mode.
+		 */
+		protected class ModePushable implements Pushable
+		{
+			/**
+			 * The input of the trigger.
+			 */
+			protected final int m_index;
+
+			/**
+			 * The pushable of the trigger for this input.
+			 */
+			protected final Pushable m_pushable;
+
+			/**
+			 * Creates a new pushable.
+			 * @param index The input of the trigger
+			 * @param p The pushable of the trigger for this input
+			 */
+			public ModePushable(int index, Pushable p)
+			{
+				super();
+				m_index = index;
+				m_pushable = p;
+			}
+
+			@Override
+			public Pushable push(Object o)
+			{
+				m_pushMode = true;
+				m_pushable.push(o);
+				return this;
+			}
+
+			@Override
+			public void notifyEndOfTrace()
+			{
+				m_pushable.notifyEndOfTrace();
+			}
+
+			@Override
+			public Processor getProcessor()
+			{
+				return Trigger.this;
+			}
+
+			@Override
+			public int getPosition()
+			{
+				return m_index;
+			}
+		}
+	}
+}
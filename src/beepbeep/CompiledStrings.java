@@ -0,0 +1,574 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.cep.functions.UnaryFunction;
+
+/**
+ * String functions that compile their patterns once, and reuse their
+ * {@link Matcher}s from one evaluation to the next.
+ * <p>
+ * Since a function object may be shared by processors running on
+ * different threads, the matchers are kept in {@link ThreadLocal}s: each
+ * thread evaluating the function has its own instances.
+ *
+ * @author Sylvain Hallé
+ */
+public class CompiledStrings
+{
+	/**
+	 * The characters that have a special meaning in a regular expression.
+	 */
+	protected static final String REGEX_SPECIAL = "\\^$.|?*+()[]{}";
+
+	private CompiledStrings()
+	{
+		super();
+	}
+
+	/**
+	 * Replaces all the occurrences of a list of patterns in a string. The
+	 * result is the same as {@link ca.uqac.lif.cep.util.Strings.ReplaceAll},
+	 * which applies the patterns one after the other, each to the result of
+	 * the previous one.
+	 * <p>
+	 * When all the patterns and their replacements are plain strings, and the
+	 * replacement of a pattern cannot create or destroy an occurrence of the
+	 * following patterns, applying the patterns in sequence is the same as
+	 * replacing all their occurrences in a single pass. In this case, the
+	 * function builds a {@link LiteralAutomaton} over all the patterns and
+	 * scans each string only once, regardless of the number of patterns.
+	 * Otherwise, it falls back to applying the regular expressions in
+	 * sequence.
+	 */
+	public static class ReplaceAll extends UnaryFunction<Object,String>
+	{
+		/**
+		 * The patterns to match.
+		 */
+		protected final String[] m_from;
+
+		/**
+		 * The replacement of each pattern.
+		 */
+		protected final String[] m_to;
+
+		/**
+		 * The automaton matching all the patterns at once, or {@code null} if
+		 * the patterns must be applied in sequence.
+		 */
+		protected final LiteralAutomaton m_automaton;
+
+		/**
+		 * The compiled patterns, or {@code null} if the automaton is used.
+		 */
+		protected final Pattern[] m_patterns;
+
+		/**
+		 * The matchers of the compiled patterns for the current thread.
+		 */
+		protected final ThreadLocal<Matcher[]> m_matchers;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param from The patterns to match
+		 * @param to The corresponding replacement patterns
+		 */
+		public ReplaceAll(String[] from, String[] to)
+		{
+			super(Object.class, String.class);
+			m_from = from;
+			m_to = to;
+			if (isSinglePass(from, to))
+			{
+				m_automaton = new LiteralAutomaton(from);
+				m_patterns = null;
+				m_matchers = null;
+			}
+			else
+			{
+				m_automaton = null;
+				m_patterns = new Pattern[from.length];
+				for (int i = 0; i < from.length; i++)
+				{
+					m_patterns[i] = Pattern.compile(from[i]);
+				}
+				m_matchers = new ThreadLocal<Matcher[]>();
+			}
+		}
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param from The patterns to match
+		 * @param to The corresponding replacement patterns
+		 */
+		public ReplaceAll(List<String> from, List<String> to)
+		{
+			this(from.toArray(new String[from.size()]), to.toArray(new String[to.size()]));
+		}
+
+		/**
+		 * Determines if this function replaces all the patterns in a single
+		 * pass.
+		 * @return {@code true} if a single pass is made, {@code false} if the
+		 * patterns are applied in sequence
+		 */
+		public boolean isSinglePass()
+		{
+			return m_automaton != null;
+		}
+
+		@Override
+		public String getValue(Object x)
+		{
+			String s = x.toString();
+			if (m_automaton != null)
+			{
+				return m_automaton.replace(s, m_to);
+			}
+			Matcher[] matchers = m_matchers.get();
+			if (matchers == null)
+			{
+				matchers = new Matcher[m_patterns.length];
+				for (int i = 0; i < m_patterns.length; i++)
+				{
+					matchers[i] = m_patterns[i].matcher("");
+				}
+				m_matchers.set(matchers);
+			}
+			for (int i = 0; i < matchers.length; i++)
+			{
+				s = matchers[i].reset(s).replaceAll(m_to[i]);
+			}
+			return s;
+		}
+
+		@Override
+		public ReplaceAll duplicate(boolean with_state)
+		{
+			return this;
+		}
+
+		/**
+		 * Determines if applying a list of patterns in sequence is the same as
+		 * replacing all of them in a single pass. This is the case when:
+		 * <ul>
+		 * <li>the patterns are non-empty strings without any regex
+		 * metacharacter, and the replacements contain no group reference;</li>
+		 * <li>no two patterns can overlap: no pattern occurs in another one,
+		 * and no suffix of a pattern is a prefix of another one;</li>
+		 * <li>no pattern shares a character with the replacement of a pattern
+		 * that precedes it, so that replacing the first one cannot create an
+		 * occurrence of the second. If the replacement is empty, the second
+		 * pattern must be a single character, so that it cannot occur across
+		 * the place where text was removed.</li>
+		 * </ul>
+		 * @param from The patterns to match
+		 * @param to The corresponding replacement patterns
+		 * @return {@code true} if a single pass can be made, {@code false}
+		 * otherwise
+		 */
+		protected static boolean isSinglePass(String[] from, String[] to)
+		{
+			if (from.length != to.length)
+			{
+				return false;
+			}
+			for (int i = 0; i < from.length; i++)
+			{
+				if (!isLiteral(from[i]) || to[i].indexOf('$') >= 0 || to[i].indexOf('\\') >= 0)
+				{
+					return false;
+				}
+			}
+			for (int i = 0; i < from.length; i++)
+			{
+				for (int j = 0; j < from.length; j++)
+				{
+					if (i != j && overlaps(from[i], from[j]))
+					{
+						return false;
+					}
+					if (i < j && !cannotCreate(to[i], from[j]))
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Determines if a pattern is a non-empty string without any regex
+		 * metacharacter.
+		 * @param pattern The pattern
+		 * @return {@code true} if the pattern is a plain string
+		 */
+		protected static boolean isLiteral(String pattern)
+		{
+			if (pattern.isEmpty())
+			{
+				return false;
+			}
+			for (int i = 0; i < pattern.length(); i++)
+			{
+				if (REGEX_SPECIAL.indexOf(pattern.charAt(i)) >= 0)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Determines if a pattern occurs in another one, or if a suffix of the
+		 * first one is a prefix of the second one.
+		 * @param a The first pattern
+		 * @param b The second pattern
+		 * @return {@code true} if an occurrence of the first pattern can overlap
+		 * an occurrence of the second one at its right
+		 */
+		protected static boolean overlaps(String a, String b)
+		{
+			if (a.contains(b))
+			{
+				return true;
+			}
+			for (int k = 1; k < a.length() && k < b.length(); k++)
+			{
+				if (a.regionMatches(a.length() - k, b, 0, k))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Determines if replacing some text by a string cannot create an
+		 * occurrence of a pattern.
+		 * @param replacement The replacement
+		 * @param pattern The pattern
+		 * @return {@code true} if no occurrence can be created
+		 */
+		protected static boolean cannotCreate(String replacement, String pattern)
+		{
+			if (replacement.isEmpty())
+			{
+				return pattern.length() == 1;
+			}
+			for (int i = 0; i < pattern.length(); i++)
+			{
+				if (replacement.indexOf(pattern.charAt(i)) >= 0)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Finds all the occurrences of a regular expression in a string, and
+	 * returns the list of the matched substrings. The pattern is compiled
+	 * once, and the matcher is reused from one evaluation to the next.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class FindRegex extends UnaryFunction<Object,List>
+	{
+		/**
+		 * The matcher of the pattern for each thread.
+		 */
+		protected final ThreadLocalMatcher m_matcher;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param regex The regular expression to look for
+		 */
+		public FindRegex(String regex)
+		{
+			super(Object.class, List.class);
+			m_matcher = new ThreadLocalMatcher(Pattern.compile(regex));
+		}
+
+		@Override
+		public List<String> getValue(Object x)
+		{
+			Matcher m = m_matcher.reset(x.toString());
+			List<String> found = new ArrayList<String>();
+			while (m.find())
+			{
+				found.add(m.group());
+			}
+			return found;
+		}
+
+		@Override
+		public FindRegex duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Finds the first occurrence of a regular expression in a string, and
+	 * returns the matched substring, or {@code null} if there is none. The
+	 * pattern is compiled once, and the matcher is reused from one evaluation
+	 * to the next.
+	 */
+	public static class FindRegexOnce extends UnaryFunction<Object,String>
+	{
+		/**
+		 * The matcher of the pattern for each thread.
+		 */
+		protected final ThreadLocalMatcher m_matcher;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param regex The regular expression to look for
+		 */
+		public FindRegexOnce(String regex)
+		{
+			super(Object.class, String.class);
+			m_matcher = new ThreadLocalMatcher(Pattern.compile(regex));
+		}
+
+		@Override
+		public String getValue(Object x)
+		{
+			Matcher m = m_matcher.reset(x.toString());
+			if (m.find())
+			{
+				return m.group();
+			}
+			return null;
+		}
+
+		@Override
+		public FindRegexOnce duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Gives each thread its own {@link Matcher} for a compiled pattern.
+	 */
+	protected static class ThreadLocalMatcher extends ThreadLocal<Matcher>
+	{
+		/**
+		 * The pattern.
+		 */
+		protected final Pattern m_pattern;
+
+		public ThreadLocalMatcher(Pattern pattern)
+		{
+			super();
+			m_pattern = pattern;
+		}
+
+		@Override
+		protected Matcher initialValue()
+		{
+			return m_pattern.matcher("");
+		}
+
+		/**
+		 * Gets the matcher of the current thread, set to a new input.
+		 * @param s The input
+		 * @return The matcher
+		 */
+		public Matcher reset(CharSequence s)
+		{
+			return get().reset(s);
+		}
+	}
+
+	/**
+	 * A deterministic automaton finding the occurrences of a set of strings,
+	 * built with the Aho-Corasick construction. It is assumed that no two
+	 * strings of the set can overlap, so that at most one string ends at
+	 * each state of the automaton.
+	 */
+	public static class LiteralAutomaton
+	{
+		/**
+		 * The transitions of the automaton; the row of a state gives the
+		 * next state for each column of the alphabet.
+		 */
+		protected final int[][] m_delta;
+
+		/**
+		 * The index of the string recognized in each state, or -1 if none.
+		 */
+		protected final int[] m_output;
+
+		/**
+		 * The length of each string.
+		 */
+		protected final int[] m_lengths;
+
+		/**
+		 * The column of the alphabet of each character, or -1 for characters
+		 * that do not occur in any string. Characters beyond the end of the
+		 * array do not occur in any string either.
+		 */
+		protected final int[] m_columns;
+
+		/**
+		 * Creates the automaton.
+		 * @param strings The strings to find
+		 */
+		public LiteralAutomaton(String[] strings)
+		{
+			super();
+			int max_char = 0;
+			int max_states = 1;
+			for (String s : strings)
+			{
+				max_states += s.length();
+				for (int i = 0; i < s.length(); i++)
+				{
+					max_char = Math.max(max_char, s.charAt(i));
+				}
+			}
+			m_columns = new int[max_char + 1];
+			java.util.Arrays.fill(m_columns, -1);
+			int width = 0;
+			for (String s : strings)
+			{
+				for (int i = 0; i < s.length(); i++)
+				{
+					if (m_columns[s.charAt(i)] < 0)
+					{
+						m_columns[s.charAt(i)] = width++;
+					}
+				}
+			}
+			m_lengths = new int[strings.length];
+			// Build the trie
+			List<Map<Integer,Integer>> trie = new ArrayList<Map<Integer,Integer>>(max_states);
+			trie.add(new HashMap<Integer,Integer>());
+			int[] output = new int[max_states];
+			java.util.Arrays.fill(output, -1);
+			for (int k = 0; k < strings.length; k++)
+			{
+				String s = strings[k];
+				m_lengths[k] = s.length();
+				int state = 0;
+				for (int i = 0; i < s.length(); i++)
+				{
+					int col = m_columns[s.charAt(i)];
+					Integer next = trie.get(state).get(col);
+					if (next == null)
+					{
+						next = trie.size();
+						trie.add(new HashMap<Integer,Integer>());
+					}
+					trie.get(state).put(col, next);
+					state = next;
+				}
+				output[state] = k;
+			}
+			// Compute the transitions in breadth-first order, following the
+			// failure links
+			int num_states = trie.size();
+			m_delta = new int[num_states][width];
+			m_output = java.util.Arrays.copyOf(output, num_states);
+			int[] fail = new int[num_states];
+			int[] queue = new int[num_states];
+			int head = 0, tail = 0;
+			for (int col = 0; col < width; col++)
+			{
+				Integer next = trie.get(0).get(col);
+				if (next != null)
+				{
+					m_delta[0][col] = next;
+					queue[tail++] = next;
+				}
+			}
+			while (head < tail)
+			{
+				int state = queue[head++];
+				if (m_output[state] < 0)
+				{
+					m_output[state] = m_output[fail[state]];
+				}
+				for (int col = 0; col < width; col++)
+				{
+					Integer next = trie.get(state).get(col);
+					if (next == null)
+					{
+						m_delta[state][col] = m_delta[fail[state]][col];
+					}
+					else
+					{
+						m_delta[state][col] = next;
+						fail[next] = m_delta[fail[state]][col];
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Replaces the leftmost non-overlapping occurrences of the strings in
+		 * a text.
+		 * @param text The text
+		 * @param replacements The replacement of each string
+		 * @return The text with the replacements
+		 */
+		public String replace(String text, String[] replacements)
+		{
+			StringBuilder out = null;
+			int copied = 0;
+			int state = 0;
+			for (int i = 0; i < text.length(); i++)
+			{
+				char c = text.charAt(i);
+				int col = c < m_columns.length ? m_columns[c] : -1;
+				state = col < 0 ? 0 : m_delta[state][col];
+				int found = m_output[state];
+				if (found >= 0)
+				{
+					if (out == null)
+					{
+						out = new StringBuilder(text.length() + 16);
+					}
+					out.append(text, copied, i + 1 - m_lengths[found]);
+					out.append(replacements[found]);
+					copied = i + 1;
+					state = 0;
+				}
+			}
+			if (out == null)
+			{
+				return text;
+			}
+			out.append(text, copied, text.length());
+			return out.toString();
+		}
+	}
+}
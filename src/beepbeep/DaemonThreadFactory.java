@@ -0,0 +1,59 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads, so that the workers of a processor do not
+ * prevent the JVM from exiting if a pipeline is abandoned before the end
+ * of its input.
+ *
+ * @author Sylvain Hallé
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+	/**
+	 * The prefix of the name given to the threads.
+	 */
+	protected final String m_name;
+
+	/**
+	 * A counter used to number the threads.
+	 */
+	protected final AtomicInteger m_count = new AtomicInteger(0);
+
+	/**
+	 * Creates a new thread factory.
+	 * @param name The prefix of the name given to the threads
+	 */
+	public DaemonThreadFactory(String name)
+	{
+		super();
+		m_name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r)
+	{
+		Thread t = new Thread(r, m_name + "-" + m_count.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+}
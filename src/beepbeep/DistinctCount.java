@@ -0,0 +1,498 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Processor counting the distinct events it has received. For each input
+ * event, it outputs the number of distinct events received so far. It
+ * replaces {@link ca.uqac.lif.cep.util.Sets.PutInto} followed by
+ * {@link ca.uqac.lif.cep.util.Size}, without keeping the set of events
+ * itself, but <strong>its output differs from that of this chain in two
+ * ways</strong>:
+ * <ul>
+ * <li>the count is output as a {@link Long}, whereas
+ * {@link ca.uqac.lif.cep.util.Size} outputs an {@link Integer};</li>
+ * <li>integers of different classes with the same value, such as
+ * <tt>1</tt> and <tt>1L</tt>, are counted once, whereas a
+ * {@link java.util.HashSet} counts them as two distinct events.</li>
+ * </ul>
+ * Both streams are the same when all the integers received have the same
+ * class.
+ * <p>
+ * Two variants are provided:
+ * <ul>
+ * <li>{@link Exact} keeps all distinct events. Integers are kept in an
+ * open-addressing hash table of <tt>long</tt>s, which takes about 16 bytes
+ * per distinct value instead of about 50 bytes for a boxed value in a
+ * {@link java.util.HashSet}. The count is exact.</li>
+ * <li>{@link Approximate} estimates the count with the HyperLogLog
+ * algorithm, using a fixed number of registers regardless of the number
+ * of distinct events. With 2<sup><i>p</i></sup> registers, the relative
+ * standard error of the count is about
+ * 1.04/&radic;2<sup><i>p</i></sup>: 1.6% with a precision of 12,
+ * 0.81% with the default precision of 14 (16&nbsp;KB), and 0.41% with a
+ * precision of 16 (64&nbsp;KB). When the count is much smaller than the
+ * number of registers, the estimate is almost always exact.</li>
+ * </ul>
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class DistinctCount extends SynchronousProcessor implements Checkpointable
+{
+	/**
+	 * Creates a new distinct counter.
+	 */
+	public DistinctCount()
+	{
+		super(1, 1);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		add(inputs[0]);
+		outputs.add(new Object[] {getCount()});
+		return true;
+	}
+
+	/**
+	 * Adds an event to the counter.
+	 * @param o The event
+	 */
+	protected abstract void add(Object o);
+
+	/**
+	 * Gets the number of distinct events received so far.
+	 * @return The number of events
+	 */
+	public abstract long getCount();
+
+	/**
+	 * Scrambles the bits of a 64-bit value, so that values that differ by
+	 * a few bits are spread over the whole range (finalizer of
+	 * MurmurHash3).
+	 * @param h The value
+	 * @return The scrambled value
+	 */
+	protected static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Distinct counter keeping all the distinct events. Integers (in the
+	 * sense of {@link PrimitiveNumbers#isIntegral(Object)}) are compared by
+	 * their value, regardless of their class; all other events are kept in
+	 * a {@link HashSet} and compared with {@link Object#equals(Object)}.
+	 */
+	public static class Exact extends DistinctCount
+	{
+		/**
+		 * The initial capacity of the table of integers.
+		 */
+		protected static final int INITIAL_CAPACITY = 64;
+
+		/**
+		 * The table of integers, where 0 marks an empty slot.
+		 */
+		protected long[] m_table = new long[INITIAL_CAPACITY];
+
+		/**
+		 * The number of non-zero integers in the table.
+		 */
+		protected int m_size = 0;
+
+		/**
+		 * Whether 0 has been received.
+		 */
+		protected boolean m_hasZero = false;
+
+		/**
+		 * The events that are not integers.
+		 */
+		protected final Set<Object> m_others = new HashSet<Object>();
+
+		@Override
+		protected void add(Object o)
+		{
+			if (!PrimitiveNumbers.isIntegral(o))
+			{
+				m_others.add(o);
+				return;
+			}
+			long x = ((Number) o).longValue();
+			if (x == 0)
+			{
+				m_hasZero = true;
+				return;
+			}
+			if (insert(m_table, x))
+			{
+				m_size++;
+				if (2 * m_size > m_table.length)
+				{
+					grow();
+				}
+			}
+		}
+
+		/**
+		 * Inserts a non-zero integer into a table, using linear probing.
+		 * @param table The table
+		 * @param x The integer
+		 * @return {@code true} if the integer was inserted, {@code false} if
+		 * it was already in the table
+		 */
+		protected static boolean insert(long[] table, long x)
+		{
+			int mask = table.length - 1;
+			int i = (int) mix(x) & mask;
+			while (table[i] != 0)
+			{
+				if (table[i] == x)
+				{
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = x;
+			return true;
+		}
+
+		/**
+		 * Doubles the capacity of the table of integers.
+		 */
+		protected void grow()
+		{
+			long[] table = new long[2 * m_table.length];
+			for (long x : m_table)
+			{
+				if (x != 0)
+				{
+					insert(table, x);
+				}
+			}
+			m_table = table;
+		}
+
+		@Override
+		public long getCount()
+		{
+			return m_size + (m_hasZero ? 1 : 0) + m_others.size();
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_table = new long[INITIAL_CAPACITY];
+			m_size = 0;
+			m_hasZero = false;
+			m_others.clear();
+		}
+
+		@Override
+		public Exact duplicate(boolean with_state)
+		{
+			Exact e = new Exact();
+			if (with_state)
+			{
+				e.m_table = m_table.clone();
+				e.m_size = m_size;
+				e.m_hasZero = m_hasZero;
+				e.m_others.addAll(m_others);
+			}
+			return e;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			Checkpoint.writeVarLong(out, m_table.length);
+			Checkpoint.writeVarLong(out, m_size);
+			for (long x : m_table)
+			{
+				if (x != 0)
+				{
+					Checkpoint.writeVarLong(out, x);
+				}
+			}
+			out.writeBoolean(m_hasZero);
+			Checkpoint.writeVarLong(out, m_others.size());
+			for (Object o : m_others)
+			{
+				Checkpoint.writeObject(out, o);
+			}
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			int length = Checkpoint.readSize(in);
+			int size = Checkpoint.readSize(in);
+			if (Integer.bitCount(length) != 1 || 2 * (long) size > length)
+			{
+				throw new IOException("Checkpoint does not match: invalid table of integers");
+			}
+			m_table = new long[length];
+			m_size = 0;
+			for (int i = 0; i < size; i++)
+			{
+				if (insert(m_table, Checkpoint.readVarLong(in)))
+				{
+					m_size++;
+				}
+			}
+			m_hasZero = in.readBoolean();
+			m_others.clear();
+			int others = Checkpoint.readSize(in);
+			for (int i = 0; i < others; i++)
+			{
+				m_others.add(Checkpoint.readObject(in));
+			}
+		}
+	}
+
+	/**
+	 * Distinct counter estimating the number of distinct events with the
+	 * HyperLogLog algorithm. Each event is hashed into 64 bits: integers
+	 * and other numbers by their value, character strings by their
+	 * characters, and other objects by their {@link Object#hashCode()
+	 * hashCode}. The first <i>p</i> bits of the hash select one of
+	 * 2<sup><i>p</i></sup> registers, which keeps the greatest position of
+	 * the first 1 bit in the remaining bits of the hashes it has received.
+	 * The harmonic mean of the registers is updated along with them, so that
+	 * the estimate is computed in constant time for each event.
+	 */
+	public static class Approximate extends DistinctCount
+	{
+		/**
+		 * The default precision.
+		 */
+		public static final int DEFAULT_PRECISION = 14;
+
+		/**
+		 * The minimum precision.
+		 */
+		public static final int MIN_PRECISION = 4;
+
+		/**
+		 * The maximum precision.
+		 */
+		public static final int MAX_PRECISION = 18;
+
+		/**
+		 * The number of bits of the hash used to select a register.
+		 */
+		protected final int m_precision;
+
+		/**
+		 * The registers.
+		 */
+		protected final byte[] m_registers;
+
+		/**
+		 * The sum of 2<sup>&minus;<i>r</i></sup> over the values <i>r</i> of
+		 * the registers.
+		 */
+		protected double m_sum;
+
+		/**
+		 * The number of registers equal to 0.
+		 */
+		protected int m_zeros;
+
+		/**
+		 * Creates a new counter with the default precision.
+		 */
+		public Approximate()
+		{
+			this(DEFAULT_PRECISION);
+		}
+
+		/**
+		 * Creates a new counter.
+		 * @param precision The number of bits of the hash used to select a
+		 * register, between {@value #MIN_PRECISION} and
+		 * {@value #MAX_PRECISION}; the counter uses 2<sup><i>p</i></sup>
+		 * bytes
+		 */
+		public Approximate(int precision)
+		{
+			super();
+			if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+			{
+				throw new IllegalArgumentException("The precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+			}
+			m_precision = precision;
+			m_registers = new byte[1 << precision];
+			m_sum = m_registers.length;
+			m_zeros = m_registers.length;
+		}
+
+		/**
+		 * Gets the relative standard error of the count estimated by this
+		 * counter.
+		 * @return The error, as a fraction of the count
+		 */
+		public double getStandardError()
+		{
+			return 1.04 / Math.sqrt(m_registers.length);
+		}
+
+		@Override
+		protected void add(Object o)
+		{
+			long h = hash(o);
+			int index = (int) (h >>> (64 - m_precision));
+			int rank = Long.numberOfLeadingZeros((h << m_precision) | (1L << (m_precision - 1))) + 1;
+			int old = m_registers[index];
+			if (rank > old)
+			{
+				m_registers[index] = (byte) rank;
+				m_sum += Math.scalb(1d, -rank) - Math.scalb(1d, -old);
+				if (old == 0)
+				{
+					m_zeros--;
+				}
+			}
+		}
+
+		/**
+		 * Computes the 64-bit hash of an event.
+		 * @param o The event
+		 * @return The hash
+		 */
+		protected static long hash(Object o)
+		{
+			if (PrimitiveNumbers.isIntegral(o))
+			{
+				return mix(((Number) o).longValue());
+			}
+			if (o instanceof Number)
+			{
+				return mix(Double.doubleToLongBits(((Number) o).doubleValue()) ^ 0x5bd1e9955bd1e995L);
+			}
+			if (o instanceof CharSequence)
+			{
+				CharSequence s = (CharSequence) o;
+				long h = 0x9e3779b97f4a7c15L;
+				for (int i = 0; i < s.length(); i++)
+				{
+					h = (h ^ s.charAt(i)) * 0x100000001b3L;
+				}
+				return mix(h ^ s.length());
+			}
+			return mix(o == null ? 0 : o.hashCode());
+		}
+
+		@Override
+		public long getCount()
+		{
+			double m = m_registers.length;
+			double estimate = alpha(m_registers.length) * m * m / m_sum;
+			if (estimate <= 2.5 * m && m_zeros > 0)
+			{
+				// Linear counting is more accurate for small counts
+				estimate = m * Math.log(m / m_zeros);
+			}
+			return Math.round(estimate);
+		}
+
+		/**
+		 * Gets the constant correcting the bias of the estimate.
+		 * @param m The number of registers
+		 * @return The constant
+		 */
+		protected static double alpha(int m)
+		{
+			switch (m)
+			{
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1 + 1.079 / m);
+			}
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			Arrays.fill(m_registers, (byte) 0);
+			m_sum = m_registers.length;
+			m_zeros = m_registers.length;
+		}
+
+		@Override
+		public Approximate duplicate(boolean with_state)
+		{
+			Approximate a = new Approximate(m_precision);
+			if (with_state)
+			{
+				System.arraycopy(m_registers, 0, a.m_registers, 0, m_registers.length);
+				a.m_sum = m_sum;
+				a.m_zeros = m_zeros;
+			}
+			return a;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			Checkpoint.writeVarLong(out, m_precision);
+			out.write(m_registers);
+			out.writeDouble(m_sum);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			Checkpoint.checkParameter("precision", m_precision, Checkpoint.readVarLong(in));
+			in.readFully(m_registers);
+			m_sum = in.readDouble();
+			m_zeros = 0;
+			for (byte r : m_registers)
+			{
+				if (r == 0)
+				{
+					m_zeros++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,466 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * A variant of {@link ca.uqac.lif.cep.tmf.Slice} whose memory is bounded by
+ * discarding slices according to an eviction {@link Policy}.
+ * <p>
+ * As with {@link ca.uqac.lif.cep.tmf.Slice}, the slicing function is
+ * evaluated on each input event, a copy of the slice processor is created
+ * for each distinct value of this function, and each time a slice produces
+ * an output, the processor outputs a map associating each slice key to the
+ * last output of its slice. However, a slice is <em>evicted</em>, that is,
+ * its processor and its last output are discarded, when:
+ * <ul>
+ * <li>the number of live slices exceeds a maximum, in which case the least
+ * recently used slice is evicted;</li>
+ * <li>the slice has not received any event for a given number of input
+ * events;</li>
+ * <li>the end-of-slice condition, evaluated on each output of the slice,
+ * returns {@code true}.</li>
+ * </ul>
+ * If an event is later received for the key of an evicted slice, a new
+ * slice is started from a fresh copy of the processor. An
+ * {@link EvictionListener} can be notified of the last output of each
+ * evicted slice.
+ * <p>
+ * Optionally, the instances of evicted slices can be kept in a
+ * {@link SlicePool} and reset to be reused for new slices, which avoids
+ * duplicating the slice processor each time a new key is seen.
+ *
+ * @author Sylvain Hallé
+ */
+public class EvictingSlice extends SynchronousProcessor implements Checkpointable
+{
+	/**
+	 * The function computing the slice key of each event.
+	 */
+	protected final Function m_slicingFunction;
+
+	/**
+	 * The processor copied for each slice.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The eviction policy.
+	 */
+	protected final Policy m_policy;
+
+	/**
+	 * The live slices, from the least to the most recently used.
+	 */
+	protected final LinkedHashMap<Object,Entry> m_slices = new LinkedHashMap<Object,Entry>(16, 0.75f, true);
+
+	/**
+	 * The last output of each live slice that has produced one.
+	 */
+	protected final Map<Object,Object> m_lastValues = new HashMap<Object,Object>();
+
+	/**
+	 * The pool of instances of evicted slices, or {@code null} if instances
+	 * are not reused.
+	 */
+	protected final SlicePool m_pool;
+
+	/**
+	 * The number of input events received so far.
+	 */
+	protected long m_eventCount = 0;
+
+	/**
+	 * The number of slices evicted so far.
+	 */
+	protected long m_evictedCount = 0;
+
+	/**
+	 * Creates a new slice processor.
+	 * @param f The slicing function
+	 * @param p The processor to run on each slice
+	 * @param policy The eviction policy
+	 */
+	public EvictingSlice(Function f, Processor p, Policy policy)
+	{
+		super(f.getInputArity(), 1);
+		m_slicingFunction = f;
+		m_processor = p;
+		m_policy = policy;
+		m_pool = policy.m_poolSize > 0 ? new SlicePool(p, policy.m_poolSize) : null;
+	}
+
+	/**
+	 * Gets the number of live slices.
+	 * @return The number of slices
+	 */
+	public int getSliceCount()
+	{
+		return m_slices.size();
+	}
+
+	/**
+	 * Gets the number of slices evicted so far.
+	 * @return The number of slices
+	 */
+	public long getEvictedCount()
+	{
+		return m_evictedCount;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_eventCount++;
+		Object[] key = new Object[1];
+		m_slicingFunction.evaluate(inputs, key, m_context);
+		if (key[0] != null)
+		{
+			Entry e = m_slices.get(key[0]);
+			if (e == null)
+			{
+				e = new Entry(newSlice());
+				m_slices.put(key[0], e);
+			}
+			e.m_lastSeen = m_eventCount;
+			boolean has_value = e.m_slice.push(inputs);
+			Object value = e.m_slice.getLastValue();
+			if (has_value)
+			{
+				m_lastValues.put(key[0], value);
+			}
+			evictExpired();
+			if (has_value)
+			{
+				outputs.add(new Object[] {new HashMap<Object,Object>(m_lastValues)});
+				if (m_policy.m_endCondition != null && isEnd(value))
+				{
+					evict(key[0]);
+				}
+			}
+			return true;
+		}
+		evictExpired();
+		return true;
+	}
+
+	/**
+	 * Creates the instance of the processor for a new slice.
+	 * @return The instance
+	 */
+	protected SliceInstance newSlice()
+	{
+		if (m_pool != null)
+		{
+			return m_pool.acquire();
+		}
+		return new SliceInstance(m_processor.duplicate());
+	}
+
+	/**
+	 * Evaluates the end-of-slice condition on an output of a slice.
+	 * @param value The output
+	 * @return {@code true} if the slice has ended, {@code false} otherwise
+	 */
+	protected boolean isEnd(Object value)
+	{
+		Object[] out = new Object[1];
+		m_policy.m_endCondition.evaluate(new Object[] {value}, out, m_context);
+		return Boolean.TRUE.equals(out[0]);
+	}
+
+	/**
+	 * Evicts the least recently used slices while there are too many, and
+	 * the slices that have been idle for too long. Since the slices are
+	 * ordered by last use, both kinds of slices are at the beginning of
+	 * the map.
+	 */
+	protected void evictExpired()
+	{
+		Iterator<Map.Entry<Object,Entry>> it = m_slices.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<Object,Entry> oldest = it.next();
+			boolean too_many = m_policy.m_maxSlices > 0 && m_slices.size() > m_policy.m_maxSlices;
+			boolean idle = m_policy.m_idleTimeout > 0 && m_eventCount - oldest.getValue().m_lastSeen >= m_policy.m_idleTimeout;
+			if (!too_many && !idle)
+			{
+				break;
+			}
+			it.remove();
+			evicted(oldest.getKey(), oldest.getValue());
+		}
+	}
+
+	/**
+	 * Evicts the slice of a given key.
+	 * @param key The key
+	 */
+	protected void evict(Object key)
+	{
+		Entry e = m_slices.remove(key);
+		if (e != null)
+		{
+			evicted(key, e);
+		}
+	}
+
+	/**
+	 * Discards the state of a slice that has been removed from the live
+	 * slices, and notifies the listener of the policy.
+	 * @param key The key of the slice
+	 * @param e The slice
+	 */
+	protected void evicted(Object key, Entry e)
+	{
+		Object last = m_lastValues.remove(key);
+		m_evictedCount++;
+		if (m_pool != null)
+		{
+			m_pool.release(e.m_slice);
+		}
+		if (m_policy.m_listener != null)
+		{
+			m_policy.m_listener.evicted(key, last);
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		if (m_pool != null)
+		{
+			for (Entry e : m_slices.values())
+			{
+				m_pool.release(e.m_slice);
+			}
+		}
+		m_slices.clear();
+		m_lastValues.clear();
+		m_eventCount = 0;
+		m_evictedCount = 0;
+		m_slicingFunction.reset();
+	}
+
+	@Override
+	public EvictingSlice duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a slice with its state");
+		}
+		return new EvictingSlice(m_slicingFunction.duplicate(), m_processor.duplicate(), m_policy);
+	}
+
+	/**
+	 * Writes the state of the processor: its counters and, for each live
+	 * slice from the least to the most recently used, its key, its last
+	 * output and the state of its processor. The state of the slice
+	 * processor is written by {@link Checkpoint#writeProcessor(Processor,
+	 * DataOutput)}, and the keys and outputs by
+	 * {@link Checkpoint#writeObject(DataOutput, Object)}.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		Checkpoint.writeVarLong(out, m_eventCount);
+		Checkpoint.writeVarLong(out, m_evictedCount);
+		Checkpoint.writeVarLong(out, m_slices.size());
+		for (Map.Entry<Object,Entry> e : m_slices.entrySet())
+		{
+			Object key = e.getKey();
+			Checkpoint.writeObject(out, key);
+			Checkpoint.writeVarLong(out, e.getValue().m_lastSeen);
+			boolean has_value = m_lastValues.containsKey(key);
+			out.writeBoolean(has_value);
+			if (has_value)
+			{
+				Checkpoint.writeObject(out, m_lastValues.get(key));
+			}
+			Checkpoint.writeProcessor(e.getValue().m_slice.getProcessor(), out);
+		}
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		reset();
+		m_eventCount = Checkpoint.readVarLong(in);
+		m_evictedCount = Checkpoint.readVarLong(in);
+		int n = Checkpoint.readSize(in);
+		for (int i = 0; i < n; i++)
+		{
+			Object key = Checkpoint.readObject(in);
+			Entry e = new Entry(newSlice());
+			e.m_lastSeen = Checkpoint.readVarLong(in);
+			if (in.readBoolean())
+			{
+				Object value = Checkpoint.readObject(in);
+				m_lastValues.put(key, value);
+				e.m_slice.m_lastValue = value;
+			}
+			Checkpoint.readProcessor(e.m_slice.getProcessor(), in);
+			// Slices are read from the least to the most recently used
+			m_slices.put(key, e);
+		}
+	}
+
+	/**
+	 * A live slice.
+	 */
+	protected static class Entry
+	{
+		/**
+		 * The instance of the processor of the slice.
+		 */
+		protected final SliceInstance m_slice;
+
+		/**
+		 * The index of the last input event sent to the slice.
+		 */
+		protected long m_lastSeen;
+
+		public Entry(SliceInstance slice)
+		{
+			super();
+			m_slice = slice;
+		}
+	}
+
+	/**
+	 * Receives the last output of the slices that are evicted.
+	 */
+	public interface EvictionListener
+	{
+		/**
+		 * Called when a slice is evicted.
+		 * @param key The key of the slice
+		 * @param last_value The last output of the slice, or {@code null} if it
+		 * has not produced any output
+		 */
+		public void evicted(Object key, Object last_value);
+	}
+
+	/**
+	 * The conditions under which slices are evicted. The conditions can be
+	 * combined; a slice is evicted as soon as one of them holds.
+	 */
+	public static class Policy
+	{
+		/**
+		 * The maximum number of live slices, or 0 for no maximum.
+		 */
+		protected int m_maxSlices = 0;
+
+		/**
+		 * The number of input events after which a slice that has not received
+		 * any of them is evicted, or 0 for no timeout.
+		 */
+		protected long m_idleTimeout = 0;
+
+		/**
+		 * The end-of-slice condition, or {@code null} if there is none.
+		 */
+		protected Function m_endCondition = null;
+
+		/**
+		 * The listener notified of evicted slices, or {@code null} if there is
+		 * none.
+		 */
+		protected EvictionListener m_listener = null;
+
+		/**
+		 * The maximum number of instances of evicted slices kept for reuse.
+		 */
+		protected int m_poolSize = 0;
+
+		/**
+		 * Sets the maximum number of live slices. When it is exceeded, the
+		 * least recently used slice is evicted.
+		 * @param n The number of slices, or 0 for no maximum
+		 * @return This policy
+		 */
+		public Policy maxSlices(int n)
+		{
+			m_maxSlices = Math.max(0, n);
+			return this;
+		}
+
+		/**
+		 * Sets the number of input events after which a slice that has not
+		 * received any of them is evicted.
+		 * @param n The number of events, or 0 for no timeout
+		 * @return This policy
+		 */
+		public Policy idleTimeout(long n)
+		{
+			m_idleTimeout = Math.max(0, n);
+			return this;
+		}
+
+		/**
+		 * Sets the end-of-slice condition. This 1:1 function is evaluated on
+		 * each output of a slice; the slice is evicted when it returns
+		 * {@code true}.
+		 * @param f The function
+		 * @return This policy
+		 */
+		public Policy endWhen(Function f)
+		{
+			m_endCondition = f;
+			return this;
+		}
+
+		/**
+		 * Sets the listener notified of the last output of each evicted slice.
+		 * @param listener The listener
+		 * @return This policy
+		 */
+		public Policy onEvict(EvictionListener listener)
+		{
+			m_listener = listener;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of instances of evicted slices that are
+		 * reset and kept for reuse by new slices.
+		 * @param n The number of instances, or 0 to duplicate the slice
+		 * processor for every new slice
+		 * @return This policy
+		 */
+		public Policy poolSize(int n)
+		{
+			m_poolSize = Math.max(0, n);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.util.Size;
+
+/**
+ * Collapses chains of adjacent {@link ApplyFunction} processors into a
+ * single processor evaluating the composition of their functions.
+ * <p>
+ * An {@link ApplyFunction} outputs exactly one front of events for each
+ * input front it receives. Therefore, a chain of two such processors
+ * where the first has an output arity of 1 produces the same stream as a
+ * single {@link ApplyFunction} evaluating a {@link FunctionTree} that
+ * feeds the output of the first function to the second. The fused
+ * processor saves, for each event, one queue push, one call to a
+ * {@link ca.uqac.lif.cep.Pushable} and one array allocation per removed
+ * stage.
+ * <p>
+ * Only processors that are direct instances of {@link ApplyFunction} are
+ * fused; descendants of this class (such as
+ * {@link ca.uqac.lif.cep.functions.Cumulate}) are left untouched, as they
+ * may override the way events are processed.
+ *
+ * @author Sylvain Hallé
+ */
+public class Fusion
+{
+	private Fusion()
+	{
+		super();
+	}
+
+	/**
+	 * Fuses adjacent {@link ApplyFunction} processors in a chain.
+	 * @param chain The processors of the chain, in the order in which they
+	 * are meant to be connected. The list is not modified.
+	 * @return A new list with the processors of the chain, where runs of
+	 * fusible processors have been replaced by a single processor
+	 */
+	public static List<Processor> fuse(List<Processor> chain)
+	{
+		List<Processor> out = new ArrayList<Processor>(chain.size());
+		Processor last = null;
+		for (Processor p : chain)
+		{
+			if (last != null && canFuse(last, p))
+			{
+				Function inner = ((ApplyFunction) last).getFunction();
+				Function outer = ((ApplyFunction) p).getFunction();
+				last = new ApplyFunction(compose(outer, inner));
+				out.set(out.size() - 1, last);
+			}
+			else
+			{
+				out.add(p);
+				last = p;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Determines if two processors can be fused into one.
+	 * @param upstream The processor whose output would be connected to
+	 * the input of the second processor
+	 * @param downstream The second processor
+	 * @return {@code true} if the two processors can be replaced by a
+	 * single one, {@code false} otherwise
+	 */
+	public static boolean canFuse(Processor upstream, Processor downstream)
+	{
+		if (!isFusible(upstream) || !isFusible(downstream))
+		{
+			return false;
+		}
+		Function inner = ((ApplyFunction) upstream).getFunction();
+		Function outer = ((ApplyFunction) downstream).getFunction();
+		return inner.getInputArity() > 0 && inner.getOutputArity() == 1
+				&& outer.getInputArity() == 1;
+	}
+
+	/**
+	 * Determines if a processor is a candidate for fusion.
+	 * @param p The processor
+	 * @return {@code true} if the processor is a direct instance of
+	 * {@link ApplyFunction}, {@code false} otherwise
+	 */
+	public static boolean isFusible(Processor p)
+	{
+		return p != null && p.getClass() == ApplyFunction.class;
+	}
+
+	/**
+	 * Creates a function that feeds the output of a function to the input
+	 * of another. {@link Size} applied to a {@link MapViews.FilterMap} is
+	 * replaced by a single {@link MapViews.CountMatches}, which does not
+	 * create the filtered map.
+	 * @param outer The function to evaluate last. It must be of input
+	 * arity 1.
+	 * @param inner The function to evaluate first. It must be of output
+	 * arity 1.
+	 * @return The composed function
+	 */
+	public static Function compose(Function outer, Function inner)
+	{
+		if (outer == Size.instance && inner instanceof MapViews.FilterMap)
+		{
+			return ((MapViews.FilterMap) inner).count();
+		}
+		return new FunctionTree(outer, inner);
+	}
+}
@@ -0,0 +1,1122 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import beepbeep.PrimitiveNumbers.NumericFunction;
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.json.ParseJson;
+
+/**
+ * Function extracting the values at one or more paths out of a JSON
+ * document given as raw text, without building the element tree of the
+ * whole document. It is a compiled equivalent of the composition of
+ * {@link ca.uqac.lif.cep.json.ParseJson},
+ * {@link ca.uqac.lif.cep.json.JPathFunction} and, depending on the
+ * subclass, {@link ca.uqac.lif.cep.json.NumberValue} or
+ * {@link ca.uqac.lif.cep.json.StringValue}.
+ * <p>
+ * The paths are compiled into a tree when the function is created. The
+ * document is then scanned in a single pass, in which the members and
+ * elements that are not on any path are skipped without being decoded.
+ * Only the text of each value found is then converted: strings without
+ * escape sequences and numbers are converted directly, and other values
+ * are parsed with {@link ca.uqac.lif.cep.json.ParseJson} on their own, so
+ * that the result is the same as if the whole document had been parsed. A
+ * path that does not occur in the document yields the same value as
+ * {@link ca.uqac.lif.cep.json.JPathFunction} does, i.e. {@code null}.
+ * <p>
+ * A path is a sequence of member names separated by dots, each optionally
+ * followed by array indices in square brackets, such as
+ * <tt>a.b[2].c</tt>. The input of the function can be any
+ * {@link CharSequence}, or an array of bytes or a {@link ByteBuffer}
+ * holding a document encoded in UTF-8. The function has one output per
+ * path. If an object has more than one member with the same name, the
+ * last one is used, as with {@link ca.uqac.lif.cep.json.ParseJson}; for
+ * this reason, the scan always reads the document up to its end.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class JsonExtractor extends Function
+{
+	/**
+	 * The paths extracted by the function.
+	 */
+	protected final String[] m_paths;
+
+	/**
+	 * The root of the tree of the compiled paths.
+	 */
+	protected final Node m_root;
+
+	/**
+	 * The text of the document being scanned.
+	 */
+	protected Text m_text;
+
+	/**
+	 * The position of the scan in the document.
+	 */
+	protected int m_pos;
+
+	/**
+	 * The position of the first character of the value of each path, or -1
+	 * if the path has not been found.
+	 */
+	protected final int[] m_starts;
+
+	/**
+	 * The position after the last character of the value of each path.
+	 */
+	protected final int[] m_ends;
+
+	/**
+	 * A reusable view over documents given as character sequences.
+	 */
+	protected final CharText m_charText = new CharText();
+
+	/**
+	 * A reusable view over documents given as bytes.
+	 */
+	protected final ByteText m_byteText = new ByteText();
+
+	/**
+	 * Creates a new extractor.
+	 * @param paths The paths to extract
+	 */
+	public JsonExtractor(String ... paths)
+	{
+		super();
+		m_paths = paths;
+		m_root = new Node();
+		for (int i = 0; i < paths.length; i++)
+		{
+			m_root.add(parsePath(paths[i]), 0, i);
+		}
+		m_starts = new int[paths.length];
+		m_ends = new int[paths.length];
+	}
+
+	/**
+	 * Converts the text of the value found for a path into the output of
+	 * the function.
+	 * @param index The index of the path
+	 * @return The output
+	 */
+	protected abstract Object convert(int index);
+
+	@Override
+	public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+	{
+		scan(inputs[0]);
+		for (int i = 0; i < m_paths.length; i++)
+		{
+			outputs[i] = convert(i);
+		}
+		m_text.release();
+	}
+
+	/**
+	 * Scans a document and finds the value of each path.
+	 * @param document The document
+	 */
+	protected void scan(Object document)
+	{
+		if (document instanceof CharSequence)
+		{
+			m_text = m_charText.wrap((CharSequence) document);
+		}
+		else if (document instanceof byte[])
+		{
+			m_text = m_byteText.wrap(ByteBuffer.wrap((byte[]) document));
+		}
+		else if (document instanceof ByteBuffer)
+		{
+			m_text = m_byteText.wrap((ByteBuffer) document);
+		}
+		else
+		{
+			throw new FunctionException("Cannot extract JSON values from " + (document == null ? "null" : document.getClass().getName()));
+		}
+		for (int i = 0; i < m_starts.length; i++)
+		{
+			m_starts[i] = -1;
+		}
+		m_pos = 0;
+		try
+		{
+			value(m_root);
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			throw new FunctionException("Unexpected end of JSON document");
+		}
+	}
+
+	/**
+	 * Scans a value. The values previously found for the paths going through
+	 * this value are forgotten, so that when an object has more than one
+	 * member with the same name, the last one is used.
+	 * @param n The node of the path tree corresponding to the value
+	 */
+	protected void value(Node n)
+	{
+		for (int i : n.m_paths)
+		{
+			m_starts[i] = -1;
+		}
+		skipWhitespace();
+		int start = m_pos;
+		char c = m_text.charAt(m_pos);
+		if (c == '{' && n.m_members != null)
+		{
+			object(n);
+		}
+		else if (c == '[' && n.m_elements != null)
+		{
+			array(n);
+		}
+		else
+		{
+			skipValue();
+		}
+		if (n.m_targets != null)
+		{
+			for (int i : n.m_targets)
+			{
+				m_starts[i] = start;
+				m_ends[i] = m_pos;
+			}
+		}
+	}
+
+	/**
+	 * Scans an object, descending into the members that are on a path.
+	 * @param n The node of the path tree corresponding to the object
+	 */
+	protected void object(Node n)
+	{
+		m_pos++;
+		skipWhitespace();
+		if (m_text.charAt(m_pos) == '}')
+		{
+			m_pos++;
+			return;
+		}
+		while (true)
+		{
+			expect('"');
+			Node child = member(n);
+			skipWhitespace();
+			expect(':');
+			if (child != null)
+			{
+				value(child);
+			}
+			else
+			{
+				skipWhitespace();
+				skipValue();
+			}
+			skipWhitespace();
+			char c = m_text.charAt(m_pos++);
+			if (c == '}')
+			{
+				return;
+			}
+			if (c != ',')
+			{
+				throw malformed();
+			}
+			skipWhitespace();
+		}
+	}
+
+	/**
+	 * Reads the name of a member, and finds the corresponding node of the
+	 * path tree.
+	 * @param n The node of the path tree corresponding to the object
+	 * @return The node of the member, or {@code null} if the member is on no
+	 * path
+	 */
+	protected Node member(Node n)
+	{
+		int start = m_pos;
+		boolean escaped = false;
+		while (true)
+		{
+			char c = m_text.charAt(m_pos++);
+			if (c == '"')
+			{
+				break;
+			}
+			if (c == '\\')
+			{
+				escaped = true;
+				m_pos++;
+			}
+		}
+		int end = m_pos - 1;
+		if (escaped)
+		{
+			return n.m_members.get(unescape(m_text.decode(start, end)));
+		}
+		String[] names = m_text.isBytes() ? n.m_encodedNames : n.m_names;
+		for (int i = 0; i < names.length; i++)
+		{
+			if (m_text.matches(start, end, names[i]))
+			{
+				return n.m_members.get(n.m_names[i]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Scans an array, descending into the elements that are on a path.
+	 * @param n The node of the path tree corresponding to the array
+	 */
+	protected void array(Node n)
+	{
+		m_pos++;
+		skipWhitespace();
+		if (m_text.charAt(m_pos) == ']')
+		{
+			m_pos++;
+			return;
+		}
+		int index = 0;
+		while (true)
+		{
+			Node child = n.m_elements.get(index);
+			if (child != null)
+			{
+				value(child);
+			}
+			else
+			{
+				skipWhitespace();
+				skipValue();
+			}
+			skipWhitespace();
+			char c = m_text.charAt(m_pos++);
+			if (c == ']')
+			{
+				return;
+			}
+			if (c != ',')
+			{
+				throw malformed();
+			}
+			index++;
+		}
+	}
+
+	/**
+	 * Skips a value without decoding it.
+	 */
+	protected void skipValue()
+	{
+		char c = m_text.charAt(m_pos);
+		if (c == '"')
+		{
+			m_pos++;
+			skipString();
+			return;
+		}
+		if (c == '{' || c == '[')
+		{
+			int depth = 0;
+			do
+			{
+				c = m_text.charAt(m_pos++);
+				if (c == '"')
+				{
+					skipString();
+				}
+				else if (c == '{' || c == '[')
+				{
+					depth++;
+				}
+				else if (c == '}' || c == ']')
+				{
+					depth--;
+				}
+			} while (depth > 0);
+			return;
+		}
+		int len = m_text.length();
+		while (m_pos < len)
+		{
+			c = m_text.charAt(m_pos);
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r')
+			{
+				break;
+			}
+			m_pos++;
+		}
+	}
+
+	/**
+	 * Skips the rest of a string, whose opening quote has been read.
+	 */
+	protected void skipString()
+	{
+		while (true)
+		{
+			char c = m_text.charAt(m_pos++);
+			if (c == '"')
+			{
+				return;
+			}
+			if (c == '\\')
+			{
+				m_pos++;
+			}
+		}
+	}
+
+	/**
+	 * Skips whitespace.
+	 */
+	protected void skipWhitespace()
+	{
+		int len = m_text.length();
+		while (m_pos < len)
+		{
+			char c = m_text.charAt(m_pos);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+			{
+				return;
+			}
+			m_pos++;
+		}
+	}
+
+	/**
+	 * Reads an expected character.
+	 * @param c The character
+	 */
+	protected void expect(char c)
+	{
+		if (m_text.charAt(m_pos++) != c)
+		{
+			throw malformed();
+		}
+	}
+
+	/**
+	 * Creates the exception thrown when the document is not valid JSON.
+	 * @return The exception
+	 */
+	protected FunctionException malformed()
+	{
+		return new FunctionException("Malformed JSON document at position " + (m_pos - 1));
+	}
+
+	/**
+	 * Gets the text of the value found for a path.
+	 * @param index The index of the path
+	 * @return The text, or {@code null} if the path was not found
+	 */
+	protected String getText(int index)
+	{
+		if (m_starts[index] < 0)
+		{
+			return null;
+		}
+		return m_text.decode(m_starts[index], m_ends[index]);
+	}
+
+	/**
+	 * Parses the value found for a path with
+	 * {@link ca.uqac.lif.cep.json.ParseJson}.
+	 * @param index The index of the path
+	 * @return The JSON element, or {@code null} if the path was not found
+	 */
+	protected Object parse(int index)
+	{
+		String text = getText(index);
+		if (text == null)
+		{
+			return null;
+		}
+		Object[] out = new Object[1];
+		ParseJson.instance.evaluate(new Object[] {text}, out);
+		return out[0];
+	}
+
+	/**
+	 * Applies a function to the JSON element found for a path, as it would
+	 * be applied to the output of {@link ca.uqac.lif.cep.json.JPathFunction}.
+	 * @param f The function
+	 * @param index The index of the path
+	 * @return The output of the function
+	 */
+	protected Object apply(Function f, int index)
+	{
+		Object[] out = new Object[1];
+		f.evaluate(new Object[] {parse(index)}, out);
+		return out[0];
+	}
+
+	/**
+	 * Determines if the value found for a path is a string without escape
+	 * sequences.
+	 * @param index The index of the path
+	 * @return {@code true} if the value is such a string
+	 */
+	protected boolean isPlainString(int index)
+	{
+		int start = m_starts[index];
+		int end = m_ends[index];
+		if (start < 0 || m_text.charAt(start) != '"')
+		{
+			return false;
+		}
+		for (int i = start + 1; i < end - 1; i++)
+		{
+			if (m_text.charAt(i) == '\\')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if the value found for a path is a number literal, and if
+	 * so, whether it is an integer that fits in a <tt>long</tt>.
+	 * @param index The index of the path
+	 * @return 2 if the value is such an integer, 1 if it is another number
+	 * literal, 0 if it is not a number literal
+	 */
+	protected int numberKind(int index)
+	{
+		int start = m_starts[index];
+		int end = m_ends[index];
+		if (start < 0)
+		{
+			return 0;
+		}
+		int i = start;
+		if (m_text.charAt(i) == '-')
+		{
+			i++;
+		}
+		if (i == end)
+		{
+			return 0;
+		}
+		boolean integral = true;
+		for (int j = i; j < end; j++)
+		{
+			char c = m_text.charAt(j);
+			if (c == '.' || c == 'e' || c == 'E' || c == '+' || (c == '-' && j > i))
+			{
+				integral = false;
+			}
+			else if (c < '0' || c > '9')
+			{
+				return 0;
+			}
+		}
+		return integral && end - i <= 18 ? 2 : 1;
+	}
+
+	/**
+	 * Parses the value found for a path as an integer. The value must be an
+	 * integer literal that fits in a <tt>long</tt>.
+	 * @param index The index of the path
+	 * @return The integer
+	 */
+	protected long parseLong(int index)
+	{
+		int i = m_starts[index];
+		boolean negative = m_text.charAt(i) == '-';
+		if (negative)
+		{
+			i++;
+		}
+		long x = 0;
+		for (; i < m_ends[index]; i++)
+		{
+			x = x * 10 + (m_text.charAt(i) - '0');
+		}
+		return negative ? -x : x;
+	}
+
+	/**
+	 * Unescapes the name of a member.
+	 * @param s The name, with its escape sequences
+	 * @return The unescaped name
+	 */
+	protected static String unescape(String s)
+	{
+		StringBuilder out = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c != '\\' || i + 1 >= s.length())
+			{
+				out.append(c);
+				continue;
+			}
+			c = s.charAt(++i);
+			switch (c)
+			{
+			case 'n':
+				out.append('\n');
+				break;
+			case 't':
+				out.append('\t');
+				break;
+			case 'r':
+				out.append('\r');
+				break;
+			case 'b':
+				out.append('\b');
+				break;
+			case 'f':
+				out.append('\f');
+				break;
+			case 'u':
+				out.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+				i += 4;
+				break;
+			default:
+				out.append(c);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Splits a path into its segments. A segment is either a member name
+	 * (a {@link String}) or an array index (an {@link Integer}).
+	 * @param path The path
+	 * @return The segments
+	 */
+	protected static Object[] parsePath(String path)
+	{
+		List<Object> segments = new ArrayList<Object>();
+		for (String part : path.split("\\."))
+		{
+			int bracket = part.indexOf('[');
+			String name = bracket < 0 ? part : part.substring(0, bracket);
+			if (!name.isEmpty())
+			{
+				segments.add(name);
+			}
+			while (bracket >= 0)
+			{
+				int close = part.indexOf(']', bracket);
+				if (close < 0)
+				{
+					throw new IllegalArgumentException("Invalid JSON path: " + path);
+				}
+				segments.add(Integer.parseInt(part.substring(bracket + 1, close).trim()));
+				bracket = part.indexOf('[', close);
+			}
+		}
+		return segments.toArray();
+	}
+
+	@Override
+	public int getInputArity()
+	{
+		return 1;
+	}
+
+	@Override
+	public int getOutputArity()
+	{
+		return m_paths.length;
+	}
+
+	@Override
+	public void getInputTypesFor(Set<Class<?>> classes, int index)
+	{
+		classes.add(Object.class);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + Arrays.toString(m_paths);
+	}
+
+	/**
+	 * A node of the tree of compiled paths.
+	 */
+	protected static class Node
+	{
+		/**
+		 * The indices of the paths ending at this node, or {@code null} if
+		 * there is none.
+		 */
+		protected int[] m_targets;
+
+		/**
+		 * The indices of the paths ending at this node or below it.
+		 */
+		protected int[] m_paths = new int[0];
+
+		/**
+		 * The children of this node for member names, or {@code null} if there
+		 * is none.
+		 */
+		protected Map<String,Node> m_members;
+
+		/**
+		 * The names of the members in {@link #m_members}.
+		 */
+		protected String[] m_names = new String[0];
+
+		/**
+		 * The names of the members, encoded in UTF-8 and read back as
+		 * ISO-8859-1, so that they can be compared with the bytes of a
+		 * document character by character.
+		 */
+		protected String[] m_encodedNames = new String[0];
+
+		/**
+		 * The children of this node for array indices, or {@code null} if
+		 * there is none.
+		 */
+		protected Map<Integer,Node> m_elements;
+
+		/**
+		 * Adds a path below this node.
+		 * @param segments The segments of the path
+		 * @param from The index of the first segment to add
+		 * @param target The index of the path
+		 */
+		public void add(Object[] segments, int from, int target)
+		{
+			m_paths = Arrays.copyOf(m_paths, m_paths.length + 1);
+			m_paths[m_paths.length - 1] = target;
+			if (from == segments.length)
+			{
+				int[] targets = m_targets == null ? new int[1] : Arrays.copyOf(m_targets, m_targets.length + 1);
+				targets[targets.length - 1] = target;
+				m_targets = targets;
+				return;
+			}
+			Object s = segments[from];
+			Node child;
+			if (s instanceof String)
+			{
+				if (m_members == null)
+				{
+					m_members = new HashMap<String,Node>();
+				}
+				child = m_members.get(s);
+				if (child == null)
+				{
+					child = new Node();
+					m_members.put((String) s, child);
+					m_names = m_members.keySet().toArray(new String[0]);
+					m_encodedNames = new String[m_names.length];
+					for (int i = 0; i < m_names.length; i++)
+					{
+						m_encodedNames[i] = new String(m_names[i].getBytes(ByteText.UTF_8), ByteText.LATIN_1);
+					}
+				}
+			}
+			else
+			{
+				if (m_elements == null)
+				{
+					m_elements = new HashMap<Integer,Node>();
+				}
+				child = m_elements.get(s);
+				if (child == null)
+				{
+					child = new Node();
+					m_elements.put((Integer) s, child);
+				}
+			}
+			child.add(segments, from + 1, target);
+		}
+	}
+
+	/**
+	 * The text of a document, as seen by the scanner.
+	 */
+	protected abstract static class Text
+	{
+		/**
+		 * Gets the character at a position.
+		 * @param index The position
+		 * @return The character
+		 */
+		public abstract char charAt(int index);
+
+		/**
+		 * Gets the length of the document.
+		 * @return The length
+		 */
+		public abstract int length();
+
+		/**
+		 * Decodes a region of the document.
+		 * @param start The start of the region
+		 * @param end The end of the region
+		 * @return The text of the region
+		 */
+		public abstract String decode(int start, int end);
+
+		/**
+		 * Determines if the document is given as bytes.
+		 * @return {@code true} if the document is given as bytes
+		 */
+		public abstract boolean isBytes();
+
+		/**
+		 * Forgets the current document.
+		 */
+		public abstract void release();
+
+		/**
+		 * Checks if a region of the document is equal to a string.
+		 * @param start The start of the region
+		 * @param end The end of the region
+		 * @param s The string
+		 * @return {@code true} if the region and the string are equal
+		 */
+		public boolean matches(int start, int end, String s)
+		{
+			if (end - start != s.length())
+			{
+				return false;
+			}
+			for (int i = 0; i < s.length(); i++)
+			{
+				if (charAt(start + i) != s.charAt(i))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A document given as a character sequence.
+	 */
+	protected static class CharText extends Text
+	{
+		/**
+		 * The characters of the document.
+		 */
+		protected CharSequence m_chars;
+
+		/**
+		 * Sets the document.
+		 * @param s The characters of the document
+		 * @return This text
+		 */
+		public CharText wrap(CharSequence s)
+		{
+			m_chars = s;
+			return this;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			return m_chars.charAt(index);
+		}
+
+		@Override
+		public int length()
+		{
+			return m_chars.length();
+		}
+
+		@Override
+		public String decode(int start, int end)
+		{
+			return m_chars.subSequence(start, end).toString();
+		}
+
+		@Override
+		public boolean isBytes()
+		{
+			return false;
+		}
+
+		@Override
+		public void release()
+		{
+			m_chars = null;
+		}
+	}
+
+	/**
+	 * A document encoded in UTF-8. Each byte is seen by the scanner as a
+	 * character; since all the characters that delimit JSON values are
+	 * ASCII, the bytes of multi-byte characters can never be mistaken for
+	 * them.
+	 */
+	protected static class ByteText extends Text
+	{
+		/**
+		 * The UTF-8 charset.
+		 */
+		protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+		/**
+		 * The ISO-8859-1 charset.
+		 */
+		protected static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+		/**
+		 * The bytes of the document.
+		 */
+		protected ByteBuffer m_bytes;
+
+		/**
+		 * The position of the document in {@link #m_bytes}.
+		 */
+		protected int m_offset;
+
+		/**
+		 * The length of the document.
+		 */
+		protected int m_length;
+
+		/**
+		 * Sets the document. The document is made of the bytes between the
+		 * position and the limit of the buffer.
+		 * @param b The buffer
+		 * @return This text
+		 */
+		public ByteText wrap(ByteBuffer b)
+		{
+			m_bytes = b;
+			m_offset = b.position();
+			m_length = b.remaining();
+			return this;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			if (index >= m_length)
+			{
+				throw new IndexOutOfBoundsException();
+			}
+			return (char) (m_bytes.get(m_offset + index) & 0xff);
+		}
+
+		@Override
+		public int length()
+		{
+			return m_length;
+		}
+
+		@Override
+		public String decode(int start, int end)
+		{
+			if (m_bytes.hasArray())
+			{
+				return new String(m_bytes.array(), m_bytes.arrayOffset() + m_offset + start, end - start, UTF_8);
+			}
+			byte[] b = new byte[end - start];
+			for (int i = 0; i < b.length; i++)
+			{
+				b[i] = m_bytes.get(m_offset + start + i);
+			}
+			return new String(b, UTF_8);
+		}
+
+		@Override
+		public boolean isBytes()
+		{
+			return true;
+		}
+
+		@Override
+		public void release()
+		{
+			m_bytes = null;
+		}
+	}
+
+	/**
+	 * Extracts the JSON elements at the paths, like
+	 * {@link ca.uqac.lif.cep.json.JPathFunction}. Only the elements found
+	 * are parsed.
+	 */
+	public static class Elements extends JsonExtractor
+	{
+		public Elements(String ... paths)
+		{
+			super(paths);
+		}
+
+		@Override
+		protected Object convert(int index)
+		{
+			return parse(index);
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return Object.class;
+		}
+
+		@Override
+		public Elements duplicate(boolean with_state)
+		{
+			return new Elements(m_paths);
+		}
+	}
+
+	/**
+	 * Extracts the strings at the paths, like the composition of
+	 * {@link ca.uqac.lif.cep.json.JPathFunction} and
+	 * {@link ca.uqac.lif.cep.json.StringValue}.
+	 */
+	public static class Strings extends JsonExtractor
+	{
+		public Strings(String ... paths)
+		{
+			super(paths);
+		}
+
+		@Override
+		protected Object convert(int index)
+		{
+			if (isPlainString(index))
+			{
+				return m_text.decode(m_starts[index] + 1, m_ends[index] - 1);
+			}
+			return apply(ca.uqac.lif.cep.json.StringValue.instance, index);
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return String.class;
+		}
+
+		@Override
+		public Strings duplicate(boolean with_state)
+		{
+			return new Strings(m_paths);
+		}
+	}
+
+	/**
+	 * Extracts the numbers at the paths, like the composition of
+	 * {@link ca.uqac.lif.cep.json.JPathFunction} and
+	 * {@link ca.uqac.lif.cep.json.NumberValue}. Only the value found at each
+	 * path is parsed, and it is converted by
+	 * {@link ca.uqac.lif.cep.json.NumberValue}; the numbers are therefore
+	 * boxed exactly as in the composition. When the function is an operand
+	 * of the functions of {@link PrimitiveNumbers}, the number at the first
+	 * path is rather parsed directly out of the text of the document into a
+	 * primitive value, without creating any object.
+	 */
+	public static class Numbers extends JsonExtractor implements NumericFunction
+	{
+		public Numbers(String ... paths)
+		{
+			super(paths);
+		}
+
+		@Override
+		protected Object convert(int index)
+		{
+			return apply(ca.uqac.lif.cep.json.NumberValue.instance, index);
+		}
+
+		@Override
+		public boolean isIntegral()
+		{
+			return false;
+		}
+
+		@Override
+		public double evaluateDouble(Object[] inputs, Context context, EventTracker tracker)
+		{
+			scan(inputs[0]);
+			double x;
+			switch (numberKind(0))
+			{
+			case 2:
+				x = parseLong(0);
+				break;
+			case 1:
+				x = Double.parseDouble(getText(0));
+				break;
+			default:
+				x = ((Number) apply(ca.uqac.lif.cep.json.NumberValue.instance, 0)).doubleValue();
+			}
+			m_text.release();
+			return x;
+		}
+
+		@Override
+		public long evaluateLong(Object[] inputs, Context context, EventTracker tracker)
+		{
+			scan(inputs[0]);
+			long x;
+			switch (numberKind(0))
+			{
+			case 2:
+				x = parseLong(0);
+				break;
+			case 1:
+				x = (long) Double.parseDouble(getText(0));
+				break;
+			default:
+				x = ((Number) apply(ca.uqac.lif.cep.json.NumberValue.instance, 0)).longValue();
+			}
+			m_text.release();
+			return x;
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return Number.class;
+		}
+
+		@Override
+		public Numbers duplicate(boolean with_state)
+		{
+			return new Numbers(m_paths);
+		}
+	}
+}
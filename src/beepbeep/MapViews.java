@@ -0,0 +1,400 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.cep.util.Maps;
+
+/**
+ * Functions on maps that return read-only views of their input instead of
+ * copying it into a new collection. Creating a view takes constant time,
+ * whatever the size of the map; the work is done only if, and when, the
+ * contents of the view are accessed.
+ * <p>
+ * A view reflects the map it was created from. In a chain of processors,
+ * where each event is consumed before the next one is produced, this makes
+ * no difference; however, a view that is kept aside while its source map
+ * is modified shows the modifications. Wherever a snapshot is needed, the
+ * eager functions of {@link Maps} should be used instead.
+ *
+ * @author Sylvain Hallé
+ */
+public class MapViews
+{
+	private MapViews()
+	{
+		super();
+	}
+
+	/**
+	 * Determines if an entry of a map satisfies a condition.
+	 * @param condition The condition, which receives the key and the value
+	 * of the entry as its two arguments
+	 * @param in An array of size 2 used to pass the entry to the condition
+	 * @param out An array of size 1 used to get the result of the condition
+	 * @param key The key of the entry
+	 * @param value The value of the entry
+	 * @return {@code true} if the condition evaluates to {@code true}
+	 */
+	protected static boolean matches(Function condition, Object[] in, Object[] out, Object key, Object value)
+	{
+		in[0] = key;
+		in[1] = value;
+		condition.evaluate(in, out);
+		return Boolean.TRUE.equals(out[0]);
+	}
+
+	/**
+	 * A variant of {@link Maps.FilterMap} returning a {@link FilteredMap}
+	 * view of the entries of its input map that satisfy the condition.
+	 */
+	public static class FilterMap extends Maps.FilterMap
+	{
+		/**
+		 * The condition on the entries of the map.
+		 */
+		protected final Function m_condition;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param condition The condition on the entries of the map, which
+		 * receives the key and the value of an entry as its two arguments
+		 */
+		public FilterMap(Function condition)
+		{
+			super(condition);
+			m_condition = condition;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Map getValue(Map x)
+		{
+			return new FilteredMap(x, m_condition);
+		}
+
+		/**
+		 * Gets a function counting the entries of a map that satisfy the same
+		 * condition as this function. It returns the same value as
+		 * {@link ca.uqac.lif.cep.util.Size} applied to the output of this
+		 * function.
+		 * @return The function
+		 */
+		public CountMatches count()
+		{
+			return new CountMatches(m_condition);
+		}
+
+		@Override
+		public FilterMap duplicate(boolean with_state)
+		{
+			return new FilterMap(m_condition.duplicate(with_state));
+		}
+	}
+
+	/**
+	 * Read-only view of the entries of a map that satisfy a condition. The
+	 * view keeps nothing but the map and the condition: each method
+	 * evaluates the condition on the current entries of the map, so that
+	 * all of them agree with each other even after the map is modified.
+	 * {@link #size()} counts the matching entries, {@link #isEmpty()} stops
+	 * at the first one, an iteration evaluates the condition on each entry
+	 * as it goes, and {@link #get(Object)} and {@link #containsKey(Object)}
+	 * only evaluate the condition on the entry they look up. A view whose
+	 * contents are accessed many times should therefore be copied into a
+	 * map first.
+	 */
+	public static class FilteredMap extends AbstractMap<Object,Object>
+	{
+		/**
+		 * The map being filtered.
+		 */
+		protected final Map<?,?> m_map;
+
+		/**
+		 * The condition on the entries of the map.
+		 */
+		protected final Function m_condition;
+
+		/**
+		 * An array used to pass an entry to the condition.
+		 */
+		protected final Object[] m_in = new Object[2];
+
+		/**
+		 * An array used to get the result of the condition.
+		 */
+		protected final Object[] m_out = new Object[1];
+
+		/**
+		 * The set of entries of the view, or {@code null} if it has not been
+		 * requested yet.
+		 */
+		protected Set<Map.Entry<Object,Object>> m_entrySet;
+
+		/**
+		 * Creates a new view.
+		 * @param map The map being filtered
+		 * @param condition The condition on the entries of the map
+		 */
+		public FilteredMap(Map<?,?> map, Function condition)
+		{
+			super();
+			m_map = map;
+			m_condition = condition;
+		}
+
+		@Override
+		public int size()
+		{
+			int size = 0;
+			for (Map.Entry<?,?> e : m_map.entrySet())
+			{
+				if (matches(m_condition, m_in, m_out, e.getKey(), e.getValue()))
+				{
+					size++;
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			for (Map.Entry<?,?> e : m_map.entrySet())
+			{
+				if (matches(m_condition, m_in, m_out, e.getKey(), e.getValue()))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			Object value = m_map.get(key);
+			return (value != null || m_map.containsKey(key)) && matches(m_condition, m_in, m_out, key, value);
+		}
+
+		@Override
+		public Object get(Object key)
+		{
+			Object value = m_map.get(key);
+			if ((value != null || m_map.containsKey(key)) && matches(m_condition, m_in, m_out, key, value))
+			{
+				return value;
+			}
+			return null;
+		}
+
+		@Override
+		public Set<Map.Entry<Object,Object>> entrySet()
+		{
+			if (m_entrySet == null)
+			{
+				m_entrySet = new AbstractSet<Map.Entry<Object,Object>>()
+				{
+					@Override
+					public Iterator<Map.Entry<Object,Object>> iterator()
+					{
+						return new FilteredIterator();
+					}
+
+					@Override
+					public int size()
+					{
+						return FilteredMap.this.size();
+					}
+				};
+			}
+			return m_entrySet;
+		}
+
+		/**
+		 * Read-only iterator over the entries of the map that satisfy the
+		 * condition, which evaluates the condition on each entry as it goes.
+		 */
+		protected class FilteredIterator implements Iterator<Map.Entry<Object,Object>>
+		{
+			/**
+			 * The iterator over the entries of the map.
+			 */
+			protected final Iterator<? extends Map.Entry<?,?>> m_iterator = m_map.entrySet().iterator();
+
+			/**
+			 * The next entry that satisfies the condition, or {@code null} if it
+			 * has not been found yet.
+			 */
+			protected Map.Entry<Object,Object> m_next;
+
+			@Override
+			public boolean hasNext()
+			{
+				while (m_next == null && m_iterator.hasNext())
+				{
+					Map.Entry<?,?> e = m_iterator.next();
+					if (matches(m_condition, m_in, m_out, e.getKey(), e.getValue()))
+					{
+						m_next = new AbstractMap.SimpleImmutableEntry<Object,Object>(e.getKey(), e.getValue());
+					}
+				}
+				return m_next != null;
+			}
+
+			@Override
+			public Map.Entry<Object,Object> next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				Map.Entry<Object,Object> e = m_next;
+				m_next = null;
+				return e;
+			}
+		}
+	}
+
+	/**
+	 * Function counting the entries of a map that satisfy a condition,
+	 * without creating any collection. It is the fusion of
+	 * {@link Maps.FilterMap} and {@link ca.uqac.lif.cep.util.Size}.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class CountMatches extends UnaryFunction<Map,Integer>
+	{
+		/**
+		 * The condition on the entries of the map.
+		 */
+		protected final Function m_condition;
+
+		/**
+		 * An array used to pass an entry to the condition.
+		 */
+		protected final Object[] m_in = new Object[2];
+
+		/**
+		 * An array used to get the result of the condition.
+		 */
+		protected final Object[] m_out = new Object[1];
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param condition The condition on the entries of the map, which
+		 * receives the key and the value of an entry as its two arguments
+		 */
+		public CountMatches(Function condition)
+		{
+			super(Map.class, Integer.class);
+			m_condition = condition;
+		}
+
+		@Override
+		public Integer getValue(Map x)
+		{
+			int count = 0;
+			for (Object o : x.entrySet())
+			{
+				Map.Entry e = (Map.Entry) o;
+				if (matches(m_condition, m_in, m_out, e.getKey(), e.getValue()))
+				{
+					count++;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public CountMatches duplicate(boolean with_state)
+		{
+			return new CountMatches(m_condition.duplicate(with_state));
+		}
+	}
+
+	/**
+	 * Function returning a read-only view of the keys of a map.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class Keys extends UnaryFunction<Map,Set>
+	{
+		/**
+		 * A single publicly visible instance of the function.
+		 */
+		public static final Keys instance = new Keys();
+
+		protected Keys()
+		{
+			super(Map.class, Set.class);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Set getValue(Map x)
+		{
+			return Collections.unmodifiableSet(x.keySet());
+		}
+
+		@Override
+		public Keys duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Function returning a read-only view of the values of a map.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class Values extends UnaryFunction<Map,Collection>
+	{
+		/**
+		 * A single publicly visible instance of the function.
+		 */
+		public static final Values instance = new Values();
+
+		protected Values()
+		{
+			super(Map.class, Collection.class);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Collection getValue(Map x)
+		{
+			return Collections.unmodifiableCollection(x.values());
+		}
+
+		@Override
+		public Values duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+}
@@ -0,0 +1,499 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Source reading delimited chunks of text out of a list of files, which
+ * are memory-mapped one after the other. Each file is mapped in windows of
+ * a fixed size with {@link FileChannel#map(FileChannel.MapMode, long, long)},
+ * and delimiters are searched directly in the mapped bytes. A chunk is
+ * decoded into a character string only when it is output; optionally, the
+ * processor can output instead a {@link MappedText} that decodes its
+ * contents only when they are first accessed.
+ * <p>
+ * Delimiters are searched byte by byte; therefore, the charset used to
+ * decode the files must be a superset of ASCII, such as UTF-8 or
+ * ISO-8859-1. In line mode, the delimiter is the newline character, and a
+ * carriage return preceding it is removed from the line. As with the
+ * splice sources of BeepBeep, the files are read in sequence, and their
+ * contents are output as if they were a single stream.
+ *
+ * @author Sylvain Hallé
+ */
+public class MappedLineSource extends SynchronousProcessor implements Checkpointable
+{
+	/**
+	 * The default size of the window of a file that is mapped at any given
+	 * time (64 MB).
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The names of the files to read.
+	 */
+	protected final String[] m_filenames;
+
+	/**
+	 * The sequence of bytes separating two chunks of text.
+	 */
+	protected final byte[] m_delimiter;
+
+	/**
+	 * Whether the processor reads lines, in which case a carriage return
+	 * at the end of a chunk is removed.
+	 */
+	protected final boolean m_lineMode;
+
+	/**
+	 * The charset used to decode the files.
+	 */
+	protected final Charset m_charset;
+
+	/**
+	 * Whether the processor outputs {@link MappedText}s instead of strings.
+	 */
+	protected boolean m_lazy = false;
+
+	/**
+	 * The size of the windows into which files are mapped.
+	 */
+	protected int m_windowSize = DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * The index of the file currently read, in {@link #m_filenames}.
+	 */
+	protected int m_fileIndex;
+
+	/**
+	 * The channel to the file currently read, or {@code null} if no file is
+	 * open.
+	 */
+	protected FileChannel m_channel;
+
+	/**
+	 * The size of the file currently read.
+	 */
+	protected long m_fileSize;
+
+	/**
+	 * The offset in the file of the first byte of the current window.
+	 */
+	protected long m_windowStart;
+
+	/**
+	 * The current window of the file, or {@code null} if no file is open.
+	 */
+	protected MappedByteBuffer m_buffer;
+
+	/**
+	 * A buffer used to copy the bytes of a chunk before decoding them.
+	 */
+	protected byte[] m_bytes = new byte[1024];
+
+	/**
+	 * Creates a new source reading lines.
+	 * @param filenames The names of the files to read
+	 */
+	public MappedLineSource(String ... filenames)
+	{
+		this(Charset.forName("UTF-8"), "\n", true, filenames);
+	}
+
+	/**
+	 * Creates a new source.
+	 * @param charset The charset used to decode the files
+	 * @param delimiter The string separating two chunks of text
+	 * @param line_mode Set to {@code true} to remove a carriage return at the
+	 * end of a chunk
+	 * @param filenames The names of the files to read
+	 */
+	public MappedLineSource(Charset charset, String delimiter, boolean line_mode, String ... filenames)
+	{
+		super(0, 1);
+		m_filenames = filenames;
+		m_charset = charset;
+		m_delimiter = delimiter.getBytes(charset);
+		m_lineMode = line_mode;
+		m_fileIndex = 0;
+	}
+
+	/**
+	 * Sets whether the processor outputs {@link MappedText}s that are decoded
+	 * on demand, instead of strings.
+	 * @param b Set to {@code true} to output {@link MappedText}s
+	 * @return This processor
+	 */
+	public MappedLineSource setLazy(boolean b)
+	{
+		m_lazy = b;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the windows into which files are mapped. A chunk of
+	 * text longer than this size causes the window to grow.
+	 * @param size The size, in bytes
+	 * @return This processor
+	 */
+	public MappedLineSource setWindowSize(int size)
+	{
+		m_windowSize = size;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		try
+		{
+			Object chunk = nextChunk();
+			if (chunk == null)
+			{
+				return false;
+			}
+			outputs.add(new Object[] {chunk});
+			return true;
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+	}
+
+	/**
+	 * Reads the next chunk of text. A chunk must fit in a single window,
+	 * which cannot be larger than 2 GB.
+	 * @return The chunk, or {@code null} if all files have been read
+	 * @throws IOException If reading a file fails, or if a chunk is larger
+	 * than 2 GB
+	 */
+	protected Object nextChunk() throws IOException
+	{
+		while (true)
+		{
+			if (m_buffer == null && !openNext())
+			{
+				return null;
+			}
+			int start = m_buffer.position();
+			int limit = m_buffer.limit();
+			int end = indexOf(m_buffer, start, limit);
+			if (end >= 0)
+			{
+				m_buffer.position(end + m_delimiter.length);
+				return makeChunk(start, end);
+			}
+			if (m_windowStart + limit < m_fileSize)
+			{
+				// The chunk continues past the current window
+				if (start == 0 && limit == Integer.MAX_VALUE)
+				{
+					throw new IOException("Chunk longer than " + Integer.MAX_VALUE + " bytes at offset " + m_windowStart + " of " + m_filenames[m_fileIndex]);
+				}
+				map(m_windowStart + start, start == 0 ? 2 * (long) limit : m_windowSize);
+				continue;
+			}
+			if (start < limit)
+			{
+				m_buffer.position(limit);
+				return makeChunk(start, limit);
+			}
+			close();
+			m_fileIndex++;
+		}
+	}
+
+	/**
+	 * Opens the next file to read, skipping empty files.
+	 * @return {@code true} if a file was opened, {@code false} if all files
+	 * have been read
+	 * @throws IOException If opening a file fails
+	 */
+	@SuppressWarnings("resource")
+	protected boolean openNext() throws IOException
+	{
+		while (m_fileIndex < m_filenames.length)
+		{
+			m_channel = new RandomAccessFile(m_filenames[m_fileIndex], "r").getChannel();
+			m_fileSize = m_channel.size();
+			if (m_fileSize > 0)
+			{
+				map(0, m_windowSize);
+				return true;
+			}
+			close();
+			m_fileIndex++;
+		}
+		return false;
+	}
+
+	/**
+	 * Maps a window of the current file.
+	 * @param start The offset of the window in the file
+	 * @param size The size of the window; it is truncated to the end of the
+	 * file
+	 * @throws IOException If mapping the file fails
+	 */
+	protected void map(long start, long size) throws IOException
+	{
+		long actual = Math.min(Math.min(size, Integer.MAX_VALUE), m_fileSize - start);
+		m_windowStart = start;
+		m_buffer = m_channel.map(FileChannel.MapMode.READ_ONLY, start, actual);
+	}
+
+	/**
+	 * Closes the file currently read.
+	 * @throws IOException If closing the file fails
+	 */
+	protected void close() throws IOException
+	{
+		m_buffer = null;
+		if (m_channel != null)
+		{
+			m_channel.close();
+			m_channel = null;
+		}
+	}
+
+	/**
+	 * Finds the first occurrence of the delimiter in the current window.
+	 * @param buffer The window
+	 * @param start The position where to start searching
+	 * @param limit The position where to stop searching
+	 * @return The position of the delimiter, or -1 if it does not occur
+	 */
+	protected int indexOf(ByteBuffer buffer, int start, int limit)
+	{
+		byte first = m_delimiter[0];
+		int last = limit - m_delimiter.length;
+		for (int i = start; i <= last; i++)
+		{
+			if (buffer.get(i) != first)
+			{
+				continue;
+			}
+			boolean found = true;
+			for (int j = 1; j < m_delimiter.length && found; j++)
+			{
+				found = buffer.get(i + j) == m_delimiter[j];
+			}
+			if (found)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates the event corresponding to a chunk of the current window.
+	 * @param start The position of the first byte of the chunk
+	 * @param end The position after the last byte of the chunk
+	 * @return The event
+	 */
+	protected Object makeChunk(int start, int end)
+	{
+		if (m_lineMode && end > start && m_buffer.get(end - 1) == '\r')
+		{
+			end--;
+		}
+		int len = end - start;
+		if (m_lazy)
+		{
+			ByteBuffer view = m_buffer.duplicate();
+			view.limit(end);
+			view.position(start);
+			return new MappedText(view.slice(), m_charset);
+		}
+		if (m_bytes.length < len)
+		{
+			m_bytes = new byte[Math.max(len, 2 * m_bytes.length)];
+		}
+		int position = m_buffer.position();
+		m_buffer.position(start);
+		m_buffer.get(m_bytes, 0, len);
+		m_buffer.position(position);
+		return new String(m_bytes, 0, len, m_charset);
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+		m_fileIndex = 0;
+	}
+
+	@Override
+	public MappedLineSource duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a source with its state");
+		}
+		MappedLineSource s = new MappedLineSource(m_charset, new String(m_delimiter, m_charset), m_lineMode, m_filenames);
+		s.m_lazy = m_lazy;
+		s.m_windowSize = m_windowSize;
+		return s;
+	}
+
+	/**
+	 * Writes the state of the source, which is the index of the file being
+	 * read and the offset in this file of the next chunk to read.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		Checkpoint.writeVarLong(out, m_filenames.length);
+		Checkpoint.writeVarLong(out, m_fileIndex);
+		Checkpoint.writeVarLong(out, m_buffer == null ? 0 : m_windowStart + m_buffer.position());
+	}
+
+	/**
+	 * Reads the state of the source. The file being read is opened, and
+	 * the window starting at the offset of the next chunk is mapped; the
+	 * chunks before it are not read again.
+	 */
+	@SuppressWarnings("resource")
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		Checkpoint.checkParameter("number of files", m_filenames.length, Checkpoint.readVarLong(in));
+		int index = Checkpoint.readSize(in);
+		long offset = Checkpoint.readVarLong(in);
+		close();
+		m_fileIndex = index;
+		if (offset <= 0 || index >= m_filenames.length)
+		{
+			return;
+		}
+		m_channel = new RandomAccessFile(m_filenames[index], "r").getChannel();
+		m_fileSize = m_channel.size();
+		if (offset < m_fileSize)
+		{
+			map(offset, m_windowSize);
+		}
+		else
+		{
+			close();
+			m_fileIndex++;
+		}
+	}
+
+	/**
+	 * A read-only view over a chunk of a mapped file, whose characters are
+	 * decoded only when they are first accessed. The view remains valid
+	 * after the source has moved on to other chunks or files.
+	 */
+	public static class MappedText implements CharSequence
+	{
+		/**
+		 * The bytes of the chunk.
+		 */
+		protected final ByteBuffer m_bytes;
+
+		/**
+		 * The charset used to decode the bytes.
+		 */
+		protected final Charset m_charset;
+
+		/**
+		 * The decoded text, or {@code null} if it has not been decoded yet.
+		 */
+		protected String m_text;
+
+		/**
+		 * Creates a new view.
+		 * @param bytes The bytes of the chunk
+		 * @param charset The charset used to decode the bytes
+		 */
+		public MappedText(ByteBuffer bytes, Charset charset)
+		{
+			super();
+			m_bytes = bytes;
+			m_charset = charset;
+		}
+
+		/**
+		 * Gets the number of bytes of the chunk. Unlike {@link #length()}, this
+		 * method does not decode the chunk.
+		 * @return The number of bytes
+		 */
+		public int byteLength()
+		{
+			return m_bytes.remaining();
+		}
+
+		/**
+		 * Gets a read-only buffer over the bytes of the chunk.
+		 * @return The buffer
+		 */
+		public ByteBuffer getBytes()
+		{
+			return m_bytes.asReadOnlyBuffer();
+		}
+
+		@Override
+		public int length()
+		{
+			return toString().length();
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			return toString().charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString()
+		{
+			if (m_text == null)
+			{
+				m_text = m_charset.decode(m_bytes.duplicate()).toString();
+			}
+			return m_text;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.util.Bags;
+
+/**
+ * A variant of {@link Bags.ApplyToAll} that evaluates its function on the
+ * elements of large collections in parallel.
+ * <p>
+ * Collections with fewer elements than a threshold are handled by
+ * {@link Bags.ApplyToAll} itself, on the calling thread. Above the
+ * threshold, the elements of a list, a set or an array are split into
+ * chunks that are processed by the tasks of the common
+ * {@link ForkJoinPool}; the calling thread takes part in the work, and
+ * waits until all the chunks are done. Each output value is written at the
+ * position of its input element, so that the output list or array has the
+ * same order as the input.
+ * <p>
+ * A function that {@link TreeBuilder} knows to be pure, such as the
+ * arithmetic functions of {@link ca.uqac.lif.cep.util.Numbers}, is shared
+ * by all the tasks. Any other function, including function trees, is
+ * {@link Function#duplicate() duplicated} for each chunk, so that no two
+ * threads evaluate the same instance at the same time; such a function must
+ * not depend on a state accumulated over the elements.
+ *
+ * @author Sylvain Hallé
+ */
+public class ParallelApplyToAll extends Bags.ApplyToAll
+{
+	/**
+	 * The default minimum number of elements of a collection processed in
+	 * parallel.
+	 */
+	public static final int DEFAULT_THRESHOLD = 8192;
+
+	/**
+	 * The minimum number of elements of a chunk.
+	 */
+	protected static final int MIN_CHUNK = 512;
+
+	/**
+	 * The function applied to each element.
+	 */
+	protected final Function m_function;
+
+	/**
+	 * The minimum number of elements of a collection processed in parallel.
+	 */
+	protected int m_threshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Creates a new instance of the function.
+	 * @param f The function applied to each element
+	 */
+	public ParallelApplyToAll(Function f)
+	{
+		super(f);
+		m_function = f;
+	}
+
+	/**
+	 * Sets the minimum number of elements of a collection processed in
+	 * parallel.
+	 * @param threshold The number of elements
+	 * @return This function
+	 */
+	public ParallelApplyToAll setThreshold(int threshold)
+	{
+		m_threshold = Math.max(1, threshold);
+		return this;
+	}
+
+	@Override
+	public Object getValue(Object x)
+	{
+		if (x instanceof List || x instanceof Set)
+		{
+			Collection<?> c = (Collection<?>) x;
+			if (c.size() < m_threshold)
+			{
+				return super.getValue(x);
+			}
+			Object[] values = applyAll(c.toArray());
+			if (x instanceof Set)
+			{
+				return new HashSet<Object>(Arrays.asList(values));
+			}
+			return new ArrayList<Object>(Arrays.asList(values));
+		}
+		if (x instanceof Object[] && ((Object[]) x).length >= m_threshold)
+		{
+			return applyAll((Object[]) x);
+		}
+		return super.getValue(x);
+	}
+
+	/**
+	 * Applies the function to all the elements of an array in parallel.
+	 * @param elements The elements
+	 * @return A new array with the values of the function
+	 */
+	protected Object[] applyAll(Object[] elements)
+	{
+		Object[] values = new Object[elements.length];
+		int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+		int chunk = Math.max(MIN_CHUNK, elements.length / (4 * parallelism));
+		ForkJoinPool.commonPool().invoke(new Chunk(elements, values, 0, elements.length, chunk, TreeBuilder.isPure(m_function)));
+		return values;
+	}
+
+	@Override
+	public ParallelApplyToAll duplicate(boolean with_state)
+	{
+		ParallelApplyToAll f = new ParallelApplyToAll(m_function.duplicate(with_state));
+		f.m_threshold = m_threshold;
+		return f;
+	}
+
+	/**
+	 * Task applying the function to a range of elements, splitting it in
+	 * two while it is larger than a chunk.
+	 */
+	protected class Chunk extends RecursiveAction
+	{
+		/**
+		 * Dummy UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The elements.
+		 */
+		protected final Object[] m_elements;
+
+		/**
+		 * The array where the values of the function are written.
+		 */
+		protected final Object[] m_values;
+
+		/**
+		 * The position of the first element of the range.
+		 */
+		protected final int m_start;
+
+		/**
+		 * The position after the last element of the range.
+		 */
+		protected final int m_end;
+
+		/**
+		 * The maximum number of elements processed without splitting the
+		 * range.
+		 */
+		protected final int m_chunk;
+
+		/**
+		 * Whether the function can be shared between tasks.
+		 */
+		protected final boolean m_shared;
+
+		public Chunk(Object[] elements, Object[] values, int start, int end, int chunk, boolean shared)
+		{
+			super();
+			m_elements = elements;
+			m_values = values;
+			m_start = start;
+			m_end = end;
+			m_chunk = chunk;
+			m_shared = shared;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_end - m_start > m_chunk)
+			{
+				int middle = (m_start + m_end) >>> 1;
+				invokeAll(new Chunk(m_elements, m_values, m_start, middle, m_chunk, m_shared),
+						new Chunk(m_elements, m_values, middle, m_end, m_chunk, m_shared));
+				return;
+			}
+			Function f;
+			if (m_shared)
+			{
+				f = m_function;
+			}
+			else
+			{
+				synchronized (m_function)
+				{
+					f = m_function.duplicate();
+				}
+			}
+			Object[] in = new Object[1];
+			Object[] out = new Object[1];
+			for (int i = m_start; i < m_end; i++)
+			{
+				in[0] = m_elements[i];
+				f.evaluate(in, out);
+				m_values[i] = out[0];
+			}
+		}
+	}
+}
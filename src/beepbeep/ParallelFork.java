@@ -0,0 +1,316 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * A variant of {@link ca.uqac.lif.cep.tmf.Fork} where each branch runs on
+ * its own thread. Each input event is put in a bounded buffer for each
+ * branch; the worker of a branch takes the events out of its buffer and
+ * pushes them to the processors connected to its output. The same event
+ * object is given to all the branches without being copied; it must
+ * therefore not be modified by any of them.
+ * <p>
+ * The events are output on each branch in the order in which they are
+ * received, but the branches progress independently of each other, up to
+ * the capacity of their buffers: when the buffer of a branch is full, the
+ * upstream thread waits until the branch has consumed an event. This
+ * processor only works in push mode. When the end of the trace is
+ * reached, it waits until all the branches have processed the events in
+ * their buffers before notifying the processors downstream.
+ * <p>
+ * <strong>Each branch pushes events to the processors connected to it from
+ * its own thread, and processors are not thread-safe. The branches must
+ * therefore not reconverge into the same processor</strong>, such as a
+ * binary {@link ca.uqac.lif.cep.functions.ApplyFunction} combining the
+ * results of two branches, unless they go through a {@link Join}, which
+ * serializes the events pushed to it and pushes its outputs from one
+ * thread at a time. Connecting two outputs of the fork directly to the
+ * same processor other than a {@link Join} throws an
+ * {@link IllegalArgumentException}; branches that reconverge further
+ * downstream cannot be detected.
+ *
+ * @author Sylvain Hallé
+ */
+public class ParallelFork extends SynchronousProcessor
+{
+	/**
+	 * The default capacity of the buffer of each branch.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The factory creating the worker threads.
+	 */
+	protected static final DaemonThreadFactory s_threads = new DaemonThreadFactory("ParallelFork");
+
+	/**
+	 * The capacity of the buffer of each branch.
+	 */
+	protected final int m_capacity;
+
+	/**
+	 * The workers of the branches.
+	 */
+	protected final Branch[] m_branches;
+
+	/**
+	 * Creates a new parallel fork.
+	 * @param out_arity The number of branches
+	 * @param capacity The capacity of the buffer of each branch
+	 */
+	public ParallelFork(int out_arity, int capacity)
+	{
+		super(1, out_arity);
+		m_capacity = capacity;
+		m_branches = new Branch[out_arity];
+		for (int i = 0; i < out_arity; i++)
+		{
+			m_branches[i] = new Branch(i, capacity);
+		}
+	}
+
+	/**
+	 * Creates a new parallel fork with the default capacity.
+	 * @param out_arity The number of branches
+	 */
+	public ParallelFork(int out_arity)
+	{
+		this(out_arity, DEFAULT_CAPACITY);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		for (Branch b : m_branches)
+		{
+			b.checkFailure();
+			b.start(s_threads);
+			b.put(inputs[0]);
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEnd(Queue<Object[]> outputs)
+	{
+		for (Branch b : m_branches)
+		{
+			b.finish();
+		}
+		return true;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		for (Branch b : m_branches)
+		{
+			b.shutdown();
+		}
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+		for (Branch b : m_branches)
+		{
+			b.shutdown();
+		}
+	}
+
+	/**
+	 * Connects an output of the fork.
+	 * @throws IllegalArgumentException If another output of the fork is
+	 * connected to the same processor, and this processor is not a
+	 * {@link Join}
+	 */
+	@Override
+	public void setPushableOutput(int index, Pushable p)
+	{
+		if (p != null && !(p.getProcessor() instanceof Join))
+		{
+			for (int i = 0; i < getOutputArity(); i++)
+			{
+				Pushable q = getPushableOutput(i);
+				if (i != index && q != null && q.getProcessor() == p.getProcessor())
+				{
+					throw new IllegalArgumentException("Outputs " + i + " and " + index + " of a ParallelFork are connected to the same processor; the branches must reconverge through a ParallelFork.Join");
+				}
+			}
+		}
+		super.setPushableOutput(index, p);
+	}
+
+	@Override
+	public ParallelFork duplicate(boolean with_state)
+	{
+		return new ParallelFork(getOutputArity(), m_capacity);
+	}
+
+	/**
+	 * The worker of a branch.
+	 */
+	protected class Branch extends BufferedWorker
+	{
+		/**
+		 * The index of the output of the branch.
+		 */
+		protected final int m_index;
+
+		public Branch(int index, int capacity)
+		{
+			super(capacity);
+			m_index = index;
+		}
+
+		@Override
+		protected void process(Object o)
+		{
+			Pushable p = getPushableOutput(m_index);
+			if (p != null)
+			{
+				p.push(o);
+			}
+		}
+
+		@Override
+		protected void end()
+		{
+			// The end of the trace is notified downstream by the fork itself
+		}
+	}
+
+	/**
+	 * Processor where the branches of a {@link ParallelFork} reconverge.
+	 * It outputs a front as soon as it has received an event on each of its
+	 * inputs, like any synchronous processor, but the events pushed to it are
+	 * processed one at a time, even when they come from different threads.
+	 * Its outputs, and everything downstream of them, are therefore pushed
+	 * from one thread at a time. See {@link groovy#ParallelJoin(int)} for an
+	 * example.
+	 */
+	public static class Join extends SynchronousProcessor
+	{
+		/**
+		 * The pushables serializing the events pushed to each input, created
+		 * on demand.
+		 */
+		protected final Pushable[] m_pushables;
+
+		/**
+		 * Creates a new join.
+		 * @param arity The number of branches to join
+		 */
+		public Join(int arity)
+		{
+			super(arity, arity);
+			m_pushables = new Pushable[arity];
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			outputs.add(inputs);
+			return true;
+		}
+
+		@Override
+		public synchronized Pushable getPushableInput(int index)
+		{
+			if (m_pushables[index] == null)
+			{
+				m_pushables[index] = new SerializedPushable(index, super.getPushableInput(index));
+			}
+			return m_pushables[index];
+		}
+
+		@Override
+		public Join duplicate(boolean with_state)
+		{
+			return new Join(getInputArity());
+		}
+
+		/**
+		 * Pushable passing the events to an input of the join while holding
+		 * the lock of the join.
+		 */
+		protected class SerializedPushable implements Pushable
+		{
+			/**
+			 * The input of the join.
+			 */
+			protected final int m_index;
+
+			/**
+			 * The pushable of the join for this input.
+			 */
+			protected final Pushable m_pushable;
+
+			/**
+			 * Creates a new pushable.
+			 * @param index The input of the join
+			 * @param p The pushable of the join for this input
+			 */
+			public SerializedPushable(int index, Pushable p)
+			{
+				super();
+				m_index = index;
+				m_pushable = p;
+			}
+
+			@Override
+			public Pushable push(Object o)
+			{
+				synchronized (Join.this)
+				{
+					m_pushable.push(o);
+				}
+				return this;
+			}
+
+			@Override
+			public void notifyEndOfTrace()
+			{
+				synchronized (Join.this)
+				{
+					m_pushable.notifyEndOfTrace();
+				}
+			}
+
+			@Override
+			public Processor getProcessor()
+			{
+				return Join.this;
+			}
+
+			@Override
+			public int getPosition()
+			{
+				return m_index;
+			}
+		}
+	}
+}
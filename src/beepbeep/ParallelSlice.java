@@ -0,0 +1,438 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * A variant of {@link ca.uqac.lif.cep.tmf.Slice} that distributes the
+ * slices over multiple threads.
+ * <p>
+ * As with {@link ca.uqac.lif.cep.tmf.Slice}, the slicing function is
+ * evaluated on each input event, and a copy of the slice processor is
+ * created for each distinct value of this function. However, the slice
+ * keys are distributed by
+ * their hash code over a fixed number of <em>shards</em>; each shard has
+ * its own thread and its own copies of the slice processor. All the
+ * events of a given slice are thus processed by the same thread, in the
+ * order in which they are received.
+ * <p>
+ * Since the slices are processed asynchronously, the output of this
+ * processor lags behind its input; the pending events are flushed when the
+ * end of the input trace is reached. The outputs of all the slices are
+ * merged into a single stream: each time the copy of the processor for a
+ * slice produces an output for an input event, this processor outputs an
+ * immutable {@link Map.Entry} associating the slice key to the last such
+ * output. Contrary to {@link ca.uqac.lif.cep.tmf.Slice}, it does not output
+ * the map of the last values of all slices, which would require copying
+ * this map for each output event.
+ * <p>
+ * In <em>ordered</em> mode, the outputs are produced in the order of the
+ * input events that caused them, which makes the output stream
+ * deterministic. In unordered mode, they are produced as soon as they are
+ * available, which avoids holding back the outputs of fast slices behind
+ * those of slow ones.
+ *
+ * @author Sylvain Hallé
+ */
+public class ParallelSlice extends SynchronousProcessor
+{
+	/**
+	 * The default maximum number of events being processed by the shards at
+	 * any given time, for each shard.
+	 */
+	public static final int DEFAULT_PENDING_PER_SHARD = 1024;
+
+	/**
+	 * The function computing the slice key of each event.
+	 */
+	protected final Function m_slicingFunction;
+
+	/**
+	 * The processor copied for each slice.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The number of shards.
+	 */
+	protected final int m_numShards;
+
+	/**
+	 * Whether outputs are produced in the order of the input events.
+	 */
+	protected final boolean m_ordered;
+
+	/**
+	 * The maximum number of events being processed by the shards at any given
+	 * time.
+	 */
+	protected int m_maxPending;
+
+	/**
+	 * The shards, or {@code null} if they have not been started.
+	 */
+	protected Shard[] m_shards;
+
+	/**
+	 * The results produced by the shards and not yet consumed.
+	 */
+	protected final BlockingQueue<Result> m_completed = new LinkedBlockingQueue<Result>();
+
+	/**
+	 * In ordered mode, the results waiting for those of previous events.
+	 */
+	protected final Map<Long,Result> m_reorder = new HashMap<Long,Result>();
+
+	/**
+	 * The sequence number given to the next event sent to a shard.
+	 */
+	protected long m_nextSequence = 0;
+
+	/**
+	 * In ordered mode, the sequence number of the next result to output.
+	 */
+	protected long m_nextToOutput = 0;
+
+	/**
+	 * The number of events sent to the shards and whose result has not been
+	 * consumed.
+	 */
+	protected int m_pending = 0;
+
+	/**
+	 * Creates a new parallel slice processor.
+	 * @param f The slicing function
+	 * @param p The processor to run on each slice
+	 * @param num_threads The number of shards, each running on its own thread
+	 * @param ordered Set to {@code true} to produce outputs in the order of
+	 * the input events
+	 */
+	public ParallelSlice(Function f, Processor p, int num_threads, boolean ordered)
+	{
+		super(f.getInputArity(), 1);
+		m_slicingFunction = f;
+		m_processor = p;
+		m_numShards = Math.max(1, num_threads);
+		m_ordered = ordered;
+		m_maxPending = DEFAULT_PENDING_PER_SHARD * m_numShards;
+	}
+
+	/**
+	 * Sets the maximum number of events being processed by the shards at
+	 * any given time. When this number is reached, the processor waits for
+	 * results before accepting new events.
+	 * @param n The number of events
+	 * @return This processor
+	 */
+	public ParallelSlice setMaxPending(int n)
+	{
+		m_maxPending = Math.max(1, n);
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		if (m_shards == null)
+		{
+			m_shards = new Shard[m_numShards];
+			for (int i = 0; i < m_numShards; i++)
+			{
+				m_shards[i] = new Shard();
+			}
+		}
+		Object[] key = new Object[1];
+		m_slicingFunction.evaluate(inputs, key, m_context);
+		if (key[0] != null)
+		{
+			Shard s = m_shards[(key[0].hashCode() & 0x7fffffff) % m_numShards];
+			s.submit(m_nextSequence++, key[0], inputs.clone());
+			m_pending++;
+		}
+		while (m_pending > m_maxPending)
+		{
+			consume(take(), outputs);
+		}
+		Result r;
+		while ((r = m_completed.poll()) != null)
+		{
+			consume(r, outputs);
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEnd(Queue<Object[]> outputs)
+	{
+		while (m_pending > 0)
+		{
+			consume(take(), outputs);
+		}
+		shutdown();
+		return true;
+	}
+
+	/**
+	 * Waits for the next result produced by a shard.
+	 * @return The result
+	 */
+	protected Result take()
+	{
+		try
+		{
+			return m_completed.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+	}
+
+	/**
+	 * Consumes a result produced by a shard, and outputs the events that
+	 * have become available.
+	 * @param r The result
+	 * @param outputs The queue where output events are added
+	 */
+	protected void consume(Result r, Queue<Object[]> outputs)
+	{
+		m_pending--;
+		if (r.m_failure != null)
+		{
+			shutdown();
+			throw new ProcessorException(r.m_failure);
+		}
+		if (!m_ordered)
+		{
+			output(r, outputs);
+			return;
+		}
+		m_reorder.put(r.m_sequence, r);
+		Result next;
+		while ((next = m_reorder.remove(m_nextToOutput)) != null)
+		{
+			output(next, outputs);
+			m_nextToOutput++;
+		}
+	}
+
+	/**
+	 * Outputs the result of a slice, if it has produced a value.
+	 * @param r The result
+	 * @param outputs The queue where output events are added
+	 */
+	protected void output(Result r, Queue<Object[]> outputs)
+	{
+		if (r.m_hasValue)
+		{
+			outputs.add(new Object[] {new AbstractMap.SimpleImmutableEntry<Object,Object>(r.m_key, r.m_value)});
+		}
+	}
+
+	/**
+	 * Stops the threads of all shards.
+	 * @return The shards that have been stopped, or {@code null} if they
+	 * were not started
+	 */
+	protected Shard[] shutdown()
+	{
+		Shard[] shards = m_shards;
+		if (shards != null)
+		{
+			for (Shard s : shards)
+			{
+				s.m_service.shutdownNow();
+			}
+			m_shards = null;
+		}
+		return shards;
+	}
+
+	/**
+	 * Waits until the threads of stopped shards have finished the events
+	 * they were processing.
+	 * @param shards The shards, or {@code null}
+	 */
+	protected static void awaitTermination(Shard[] shards)
+	{
+		if (shards == null)
+		{
+			return;
+		}
+		try
+		{
+			for (Shard s : shards)
+			{
+				s.m_service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		// Results of the events in flight must not be added after the clear
+		awaitTermination(shutdown());
+		m_completed.clear();
+		m_reorder.clear();
+		m_nextSequence = 0;
+		m_nextToOutput = 0;
+		m_pending = 0;
+		m_slicingFunction.reset();
+	}
+
+	@Override
+	public ParallelSlice duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a parallel slice with its state");
+		}
+		ParallelSlice ps = new ParallelSlice(m_slicingFunction.duplicate(), m_processor.duplicate(), m_numShards, m_ordered);
+		ps.m_maxPending = m_maxPending;
+		return ps;
+	}
+
+	/**
+	 * The result of processing an event in a slice.
+	 */
+	protected static class Result
+	{
+		/**
+		 * The sequence number of the input event.
+		 */
+		protected final long m_sequence;
+
+		/**
+		 * The key of the slice.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * Whether the slice produced an output for this event.
+		 */
+		protected final boolean m_hasValue;
+
+		/**
+		 * The last output produced by the slice for this event.
+		 */
+		protected final Object m_value;
+
+		/**
+		 * The exception thrown while processing the event, if any.
+		 */
+		protected final Throwable m_failure;
+
+		public Result(long sequence, Object key, boolean has_value, Object value, Throwable failure)
+		{
+			super();
+			m_sequence = sequence;
+			m_key = key;
+			m_hasValue = has_value;
+			m_value = value;
+			m_failure = failure;
+		}
+	}
+
+	/**
+	 * A set of slices processed by the same thread.
+	 */
+	protected class Shard
+	{
+		/**
+		 * The slice instances of each key of this shard. This map is only
+		 * accessed by the thread of the shard.
+		 */
+		protected final Map<Object,SliceInstance> m_slices = new HashMap<Object,SliceInstance>();
+
+		/**
+		 * The thread of the shard.
+		 */
+		protected final ExecutorService m_service = Executors.newSingleThreadExecutor(new DaemonThreadFactory("ParallelSlice"));
+
+		/**
+		 * Sends an event to the slice of a given key.
+		 * @param sequence The sequence number of the event
+		 * @param key The key
+		 * @param inputs The input event front
+		 */
+		public void submit(final long sequence, final Object key, final Object[] inputs)
+		{
+			m_service.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					m_completed.add(process(sequence, key, inputs));
+				}
+			});
+		}
+
+		/**
+		 * Processes an event in the slice of a given key.
+		 * @param sequence The sequence number of the event
+		 * @param key The key
+		 * @param inputs The input event front
+		 * @return The result
+		 */
+		protected Result process(long sequence, Object key, Object[] inputs)
+		{
+			try
+			{
+				SliceInstance slice = m_slices.get(key);
+				if (slice == null)
+				{
+					synchronized (m_processor)
+					{
+						slice = new SliceInstance(m_processor.duplicate());
+					}
+					m_slices.put(key, slice);
+				}
+				boolean has_value = slice.push(inputs);
+				Object value = slice.getLastValue();
+				return new Result(sequence, key, has_value, value, null);
+			}
+			catch (Throwable t)
+			{
+				// Errors are also passed on, lest the consumer wait forever
+				return new Result(sequence, key, false, null, t);
+			}
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.io.SpliceSource.SpliceLineSource;
+import ca.uqac.lif.cep.tuples.SpliceTupleSource;
+
+/**
+ * Source reading a list of files one after the other, like the splice
+ * sources of BeepBeep, but where the next files of the list are read and
+ * parsed in advance by background threads.
+ * <p>
+ * Each file is read by its own source processor, which is pulled by a
+ * worker thread into a bounded buffer. At any given time, the file
+ * currently consumed and at most <i>N</i> files after it are being read;
+ * when the buffer of a file is full, its worker waits until events are
+ * consumed. The events are output in the same order as a splice source:
+ * all the events of the first file, then all the events of the second, and
+ * so on. Reading and parsing the files thus overlaps with the processing
+ * of the events downstream, without changing the contents of the stream.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class PrefetchSource extends SynchronousProcessor
+{
+	/**
+	 * The default capacity of the buffer of each file.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * A marker put in a buffer after the last event of a file.
+	 */
+	protected static final Object END = new Object();
+
+	/**
+	 * The names of the files to read.
+	 */
+	protected final String[] m_filenames;
+
+	/**
+	 * The number of files read in advance of the file currently consumed.
+	 */
+	protected final int m_prefetch;
+
+	/**
+	 * The capacity of the buffer of each file.
+	 */
+	protected int m_capacity = DEFAULT_CAPACITY;
+
+	/**
+	 * The buffers of the files; an element is {@code null} if the file has
+	 * not been scheduled yet or has been entirely consumed.
+	 */
+	protected BlockingQueue<Object>[] m_buffers;
+
+	/**
+	 * The index of the file currently consumed.
+	 */
+	protected int m_current;
+
+	/**
+	 * The service running the workers, or {@code null} if no file is being
+	 * read.
+	 */
+	protected ExecutorService m_service;
+
+	/**
+	 * Creates a new source.
+	 * @param prefetch The number of files read in advance of the file
+	 * currently consumed
+	 * @param filenames The names of the files to read
+	 */
+	public PrefetchSource(int prefetch, String ... filenames)
+	{
+		super(0, 1);
+		m_prefetch = Math.max(prefetch, 0);
+		m_filenames = filenames;
+	}
+
+	/**
+	 * Sets the capacity of the buffer of each file.
+	 * @param capacity The maximum number of events held in the buffer
+	 * @return This source
+	 */
+	public PrefetchSource setCapacity(int capacity)
+	{
+		m_capacity = capacity;
+		return this;
+	}
+
+	/**
+	 * Creates the processor reading a single file.
+	 * @param filename The name of the file
+	 * @return The processor, which must be of output arity 1
+	 */
+	protected abstract Processor getSource(String filename);
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		if (m_buffers == null)
+		{
+			m_buffers = new BlockingQueue[m_filenames.length];
+			m_current = 0;
+			m_service = Executors.newFixedThreadPool(m_prefetch + 1, new DaemonThreadFactory("PrefetchSource"));
+			for (int i = 0; i <= m_prefetch; i++)
+			{
+				schedule(i);
+			}
+		}
+		while (m_current < m_filenames.length)
+		{
+			Object o;
+			try
+			{
+				o = m_buffers[m_current].take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new ProcessorException(e);
+			}
+			if (o == END)
+			{
+				m_buffers[m_current] = null;
+				m_current++;
+				schedule(m_current + m_prefetch);
+				continue;
+			}
+			if (o instanceof Failure)
+			{
+				shutdown();
+				throw new ProcessorException(((Failure) o).m_cause);
+			}
+			outputs.add(new Object[] {o});
+			return true;
+		}
+		shutdown();
+		return false;
+	}
+
+	/**
+	 * Starts reading a file in the background.
+	 * @param index The index of the file; nothing is done if there is no
+	 * file at this index
+	 */
+	protected void schedule(int index)
+	{
+		if (index >= m_filenames.length)
+		{
+			return;
+		}
+		final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(m_capacity);
+		final Processor source = getSource(m_filenames[index]);
+		m_buffers[index] = buffer;
+		m_service.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					try
+					{
+						Pullable p = source.getPullableOutput(0);
+						while (p.hasNext())
+						{
+							buffer.put(p.pull());
+						}
+					}
+					catch (InterruptedException e)
+					{
+						throw e;
+					}
+					catch (Throwable t)
+					{
+						// Errors are also passed on, lest the consumer wait forever
+						buffer.put(new Failure(t));
+						return;
+					}
+					buffer.put(END);
+				}
+				catch (InterruptedException e)
+				{
+					// The source has been reset or stopped; give up
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops all the workers.
+	 */
+	protected void shutdown()
+	{
+		if (m_service != null)
+		{
+			m_service.shutdownNow();
+			m_service = null;
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		shutdown();
+		m_buffers = null;
+		m_current = 0;
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+		shutdown();
+	}
+
+	/**
+	 * Wraps an exception thrown by a worker, so that it can be rethrown by
+	 * the consumer.
+	 */
+	protected static class Failure
+	{
+		/**
+		 * The exception.
+		 */
+		protected final Throwable m_cause;
+
+		public Failure(Throwable cause)
+		{
+			super();
+			m_cause = cause;
+		}
+	}
+
+	/**
+	 * Prefetching source reading the lines of text files.
+	 */
+	public static class Lines extends PrefetchSource
+	{
+		/**
+		 * Creates a new source.
+		 * @param prefetch The number of files read in advance of the file
+		 * currently consumed
+		 * @param filenames The names of the files to read
+		 */
+		public Lines(int prefetch, String ... filenames)
+		{
+			super(prefetch, filenames);
+		}
+
+		@Override
+		protected Processor getSource(String filename)
+		{
+			return new SpliceLineSource(false, filename);
+		}
+
+		@Override
+		public Lines duplicate(boolean with_state)
+		{
+			Lines s = new Lines(m_prefetch, m_filenames);
+			s.m_capacity = m_capacity;
+			return s;
+		}
+	}
+
+	/**
+	 * Prefetching source reading the tuples of CSV files.
+	 */
+	public static class Tuples extends PrefetchSource
+	{
+		/**
+		 * Creates a new source.
+		 * @param prefetch The number of files read in advance of the file
+		 * currently consumed
+		 * @param filenames The names of the files to read
+		 */
+		public Tuples(int prefetch, String ... filenames)
+		{
+			super(prefetch, filenames);
+		}
+
+		@Override
+		protected Processor getSource(String filename)
+		{
+			return new SpliceTupleSource(false, filename);
+		}
+
+		@Override
+		public Tuples duplicate(boolean with_state)
+		{
+			Tuples s = new Tuples(m_prefetch, m_filenames);
+			s.m_capacity = m_capacity;
+			return s;
+		}
+	}
+}
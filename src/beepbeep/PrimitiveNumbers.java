@@ -0,0 +1,625 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Arithmetic functions that compute their result on primitive values
+ * instead of boxed {@link Number}s.
+ * <p>
+ * The functions of {@link Numbers} box the result of every operation. In a
+ * tree such as {@code LessThan(Plus(x, 1), 10)}, this creates one garbage
+ * object per operation and per event. The functions of this class rather
+ * implement the {@link NumericFunction} or {@link BooleanFunction}
+ * interfaces, which let a parent function obtain their value without
+ * boxing. Only the output of the function at the root of a tree is boxed.
+ * <p>
+ * Each arithmetic function works in one of two "lanes", which is decided
+ * when the function is created: a <tt>long</tt> lane when both operands are
+ * known to be integers (integer constants or other functions of the
+ * <tt>long</tt> lane), and a <tt>double</tt> lane otherwise. The output of
+ * a function of the <tt>long</tt> lane is a {@link Long}, and the output of
+ * a function of the <tt>double</tt> lane is a {@link Double}.
+ *
+ * @author Sylvain Hallé
+ */
+public class PrimitiveNumbers
+{
+	private PrimitiveNumbers()
+	{
+		super();
+	}
+
+	/**
+	 * Interface implemented by functions that can return a number without
+	 * boxing it.
+	 */
+	public static interface NumericFunction
+	{
+		/**
+		 * Evaluates the function and returns its output as a <tt>double</tt>.
+		 * @param inputs The inputs of the function
+		 * @param context The context in which the function is evaluated
+		 * @param tracker The event tracker
+		 * @return The output of the function
+		 */
+		public double evaluateDouble(Object[] inputs, Context context, EventTracker tracker);
+
+		/**
+		 * Evaluates the function and returns its output as a <tt>long</tt>.
+		 * @param inputs The inputs of the function
+		 * @param context The context in which the function is evaluated
+		 * @param tracker The event tracker
+		 * @return The output of the function
+		 */
+		public long evaluateLong(Object[] inputs, Context context, EventTracker tracker);
+
+		/**
+		 * Determines if this function works in the <tt>long</tt> lane.
+		 * @return {@code true} if the function always returns an integer
+		 */
+		public boolean isIntegral();
+	}
+
+	/**
+	 * Interface implemented by functions that can return a Boolean without
+	 * boxing it.
+	 */
+	public static interface BooleanFunction
+	{
+		/**
+		 * Evaluates the function and returns its output as a primitive value.
+		 * @param inputs The inputs of the function
+		 * @param context The context in which the function is evaluated
+		 * @param tracker The event tracker
+		 * @return The output of the function
+		 */
+		public boolean evaluateBoolean(Object[] inputs, Context context, EventTracker tracker);
+	}
+
+	/**
+	 * Determines if a function is known to return a number.
+	 * @param f The function
+	 * @return {@code true} if the function returns a number, {@code false}
+	 * if it does not or if this cannot be determined
+	 */
+	public static boolean isNumeric(Function f)
+	{
+		if (f instanceof NumericFunction)
+		{
+			return true;
+		}
+		if (f instanceof Constant)
+		{
+			return TreeBuilder.valueOf((Constant) f) instanceof Number;
+		}
+		try
+		{
+			Class<?> c = f.getOutputTypeFor(0);
+			return c != null && Number.class.isAssignableFrom(c);
+		}
+		catch (RuntimeException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Determines if a function is known to return an integer.
+	 * @param f The function
+	 * @return {@code true} if the function returns an integer, {@code false}
+	 * if it does not or if this cannot be determined
+	 */
+	public static boolean isIntegral(Function f)
+	{
+		if (f instanceof NumericFunction)
+		{
+			return ((NumericFunction) f).isIntegral();
+		}
+		if (f instanceof Constant)
+		{
+			return isIntegral(TreeBuilder.valueOf((Constant) f));
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a number is an integer.
+	 * @param o The number
+	 * @return {@code true} if the number is of an integer type
+	 */
+	protected static boolean isIntegral(Object o)
+	{
+		return o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte;
+	}
+
+	/**
+	 * Creates a function adding two numbers.
+	 * @param x The first operand, which must be numeric
+	 * @param y The second operand, which must be numeric
+	 * @return The function
+	 */
+	public static Function plus(Function x, Function y)
+	{
+		return TreeBuilder.optimize(new Addition(x, y, new TreeBuilder.Shared[0]));
+	}
+
+	/**
+	 * Creates a function subtracting two numbers.
+	 * @param x The first operand, which must be numeric
+	 * @param y The second operand, which must be numeric
+	 * @return The function
+	 */
+	public static Function minus(Function x, Function y)
+	{
+		return TreeBuilder.optimize(new Subtraction(x, y, new TreeBuilder.Shared[0]));
+	}
+
+	/**
+	 * Creates a function comparing two numbers.
+	 * @param x The first operand, which must be numeric
+	 * @param y The second operand, which must be numeric
+	 * @return The function
+	 */
+	public static Function lessThan(Function x, Function y)
+	{
+		return TreeBuilder.optimize(new IsLessThan(x, y, new TreeBuilder.Shared[0]));
+	}
+
+	/**
+	 * Creates a function comparing two numbers.
+	 * @param x The first operand, which must be numeric
+	 * @param y The second operand, which must be numeric
+	 * @return The function
+	 */
+	public static Function greaterThan(Function x, Function y)
+	{
+		return TreeBuilder.optimize(new IsGreaterThan(x, y, new TreeBuilder.Shared[0]));
+	}
+
+	/**
+	 * Evaluates an operand as a <tt>double</tt>.
+	 * @param f The operand
+	 * @param inputs The inputs of the function
+	 * @param context The context in which the function is evaluated
+	 * @param tracker The event tracker
+	 * @param buffer An array of size 1 used to receive the output of the
+	 * operand if it cannot be obtained without boxing
+	 * @return The value of the operand
+	 */
+	protected static double doubleOf(Function f, Object[] inputs, Context context, EventTracker tracker, Object[] buffer)
+	{
+		if (f instanceof NumericFunction)
+		{
+			return ((NumericFunction) f).evaluateDouble(inputs, context, tracker);
+		}
+		f.evaluate(inputs, buffer, context, tracker);
+		return ((Number) buffer[0]).doubleValue();
+	}
+
+	/**
+	 * Evaluates an operand as a <tt>long</tt>.
+	 * @param f The operand
+	 * @param inputs The inputs of the function
+	 * @param context The context in which the function is evaluated
+	 * @param tracker The event tracker
+	 * @param buffer An array of size 1 used to receive the output of the
+	 * operand if it cannot be obtained without boxing
+	 * @return The value of the operand
+	 */
+	protected static long longOf(Function f, Object[] inputs, Context context, EventTracker tracker, Object[] buffer)
+	{
+		if (f instanceof NumericFunction)
+		{
+			return ((NumericFunction) f).evaluateLong(inputs, context, tracker);
+		}
+		f.evaluate(inputs, buffer, context, tracker);
+		return ((Number) buffer[0]).longValue();
+	}
+
+	/**
+	 * A binary arithmetic operation on primitive values.
+	 */
+	protected abstract static class BinaryOperation extends TreeBuilder.Tree implements NumericFunction
+	{
+		/**
+		 * Whether the operation works in the <tt>long</tt> lane.
+		 */
+		protected final boolean m_integral;
+
+		/**
+		 * A buffer receiving the output of operands that cannot be evaluated
+		 * without boxing.
+		 */
+		protected final Object[] m_buffer = new Object[1];
+
+		/**
+		 * Creates a new operation.
+		 * @param root The function of {@link Numbers} computing the same
+		 * operation on boxed numbers
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @param owned The shared nodes owned by this tree
+		 */
+		protected BinaryOperation(Function root, Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(root, new Function[] {x, y}, owned);
+			m_integral = PrimitiveNumbers.isIntegral(x) && PrimitiveNumbers.isIntegral(y);
+		}
+
+		/**
+		 * Computes the operation on two <tt>double</tt>s.
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @return The result
+		 */
+		protected abstract double compute(double x, double y);
+
+		/**
+		 * Computes the operation on two <tt>long</tt>s.
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @return The result
+		 */
+		protected abstract long compute(long x, long y);
+
+		@Override
+		public boolean isIntegral()
+		{
+			return m_integral;
+		}
+
+		@Override
+		public double evaluateDouble(Object[] inputs, Context context, EventTracker tracker)
+		{
+			invalidateOwned();
+			if (m_integral)
+			{
+				return compute(longOf(m_arguments[0], inputs, context, tracker, m_buffer),
+						longOf(m_arguments[1], inputs, context, tracker, m_buffer));
+			}
+			return compute(doubleOf(m_arguments[0], inputs, context, tracker, m_buffer),
+					doubleOf(m_arguments[1], inputs, context, tracker, m_buffer));
+		}
+
+		@Override
+		public long evaluateLong(Object[] inputs, Context context, EventTracker tracker)
+		{
+			if (m_integral)
+			{
+				invalidateOwned();
+				return compute(longOf(m_arguments[0], inputs, context, tracker, m_buffer),
+						longOf(m_arguments[1], inputs, context, tracker, m_buffer));
+			}
+			return (long) evaluateDouble(inputs, context, tracker);
+		}
+
+		@Override
+		public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+		{
+			if (m_integral)
+			{
+				outputs[0] = evaluateLong(inputs, context, tracker);
+			}
+			else
+			{
+				outputs[0] = evaluateDouble(inputs, context, tracker);
+			}
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return m_integral ? Long.class : Double.class;
+		}
+	}
+
+	/**
+	 * Adds two numbers.
+	 */
+	public static class Addition extends BinaryOperation
+	{
+		protected Addition(Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(Numbers.addition, x, y, owned);
+		}
+
+		@Override
+		protected double compute(double x, double y)
+		{
+			return x + y;
+		}
+
+		@Override
+		protected long compute(long x, long y)
+		{
+			return x + y;
+		}
+
+		@Override
+		protected Addition newTree(Function root, Function[] arguments, TreeBuilder.Shared[] owned)
+		{
+			return new Addition(arguments[0], arguments[1], owned);
+		}
+	}
+
+	/**
+	 * Subtracts two numbers.
+	 */
+	public static class Subtraction extends BinaryOperation
+	{
+		protected Subtraction(Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(Numbers.subtraction, x, y, owned);
+		}
+
+		@Override
+		protected double compute(double x, double y)
+		{
+			return x - y;
+		}
+
+		@Override
+		protected long compute(long x, long y)
+		{
+			return x - y;
+		}
+
+		@Override
+		protected Subtraction newTree(Function root, Function[] arguments, TreeBuilder.Shared[] owned)
+		{
+			return new Subtraction(arguments[0], arguments[1], owned);
+		}
+	}
+
+	/**
+	 * A comparison between two numbers.
+	 */
+	protected abstract static class Comparison extends TreeBuilder.Tree implements BooleanFunction
+	{
+		/**
+		 * Whether the comparison is done on <tt>long</tt>s.
+		 */
+		protected final boolean m_integral;
+
+		/**
+		 * A buffer receiving the output of operands that cannot be evaluated
+		 * without boxing.
+		 */
+		protected final Object[] m_buffer = new Object[1];
+
+		/**
+		 * Creates a new comparison.
+		 * @param root The function of {@link Numbers} computing the same
+		 * comparison on boxed numbers
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @param owned The shared nodes owned by this tree
+		 */
+		protected Comparison(Function root, Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(root, new Function[] {x, y}, owned);
+			m_integral = PrimitiveNumbers.isIntegral(x) && PrimitiveNumbers.isIntegral(y);
+		}
+
+		/**
+		 * Compares two <tt>double</tt>s.
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @return The result of the comparison
+		 */
+		protected abstract boolean compare(double x, double y);
+
+		/**
+		 * Compares two <tt>long</tt>s.
+		 * @param x The first operand
+		 * @param y The second operand
+		 * @return The result of the comparison
+		 */
+		protected abstract boolean compare(long x, long y);
+
+		@Override
+		public boolean evaluateBoolean(Object[] inputs, Context context, EventTracker tracker)
+		{
+			invalidateOwned();
+			if (m_integral)
+			{
+				return compare(longOf(m_arguments[0], inputs, context, tracker, m_buffer),
+						longOf(m_arguments[1], inputs, context, tracker, m_buffer));
+			}
+			return compare(doubleOf(m_arguments[0], inputs, context, tracker, m_buffer),
+					doubleOf(m_arguments[1], inputs, context, tracker, m_buffer));
+		}
+
+		@Override
+		public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+		{
+			// Boolean.valueOf returns one of two cached instances
+			outputs[0] = Boolean.valueOf(evaluateBoolean(inputs, context, tracker));
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return Boolean.class;
+		}
+	}
+
+	/**
+	 * Checks if a number is less than another.
+	 */
+	public static class IsLessThan extends Comparison
+	{
+		protected IsLessThan(Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(Numbers.isLessThan, x, y, owned);
+		}
+
+		@Override
+		protected boolean compare(double x, double y)
+		{
+			return x < y;
+		}
+
+		@Override
+		protected boolean compare(long x, long y)
+		{
+			return x < y;
+		}
+
+		@Override
+		protected IsLessThan newTree(Function root, Function[] arguments, TreeBuilder.Shared[] owned)
+		{
+			return new IsLessThan(arguments[0], arguments[1], owned);
+		}
+	}
+
+	/**
+	 * Checks if a number is greater than another.
+	 */
+	public static class IsGreaterThan extends Comparison
+	{
+		protected IsGreaterThan(Function x, Function y, TreeBuilder.Shared[] owned)
+		{
+			super(Numbers.isGreaterThan, x, y, owned);
+		}
+
+		@Override
+		protected boolean compare(double x, double y)
+		{
+			return x > y;
+		}
+
+		@Override
+		protected boolean compare(long x, long y)
+		{
+			return x > y;
+		}
+
+		@Override
+		protected IsGreaterThan newTree(Function root, Function[] arguments, TreeBuilder.Shared[] owned)
+		{
+			return new IsGreaterThan(arguments[0], arguments[1], owned);
+		}
+	}
+
+	/**
+	 * A cumulative sum computed on primitive values. The sum is kept as a
+	 * <tt>long</tt> as long as all the numbers received are integers, and
+	 * switches to a <tt>double</tt> as soon as a non-integer is received.
+	 * This function can be given to {@link ca.uqac.lif.cep.functions.Cumulate}
+	 * in place of a {@link CumulativeFunction} of {@link Numbers#addition}.
+	 */
+	public static class CumulativeSum extends CumulativeFunction<Number> implements Checkpointable
+	{
+		/**
+		 * The sum, if it is an integer.
+		 */
+		protected long m_longSum;
+
+		/**
+		 * The sum, if it is not an integer.
+		 */
+		protected double m_doubleSum;
+
+		/**
+		 * Whether the sum is currently an integer.
+		 */
+		protected boolean m_integral;
+
+		/**
+		 * Creates a new cumulative sum.
+		 */
+		public CumulativeSum()
+		{
+			super(Numbers.addition);
+			m_integral = true;
+		}
+
+		@Override
+		public Number getValue(Number x)
+		{
+			if (m_integral)
+			{
+				if (isIntegral(x))
+				{
+					m_longSum += x.longValue();
+					return m_longSum;
+				}
+				m_integral = false;
+				m_doubleSum = m_longSum;
+			}
+			m_doubleSum += x.doubleValue();
+			return m_doubleSum;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_longSum = 0;
+			m_doubleSum = 0;
+			m_integral = true;
+		}
+
+		@Override
+		public CumulativeSum duplicate(boolean with_state)
+		{
+			CumulativeSum s = new CumulativeSum();
+			if (with_state)
+			{
+				s.m_longSum = m_longSum;
+				s.m_doubleSum = m_doubleSum;
+				s.m_integral = m_integral;
+			}
+			return s;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			out.writeBoolean(m_integral);
+			if (m_integral)
+			{
+				Checkpoint.writeVarLong(out, m_longSum);
+			}
+			else
+			{
+				out.writeDouble(m_doubleSum);
+			}
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			m_integral = in.readBoolean();
+			m_longSum = m_integral ? Checkpoint.readVarLong(in) : 0;
+			m_doubleSum = m_integral ? 0 : in.readDouble();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+/**
+ * A report of the statistics recorded by {@link Profiled} processors.
+ *
+ * @author Sylvain Hallé
+ */
+public interface ProfileReport
+{
+	/**
+	 * Produces the report as text.
+	 * @return The report
+	 */
+	public String toText();
+
+	/**
+	 * Produces the report in JSON.
+	 * @return The report
+	 */
+	public String toJson();
+}
@@ -0,0 +1,641 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.PrintStream;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Wrapper around a processor that records statistics about the events it
+ * processes: the number of input and output fronts, the time taken by the
+ * processor for an input front, and the backlog of the processor.
+ * <p>
+ * The backlog is the number of events that have been produced for the
+ * processor but that it has not consumed yet. On each input, it counts
+ * the events waiting for the other inputs to form a complete front and,
+ * when the input is connected to the output of another {@link Profiled}
+ * processor, the fronts that this upstream processor has produced but not
+ * pushed yet. In push mode, the second part is the inter-stage backlog
+ * of a processor that outputs many fronts for one input front, and of a
+ * processor whose upstream runs on another thread; the first part is the
+ * backlog of a processor joining streams that do not progress at the same
+ * rate. The backlog is measured when an event is pushed.
+ * <p>
+ * To keep the overhead low, the timing and backlog measurements are made
+ * only on one input front (respectively, one input event) out of
+ * {@link #setSamplingInterval(int) N}; the event counts are exact. The
+ * statistics are kept in plain fields updated by the threads pushing
+ * events to the processor, without any synchronization. They can be read
+ * from another thread at any time, at the price of values that may lag
+ * slightly behind.
+ * <p>
+ * The times are collected in a histogram whose buckets are powers of two
+ * (in nanoseconds), from which approximate percentiles are computed.
+ *
+ * @author Sylvain Hallé
+ */
+public class Profiled extends SynchronousProcessor implements ProfileReport
+{
+	/**
+	 * The default number of input fronts between two measurements.
+	 */
+	public static final int DEFAULT_SAMPLING_INTERVAL = 16;
+
+	/**
+	 * The number of buckets of the latency histogram.
+	 */
+	protected static final int NUM_BUCKETS = 64;
+
+	/**
+	 * The name of the processor in the reports.
+	 */
+	protected final String m_name;
+
+	/**
+	 * The processor being profiled.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The sink collecting the outputs of the processor, or {@code null} if
+	 * the processor is a source or has no output.
+	 */
+	protected final QueueSink m_sink;
+
+	/**
+	 * The number of input fronts between two measurements.
+	 */
+	protected int m_samplingInterval = DEFAULT_SAMPLING_INTERVAL;
+
+	/**
+	 * The number of input fronts received.
+	 */
+	protected long m_eventsIn = 0;
+
+	/**
+	 * The number of output fronts produced.
+	 */
+	protected long m_eventsOut = 0;
+
+	/**
+	 * The number of measurements made.
+	 */
+	protected long m_samples = 0;
+
+	/**
+	 * The number of measured times in each bucket of the histogram; bucket
+	 * <i>i</i> contains the times <i>t</i> such that
+	 * 2<sup><i>i</i></sup> &le; <i>t</i> &lt; 2<sup><i>i</i>+1</sup> ns.
+	 */
+	protected final long[] m_buckets = new long[NUM_BUCKETS];
+
+	/**
+	 * The sum of the measured times.
+	 */
+	protected long m_totalNanos = 0;
+
+	/**
+	 * The maximum measured time.
+	 */
+	protected long m_maxNanos = 0;
+
+	/**
+	 * The number of events received on each input.
+	 */
+	protected final long[] m_received;
+
+	/**
+	 * The pushables counting the events received on each input, created on
+	 * demand.
+	 */
+	protected final InputCounter[] m_counters;
+
+	/**
+	 * The number of backlog measurements made.
+	 */
+	protected long m_depthSamples = 0;
+
+	/**
+	 * The sum of the measured backlogs.
+	 */
+	protected long m_totalDepth = 0;
+
+	/**
+	 * The maximum measured backlog.
+	 */
+	protected long m_maxDepth = 0;
+
+	/**
+	 * The stream where a report is printed when the end of the trace is
+	 * reached, or {@code null} for no report.
+	 */
+	protected PrintStream m_reportStream = null;
+
+	/**
+	 * Whether the report printed at the end of the trace is in JSON.
+	 */
+	protected boolean m_reportJson = false;
+
+	/**
+	 * The report printed at the end of the trace.
+	 */
+	protected ProfileReport m_report = this;
+
+	/**
+	 * Creates a new profiled processor.
+	 * @param name The name of the processor in the reports
+	 * @param p The processor to profile, which must not be connected to
+	 * anything
+	 */
+	public Profiled(String name, Processor p)
+	{
+		super(p.getInputArity(), p.getOutputArity());
+		m_name = name;
+		m_processor = p;
+		m_received = new long[p.getInputArity()];
+		m_counters = new InputCounter[p.getInputArity()];
+		if (p.getInputArity() > 0 && p.getOutputArity() > 0)
+		{
+			m_sink = new QueueSink(p.getOutputArity());
+			Connector.connect(p, m_sink);
+		}
+		else
+		{
+			m_sink = null;
+		}
+	}
+
+	/**
+	 * Creates a new profiled processor, named after the class of the
+	 * processor.
+	 * @param p The processor to profile, which must not be connected to
+	 * anything
+	 */
+	public Profiled(Processor p)
+	{
+		this(p.getClass().getSimpleName(), p);
+	}
+
+	/**
+	 * Sets the number of input fronts between two measurements.
+	 * @param n The number of fronts; it is rounded up to a power of two
+	 * @return This processor
+	 */
+	public Profiled setSamplingInterval(int n)
+	{
+		m_samplingInterval = n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+		return this;
+	}
+
+	/**
+	 * Prints a report when the end of the trace is reached.
+	 * @param ps The stream where the report is printed
+	 * @param json Set to {@code true} to print the report in JSON,
+	 * {@code false} to print it as text
+	 * @return This processor
+	 */
+	public Profiled setReportOnEnd(PrintStream ps, boolean json)
+	{
+		return setReportOnEnd(ps, json, this);
+	}
+
+	/**
+	 * Prints a report when the end of the trace is reached.
+	 * @param ps The stream where the report is printed
+	 * @param json Set to {@code true} to print the report in JSON,
+	 * {@code false} to print it as text
+	 * @param r The report to print
+	 * @return This processor
+	 */
+	public Profiled setReportOnEnd(PrintStream ps, boolean json, ProfileReport r)
+	{
+		m_reportStream = ps;
+		m_reportJson = json;
+		m_report = r;
+		return this;
+	}
+
+	/**
+	 * Gets the name of the processor in the reports.
+	 * @return The name
+	 */
+	public String getName()
+	{
+		return m_name;
+	}
+
+	/**
+	 * Gets the processor being profiled.
+	 * @return The processor
+	 */
+	public Processor getProcessor()
+	{
+		return m_processor;
+	}
+
+	/**
+	 * Gets the number of input fronts received.
+	 * @return The number of fronts
+	 */
+	public long getEventsIn()
+	{
+		return m_eventsIn;
+	}
+
+	/**
+	 * Gets the number of output fronts produced.
+	 * @return The number of fronts
+	 */
+	public long getEventsOut()
+	{
+		return m_eventsOut;
+	}
+
+	/**
+	 * Gets the {@link Profiled} processor connected to an input of this
+	 * processor.
+	 * @param index The input
+	 * @return The upstream processor, or {@code null} if the input is not
+	 * connected to a {@link Profiled} processor
+	 */
+	public Profiled getUpstream(int index)
+	{
+		InputCounter c = m_counters[index];
+		return c == null ? null : c.m_upstream;
+	}
+
+	/**
+	 * Gets the output of the {@link Profiled} processor connected to an
+	 * input of this processor.
+	 * @param index The input
+	 * @return The output of the upstream processor, or -1 if the input is
+	 * not connected to a {@link Profiled} processor
+	 */
+	public int getUpstreamPosition(int index)
+	{
+		InputCounter c = m_counters[index];
+		return c == null || c.m_upstream == null ? -1 : c.m_upstreamPosition;
+	}
+
+	@Override
+	public Pushable getPushableInput(int index)
+	{
+		if (m_counters[index] == null)
+		{
+			m_counters[index] = new InputCounter(index, super.getPushableInput(index));
+		}
+		return m_counters[index];
+	}
+
+	/**
+	 * Connects an output of this processor. If the pushable belongs to
+	 * another {@link Profiled} processor, this processor is recorded as its
+	 * upstream processor, so that the fronts it has not pushed yet are
+	 * counted in the backlog of the other one.
+	 */
+	@Override
+	public void setPushableOutput(int index, Pushable p)
+	{
+		super.setPushableOutput(index, p);
+		if (p instanceof InputCounter)
+		{
+			InputCounter c = (InputCounter) p;
+			c.m_upstream = this;
+			c.m_upstreamPosition = index;
+		}
+	}
+
+	/**
+	 * Measures the backlog of the processor.
+	 */
+	protected void sampleDepth()
+	{
+		long depth = 0;
+		for (int i = 0; i < m_received.length; i++)
+		{
+			long produced = m_received[i];
+			InputCounter c = m_counters[i];
+			if (c != null && c.m_upstream != null)
+			{
+				produced = Math.max(produced, c.m_upstream.m_eventsOut);
+			}
+			depth += produced - m_eventsIn;
+		}
+		m_depthSamples++;
+		m_totalDepth += depth;
+		m_maxDepth = Math.max(m_maxDepth, depth);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		boolean sample = (m_eventsIn & (m_samplingInterval - 1)) == 0;
+		m_eventsIn++;
+		long start = sample ? System.nanoTime() : 0;
+		boolean more = process(inputs, outputs);
+		if (sample)
+		{
+			record(System.nanoTime() - start);
+		}
+		return more;
+	}
+
+	/**
+	 * Sends an input front to the processor, or pulls an output front if the
+	 * processor is a source, and collects its outputs.
+	 * @param inputs The input front
+	 * @param outputs The queue where output fronts are added
+	 * @return {@code false} if the processor is a source that has no more
+	 * output, {@code true} otherwise
+	 */
+	protected boolean process(Object[] inputs, Queue<Object[]> outputs)
+	{
+		if (inputs.length == 0)
+		{
+			Object[] front = new Object[getOutputArity()];
+			for (int i = 0; i < front.length; i++)
+			{
+				Pullable p = m_processor.getPullableOutput(i);
+				if (!p.hasNext())
+				{
+					return false;
+				}
+				front[i] = p.pull();
+			}
+			outputs.add(front);
+			m_eventsOut++;
+			return true;
+		}
+		for (int i = 0; i < inputs.length; i++)
+		{
+			m_processor.getPushableInput(i).push(inputs[i]);
+		}
+		collect(outputs);
+		return true;
+	}
+
+	/**
+	 * Moves the output fronts collected by the sink to a queue.
+	 * @param outputs The queue
+	 */
+	protected void collect(Queue<Object[]> outputs)
+	{
+		if (m_sink == null)
+		{
+			return;
+		}
+		Queue<Object> q = m_sink.getQueue(0);
+		while (!q.isEmpty())
+		{
+			outputs.add(m_sink.remove());
+			m_eventsOut++;
+		}
+	}
+
+	/**
+	 * Records a measured time.
+	 * @param nanos The time, in nanoseconds
+	 */
+	protected void record(long nanos)
+	{
+		nanos = Math.max(1, nanos);
+		m_buckets[63 - Long.numberOfLeadingZeros(nanos)]++;
+		m_samples++;
+		m_totalNanos += nanos;
+		m_maxNanos = Math.max(m_maxNanos, nanos);
+	}
+
+	@Override
+	protected boolean onEnd(Queue<Object[]> outputs)
+	{
+		if (getInputArity() > 0)
+		{
+			for (int i = 0; i < getInputArity(); i++)
+			{
+				Pushable p = m_processor.getPushableInput(i);
+				p.notifyEndOfTrace();
+			}
+			collect(outputs);
+		}
+		if (m_reportStream != null)
+		{
+			m_reportStream.println(m_reportJson ? m_report.toJson() : m_report.toText());
+		}
+		return true;
+	}
+
+	/**
+	 * Gets an upper bound of a percentile of the measured times.
+	 * @param p The percentile, between 0 and 1
+	 * @return The upper bound, in nanoseconds, or 0 if no time has been
+	 * measured
+	 */
+	public long getPercentile(double p)
+	{
+		long samples = m_samples;
+		if (samples == 0)
+		{
+			return 0;
+		}
+		long rank = (long) Math.ceil(p * samples);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			seen += m_buckets[i];
+			if (seen >= rank)
+			{
+				return Math.min(m_maxNanos, i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+			}
+		}
+		return m_maxNanos;
+	}
+
+	/**
+	 * Gets the mean of the measured times.
+	 * @return The mean, in nanoseconds, or 0 if no time has been measured
+	 */
+	public double getMeanNanos()
+	{
+		long samples = m_samples;
+		return samples == 0 ? 0 : (double) m_totalNanos / samples;
+	}
+
+	/**
+	 * Gets the mean of the measured backlogs.
+	 * @return The mean
+	 */
+	public double getMeanDepth()
+	{
+		long samples = m_depthSamples;
+		return samples == 0 ? 0 : (double) m_totalDepth / samples;
+	}
+
+	/**
+	 * Gets the maximum of the measured backlogs.
+	 * @return The maximum
+	 */
+	public long getMaxDepth()
+	{
+		return m_maxDepth;
+	}
+
+	@Override
+	public String toText()
+	{
+		return String.format("%s: in=%d out=%d samples=%d mean=%.0fns p50=%dns p90=%dns p99=%dns max=%dns depth(mean=%.1f max=%d)",
+				m_name, m_eventsIn, m_eventsOut, m_samples, getMeanNanos(), getPercentile(0.5),
+				getPercentile(0.9), getPercentile(0.99), m_maxNanos, getMeanDepth(), m_maxDepth);
+	}
+
+	@Override
+	public String toJson()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"name\":\"").append(m_name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+		sb.append(",\"in\":").append(m_eventsIn);
+		sb.append(",\"out\":").append(m_eventsOut);
+		sb.append(",\"samples\":").append(m_samples);
+		sb.append(",\"meanNanos\":").append(Math.round(getMeanNanos()));
+		sb.append(",\"p50Nanos\":").append(getPercentile(0.5));
+		sb.append(",\"p90Nanos\":").append(getPercentile(0.9));
+		sb.append(",\"p99Nanos\":").append(getPercentile(0.99));
+		sb.append(",\"maxNanos\":").append(m_maxNanos);
+		sb.append(",\"meanDepth\":").append(getMeanDepth());
+		sb.append(",\"maxDepth\":").append(m_maxDepth);
+		sb.append("}");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return toText();
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_processor.reset();
+		if (m_sink != null)
+		{
+			m_sink.reset();
+		}
+		m_eventsIn = 0;
+		m_eventsOut = 0;
+		m_samples = 0;
+		java.util.Arrays.fill(m_buckets, 0);
+		m_totalNanos = 0;
+		m_maxNanos = 0;
+		java.util.Arrays.fill(m_received, 0);
+		m_depthSamples = 0;
+		m_totalDepth = 0;
+		m_maxDepth = 0;
+	}
+
+	@Override
+	public Profiled duplicate(boolean with_state)
+	{
+		Profiled p = new Profiled(m_name, m_processor.duplicate(with_state));
+		p.m_samplingInterval = m_samplingInterval;
+		p.m_reportStream = m_reportStream;
+		p.m_reportJson = m_reportJson;
+		if (m_report != this)
+		{
+			p.m_report = m_report;
+		}
+		return p;
+	}
+
+	/**
+	 * Pushable counting the events received on an input of the processor
+	 * before passing them to it.
+	 */
+	protected class InputCounter implements Pushable
+	{
+		/**
+		 * The input of the processor.
+		 */
+		protected final int m_index;
+
+		/**
+		 * The pushable of the processor for this input.
+		 */
+		protected final Pushable m_pushable;
+
+		/**
+		 * The {@link Profiled} processor connected to this input, or
+		 * {@code null} if there is none.
+		 */
+		protected Profiled m_upstream = null;
+
+		/**
+		 * The output of the upstream processor connected to this input.
+		 */
+		protected int m_upstreamPosition = 0;
+
+		/**
+		 * Creates a new input counter.
+		 * @param index The input of the processor
+		 * @param p The pushable of the processor for this input
+		 */
+		public InputCounter(int index, Pushable p)
+		{
+			super();
+			m_index = index;
+			m_pushable = p;
+		}
+
+		@Override
+		public Pushable push(Object o)
+		{
+			long n = m_received[m_index]++;
+			if ((n & (m_samplingInterval - 1)) == 0)
+			{
+				sampleDepth();
+			}
+			m_pushable.push(o);
+			return this;
+		}
+
+		@Override
+		public void notifyEndOfTrace()
+		{
+			m_pushable.notifyEndOfTrace();
+		}
+
+		@Override
+		public Processor getProcessor()
+		{
+			return Profiled.this;
+		}
+
+		@Override
+		public int getPosition()
+		{
+			return m_index;
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+
+/**
+ * A graph of processors encapsulated in a group, where each processor is
+ * wrapped in a {@link Profiled} processor. The report of the group is
+ * made of the reports of all the processors of the graph, in the order in
+ * which they were added; the report of a processor that is itself a
+ * {@link ProfiledGroup} includes the reports of the processors inside it.
+ * <p>
+ * The group is either created from a chain of processors, as done by
+ * {@link groovy#Profile(Object...)}, or created empty and populated with
+ * {@link #add(String, Processor)}, which makes it possible to profile
+ * graphs with forks and joins. Thus:
+ * <pre>
+ * ProfiledGroup g = new ProfiledGroup(1, 1)
+ * Profiled f = g.add("fork", Fork(2))
+ * Profiled x = g.add("square", ApplyFunction(h))
+ * Profiled j = g.add("join", ApplyFunction(Numbers.addition))
+ * Connector.connect(f, 0, x, 0)
+ * Connector.connect(x, 0, j, 0)
+ * Connector.connect(f, 1, j, 1)
+ * g.associateInput(0, f, 0)
+ * g.associateOutput(0, j, 0)</pre>
+ * All the processors of the group must be {@link Profiled} processors, so
+ * that the connections between them are known and the group can be
+ * duplicated.
+ *
+ * @author Sylvain Hallé
+ */
+public class ProfiledGroup extends groovy.Group implements ProfileReport
+{
+	/**
+	 * The profiled processors of the graph, in the order in which they were
+	 * added.
+	 */
+	protected final List<Profiled> m_stages = new ArrayList<Profiled>();
+
+	/**
+	 * The inputs of the group, each given as the input of the group, the
+	 * index of the stage and the input of the stage.
+	 */
+	protected final List<int[]> m_inputs = new ArrayList<int[]>();
+
+	/**
+	 * The outputs of the group, each given as the output of the group, the
+	 * index of the stage and the output of the stage.
+	 */
+	protected final List<int[]> m_outputs = new ArrayList<int[]>();
+
+	/**
+	 * The stream where a report is printed when the end of the trace is
+	 * reached, or {@code null} for no report.
+	 */
+	protected PrintStream m_reportStream = null;
+
+	/**
+	 * Whether the report printed at the end of the trace is in JSON.
+	 */
+	protected boolean m_reportJson = false;
+
+	/**
+	 * Creates a new group from a chain of processors.
+	 * @param stages The profiled processors of the chain, in order, which
+	 * must not be connected to anything
+	 */
+	public ProfiledGroup(List<Profiled> stages)
+	{
+		super(stages.get(0).getInputArity(), stages.get(stages.size() - 1).getOutputArity());
+		groovy.connectChain(this, stages);
+	}
+
+	/**
+	 * Creates a new empty group. Processors are added to it with
+	 * {@link #add(String, Processor)}.
+	 * @param in_arity The input arity of the group
+	 * @param out_arity The output arity of the group
+	 */
+	public ProfiledGroup(int in_arity, int out_arity)
+	{
+		super(in_arity, out_arity);
+	}
+
+	/**
+	 * Wraps a processor in a {@link Profiled} processor and adds it to the
+	 * group. The processor returned must be used to connect the processor to
+	 * the others.
+	 * @param name The name of the processor in the reports
+	 * @param p The processor, which must not be connected to anything
+	 * @return The profiled processor
+	 */
+	public Profiled add(String name, Processor p)
+	{
+		Profiled s = new Profiled(name, p);
+		addProcessor(s);
+		return s;
+	}
+
+	/**
+	 * Adds a processor to the group.
+	 * @param p The processor, which must be a {@link Profiled} processor
+	 * @return This group
+	 * @throws IllegalArgumentException If the processor is not a
+	 * {@link Profiled} processor
+	 */
+	@Override
+	public ProfiledGroup addProcessor(Processor p)
+	{
+		if (!(p instanceof Profiled))
+		{
+			throw new IllegalArgumentException("Only Profiled processors can be added to a ProfiledGroup; use add(name, processor)");
+		}
+		if (!m_stages.contains(p))
+		{
+			m_stages.add((Profiled) p);
+			super.addProcessor(p);
+		}
+		return this;
+	}
+
+	@Override
+	public ProfiledGroup addProcessors(Processor ... procs)
+	{
+		for (Processor p : procs)
+		{
+			addProcessor(p);
+		}
+		return this;
+	}
+
+	@Override
+	public ProfiledGroup associateInput(int i, Processor p, int j)
+	{
+		m_inputs.add(new int[] {i, indexOf(p), j});
+		super.associateInput(i, p, j);
+		return this;
+	}
+
+	@Override
+	public ProfiledGroup associateOutput(int i, Processor p, int j)
+	{
+		m_outputs.add(new int[] {i, indexOf(p), j});
+		super.associateOutput(i, p, j);
+		return this;
+	}
+
+	/**
+	 * Gets the index of a processor of the group.
+	 * @param p The processor
+	 * @return The index
+	 * @throws IllegalArgumentException If the processor has not been added
+	 * to the group
+	 */
+	protected int indexOf(Processor p)
+	{
+		int index = m_stages.indexOf(p);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("The processor has not been added to the group");
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the profiled processors of the graph.
+	 * @return The processors, in the order in which they were added
+	 */
+	public Profiled[] getStages()
+	{
+		return m_stages.toArray(new Profiled[m_stages.size()]);
+	}
+
+	/**
+	 * Prints a report when the end of the trace is reached by the processor
+	 * associated to the first output of the group or, if the group has no
+	 * output, by the last processor added to it. This method must therefore
+	 * be called once the graph is complete.
+	 * @param ps The stream where the report is printed
+	 * @param json Set to {@code true} to print the report in JSON,
+	 * {@code false} to print it as text
+	 * @return This group
+	 */
+	public ProfiledGroup setReportOnEnd(PrintStream ps, boolean json)
+	{
+		m_reportStream = ps;
+		m_reportJson = json;
+		m_stages.get(getReportStage()).setReportOnEnd(ps, json, this);
+		return this;
+	}
+
+	/**
+	 * Gets the index of the stage that prints the report of the group.
+	 * @return The index
+	 */
+	protected int getReportStage()
+	{
+		for (int[] a : m_outputs)
+		{
+			if (a[0] == 0)
+			{
+				return a[1];
+			}
+		}
+		return m_stages.size() - 1;
+	}
+
+	@Override
+	public String toText()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < m_stages.size(); i++)
+		{
+			Profiled s = m_stages.get(i);
+			if (i > 0)
+			{
+				sb.append("\n");
+			}
+			sb.append(i).append(". ").append(s.toText());
+			if (s.getProcessor() instanceof ProfiledGroup)
+			{
+				sb.append("\n  ").append(((ProfiledGroup) s.getProcessor()).toText().replace("\n", "\n  "));
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toJson()
+	{
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < m_stages.size(); i++)
+		{
+			Profiled s = m_stages.get(i);
+			if (i > 0)
+			{
+				sb.append(",");
+			}
+			if (s.getProcessor() instanceof ProfiledGroup)
+			{
+				String json = s.toJson();
+				sb.append(json, 0, json.length() - 1);
+				sb.append(",\"stages\":").append(((ProfiledGroup) s.getProcessor()).toJson()).append("}");
+			}
+			else
+			{
+				sb.append(s.toJson());
+			}
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return toText();
+	}
+
+	/**
+	 * Duplicates the group, by duplicating its processors and connecting
+	 * the copies in the same way. The statistics of the copies start from
+	 * zero.
+	 */
+	@Override
+	public ProfiledGroup duplicate(boolean with_state)
+	{
+		ProfiledGroup g = new ProfiledGroup(getInputArity(), getOutputArity());
+		List<Profiled> copies = new ArrayList<Profiled>(m_stages.size());
+		for (Profiled s : m_stages)
+		{
+			Profiled c = s.duplicate(with_state);
+			copies.add(c);
+			g.addProcessor(c);
+		}
+		for (int b = 0; b < m_stages.size(); b++)
+		{
+			Profiled s = m_stages.get(b);
+			for (int j = 0; j < s.getInputArity(); j++)
+			{
+				int a = m_stages.indexOf(s.getUpstream(j));
+				if (a >= 0)
+				{
+					Connector.connect(copies.get(a), s.getUpstreamPosition(j), copies.get(b), j);
+				}
+			}
+		}
+		for (int[] a : m_inputs)
+		{
+			g.associateInput(a[0], copies.get(a[1]), a[2]);
+		}
+		for (int[] a : m_outputs)
+		{
+			g.associateOutput(a[0], copies.get(a[1]), a[2]);
+		}
+		if (m_reportStream != null)
+		{
+			g.setReportOnEnd(m_reportStream, m_reportJson);
+		}
+		return g;
+	}
+}
@@ -0,0 +1,599 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.cep.util.Lists;
+
+/**
+ * Functions and processors that rank the elements of a collection or of a
+ * stream, by their own value or by the value of a function evaluated on
+ * them.
+ * <p>
+ * The key of each element is computed only once, and the elements are
+ * compared by their keys: two numbers are compared by their value, even if
+ * they are not of the same class, and other objects are compared with
+ * {@link Comparable#compareTo(Object) compareTo}. When only the <i>k</i>
+ * greatest elements are needed, they are kept in a bounded heap of
+ * size <i>k</i>, which takes time proportional to <i>n</i>&nbsp;log&nbsp;<i>k</i>
+ * instead of <i>n</i>&nbsp;log&nbsp;<i>n</i> for a full sort, and memory
+ * proportional to <i>k</i>. In all cases, elements with the same key keep
+ * the order in which they were received.
+ *
+ * @author Sylvain Hallé
+ */
+public class Ranking
+{
+	private Ranking()
+	{
+		super();
+	}
+
+	/**
+	 * Compares two keys.
+	 * @param x The first key
+	 * @param y The second key
+	 * @return A negative number, zero or a positive number if the first key
+	 * is smaller than, equal to or greater than the second
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static int compare(Object x, Object y)
+	{
+		if (x instanceof Number && y instanceof Number && x.getClass() != y.getClass())
+		{
+			Number n_x = (Number) x;
+			Number n_y = (Number) y;
+			if (PrimitiveNumbers.isIntegral(n_x) && PrimitiveNumbers.isIntegral(n_y))
+			{
+				return Long.compare(n_x.longValue(), n_y.longValue());
+			}
+			return Double.compare(n_x.doubleValue(), n_y.doubleValue());
+		}
+		if (!(x instanceof Comparable))
+		{
+			throw new FunctionException("Cannot compare " + x + " and " + y);
+		}
+		return ((Comparable) x).compareTo(y);
+	}
+
+	/**
+	 * An element associated to its key and to its position in the input.
+	 */
+	protected static class Entry
+	{
+		/**
+		 * The key of the element.
+		 */
+		protected Object m_key;
+
+		/**
+		 * The element.
+		 */
+		protected Object m_element;
+
+		/**
+		 * The position of the element in the input.
+		 */
+		protected long m_index;
+
+		public Entry(Object key, Object element, long index)
+		{
+			super();
+			m_key = key;
+			m_element = element;
+			m_index = index;
+		}
+	}
+
+	/**
+	 * Orders entries by increasing key, and then by position.
+	 */
+	protected static final Comparator<Entry> ASCENDING = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry x, Entry y)
+		{
+			int c = Ranking.compare(x.m_key, y.m_key);
+			return c != 0 ? c : Long.compare(x.m_index, y.m_index);
+		}
+	};
+
+	/**
+	 * Orders entries by decreasing key, and then by position.
+	 */
+	protected static final Comparator<Entry> DESCENDING = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry x, Entry y)
+		{
+			int c = Ranking.compare(y.m_key, x.m_key);
+			return c != 0 ? c : Long.compare(x.m_index, y.m_index);
+		}
+	};
+
+	/**
+	 * Computes the key of an element.
+	 * @param f The function computing the key, or {@code null} to use the
+	 * element itself
+	 * @param in An array of size 1 used to pass the element to the function
+	 * @param out An array of size 1 used to get the key from the function
+	 * @param element The element
+	 * @return The key
+	 */
+	protected static Object keyOf(Function f, Object[] in, Object[] out, Object element)
+	{
+		if (f == null)
+		{
+			return element;
+		}
+		in[0] = element;
+		f.evaluate(in, out);
+		return out[0];
+	}
+
+	/**
+	 * A min-heap holding at most <i>k</i> entries, where the entry at the
+	 * root is the one that would be evicted first: the one with the
+	 * smallest key and, among equal keys, the one received last.
+	 */
+	protected static class Heap
+	{
+		/**
+		 * The entries of the heap.
+		 */
+		protected final Entry[] m_entries;
+
+		/**
+		 * The number of entries in the heap.
+		 */
+		protected int m_size = 0;
+
+		/**
+		 * The position given to the next element offered to the heap.
+		 */
+		protected long m_index = 0;
+
+		/**
+		 * Creates a new heap.
+		 * @param k The maximum number of entries of the heap
+		 */
+		public Heap(int k)
+		{
+			super();
+			m_entries = new Entry[k];
+		}
+
+		/**
+		 * Offers an element to the heap.
+		 * @param key The key of the element
+		 * @param element The element
+		 * @return {@code true} if the element is now in the heap,
+		 * {@code false} if it was discarded
+		 */
+		public boolean offer(Object key, Object element)
+		{
+			long index = m_index++;
+			if (m_size < m_entries.length)
+			{
+				m_entries[m_size] = new Entry(key, element, index);
+				siftUp(m_size++);
+				return true;
+			}
+			if (m_size == 0 || Ranking.compare(key, m_entries[0].m_key) <= 0)
+			{
+				// Not greater than the smallest element kept, which was received
+				// before this one
+				return false;
+			}
+			Entry e = m_entries[0];
+			e.m_key = key;
+			e.m_element = element;
+			e.m_index = index;
+			siftDown(0);
+			return true;
+		}
+
+		/**
+		 * Gets the elements of the heap, from the greatest to the smallest.
+		 * @return The list of elements
+		 */
+		public List<Object> toList()
+		{
+			Entry[] entries = Arrays.copyOf(m_entries, m_size);
+			Arrays.sort(entries, DESCENDING);
+			List<Object> list = new ArrayList<Object>(m_size);
+			for (Entry e : entries)
+			{
+				list.add(e.m_element);
+			}
+			return list;
+		}
+
+		/**
+		 * Empties the heap.
+		 */
+		public void clear()
+		{
+			Arrays.fill(m_entries, null);
+			m_size = 0;
+			m_index = 0;
+		}
+
+		/**
+		 * Determines if an entry of the heap would be evicted before another.
+		 * @param i The position of the first entry
+		 * @param j The position of the second entry
+		 * @return {@code true} if the first entry would be evicted first
+		 */
+		protected boolean before(int i, int j)
+		{
+			return DESCENDING.compare(m_entries[i], m_entries[j]) > 0;
+		}
+
+		/**
+		 * Moves an entry up the heap until its parent would be evicted before it.
+		 * @param i The position of the entry
+		 */
+		protected void siftUp(int i)
+		{
+			while (i > 0)
+			{
+				int parent = (i - 1) / 2;
+				if (!before(i, parent))
+				{
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		/**
+		 * Moves an entry down the heap until it would be evicted before its children.
+		 * @param i The position of the entry
+		 */
+		protected void siftDown(int i)
+		{
+			while (true)
+			{
+				int child = 2 * i + 1;
+				if (child >= m_size)
+				{
+					return;
+				}
+				if (child + 1 < m_size && before(child + 1, child))
+				{
+					child++;
+				}
+				if (!before(child, i))
+				{
+					return;
+				}
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		/**
+		 * Swaps two entries of the heap.
+		 * @param i The position of the first entry
+		 * @param j The position of the second entry
+		 */
+		protected void swap(int i, int j)
+		{
+			Entry e = m_entries[i];
+			m_entries[i] = m_entries[j];
+			m_entries[j] = e;
+		}
+	}
+
+	/**
+	 * Function returning the <i>k</i> greatest elements of a collection,
+	 * from the greatest to the smallest. It returns the same list as
+	 * sorting the collection in decreasing order and keeping its first
+	 * <i>k</i> elements, but without sorting the whole collection.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class TopK extends UnaryFunction<Collection,List>
+	{
+		/**
+		 * The number of elements to return.
+		 */
+		protected final int m_k;
+
+		/**
+		 * The function computing the key of each element, or {@code null} to
+		 * compare the elements themselves.
+		 */
+		protected final Function m_function;
+
+		/**
+		 * An array used to pass an element to the key function.
+		 */
+		protected final Object[] m_in = new Object[1];
+
+		/**
+		 * An array used to get a key from the key function.
+		 */
+		protected final Object[] m_out = new Object[1];
+
+		/**
+		 * Creates a new instance of the function comparing the elements
+		 * themselves.
+		 * @param k The number of elements to return
+		 */
+		public TopK(int k)
+		{
+			this(null, k);
+		}
+
+		/**
+		 * Creates a new instance of the function comparing the elements by
+		 * their key.
+		 * @param f The function computing the key of each element
+		 * @param k The number of elements to return
+		 */
+		public TopK(Function f, int k)
+		{
+			super(Collection.class, List.class);
+			if (k < 0)
+			{
+				throw new IllegalArgumentException("The number of elements must not be negative");
+			}
+			m_function = f;
+			m_k = k;
+		}
+
+		@Override
+		public List getValue(Collection x)
+		{
+			Heap heap = new Heap(m_k);
+			for (Object o : x)
+			{
+				heap.offer(keyOf(m_function, m_in, m_out, o), o);
+			}
+			return heap.toList();
+		}
+
+		@Override
+		public TopK duplicate(boolean with_state)
+		{
+			return new TopK(m_function == null ? null : m_function.duplicate(with_state), m_k);
+		}
+	}
+
+	/**
+	 * A variant of {@link Lists.SortOn} that evaluates its function once
+	 * for each element of the list, instead of twice for each comparison.
+	 * The elements are sorted in increasing order of their key, and elements
+	 * with the same key keep their order in the list.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class SortOn extends Lists.SortOn
+	{
+		/**
+		 * The function computing the key of each element.
+		 */
+		protected final Function m_keyFunction;
+
+		/**
+		 * An array used to pass an element to the key function.
+		 */
+		protected final Object[] m_in = new Object[1];
+
+		/**
+		 * An array used to get a key from the key function.
+		 */
+		protected final Object[] m_out = new Object[1];
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param f The function computing the key of each element
+		 */
+		public SortOn(Function f)
+		{
+			super(f);
+			m_keyFunction = f;
+		}
+
+		@Override
+		public List getValue(List x)
+		{
+			Entry[] entries = new Entry[x.size()];
+			int i = 0;
+			for (Object o : x)
+			{
+				entries[i] = new Entry(keyOf(m_keyFunction, m_in, m_out, o), o, i);
+				i++;
+			}
+			Arrays.sort(entries, ASCENDING);
+			List<Object> list = new ArrayList<Object>(entries.length);
+			for (Entry e : entries)
+			{
+				list.add(e.m_element);
+			}
+			return list;
+		}
+
+		@Override
+		public SortOn duplicate(boolean with_state)
+		{
+			return new SortOn(m_keyFunction.duplicate(with_state));
+		}
+	}
+
+	/**
+	 * Processor outputting, for each input event, the <i>k</i> greatest
+	 * events received so far, from the greatest to the smallest. Its output
+	 * is the same as that of {@link TopK} applied to the list of all the
+	 * events received so far, but each event is only compared to the
+	 * smallest of the <i>k</i> greatest events, and possibly inserted into
+	 * a bounded heap. The list output for an event that does not change the
+	 * ranking is the same object as for the previous event; these lists are
+	 * read-only.
+	 */
+	public static class RunningTopK extends SynchronousProcessor implements Checkpointable
+	{
+		/**
+		 * The number of events to output.
+		 */
+		protected final int m_k;
+
+		/**
+		 * The function computing the key of each event, or {@code null} to
+		 * compare the events themselves.
+		 */
+		protected final Function m_function;
+
+		/**
+		 * The greatest events received so far.
+		 */
+		protected final Heap m_heap;
+
+		/**
+		 * The list of the greatest events, or {@code null} if it must be
+		 * computed again.
+		 */
+		protected List<Object> m_list;
+
+		/**
+		 * An array used to pass an event to the key function.
+		 */
+		protected final Object[] m_in = new Object[1];
+
+		/**
+		 * An array used to get a key from the key function.
+		 */
+		protected final Object[] m_out = new Object[1];
+
+		/**
+		 * Creates a new instance of the processor comparing the events
+		 * themselves.
+		 * @param k The number of events to output
+		 */
+		public RunningTopK(int k)
+		{
+			this(null, k);
+		}
+
+		/**
+		 * Creates a new instance of the processor comparing the events by
+		 * their key.
+		 * @param f The function computing the key of each event
+		 * @param k The number of events to output
+		 */
+		public RunningTopK(Function f, int k)
+		{
+			super(1, 1);
+			if (k < 0)
+			{
+				throw new IllegalArgumentException("The number of events must not be negative");
+			}
+			m_function = f;
+			m_k = k;
+			m_heap = new Heap(k);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			if (m_heap.offer(keyOf(m_function, m_in, m_out, inputs[0]), inputs[0]) || m_list == null)
+			{
+				m_list = Collections.unmodifiableList(m_heap.toList());
+			}
+			outputs.add(new Object[] {m_list});
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_heap.clear();
+			m_list = null;
+			if (m_function != null)
+			{
+				m_function.reset();
+			}
+		}
+
+		@Override
+		public RunningTopK duplicate(boolean with_state)
+		{
+			if (with_state)
+			{
+				throw new UnsupportedOperationException("Cannot duplicate a running top-k with its state");
+			}
+			return new RunningTopK(m_function == null ? null : m_function.duplicate(), m_k);
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			Checkpoint.writeVarLong(out, m_k);
+			Checkpoint.writeVarLong(out, m_heap.m_index);
+			Checkpoint.writeVarLong(out, m_heap.m_size);
+			for (int i = 0; i < m_heap.m_size; i++)
+			{
+				Entry e = m_heap.m_entries[i];
+				Checkpoint.writeObject(out, e.m_element);
+				if (m_function != null)
+				{
+					Checkpoint.writeObject(out, e.m_key);
+				}
+				Checkpoint.writeVarLong(out, e.m_index);
+			}
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			Checkpoint.checkParameter("k", m_k, Checkpoint.readVarLong(in));
+			m_heap.clear();
+			m_heap.m_index = Checkpoint.readVarLong(in);
+			int size = Checkpoint.readSize(in);
+			if (size > m_k)
+			{
+				throw new IOException("Checkpoint does not match: too many events");
+			}
+			// The entries are written in the order of the heap, which remains valid
+			for (int i = 0; i < size; i++)
+			{
+				Object element = Checkpoint.readObject(in);
+				Object key = m_function != null ? Checkpoint.readObject(in) : element;
+				m_heap.m_entries[i] = new Entry(key, element, Checkpoint.readVarLong(in));
+			}
+			m_heap.m_size = size;
+			m_list = null;
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue with a single producer thread and a single
+ * consumer thread. The elements are stored in an array used circularly;
+ * the producer only writes the tail index and the consumer only writes
+ * the head index, except when the producer discards the oldest element,
+ * in which case both threads advance the head with a compare-and-set.
+ * For the same reason, a slot is not cleared when its element is read, and
+ * keeps a reference to it until it is overwritten.
+ * <p>
+ * A thread waiting for an element or for room in the buffer spins, then
+ * yields, and then parks until the other thread signals it by adding or
+ * removing an element, or until the buffer is {@link #close() closed}. An
+ * idle worker therefore consumes no CPU. To make sure that such a signal
+ * cannot be missed, the tail index is written with a volatile store.
+ *
+ * @author Sylvain Hallé
+ */
+public class RingBuffer
+{
+	/**
+	 * The number of empty polls or failed offers a thread spins for before
+	 * yielding.
+	 */
+	protected static final int SPIN_TRIES = 100;
+
+	/**
+	 * The number of empty polls or failed offers a thread yields for before
+	 * parking.
+	 */
+	protected static final int YIELD_TRIES = 200;
+
+
+	/**
+	 * The elements.
+	 */
+	protected final AtomicReferenceArray<Object> m_elements;
+
+	/**
+	 * The mask giving the position of an index in the array.
+	 */
+	protected final int m_mask;
+
+	/**
+	 * The index of the next element to be read.
+	 */
+	protected final AtomicLong m_head = new AtomicLong(0);
+
+	/**
+	 * The index of the next element to be written.
+	 */
+	protected final AtomicLong m_tail = new AtomicLong(0);
+
+	/**
+	 * The consumer thread, if it is parked until the buffer is not empty.
+	 */
+	protected volatile Thread m_parkedConsumer = null;
+
+	/**
+	 * The producer thread, if it is parked until the buffer is not full.
+	 */
+	protected volatile Thread m_parkedProducer = null;
+
+	/**
+	 * Whether the buffer has been closed.
+	 */
+	protected volatile boolean m_closed = false;
+
+	/**
+	 * Creates a new buffer.
+	 * @param capacity The capacity of the buffer; it is rounded up to a
+	 * power of two
+	 */
+	public RingBuffer(int capacity)
+	{
+		super();
+		int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		m_elements = new AtomicReferenceArray<Object>(size);
+		m_mask = size - 1;
+	}
+
+	/**
+	 * Gets the capacity of the buffer.
+	 * @return The capacity
+	 */
+	public int capacity()
+	{
+		return m_mask + 1;
+	}
+
+	/**
+	 * Gets the number of elements in the buffer.
+	 * @return The number of elements
+	 */
+	public int size()
+	{
+		return (int) (m_tail.get() - m_head.get());
+	}
+
+	/**
+	 * Adds an element to the buffer, if it is not full. This method must
+	 * only be called by the producer.
+	 * @param o The element, which must not be {@code null}
+	 * @return {@code true} if the element was added, {@code false} if the
+	 * buffer is full
+	 */
+	public boolean offer(Object o)
+	{
+		long tail = m_tail.get();
+		if (tail - m_head.get() > m_mask)
+		{
+			return false;
+		}
+		m_elements.lazySet((int) tail & m_mask, o);
+		m_tail.set(tail + 1);
+		Thread t = m_parkedConsumer;
+		if (t != null)
+		{
+			LockSupport.unpark(t);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds an element to the buffer, waiting until there is room for it.
+	 * This method must only be called by the producer.
+	 * @param o The element, which must not be {@code null}
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting
+	 */
+	public void put(Object o) throws InterruptedException
+	{
+		int tries = 0;
+		while (!offer(o))
+		{
+			tries = awaitNotFull(tries);
+		}
+	}
+
+	/**
+	 * Adds an element to the buffer, discarding the oldest element if the
+	 * buffer is full. This method must only be called by the producer.
+	 * @param o The element, which must not be {@code null}
+	 * @return {@code true} if an element was discarded, {@code false}
+	 * otherwise
+	 */
+	public boolean offerDiscardingOldest(Object o)
+	{
+		boolean discarded = false;
+		while (!offer(o))
+		{
+			long head = m_head.get();
+			if (m_tail.get() - head > m_mask && m_head.compareAndSet(head, head + 1))
+			{
+				discarded = true;
+			}
+		}
+		return discarded;
+	}
+
+	/**
+	 * Removes the oldest element of the buffer. This method must only be
+	 * called by the consumer.
+	 * @return The element, or {@code null} if the buffer is empty
+	 */
+	public Object poll()
+	{
+		while (true)
+		{
+			long head = m_head.get();
+			if (head >= m_tail.get())
+			{
+				return null;
+			}
+			Object o = m_elements.get((int) head & m_mask);
+			// The CAS fails if the producer has discarded this element in the
+			// meantime, in which case the slot may already hold a newer one
+			if (m_head.compareAndSet(head, head + 1))
+			{
+				Thread t = m_parkedProducer;
+				if (t != null)
+				{
+					LockSupport.unpark(t);
+				}
+				return o;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the elements of the buffer, and reopens it if it was
+	 * closed. This method must only be called when neither the producer nor
+	 * the consumer is active.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i <= m_mask; i++)
+		{
+			m_elements.set(i, null);
+		}
+		m_head.set(0);
+		m_tail.set(0);
+		m_closed = false;
+	}
+
+	/**
+	 * Closes the buffer, waking up the threads parked on it. Once the buffer
+	 * is closed, a thread waiting on it no longer parks, so that it can
+	 * check the reason why the buffer has been closed, such as the failure
+	 * of the other thread, after each attempt.
+	 */
+	public void close()
+	{
+		m_closed = true;
+		Thread t = m_parkedConsumer;
+		if (t != null)
+		{
+			LockSupport.unpark(t);
+		}
+		t = m_parkedProducer;
+		if (t != null)
+		{
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * Waits until the buffer is not empty. The thread spins at first, then
+	 * yields, and then parks until an element is added. This method must
+	 * only be called by the consumer, and may return before an element is
+	 * available; it is meant to be called in a loop around {@link #poll()}.
+	 * @param tries The number of times the thread has already waited
+	 * @return The number of times the thread has waited, including this one
+	 * @throws InterruptedException If the thread is interrupted
+	 */
+	public int awaitNotEmpty(int tries) throws InterruptedException
+	{
+		if (tries < SPIN_TRIES + YIELD_TRIES)
+		{
+			return backoff(tries);
+		}
+		if (Thread.interrupted())
+		{
+			throw new InterruptedException();
+		}
+		m_parkedConsumer = Thread.currentThread();
+		if (!m_closed && m_head.get() >= m_tail.get())
+		{
+			LockSupport.park(this);
+		}
+		m_parkedConsumer = null;
+		return tries;
+	}
+
+	/**
+	 * Waits until the buffer is not full. The thread spins at first, then
+	 * yields, and then parks until an element is removed. This method must
+	 * only be called by the producer, and may return before there is room
+	 * in the buffer; it is meant to be called in a loop around
+	 * {@link #offer(Object)}.
+	 * @param tries The number of times the thread has already waited
+	 * @return The number of times the thread has waited, including this one
+	 * @throws InterruptedException If the thread is interrupted
+	 */
+	public int awaitNotFull(int tries) throws InterruptedException
+	{
+		if (tries < SPIN_TRIES + YIELD_TRIES)
+		{
+			return backoff(tries);
+		}
+		if (Thread.interrupted())
+		{
+			throw new InterruptedException();
+		}
+		m_parkedProducer = Thread.currentThread();
+		if (!m_closed && m_tail.get() - m_head.get() > m_mask)
+		{
+			LockSupport.park(this);
+		}
+		m_parkedProducer = null;
+		return tries;
+	}
+
+	/**
+	 * Waits for a short time, spinning at first and then yielding.
+	 * @param tries The number of times the thread has already waited
+	 * @return The number of times the thread has waited, including this one
+	 * @throws InterruptedException If the thread is interrupted
+	 */
+	protected static int backoff(int tries) throws InterruptedException
+	{
+		if (Thread.interrupted())
+		{
+			throw new InterruptedException();
+		}
+		if (tries >= SPIN_TRIES)
+		{
+			Thread.yield();
+		}
+		return tries + 1;
+	}
+}
@@ -0,0 +1,348 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.cep.tuples.Tuple;
+
+/**
+ * A tuple whose attributes are defined by a shared {@link TupleSchema}.
+ * Instead of a map from names to values, each tuple only holds an array of
+ * the values of its attributes stored as objects, and an array of the
+ * values of its attributes declared as primitive numbers; the names are
+ * held once by the schema. Attributes can be accessed by name through the
+ * {@link Map} interface, like any other tuple, or directly by slot.
+ * <p>
+ * The set of attributes of a tuple is fixed by its schema: the value of an
+ * existing attribute can be replaced, but attributes cannot be added or
+ * removed.
+ *
+ * @author Sylvain Hallé
+ */
+public class SchemaTuple extends Tuple
+{
+	/**
+	 * The schema of the tuple.
+	 */
+	protected final TupleSchema m_schema;
+
+	/**
+	 * The values of the attributes stored as objects.
+	 */
+	protected final Object[] m_objects;
+
+	/**
+	 * The values of the attributes stored as primitive numbers; a
+	 * <tt>double</tt> is stored as its bits. This array is {@code null} if
+	 * the schema has no such attribute.
+	 */
+	protected final long[] m_primitives;
+
+	/**
+	 * Creates a new tuple. Use {@link TupleSchema#newTuple()} instead.
+	 * @param schema The schema of the tuple
+	 * @param objects The values of the attributes stored as objects
+	 * @param primitives The values of the attributes stored as primitive
+	 * numbers
+	 */
+	protected SchemaTuple(TupleSchema schema, Object[] objects, long[] primitives)
+	{
+		super();
+		m_schema = schema;
+		m_objects = objects;
+		m_primitives = primitives;
+	}
+
+	/**
+	 * Gets the schema of the tuple.
+	 * @return The schema
+	 */
+	public TupleSchema getSchema()
+	{
+		return m_schema;
+	}
+
+	/**
+	 * Gets the value of the attribute of a slot. The value of a primitive
+	 * attribute is boxed.
+	 * @param slot The slot
+	 * @return The value
+	 */
+	public Object get(int slot)
+	{
+		int pos = m_schema.m_positions[slot];
+		switch (m_schema.m_types[slot])
+		{
+		case LONG:
+			return m_primitives[pos];
+		case DOUBLE:
+			return Double.longBitsToDouble(m_primitives[pos]);
+		default:
+			return m_objects[pos];
+		}
+	}
+
+	/**
+	 * Gets the value of the attribute of a slot as a <tt>long</tt>.
+	 * @param slot The slot
+	 * @return The value
+	 */
+	public long getLong(int slot)
+	{
+		int pos = m_schema.m_positions[slot];
+		switch (m_schema.m_types[slot])
+		{
+		case LONG:
+			return m_primitives[pos];
+		case DOUBLE:
+			return (long) Double.longBitsToDouble(m_primitives[pos]);
+		default:
+			return ((Number) m_objects[pos]).longValue();
+		}
+	}
+
+	/**
+	 * Gets the value of the attribute of a slot as a <tt>double</tt>.
+	 * @param slot The slot
+	 * @return The value
+	 */
+	public double getDouble(int slot)
+	{
+		int pos = m_schema.m_positions[slot];
+		switch (m_schema.m_types[slot])
+		{
+		case LONG:
+			return m_primitives[pos];
+		case DOUBLE:
+			return Double.longBitsToDouble(m_primitives[pos]);
+		default:
+			return ((Number) m_objects[pos]).doubleValue();
+		}
+	}
+
+	/**
+	 * Sets the value of the attribute of a slot. The value of a primitive
+	 * attribute must be a {@link Number}, or a string that can be parsed as
+	 * a number.
+	 * @param slot The slot
+	 * @param value The value
+	 * @return The previous value
+	 */
+	public Object set(int slot, Object value)
+	{
+		Object old = get(slot);
+		int pos = m_schema.m_positions[slot];
+		switch (m_schema.m_types[slot])
+		{
+		case LONG:
+			m_primitives[pos] = value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+			break;
+		case DOUBLE:
+			setDouble(slot, value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim()));
+			break;
+		default:
+			m_objects[pos] = value;
+		}
+		return old;
+	}
+
+	/**
+	 * Sets the value of a primitive attribute.
+	 * @param slot The slot of the attribute
+	 * @param value The value
+	 */
+	public void setLong(int slot, long value)
+	{
+		if (m_schema.m_types[slot] == TupleSchema.Type.DOUBLE)
+		{
+			setDouble(slot, value);
+			return;
+		}
+		m_primitives[m_schema.m_positions[slot]] = value;
+	}
+
+	/**
+	 * Sets the value of a primitive attribute.
+	 * @param slot The slot of the attribute
+	 * @param value The value
+	 */
+	public void setDouble(int slot, double value)
+	{
+		if (m_schema.m_types[slot] == TupleSchema.Type.LONG)
+		{
+			setLong(slot, (long) value);
+			return;
+		}
+		m_primitives[m_schema.m_positions[slot]] = Double.doubleToRawLongBits(value);
+	}
+
+	@Override
+	public int size()
+	{
+		return m_schema.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return m_schema.size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return m_schema.getSlot(key) >= 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value)
+	{
+		return values().contains(value);
+	}
+
+	@Override
+	public Object get(Object key)
+	{
+		int slot = m_schema.getSlot(key);
+		return slot < 0 ? null : get(slot);
+	}
+
+	@Override
+	public Object put(String key, Object value)
+	{
+		int slot = m_schema.getSlot(key);
+		if (slot < 0)
+		{
+			throw new UnsupportedOperationException("The schema of the tuple has no attribute " + key);
+		}
+		return set(slot, value);
+	}
+
+	@Override
+	public void putAll(Map<? extends String,? extends Object> m)
+	{
+		for (Map.Entry<? extends String,? extends Object> e : m.entrySet())
+		{
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public Object remove(Object key)
+	{
+		throw new UnsupportedOperationException("Cannot remove an attribute from a tuple with a schema");
+	}
+
+	@Override
+	public void clear()
+	{
+		throw new UnsupportedOperationException("Cannot remove an attribute from a tuple with a schema");
+	}
+
+	@Override
+	public Set<String> keySet()
+	{
+		return m_schema.getNames();
+	}
+
+	@Override
+	public Collection<Object> values()
+	{
+		Collection<Object> values = new ArrayList<Object>(size());
+		for (int i = 0; i < size(); i++)
+		{
+			values.add(get(i));
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the attributes of the tuple. The set is a copy; modifying it
+	 * does not modify the tuple.
+	 */
+	@Override
+	public Set<Map.Entry<String,Object>> entrySet()
+	{
+		return toMap().entrySet();
+	}
+
+	/**
+	 * Copies the attributes of the tuple into a map.
+	 * @return The map
+	 */
+	protected Map<String,Object> toMap()
+	{
+		Map<String,Object> m = new LinkedHashMap<String,Object>();
+		for (int i = 0; i < size(); i++)
+		{
+			m.put(m_schema.getName(i), get(i));
+		}
+		return m;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+		{
+			return true;
+		}
+		if (!(o instanceof Map))
+		{
+			return false;
+		}
+		Map<?,?> m = (Map<?,?>) o;
+		if (m.size() != size())
+		{
+			return false;
+		}
+		for (int i = 0; i < size(); i++)
+		{
+			Object v = get(i);
+			Object w = m.get(m_schema.getName(i));
+			if (v == null ? w != null || !m.containsKey(m_schema.getName(i)) : !v.equals(w))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int h = 0;
+		for (int i = 0; i < size(); i++)
+		{
+			Object v = get(i);
+			h += m_schema.getName(i).hashCode() ^ (v == null ? 0 : v.hashCode());
+		}
+		return h;
+	}
+
+	@Override
+	public String toString()
+	{
+		return toMap().toString();
+	}
+}
@@ -0,0 +1,359 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Source reading the lines of a list of CSV files, and outputting each
+ * line as a {@link SchemaTuple}. As with
+ * {@link ca.uqac.lif.cep.tuples.SpliceTupleSource}, the files are read one
+ * after the other, and the first line of each file gives the names of the
+ * attributes. The header is parsed into a {@link TupleSchema} only once:
+ * all the tuples of a file share the same schema, and consecutive files
+ * with the same header also share it.
+ * <p>
+ * The values of the attributes are strings, with surrounding spaces
+ * removed, unless the attribute is declared as a primitive number with
+ * {@link #setType(String, TupleSchema.Type)}; its values are then parsed
+ * and stored without being boxed. Empty lines are ignored. The file name
+ * "-" designates the standard input.
+ *
+ * @author Sylvain Hallé
+ */
+public class SchemaTupleSource extends SynchronousProcessor
+{
+	/**
+	 * The names of the files to read.
+	 */
+	protected final String[] m_filenames;
+
+	/**
+	 * The string separating the values of a line.
+	 */
+	protected String m_separator = ",";
+
+	/**
+	 * The types declared for some attributes.
+	 */
+	protected final Map<String,TupleSchema.Type> m_declaredTypes = new HashMap<String,TupleSchema.Type>();
+
+	/**
+	 * The index of the file currently read, in {@link #m_filenames}.
+	 */
+	protected int m_fileIndex = 0;
+
+	/**
+	 * The reader of the file currently read, or {@code null} if no file is
+	 * open.
+	 */
+	protected BufferedReader m_reader;
+
+	/**
+	 * The schema of the tuples of the file currently read.
+	 */
+	protected TupleSchema m_schema;
+
+	/**
+	 * Creates a new source.
+	 * @param filenames The names of the files to read
+	 */
+	public SchemaTupleSource(String ... filenames)
+	{
+		super(0, 1);
+		m_filenames = filenames;
+	}
+
+	/**
+	 * Sets the string separating the values of a line.
+	 * @param separator The separator
+	 * @return This processor
+	 */
+	public SchemaTupleSource setSeparator(String separator)
+	{
+		m_separator = separator;
+		return this;
+	}
+
+	/**
+	 * Declares the type of an attribute.
+	 * @param name The name of the attribute
+	 * @param type The type
+	 * @return This processor
+	 */
+	public SchemaTupleSource setType(String name, TupleSchema.Type type)
+	{
+		m_declaredTypes.put(name, type);
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		try
+		{
+			String line = nextLine();
+			if (line == null)
+			{
+				return false;
+			}
+			outputs.add(new Object[] {parse(line)});
+			return true;
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+	}
+
+	/**
+	 * Reads the next non-empty line that is not a header, opening the next
+	 * file and parsing its header when needed.
+	 * @return The line, or {@code null} if all files have been read
+	 * @throws IOException If reading a file fails
+	 */
+	protected String nextLine() throws IOException
+	{
+		while (true)
+		{
+			if (m_reader == null)
+			{
+				if (m_fileIndex >= m_filenames.length)
+				{
+					return null;
+				}
+				m_reader = open(m_filenames[m_fileIndex]);
+				String header = nextNonEmpty();
+				if (header != null)
+				{
+					setSchema(header);
+				}
+			}
+			String line = nextNonEmpty();
+			if (line != null)
+			{
+				return line;
+			}
+			close();
+			m_fileIndex++;
+		}
+	}
+
+	/**
+	 * Reads the next non-empty line of the current file.
+	 * @return The line, or {@code null} at the end of the file
+	 * @throws IOException If reading the file fails
+	 */
+	protected String nextNonEmpty() throws IOException
+	{
+		String line;
+		while ((line = m_reader.readLine()) != null)
+		{
+			if (!line.trim().isEmpty())
+			{
+				return line;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a header into a schema, reusing the current schema if it has
+	 * the same attributes.
+	 * @param header The header
+	 */
+	protected void setSchema(String header)
+	{
+		String[] names = split(header);
+		TupleSchema.Type[] types = new TupleSchema.Type[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			types[i] = m_declaredTypes.get(names[i]);
+		}
+		if (m_schema == null || !m_schema.matches(names, types))
+		{
+			m_schema = new TupleSchema(names, types);
+		}
+	}
+
+	/**
+	 * Parses a line into a tuple. Missing values, and empty values of
+	 * numeric attributes, are left to {@code null} or 0, and extra values
+	 * are ignored.
+	 * @param line The line
+	 * @return The tuple
+	 * @throws ProcessorException If a value of a numeric attribute is not a
+	 * number
+	 */
+	protected SchemaTuple parse(String line)
+	{
+		SchemaTuple t = m_schema.newTuple();
+		int n = m_schema.size();
+		int start = 0;
+		for (int slot = 0; slot < n && start <= line.length(); slot++)
+		{
+			int end = line.indexOf(m_separator, start);
+			if (end < 0)
+			{
+				end = line.length();
+			}
+			String value = line.substring(start, end).trim();
+			start = end + m_separator.length();
+			switch (m_schema.getType(slot))
+			{
+			case LONG:
+				if (!value.isEmpty())
+				{
+					t.setLong(slot, parseLong(slot, value));
+				}
+				break;
+			case DOUBLE:
+				if (!value.isEmpty())
+				{
+					t.setDouble(slot, parseDouble(slot, value));
+				}
+				break;
+			default:
+				t.set(slot, value);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Parses the value of an attribute of type {@code long}.
+	 * @param slot The slot of the attribute
+	 * @param value The value
+	 * @return The number
+	 * @throws ProcessorException If the value is not an integer
+	 */
+	protected long parseLong(int slot, String value)
+	{
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new ProcessorException("Invalid value for column " + m_schema.getName(slot) + ": " + value);
+		}
+	}
+
+	/**
+	 * Parses the value of an attribute of type {@code double}.
+	 * @param slot The slot of the attribute
+	 * @param value The value
+	 * @return The number
+	 * @throws ProcessorException If the value is not a number
+	 */
+	protected double parseDouble(int slot, String value)
+	{
+		try
+		{
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new ProcessorException("Invalid value for column " + m_schema.getName(slot) + ": " + value);
+		}
+	}
+
+	/**
+	 * Splits a line into trimmed values.
+	 * @param line The line
+	 * @return The values
+	 */
+	protected String[] split(String line)
+	{
+		String[] parts = line.split(Pattern.quote(m_separator), -1);
+		for (int i = 0; i < parts.length; i++)
+		{
+			parts[i] = parts[i].trim();
+		}
+		return parts;
+	}
+
+	/**
+	 * Opens a file.
+	 * @param filename The name of the file, or "-" for the standard input
+	 * @return A reader of the file
+	 * @throws IOException If the file cannot be opened
+	 */
+	protected BufferedReader open(String filename) throws IOException
+	{
+		Charset utf8 = Charset.forName("UTF-8");
+		if (filename.equals("-"))
+		{
+			return new BufferedReader(new InputStreamReader(System.in, utf8));
+		}
+		return new BufferedReader(new InputStreamReader(new FileInputStream(filename), utf8));
+	}
+
+	/**
+	 * Closes the file currently read. The standard input is not closed.
+	 * @throws IOException If closing the file fails
+	 */
+	protected void close() throws IOException
+	{
+		if (m_reader != null && !m_filenames[m_fileIndex].equals("-"))
+		{
+			m_reader.close();
+		}
+		m_reader = null;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+		m_fileIndex = 0;
+		m_schema = null;
+	}
+
+	@Override
+	public SchemaTupleSource duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a source with its state");
+		}
+		SchemaTupleSource s = new SchemaTupleSource(m_filenames);
+		s.m_separator = m_separator;
+		s.m_declaredTypes.putAll(m_declaredTypes);
+		return s;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * The copy of a processor associated to a single slice, connected to a
+ * sink collecting its outputs.
+ *
+ * @author Sylvain Hallé
+ */
+public class SliceInstance
+{
+	/**
+	 * The processor of the slice.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The sink collecting the outputs of the processor.
+	 */
+	protected final QueueSink m_sink;
+
+	/**
+	 * The last event output by the processor, or {@code null} if it has not
+	 * output anything yet.
+	 */
+	protected Object m_lastValue;
+
+	/**
+	 * Creates a new slice instance.
+	 * @param p The processor of the slice, which must not be connected to
+	 * anything
+	 */
+	public SliceInstance(Processor p)
+	{
+		super();
+		m_processor = p;
+		m_sink = new QueueSink(p.getOutputArity());
+		Connector.connect(p, m_sink);
+	}
+
+	/**
+	 * Pushes an event front to the processor of the slice.
+	 * @param inputs The event front
+	 * @return {@code true} if the processor has output at least one event,
+	 * {@code false} otherwise
+	 */
+	public boolean push(Object[] inputs)
+	{
+		for (int i = 0; i < inputs.length; i++)
+		{
+			m_processor.getPushableInput(i).push(inputs[i]);
+		}
+		Queue<Object> q = m_sink.getQueue();
+		if (q.isEmpty())
+		{
+			return false;
+		}
+		while (!q.isEmpty())
+		{
+			m_lastValue = q.remove();
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the last event output by the processor of the slice.
+	 * @return The event, or {@code null} if the processor has not output
+	 * anything yet
+	 */
+	public Object getLastValue()
+	{
+		return m_lastValue;
+	}
+
+	/**
+	 * Gets the processor of the slice.
+	 * @return The processor
+	 */
+	public Processor getProcessor()
+	{
+		return m_processor;
+	}
+
+	/**
+	 * Resets the processor of the slice and discards its outputs, so that
+	 * the instance can be used for another slice.
+	 */
+	public void reset()
+	{
+		m_processor.reset();
+		m_sink.reset();
+		m_lastValue = null;
+	}
+}
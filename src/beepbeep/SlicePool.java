@@ -0,0 +1,99 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayDeque;
+
+import ca.uqac.lif.cep.Processor;
+
+/**
+ * A pool of slice instances that can be reused for new slices, instead of
+ * duplicating the slice processor for each of them. An instance released
+ * to the pool is reset, which, as per the contract of
+ * {@link Processor#reset()}, puts it back in the same state as a fresh
+ * copy of the processor.
+ *
+ * @author Sylvain Hallé
+ */
+public class SlicePool
+{
+	/**
+	 * The processor duplicated when the pool is empty.
+	 */
+	protected final Processor m_processor;
+
+	/**
+	 * The maximum number of instances kept in the pool.
+	 */
+	protected final int m_capacity;
+
+	/**
+	 * The instances available for reuse.
+	 */
+	protected final ArrayDeque<SliceInstance> m_free = new ArrayDeque<SliceInstance>();
+
+	/**
+	 * Creates a new pool.
+	 * @param p The processor to run on each slice
+	 * @param capacity The maximum number of instances kept in the pool
+	 */
+	public SlicePool(Processor p, int capacity)
+	{
+		super();
+		m_processor = p;
+		m_capacity = capacity;
+	}
+
+	/**
+	 * Gets an instance for a new slice, reusing one from the pool if there
+	 * is any.
+	 * @return The instance
+	 */
+	public SliceInstance acquire()
+	{
+		SliceInstance s = m_free.poll();
+		if (s == null)
+		{
+			s = new SliceInstance(m_processor.duplicate());
+		}
+		return s;
+	}
+
+	/**
+	 * Gives back the instance of a slice that has ended. The instance is
+	 * reset and kept for reuse, unless the pool is full.
+	 * @param s The instance
+	 */
+	public void release(SliceInstance s)
+	{
+		if (m_free.size() < m_capacity)
+		{
+			s.reset();
+			m_free.push(s);
+		}
+	}
+
+	/**
+	 * Gets the number of instances available for reuse.
+	 * @return The number of instances
+	 */
+	public int size()
+	{
+		return m_free.size();
+	}
+}
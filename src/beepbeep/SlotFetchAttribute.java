@@ -0,0 +1,81 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import ca.uqac.lif.cep.tuples.FetchAttribute;
+import ca.uqac.lif.cep.tuples.Tuple;
+
+/**
+ * A variant of {@link FetchAttribute} that fetches the attribute of a
+ * {@link SchemaTuple} by its slot. The slot of the attribute is looked up
+ * when the function receives its first tuple, and again only when it
+ * receives a tuple of a different schema. Tuples of any other class are
+ * handled by {@link FetchAttribute} itself.
+ *
+ * @author Sylvain Hallé
+ */
+public class SlotFetchAttribute extends FetchAttribute
+{
+	/**
+	 * The name of the attribute to fetch.
+	 */
+	protected final String m_name;
+
+	/**
+	 * The schema of the last tuple received, or {@code null} if no tuple
+	 * with a schema has been received.
+	 */
+	protected TupleSchema m_schema;
+
+	/**
+	 * The slot of the attribute in {@link #m_schema}.
+	 */
+	protected int m_slot;
+
+	/**
+	 * Creates a new instance of the function.
+	 * @param name The name of the attribute to fetch
+	 */
+	public SlotFetchAttribute(String name)
+	{
+		super(name);
+		m_name = name;
+	}
+
+	@Override
+	public Object getValue(Tuple t)
+	{
+		if (!(t instanceof SchemaTuple))
+		{
+			return super.getValue(t);
+		}
+		SchemaTuple st = (SchemaTuple) t;
+		if (st.getSchema() != m_schema)
+		{
+			m_schema = st.getSchema();
+			m_slot = m_schema.getSlot(m_name);
+		}
+		return m_slot < 0 ? null : st.get(m_slot);
+	}
+
+	@Override
+	public SlotFetchAttribute duplicate(boolean with_state)
+	{
+		return new SlotFetchAttribute(m_name);
+	}
+}
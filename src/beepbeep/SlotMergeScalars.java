@@ -0,0 +1,81 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.tuples.MergeScalars;
+
+/**
+ * A variant of {@link MergeScalars} that creates {@link SchemaTuple}s. The
+ * names of the attributes are turned into a {@link TupleSchema} once, when
+ * the function is created, and shared by all the tuples it creates; each
+ * tuple only holds the array of its values.
+ * <p>
+ * This variant is opt-in: {@link groovy#MergeScalars(String...)} creates
+ * the original function, and this one is created by
+ * {@link groovy#SlotMergeScalars(String...)}. <strong>The tuples it creates
+ * have a fixed set of attributes:</strong> adding a new attribute to them,
+ * removing an attribute or clearing them throws an
+ * {@link UnsupportedOperationException}. It should therefore only be used
+ * when the tuples are read, and not modified, downstream, for example by
+ * {@link SlotFetchAttribute}.
+ *
+ * @author Sylvain Hallé
+ */
+public class SlotMergeScalars extends MergeScalars
+{
+	/**
+	 * The schema of the tuples created by the function.
+	 */
+	protected final TupleSchema m_schema;
+
+	/**
+	 * Creates a new instance of the function.
+	 * @param names The names of the attributes of the tuples
+	 */
+	public SlotMergeScalars(String ... names)
+	{
+		super(names);
+		m_schema = new TupleSchema(names);
+	}
+
+	/**
+	 * Creates a new instance of the function sharing an existing schema.
+	 * @param schema The schema of the tuples
+	 */
+	protected SlotMergeScalars(TupleSchema schema)
+	{
+		super(schema.m_names);
+		m_schema = schema;
+	}
+
+	@Override
+	public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+	{
+		SchemaTuple t = m_schema.newTuple();
+		System.arraycopy(inputs, 0, t.m_objects, 0, m_schema.size());
+		outputs[0] = t;
+	}
+
+	@Override
+	public SlotMergeScalars duplicate(boolean with_state)
+	{
+		return new SlotMergeScalars(m_schema);
+	}
+}
@@ -0,0 +1,584 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.mtnp.table.Table;
+
+/**
+ * Processor running an expensive rendering processor, such as
+ * {@link ca.uqac.lif.cep.mtnp.DrawPlot}, on a background thread, at most
+ * once per interval and only on the latest input event.
+ * <p>
+ * When an event is received, it becomes the latest state to render. If the
+ * background thread is idle and the interval has elapsed since the last
+ * render started, the latest state is handed to it; otherwise, the event
+ * simply replaces the previous state waiting to be rendered, and the
+ * processor returns immediately. A state that could not be handed to the
+ * renderer is handed to it as soon as the renderer is free and the
+ * interval has elapsed, even if no other event arrives. Hence, the
+ * upstream pipeline never waits for the renderer. When the end of the
+ * trace is reached, the processor waits for the latest state to be
+ * rendered, and outputs it; the last image output therefore always shows
+ * the final state.
+ * <p>
+ * The state of the processor is guarded by a lock, taken both by the
+ * thread processing the input events and by the thread of the renderer.
+ * Once an event has been pushed to this processor, each render is output
+ * as soon as it is completed, from the thread of the renderer, while
+ * holding the lock; the processors downstream therefore only receive
+ * events from one thread at a time. In pull mode, the renders completed
+ * are only output when an event is pulled.
+ * <p>
+ * The renderer receives the events on another thread, while the upstream
+ * pipeline keeps modifying them. Therefore, each event is copied on the
+ * thread that receives it, before the next event can be produced: the
+ * views output by {@link BoundedTable} are converted into a new table, and
+ * any other {@link Table}, such as those updated in place by
+ * {@link ca.uqac.lif.cep.mtnp.UpdateTable}, is copied with
+ * {@link Table#getDataTable(String...)}. Only this copy is handed to the
+ * renderer. Other events are handed as is, and must not be modified after
+ * they have been received. Copying a table takes a time proportional to
+ * its size for every input event, which is much less than drawing it.
+ *
+ * @author Sylvain Hallé
+ */
+public class ThrottledRender extends SynchronousProcessor
+{
+	/**
+	 * The rendering processor.
+	 */
+	protected final Processor m_renderer;
+
+	/**
+	 * The minimum interval between the start of two renders, in
+	 * milliseconds.
+	 */
+	protected final long m_interval;
+
+	/**
+	 * The renderer connected to a sink collecting its outputs, or
+	 * {@code null} if it has not been created yet.
+	 */
+	protected SliceInstance m_instance;
+
+	/**
+	 * The thread running the renderer, or {@code null} if it has not been
+	 * started.
+	 */
+	protected ScheduledExecutorService m_service;
+
+	/**
+	 * The render in progress, or {@code null} if the renderer is idle.
+	 */
+	protected Future<?> m_running;
+
+	/**
+	 * Whether a render has been started and is not completed yet.
+	 */
+	protected volatile boolean m_rendering = false;
+
+	/**
+	 * The hand-off of the latest event scheduled at the end of the interval,
+	 * or {@code null} if none is scheduled.
+	 */
+	protected Future<?> m_deferred;
+
+	/**
+	 * The lock serializing the events pushed to this processor and the
+	 * renders it outputs.
+	 */
+	protected final ReentrantLock m_lock = new ReentrantLock();
+
+	/**
+	 * Whether the renderer has completed a render or the interval has
+	 * elapsed since the lock was last released.
+	 */
+	protected final AtomicBoolean m_check = new AtomicBoolean();
+
+	/**
+	 * The pushable serializing the events pushed to this processor, created
+	 * on demand.
+	 */
+	protected Pushable m_pushable;
+
+	/**
+	 * The last render completed and not yet output.
+	 */
+	protected final AtomicReference<Object> m_rendered = new AtomicReference<Object>();
+
+	/**
+	 * The exception thrown by the renderer, if any.
+	 */
+	protected volatile Throwable m_failure;
+
+	/**
+	 * Whether an event has been pushed to this processor, in which case the
+	 * renders are pushed downstream as soon as they are completed.
+	 */
+	protected volatile boolean m_pushMode = false;
+
+	/**
+	 * The copy of the latest event received.
+	 */
+	protected Object m_latest;
+
+	/**
+	 * Whether the latest event has not been handed to the renderer yet.
+	 */
+	protected boolean m_pending = false;
+
+	/**
+	 * The time before which no render can start, in nanoseconds.
+	 */
+	protected long m_nextRender;
+
+	/**
+	 * The number of events received.
+	 */
+	protected long m_received = 0;
+
+	/**
+	 * The number of renders started.
+	 */
+	protected long m_renders = 0;
+
+	/**
+	 * Creates a new throttled renderer.
+	 * @param renderer The rendering processor, which must have an input and
+	 * an output arity of 1
+	 * @param interval The minimum interval between the start of two renders,
+	 * in milliseconds
+	 */
+	public ThrottledRender(Processor renderer, long interval)
+	{
+		super(1, 1);
+		m_renderer = renderer;
+		m_interval = Math.max(0, interval);
+	}
+
+	/**
+	 * Gets the number of events received.
+	 * @return The number of events
+	 */
+	public long getReceived()
+	{
+		return m_received;
+	}
+
+	/**
+	 * Gets the number of renders started.
+	 * @return The number of renders
+	 */
+	public long getRenders()
+	{
+		return m_renders;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_lock.lock();
+		try
+		{
+			m_received++;
+			m_latest = snapshot(inputs[0]);
+			m_pending = true;
+			collect(outputs);
+			schedule();
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEnd(Queue<Object[]> outputs)
+	{
+		m_lock.lock();
+		try
+		{
+			if (m_pending)
+			{
+				await();
+				submit();
+			}
+			await();
+			collect(outputs);
+			shutdown();
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Hands the latest event to the renderer if it is idle and the interval
+	 * has elapsed, or schedules the hand-off at the end of the interval.
+	 * This method must be called while holding the lock of the processor.
+	 */
+	protected void schedule()
+	{
+		if (!m_pending || m_rendering)
+		{
+			return;
+		}
+		long delay = m_renders == 0 ? 0 : m_nextRender - System.nanoTime();
+		if (delay <= 0)
+		{
+			submit();
+			return;
+		}
+		if (m_deferred != null)
+		{
+			return;
+		}
+		m_deferred = getService().schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				m_check.set(true);
+				drain();
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Hands the copy of the latest event to the renderer. This method must
+	 * be called while holding the lock of the processor.
+	 */
+	protected void submit()
+	{
+		if (m_instance == null)
+		{
+			m_instance = new SliceInstance(m_renderer);
+		}
+		if (m_deferred != null)
+		{
+			m_deferred.cancel(false);
+			m_deferred = null;
+		}
+		final Object[] front = new Object[] {m_latest};
+		m_latest = null;
+		m_pending = false;
+		m_rendering = true;
+		m_renders++;
+		m_nextRender = System.nanoTime() + m_interval * 1000000;
+		m_running = getService().submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (m_instance.push(front))
+					{
+						m_rendered.set(m_instance.getLastValue());
+					}
+				}
+				catch (RuntimeException e)
+				{
+					m_failure = e;
+				}
+				m_rendering = false;
+				m_check.set(true);
+				drain();
+			}
+		});
+	}
+
+	/**
+	 * Gets the thread running the renderer, and starts it if necessary.
+	 * @return The thread
+	 */
+	protected ScheduledExecutorService getService()
+	{
+		if (m_service == null)
+		{
+			m_service = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ThrottledRender"));
+		}
+		return m_service;
+	}
+
+	/**
+	 * Outputs the last render completed and hands the latest event to the
+	 * renderer, if possible. This method never waits for the lock of the
+	 * processor: if another thread holds it, that thread calls this method
+	 * again once it has released it. The processor therefore never
+	 * deadlocks with a thread waiting for the renderer while holding the
+	 * lock, as is the case at the end of the trace.
+	 */
+	protected void drain()
+	{
+		while (m_check.get() && m_lock.tryLock())
+		{
+			try
+			{
+				m_check.set(false);
+				if (m_service == null)
+				{
+					// The processor has been stopped
+					continue;
+				}
+				schedule();
+				Pushable p = getPushableOutput(0);
+				if (m_pushMode && p != null && m_failure == null)
+				{
+					Object image = m_rendered.getAndSet(null);
+					if (image != null)
+					{
+						p.push(image);
+					}
+				}
+			}
+			catch (RuntimeException e)
+			{
+				m_failure = e;
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Copies an event into the object handed to the renderer. This method
+	 * is called on the thread that receives the event. A
+	 * {@link BoundedTable.View} is converted into a table, and any other
+	 * {@link Table} is copied; other events are handed as is.
+	 * @param o The event
+	 * @return The object handed to the renderer
+	 */
+	protected Object snapshot(Object o)
+	{
+		if (o instanceof BoundedTable.View)
+		{
+			return ((BoundedTable.View) o).toTable();
+		}
+		if (o instanceof Table)
+		{
+			return ((Table) o).getDataTable();
+		}
+		return o;
+	}
+
+	/**
+	 * Outputs the last render completed, if it has not been output yet.
+	 * @param outputs The queue where output events are added
+	 */
+	protected void collect(Queue<Object[]> outputs)
+	{
+		if (m_failure != null)
+		{
+			Throwable t = m_failure;
+			shutdown();
+			throw new ProcessorException(t);
+		}
+		Object image = m_rendered.getAndSet(null);
+		if (image != null)
+		{
+			outputs.add(new Object[] {image});
+		}
+	}
+
+	/**
+	 * Waits until the render in progress, if any, is completed.
+	 */
+	protected void await()
+	{
+		if (m_running == null)
+		{
+			return;
+		}
+		try
+		{
+			m_running.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new ProcessorException(e.getCause());
+		}
+	}
+
+	/**
+	 * Stops the thread of the renderer.
+	 */
+	protected void shutdown()
+	{
+		if (m_service != null)
+		{
+			m_service.shutdownNow();
+			m_service = null;
+		}
+		m_running = null;
+		m_rendering = false;
+		m_deferred = null;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_lock.lock();
+		try
+		{
+			try
+			{
+				await();
+			}
+			catch (ProcessorException e)
+			{
+				// The render is discarded anyway
+			}
+			shutdown();
+			if (m_instance != null)
+			{
+				m_instance.reset();
+			}
+			m_rendered.set(null);
+			m_check.set(false);
+			m_failure = null;
+			m_latest = null;
+			m_pending = false;
+			m_pushMode = false;
+			m_received = 0;
+			m_renders = 0;
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+		shutdown();
+	}
+
+	@Override
+	public synchronized Pushable getPushableInput(int index)
+	{
+		if (m_pushable == null)
+		{
+			m_pushable = new LockedPushable(super.getPushableInput(index));
+		}
+		return m_pushable;
+	}
+
+	@Override
+	public ThrottledRender duplicate(boolean with_state)
+	{
+		if (with_state)
+		{
+			throw new UnsupportedOperationException("Cannot duplicate a throttled renderer with its state");
+		}
+		return new ThrottledRender(m_renderer.duplicate(), m_interval);
+	}
+
+	/**
+	 * Pushable passing the events to this processor while holding its lock,
+	 * and outputting the renders completed in the meantime once the lock is
+	 * released.
+	 */
+	protected class LockedPushable implements Pushable
+	{
+		/**
+		 * The pushable of the processor.
+		 */
+		protected final Pushable m_pushable;
+
+		/**
+		 * Creates a new pushable.
+		 * @param p The pushable of the processor
+		 */
+		public LockedPushable(Pushable p)
+		{
+			super();
+			m_pushable = p;
+		}
+
+		@Override
+		public Pushable push(Object o)
+		{
+			m_pushMode = true;
+			m_lock.lock();
+			try
+			{
+				m_pushable.push(o);
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
+			drain();
+			return this;
+		}
+
+		@Override
+		public void notifyEndOfTrace()
+		{
+			m_lock.lock();
+			try
+			{
+				m_pushable.notifyEndOfTrace();
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
+		}
+
+		@Override
+		public Processor getProcessor()
+		{
+			return ThrottledRender.this;
+		}
+
+		@Override
+		public int getPosition()
+		{
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+
+/**
+ * A variant of {@link ca.uqac.lif.cep.tmf.Pump} whose pulls are scheduled
+ * on a thread pool shared by all the timed pumps, instead of each pump
+ * having a thread of its own. Many pumps can therefore run at the same time
+ * with a small, fixed number of threads.
+ * <p>
+ * Once started, the pump performs a <em>tick</em> at a fixed rate; on each
+ * tick, it pulls up to <i>K</i> events from its input (the <em>batch
+ * size</em>) and pushes them to its output. Optionally, the number of
+ * events pulled can be limited to a maximum rate, in events per second;
+ * ticks that would exceed this rate pull fewer events, and the next tick is
+ * postponed until an event can be pulled again. When the input has no more
+ * events, the pump notifies the end of the trace to its output and stops.
+ * <p>
+ * Since the ticks of all the pumps share the same threads, a pull that
+ * blocks holds back the ticks of other pumps; this processor is therefore
+ * meant for inputs that produce their events without waiting. The pump
+ * keeps track of the difference between the time at which each tick was
+ * scheduled and the time at which it actually ran, so that the
+ * <em>jitter</em> caused by sharing the threads can be measured.
+ *
+ * @author Sylvain Hallé
+ */
+public class TimedPump extends Processor implements Runnable
+{
+	/**
+	 * The thread pool running the ticks of all the pumps.
+	 */
+	protected static final ScheduledThreadPoolExecutor s_scheduler = createScheduler();
+
+	/**
+	 * The interval between two ticks, in nanoseconds.
+	 */
+	protected final long m_interval;
+
+	/**
+	 * The maximum number of events pulled on each tick.
+	 */
+	protected final int m_batchSize;
+
+	/**
+	 * The maximum number of events pulled per second, or 0 for no limit.
+	 */
+	protected double m_maxRate = 0;
+
+	/**
+	 * Whether the pump is running.
+	 */
+	protected volatile boolean m_running = false;
+
+	/**
+	 * The next tick of the pump, or {@code null} if the pump is not running.
+	 */
+	protected volatile ScheduledFuture<?> m_next;
+
+	/**
+	 * Counted down when the pump has reached the end of its input or has been
+	 * stopped.
+	 */
+	protected CountDownLatch m_done = new CountDownLatch(1);
+
+	/**
+	 * The time at which the pump was started, in nanoseconds.
+	 */
+	protected long m_startTime;
+
+	/**
+	 * The time at which the next tick is scheduled, in nanoseconds.
+	 */
+	protected long m_deadline;
+
+	/**
+	 * The number of events pulled since the pump was started.
+	 */
+	protected volatile long m_pulled = 0;
+
+	/**
+	 * The number of ticks performed since the pump was started.
+	 */
+	protected volatile long m_ticks = 0;
+
+	/**
+	 * The sum of the delays of all the ticks, in nanoseconds.
+	 */
+	protected volatile long m_totalJitter = 0;
+
+	/**
+	 * The largest delay of a tick, in nanoseconds.
+	 */
+	protected volatile long m_maxJitter = 0;
+
+	/**
+	 * The exception thrown by the last tick, if any.
+	 */
+	protected volatile RuntimeException m_failure;
+
+	/**
+	 * Creates a new timed pump.
+	 * @param interval The interval between two ticks, in milliseconds; 0
+	 * performs the ticks one after the other
+	 * @param batch_size The maximum number of events pulled on each tick
+	 */
+	public TimedPump(long interval, int batch_size)
+	{
+		super(1, 1);
+		m_interval = TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval));
+		m_batchSize = Math.max(1, batch_size);
+	}
+
+	/**
+	 * Creates a new timed pump pulling one event on each tick.
+	 * @param interval The interval between two ticks, in milliseconds
+	 */
+	public TimedPump(long interval)
+	{
+		this(interval, 1);
+	}
+
+	/**
+	 * Sets the maximum number of events pulled per second.
+	 * @param rate The rate, or 0 for no limit
+	 * @return This pump
+	 */
+	public TimedPump setMaxRate(double rate)
+	{
+		m_maxRate = Math.max(0, rate);
+		return this;
+	}
+
+	/**
+	 * Gets the number of threads currently used to run the ticks of all
+	 * the timed pumps.
+	 * @return The number of threads
+	 */
+	public static int getThreadCount()
+	{
+		return s_scheduler.getPoolSize();
+	}
+
+	/**
+	 * Gets the number of events pulled since the pump was started.
+	 * @return The number of events
+	 */
+	public long getPulled()
+	{
+		return m_pulled;
+	}
+
+	/**
+	 * Gets the number of ticks performed since the pump was started.
+	 * @return The number of ticks
+	 */
+	public long getTicks()
+	{
+		return m_ticks;
+	}
+
+	/**
+	 * Gets the average delay between the time at which a tick was scheduled
+	 * and the time at which it ran.
+	 * @return The delay, in nanoseconds
+	 */
+	public long getMeanJitter()
+	{
+		long ticks = m_ticks;
+		return ticks == 0 ? 0 : m_totalJitter / ticks;
+	}
+
+	/**
+	 * Gets the largest delay between the time at which a tick was scheduled
+	 * and the time at which it ran.
+	 * @return The delay, in nanoseconds
+	 */
+	public long getMaxJitter()
+	{
+		return m_maxJitter;
+	}
+
+	/**
+	 * Starts the pump. Nothing is done if the pump is already running.
+	 */
+	@Override
+	public synchronized void start()
+	{
+		super.start();
+		if (m_running)
+		{
+			return;
+		}
+		m_running = true;
+		m_startTime = System.nanoTime();
+		m_deadline = m_startTime;
+		m_next = s_scheduler.schedule(this, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops the pump, without notifying the end of the trace to its output.
+	 */
+	@Override
+	public synchronized void stop()
+	{
+		super.stop();
+		m_running = false;
+		ScheduledFuture<?> next = m_next;
+		if (next != null)
+		{
+			next.cancel(false);
+		}
+		m_next = null;
+		m_done.countDown();
+	}
+
+	/**
+	 * Waits until the pump has reached the end of its input or has been
+	 * stopped.
+	 * @throws ProcessorException If pulling or pushing an event failed
+	 */
+	public void waitFor()
+	{
+		try
+		{
+			m_done.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+		if (m_failure != null)
+		{
+			throw new ProcessorException(m_failure);
+		}
+	}
+
+	/**
+	 * Performs a tick. This method is called by the shared thread pool and
+	 * should not be called directly.
+	 */
+	@Override
+	public void run()
+	{
+		if (!m_running)
+		{
+			return;
+		}
+		long now = System.nanoTime();
+		long jitter = Math.max(0, now - m_deadline);
+		m_totalJitter += jitter;
+		if (jitter > m_maxJitter)
+		{
+			m_maxJitter = jitter;
+		}
+		m_ticks++;
+		int n = m_batchSize;
+		if (m_maxRate > 0)
+		{
+			long allowed = (long) (m_maxRate * (now - m_startTime) / 1e9) + 1 - m_pulled;
+			n = (int) Math.max(0, Math.min(n, allowed));
+		}
+		try
+		{
+			Pullable in = getPullableInput(0);
+			Pushable out = getPushableOutput(0);
+			for (int i = 0; i < n; i++)
+			{
+				if (!in.hasNext())
+				{
+					out.notifyEndOfTrace();
+					end();
+					return;
+				}
+				out.push(in.pull());
+				m_pulled++;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			m_failure = e;
+			end();
+			return;
+		}
+		m_deadline += m_interval;
+		if (m_maxRate > 0 && n < m_batchSize)
+		{
+			// Wait until the next event can be pulled without exceeding the rate
+			m_deadline = Math.max(m_deadline, m_startTime + (long) (m_pulled * 1e9 / m_maxRate));
+		}
+		synchronized (this)
+		{
+			if (m_running)
+			{
+				m_next = s_scheduler.schedule(this, Math.max(0, m_deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Marks the pump as no longer running.
+	 */
+	protected synchronized void end()
+	{
+		m_running = false;
+		m_next = null;
+		m_done.countDown();
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		super.reset();
+		stop();
+		m_done = new CountDownLatch(1);
+		m_pulled = 0;
+		m_ticks = 0;
+		m_totalJitter = 0;
+		m_maxJitter = 0;
+		m_failure = null;
+	}
+
+	@Override
+	public Pushable getPushableInput(int index)
+	{
+		throw new UnsupportedOperationException("A pump can only be pulled from");
+	}
+
+	@Override
+	public Pullable getPullableOutput(int index)
+	{
+		throw new UnsupportedOperationException("A pump can only push to its output");
+	}
+
+	@Override
+	public TimedPump duplicate(boolean with_state)
+	{
+		TimedPump p = new TimedPump(TimeUnit.NANOSECONDS.toMillis(m_interval), m_batchSize);
+		p.m_maxRate = m_maxRate;
+		return p;
+	}
+
+	/**
+	 * Creates the thread pool running the ticks of all the pumps.
+	 * @return The thread pool
+	 */
+	protected static ScheduledThreadPoolExecutor createScheduler()
+	{
+		ScheduledThreadPoolExecutor s = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("TimedPump"));
+		s.setRemoveOnCancelPolicy(true);
+		return s;
+	}
+}
@@ -0,0 +1,710 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+
+/**
+ * Builds {@link FunctionTree}s, simplifying them at construction time.
+ * The builder performs three optimizations:
+ * <ul>
+ * <li><em>Constant folding</em>: a pure function whose arguments are all
+ * {@link Constant}s is evaluated once and replaced by a {@link Constant}
+ * holding its result. Thus {@code Plus(3, 4)} becomes the constant 7.</li>
+ * <li><em>Short-circuiting</em>: a conjunction with a constant argument
+ * {@code false} becomes the constant {@code false}, and a disjunction with
+ * a constant argument {@code true} becomes the constant {@code true}.</li>
+ * <li><em>Subtree sharing</em>: when the same pure subtree (for example
+ * the same {@link ca.uqac.lif.cep.json.JPathFunction} path) occurs more
+ * than once in a tree, all its occurrences are replaced by a single
+ * {@link Shared} node, which is evaluated only once per evaluation of the
+ * tree.</li>
+ * </ul>
+ * A function is considered <em>pure</em> if its output depends only on
+ * its inputs, and if it has no internal state. The builder only recognizes
+ * as pure the functions from the BeepBeep packages that are known to have
+ * this property, and the trees built out of them; any other function is
+ * left untouched.
+ *
+ * @author Sylvain Hallé
+ */
+public class TreeBuilder
+{
+	private TreeBuilder()
+	{
+		super();
+	}
+
+	/**
+	 * Builds a function tree, applying the optimizations described above.
+	 * @param f The function at the root of the tree
+	 * @param args The arguments of the function
+	 * @return The function, which may be a {@link Tree} or a
+	 * {@link Constant}
+	 */
+	public static Function tree(Function f, Function ... args)
+	{
+		return optimize(new Tree(f, args, new Shared[0]));
+	}
+
+	/**
+	 * Applies the optimizations described above to a tree.
+	 * @param t The tree
+	 * @return The optimized function, which may be the tree itself, a new
+	 * tree of the same class, or a {@link Constant}
+	 */
+	public static Function optimize(Tree t)
+	{
+		Function f = t.m_root;
+		Function[] args = t.m_arguments;
+		// Short-circuiting
+		if (f instanceof ca.uqac.lif.cep.util.Booleans.And && hasConstant(args, Boolean.FALSE))
+		{
+			return new Constant(Boolean.FALSE);
+		}
+		if (f instanceof ca.uqac.lif.cep.util.Booleans.Or && hasConstant(args, Boolean.TRUE))
+		{
+			return new Constant(Boolean.TRUE);
+		}
+		// Constant folding
+		if (t.getKey() != null && !(f instanceof StreamVariable) && t.getOutputArity() == 1
+				&& f.getInputArity() == args.length)
+		{
+			boolean all_constant = true;
+			for (int i = 0; i < args.length && all_constant; i++)
+			{
+				all_constant = args[i] instanceof Constant;
+			}
+			if (all_constant)
+			{
+				try
+				{
+					Object[] out = new Object[1];
+					t.evaluate(new Object[0], out);
+					return new Constant(out[0]);
+				}
+				catch (RuntimeException e)
+				{
+					// Leave the tree as is: the error will occur when it is evaluated
+				}
+			}
+		}
+		// Subtree sharing
+		Map<Object,Integer> counts = new HashMap<Object,Integer>();
+		for (Function arg : args)
+		{
+			countKeys(arg, counts);
+		}
+		boolean to_share = false;
+		for (int c : counts.values())
+		{
+			if (c > 1)
+			{
+				to_share = true;
+				break;
+			}
+		}
+		if (!to_share)
+		{
+			return t;
+		}
+		Map<Object,Shared> shared = new HashMap<Object,Shared>();
+		Map<Shared,Shared> owned = new IdentityHashMap<Shared,Shared>();
+		Function[] new_args = new Function[args.length];
+		for (int i = 0; i < args.length; i++)
+		{
+			new_args[i] = share(args[i], counts, shared);
+			collectShared(new_args[i], owned);
+		}
+		return t.newTree(f, new_args, owned.keySet().toArray(new Shared[owned.size()]));
+	}
+
+	/**
+	 * Checks if one of the arguments of a function is a constant of a given
+	 * value.
+	 * @param args The arguments
+	 * @param value The value
+	 * @return {@code true} if one of the arguments is a {@link Constant}
+	 * returning {@code value}
+	 */
+	protected static boolean hasConstant(Function[] args, Object value)
+	{
+		for (Function arg : args)
+		{
+			if (arg instanceof Constant && value.equals(valueOf((Constant) arg)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the value returned by a constant.
+	 * @param c The constant
+	 * @return The value
+	 */
+	protected static Object valueOf(Constant c)
+	{
+		Object[] out = new Object[1];
+		c.evaluate(new Object[0], out);
+		return out[0];
+	}
+
+	/**
+	 * Computes the structural key of a function. Two functions with equal
+	 * keys are guaranteed to always return the same output for the same
+	 * input.
+	 * @param f The function
+	 * @return The key, or {@code null} if the function is not known to be
+	 * pure
+	 */
+	protected static Object getKey(Function f)
+	{
+		if (f instanceof Keyed)
+		{
+			return ((Keyed) f).getKey();
+		}
+		if (f instanceof Constant)
+		{
+			return Arrays.asList("Constant", valueOf((Constant) f));
+		}
+		if (f instanceof StreamVariable || isPure(f))
+		{
+			return new IdentityKey(f);
+		}
+		return null;
+	}
+
+	/**
+	 * Determines if a function, which is not a tree, is known to be pure.
+	 * @param f The function
+	 * @return {@code true} if the function is pure, {@code false} if it is
+	 * not or if this cannot be determined
+	 */
+	protected static boolean isPure(Function f)
+	{
+		Class<?> enclosing = f.getClass().getEnclosingClass();
+		return enclosing == ca.uqac.lif.cep.util.Numbers.class
+				|| enclosing == ca.uqac.lif.cep.util.Booleans.class
+				|| enclosing == ca.uqac.lif.cep.util.Strings.class
+				|| f instanceof ca.uqac.lif.cep.util.Equals
+				|| f instanceof ca.uqac.lif.cep.util.Size
+				|| f instanceof ca.uqac.lif.cep.util.NthElement
+				|| f instanceof ca.uqac.lif.cep.json.JPathFunction
+				|| f instanceof ca.uqac.lif.cep.json.NumberValue
+				|| f instanceof ca.uqac.lif.cep.json.StringValue;
+	}
+
+	/**
+	 * Determines if a function is worth sharing, i.e. if it is a pure
+	 * function that is not a trivial leaf such as a constant or a stream
+	 * variable.
+	 * @param f The function
+	 * @return {@code true} if the function is worth sharing
+	 */
+	protected static boolean isShareable(Function f)
+	{
+		return (f instanceof Tree || f instanceof JPath || f instanceof Shared) && getKey(f) != null;
+	}
+
+	/**
+	 * Counts the occurrences of each shareable subtree of a function.
+	 * @param f The function
+	 * @param counts A map associating keys to their number of occurrences,
+	 * which is updated by this method
+	 */
+	protected static void countKeys(Function f, Map<Object,Integer> counts)
+	{
+		if (isShareable(f))
+		{
+			Object key = getKey(f);
+			Integer c = counts.get(key);
+			counts.put(key, c == null ? 1 : c + 1);
+			if (c != null)
+			{
+				// The occurrences below this one have already been counted
+				return;
+			}
+		}
+		if (f instanceof Tree)
+		{
+			for (Function arg : ((Tree) f).m_arguments)
+			{
+				countKeys(arg, counts);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a function, replacing the subtrees that occur more than once
+	 * by shared nodes.
+	 * @param f The function
+	 * @param counts A map associating keys to their number of occurrences
+	 * @param shared A map associating keys to the shared node created for
+	 * them, which is updated by this method
+	 * @return The rebuilt function
+	 */
+	protected static Function share(Function f, Map<Object,Integer> counts, Map<Object,Shared> shared)
+	{
+		if (isShareable(f))
+		{
+			Object key = getKey(f);
+			if (counts.get(key) > 1)
+			{
+				Shared s = shared.get(key);
+				if (s == null)
+				{
+					if (f instanceof Shared)
+					{
+						s = (Shared) f;
+					}
+					else
+					{
+						s = new Shared(rebuild(f, counts, shared));
+					}
+					shared.put(key, s);
+				}
+				return s;
+			}
+		}
+		return rebuild(f, counts, shared);
+	}
+
+	/**
+	 * Rebuilds the arguments of a tree.
+	 * @param f The function
+	 * @param counts A map associating keys to their number of occurrences
+	 * @param shared A map associating keys to the shared node created for
+	 * them, which is updated by this method
+	 * @return The rebuilt function, or the function itself if it is not
+	 * a tree
+	 */
+	protected static Function rebuild(Function f, Map<Object,Integer> counts, Map<Object,Shared> shared)
+	{
+		if (!(f instanceof Tree))
+		{
+			return f;
+		}
+		Tree t = (Tree) f;
+		Function[] new_args = new Function[t.m_arguments.length];
+		for (int i = 0; i < new_args.length; i++)
+		{
+			new_args[i] = share(t.m_arguments[i], counts, shared);
+		}
+		// The shared nodes below this tree are now owned by the enclosing tree
+		return t.newTree(t.m_root, new_args, new Shared[0]);
+	}
+
+	/**
+	 * Collects all the shared nodes occurring in a function.
+	 * @param f The function
+	 * @param nodes A map where the shared nodes are added
+	 */
+	protected static void collectShared(Function f, Map<Shared,Shared> nodes)
+	{
+		if (f instanceof Shared)
+		{
+			if (nodes.put((Shared) f, (Shared) f) == null)
+			{
+				collectShared(((Shared) f).m_function, nodes);
+			}
+		}
+		else if (f instanceof Tree)
+		{
+			for (Function arg : ((Tree) f).m_arguments)
+			{
+				collectShared(arg, nodes);
+			}
+		}
+	}
+
+	/**
+	 * Interface implemented by functions that can compute their own
+	 * structural key.
+	 */
+	public static interface Keyed
+	{
+		/**
+		 * Gets the structural key of this function.
+		 * @return The key, or {@code null} if the function is not known to be
+		 * pure
+		 */
+		public Object getKey();
+	}
+
+	/**
+	 * Wraps an object so that it is compared to other keys using its
+	 * identity.
+	 */
+	protected static class IdentityKey
+	{
+		/**
+		 * The wrapped object.
+		 */
+		private final Object m_object;
+
+		public IdentityKey(Object o)
+		{
+			super();
+			m_object = o;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(m_object);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof IdentityKey && ((IdentityKey) o).m_object == m_object;
+		}
+	}
+
+	/**
+	 * A {@link FunctionTree} produced by the builder. It remembers its
+	 * arguments, so that it can be rebuilt when it becomes part of a larger
+	 * tree, and it manages the {@link Shared} nodes it introduced.
+	 */
+	public static class Tree extends FunctionTree implements Keyed
+	{
+		/**
+		 * The function at the root of the tree.
+		 */
+		protected final Function m_root;
+
+		/**
+		 * The arguments of the function at the root of the tree.
+		 */
+		protected final Function[] m_arguments;
+
+		/**
+		 * The shared nodes whose cached values must be discarded at the start
+		 * of each evaluation of this tree.
+		 */
+		protected final Shared[] m_owned;
+
+		/**
+		 * The structural key of this tree.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * Creates a new tree.
+		 * @param root The function at the root of the tree
+		 * @param arguments The arguments of the function
+		 * @param owned The shared nodes owned by this tree
+		 */
+		protected Tree(Function root, Function[] arguments, Shared[] owned)
+		{
+			super(root, arguments);
+			m_root = root;
+			m_arguments = arguments;
+			m_owned = owned;
+			List<Object> key = new ArrayList<Object>(arguments.length + 2);
+			key.add(getClass());
+			key.add(TreeBuilder.getKey(root));
+			for (Function arg : arguments)
+			{
+				key.add(TreeBuilder.getKey(arg));
+			}
+			m_key = key.contains(null) ? null : key;
+		}
+
+		@Override
+		public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Creates a new tree of the same class as this one.
+		 * @param root The function at the root of the tree
+		 * @param arguments The arguments of the function
+		 * @param owned The shared nodes owned by this tree
+		 * @return The new tree
+		 */
+		protected Tree newTree(Function root, Function[] arguments, Shared[] owned)
+		{
+			return new Tree(root, arguments, owned);
+		}
+
+		@Override
+		public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+		{
+			invalidateOwned();
+			super.evaluate(inputs, outputs, context, tracker);
+		}
+
+		/**
+		 * Discards the values cached by the shared nodes owned by this tree.
+		 * Descendants of this class that override
+		 * {@link #evaluate(Object[], Object[], Context, EventTracker)} must call
+		 * this method at the start of each evaluation.
+		 */
+		protected final void invalidateOwned()
+		{
+			for (Shared s : m_owned)
+			{
+				s.invalidate();
+			}
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			invalidateOwned();
+		}
+
+		@Override
+		public Tree duplicate(boolean with_state)
+		{
+			return copy(with_state, new IdentityHashMap<Shared,Shared>());
+		}
+
+		/**
+		 * Duplicates this tree, preserving the sharing of its nodes.
+		 * @param with_state Whether to duplicate the state of the functions
+		 * @param copies A map associating shared nodes to their copy
+		 * @return The copy of the tree
+		 */
+		protected Tree copy(boolean with_state, Map<Shared,Shared> copies)
+		{
+			Function[] args = new Function[m_arguments.length];
+			for (int i = 0; i < args.length; i++)
+			{
+				args[i] = copyOf(m_arguments[i], with_state, copies);
+			}
+			Shared[] owned = new Shared[m_owned.length];
+			for (int i = 0; i < owned.length; i++)
+			{
+				owned[i] = (Shared) copyOf(m_owned[i], with_state, copies);
+			}
+			return newTree(m_root.duplicate(with_state), args, owned);
+		}
+
+		/**
+		 * Duplicates a node of a tree, preserving the sharing of its nodes.
+		 * @param f The node
+		 * @param with_state Whether to duplicate the state of the functions
+		 * @param copies A map associating shared nodes to their copy
+		 * @return The copy of the node
+		 */
+		protected static Function copyOf(Function f, boolean with_state, Map<Shared,Shared> copies)
+		{
+			if (f instanceof Shared)
+			{
+				Shared s = (Shared) f;
+				Shared c = copies.get(s);
+				if (c == null)
+				{
+					c = new Shared(copyOf(s.m_function, with_state, copies));
+					copies.put(s, c);
+				}
+				return c;
+			}
+			if (f instanceof Tree)
+			{
+				return ((Tree) f).copy(with_state, copies);
+			}
+			return f.duplicate(with_state);
+		}
+	}
+
+	/**
+	 * A node occurring at multiple places in a tree. The node remembers
+	 * the inputs and outputs of its last evaluation, and returns the same
+	 * outputs without evaluating its function again when it is given the
+	 * same inputs. The cached outputs are discarded by the {@link Tree} that
+	 * owns the node at the start of each of its evaluations, so that the
+	 * node is evaluated at most once per event even if the input events are
+	 * mutable objects.
+	 */
+	public static class Shared extends Function implements Keyed
+	{
+		/**
+		 * The function to evaluate.
+		 */
+		protected final Function m_function;
+
+		/**
+		 * The inputs of the last evaluation, or {@code null} if no value is
+		 * cached.
+		 */
+		protected Object[] m_lastInputs;
+
+		/**
+		 * The outputs of the last evaluation.
+		 */
+		protected Object[] m_lastOutputs;
+
+		/**
+		 * Creates a new shared node.
+		 * @param f The function to evaluate
+		 */
+		public Shared(Function f)
+		{
+			super();
+			m_function = f;
+			m_lastOutputs = new Object[f.getOutputArity()];
+		}
+
+		/**
+		 * Discards the cached outputs of this node.
+		 */
+		public void invalidate()
+		{
+			m_lastInputs = null;
+		}
+
+		@Override
+		public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+		{
+			if (m_lastInputs != null && sameInputs(inputs))
+			{
+				System.arraycopy(m_lastOutputs, 0, outputs, 0, m_lastOutputs.length);
+				return;
+			}
+			m_function.evaluate(inputs, outputs, context, tracker);
+			m_lastInputs = Arrays.copyOf(inputs, inputs.length);
+			System.arraycopy(outputs, 0, m_lastOutputs, 0, m_lastOutputs.length);
+		}
+
+		/**
+		 * Checks if the inputs are the same objects as those of the last
+		 * evaluation.
+		 * @param inputs The inputs
+		 * @return {@code true} if all inputs are identical
+		 */
+		protected boolean sameInputs(Object[] inputs)
+		{
+			if (inputs.length != m_lastInputs.length)
+			{
+				return false;
+			}
+			for (int i = 0; i < inputs.length; i++)
+			{
+				if (inputs[i] != m_lastInputs[i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Object getKey()
+		{
+			return TreeBuilder.getKey(m_function);
+		}
+
+		@Override
+		public int getInputArity()
+		{
+			return m_function.getInputArity();
+		}
+
+		@Override
+		public int getOutputArity()
+		{
+			return m_function.getOutputArity();
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_function.reset();
+			invalidate();
+		}
+
+		/**
+		 * Duplicates this node. Since a copy of the node on its own is no
+		 * longer shared, this method returns a copy of the underlying function.
+		 * Use {@link Tree#duplicate(boolean)} to copy a tree and preserve the
+		 * sharing of its nodes.
+		 */
+		@Override
+		public Function duplicate(boolean with_state)
+		{
+			return m_function.duplicate(with_state);
+		}
+
+		@Override
+		public void getInputTypesFor(Set<Class<?>> classes, int index)
+		{
+			m_function.getInputTypesFor(classes, index);
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return m_function.getOutputTypeFor(index);
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_function.toString();
+		}
+	}
+
+	/**
+	 * A {@link ca.uqac.lif.cep.json.JPathFunction} that remembers its path,
+	 * so that two functions extracting the same path can be shared.
+	 */
+	public static class JPath extends ca.uqac.lif.cep.json.JPathFunction implements Keyed
+	{
+		/**
+		 * The path to extract.
+		 */
+		protected final String m_path;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param path The path to extract
+		 */
+		public JPath(String path)
+		{
+			super(path);
+			m_path = path;
+		}
+
+		@Override
+		public Object getKey()
+		{
+			return Arrays.asList("JPath", m_path);
+		}
+	}
+}
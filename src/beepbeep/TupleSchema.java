@@ -0,0 +1,226 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The names and types of the attributes of {@link SchemaTuple}s. A schema
+ * is created once, for example from the header of a CSV file, and shared
+ * by all the tuples that have these attributes. Each attribute is given a
+ * <em>slot</em>, which is its position in the schema; functions that
+ * access the same attribute of many tuples, such as
+ * {@link SlotFetchAttribute}, look up the slot of the attribute once per
+ * schema instead of looking up its name in each tuple.
+ * <p>
+ * An attribute can be declared as a primitive <tt>long</tt> or
+ * <tt>double</tt>; the values of such attributes are stored in a tuple
+ * without being boxed. The values of the other attributes are stored as
+ * objects.
+ *
+ * @author Sylvain Hallé
+ */
+public class TupleSchema
+{
+	/**
+	 * The type of an attribute.
+	 */
+	public static enum Type
+	{
+		/**
+		 * An attribute whose values are objects.
+		 */
+		OBJECT,
+
+		/**
+		 * An attribute whose values are stored as primitive <tt>long</tt>s.
+		 */
+		LONG,
+
+		/**
+		 * An attribute whose values are stored as primitive <tt>double</tt>s.
+		 */
+		DOUBLE
+	}
+
+	/**
+	 * The names of the attributes, in the order of their slots.
+	 */
+	protected final String[] m_names;
+
+	/**
+	 * The types of the attributes, in the order of their slots.
+	 */
+	protected final Type[] m_types;
+
+	/**
+	 * The slot of each attribute name.
+	 */
+	protected final Map<String,Integer> m_slots;
+
+	/**
+	 * For each slot, the index of its value in the array of objects or of
+	 * primitive values of a tuple, depending on its type.
+	 */
+	protected final int[] m_positions;
+
+	/**
+	 * The number of attributes stored as objects.
+	 */
+	protected final int m_numObjects;
+
+	/**
+	 * The number of attributes stored as primitive values.
+	 */
+	protected final int m_numPrimitives;
+
+	/**
+	 * The names of the attributes, as an unmodifiable set.
+	 */
+	protected final Set<String> m_keySet;
+
+	/**
+	 * Creates a new schema.
+	 * @param names The names of the attributes
+	 * @param types The types of the attributes, or {@code null} if all the
+	 * attributes are objects
+	 */
+	public TupleSchema(String[] names, Type[] types)
+	{
+		super();
+		m_names = names.clone();
+		m_types = new Type[names.length];
+		m_slots = new HashMap<String,Integer>();
+		m_positions = new int[names.length];
+		int objects = 0;
+		int primitives = 0;
+		for (int i = 0; i < names.length; i++)
+		{
+			m_types[i] = types == null || types[i] == null ? Type.OBJECT : types[i];
+			m_positions[i] = m_types[i] == Type.OBJECT ? objects++ : primitives++;
+			if (m_slots.put(names[i], i) != null)
+			{
+				throw new IllegalArgumentException("Duplicate attribute name: " + names[i]);
+			}
+		}
+		m_numObjects = objects;
+		m_numPrimitives = primitives;
+		m_keySet = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(m_names)));
+	}
+
+	/**
+	 * Creates a new schema where all the attributes are objects.
+	 * @param names The names of the attributes
+	 */
+	public TupleSchema(String ... names)
+	{
+		this(names, null);
+	}
+
+	/**
+	 * Gets the number of attributes.
+	 * @return The number of attributes
+	 */
+	public int size()
+	{
+		return m_names.length;
+	}
+
+	/**
+	 * Gets the slot of an attribute.
+	 * @param name The name of the attribute
+	 * @return The slot, or -1 if the schema has no such attribute
+	 */
+	public int getSlot(Object name)
+	{
+		Integer i = m_slots.get(name);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Gets the name of the attribute of a slot.
+	 * @param slot The slot
+	 * @return The name
+	 */
+	public String getName(int slot)
+	{
+		return m_names[slot];
+	}
+
+	/**
+	 * Gets the type of the attribute of a slot.
+	 * @param slot The slot
+	 * @return The type
+	 */
+	public Type getType(int slot)
+	{
+		return m_types[slot];
+	}
+
+	/**
+	 * Gets the names of the attributes.
+	 * @return An unmodifiable set of the names, in the order of their slots
+	 */
+	public Set<String> getNames()
+	{
+		return m_keySet;
+	}
+
+	/**
+	 * Creates a tuple of this schema.
+	 * @return The tuple, whose attributes are all {@code null} or 0
+	 */
+	public SchemaTuple newTuple()
+	{
+		return new SchemaTuple(this, new Object[m_numObjects], m_numPrimitives == 0 ? null : new long[m_numPrimitives]);
+	}
+
+	/**
+	 * Determines if this schema has the same attributes as another one.
+	 * @param names The names of the attributes of the other schema
+	 * @param types The types of the attributes of the other schema
+	 * @return {@code true} if the attributes are the same
+	 */
+	public boolean matches(String[] names, Type[] types)
+	{
+		if (!Arrays.equals(m_names, names))
+		{
+			return false;
+		}
+		for (int i = 0; i < m_types.length; i++)
+		{
+			Type t = types == null || types[i] == null ? Type.OBJECT : types[i];
+			if (t != m_types[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(m_names);
+	}
+}
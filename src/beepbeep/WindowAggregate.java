@@ -0,0 +1,578 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package beepbeep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Processor computing an aggregate over a sliding window of the last
+ * <i>n</i> input events, incrementally. It outputs its values for the same
+ * events as a {@link ca.uqac.lif.cep.tmf.Window} of width <i>n</i> around a
+ * {@link ca.uqac.lif.cep.functions.Cumulate}: nothing is output for the
+ * first <i>n</i>&minus;1 events, and then one value is output for each
+ * event, computed on this event and the <i>n</i>&minus;1 events before it.
+ * <p>
+ * However, instead of recomputing the aggregate on the whole window for
+ * each event, the processor keeps the events of the window in a ring
+ * buffer of primitive values and updates the aggregate when an event
+ * enters or leaves the window, in constant amortized time. As in
+ * {@link PrimitiveNumbers}, the numbers are kept in one of two lanes: an
+ * aggregate of integers is output as a {@link Long}, and an aggregate that
+ * involves other numbers is output as a {@link Double}. The values
+ * therefore have another type than those of
+ * <tt>Cumulate(Numbers.addition)</tt>, which are {@link Float}s, and may
+ * differ from them for large or non-integer numbers.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class WindowAggregate extends SynchronousProcessor implements Checkpointable
+{
+	/**
+	 * The width of the window.
+	 */
+	protected final int m_width;
+
+	/**
+	 * The values of the events of the window that are integers, indexed by
+	 * their position in the ring buffer.
+	 */
+	protected final long[] m_longs;
+
+	/**
+	 * The values of the events of the window that are not integers, indexed
+	 * by their position in the ring buffer.
+	 */
+	protected final double[] m_doubles;
+
+	/**
+	 * Whether each event of the window is an integer.
+	 */
+	protected final boolean[] m_integral;
+
+	/**
+	 * The number of events of the window that are not integers.
+	 */
+	protected int m_nonIntegral = 0;
+
+	/**
+	 * The number of events received since the processor was reset.
+	 */
+	protected long m_received = 0;
+
+	/**
+	 * Creates a new window aggregate.
+	 * @param width The width of the window
+	 */
+	public WindowAggregate(int width)
+	{
+		super(1, 1);
+		if (width < 1)
+		{
+			throw new IllegalArgumentException("The width of a window must be positive");
+		}
+		m_width = width;
+		m_longs = new long[width];
+		m_doubles = new double[width];
+		m_integral = new boolean[width];
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		int slot = (int) (m_received % m_width);
+		if (m_received >= m_width)
+		{
+			evict(slot, m_received - m_width);
+			if (!m_integral[slot])
+			{
+				m_nonIntegral--;
+			}
+		}
+		Number x = toNumber(inputs[0]);
+		m_integral[slot] = PrimitiveNumbers.isIntegral(x);
+		if (m_integral[slot])
+		{
+			m_longs[slot] = x.longValue();
+		}
+		else
+		{
+			m_doubles[slot] = x.doubleValue();
+			m_nonIntegral++;
+		}
+		add(slot, m_received);
+		m_received++;
+		if (m_received >= m_width)
+		{
+			outputs.add(new Object[] {getAggregate()});
+		}
+		return true;
+	}
+
+	/**
+	 * Converts an input event into the number it contributes to the
+	 * aggregate.
+	 * @param o The event
+	 * @return The number
+	 */
+	protected Number toNumber(Object o)
+	{
+		return (Number) o;
+	}
+
+	/**
+	 * Gets the value of the event at a position of the ring buffer as a
+	 * <tt>double</tt>.
+	 * @param slot The position
+	 * @return The value
+	 */
+	protected double doubleAt(int slot)
+	{
+		return m_integral[slot] ? m_longs[slot] : m_doubles[slot];
+	}
+
+	/**
+	 * Updates the aggregate when an event leaves the window. The event is
+	 * still in the ring buffer when this method is called.
+	 * @param slot The position of the event in the ring buffer
+	 * @param index The index of the event in the input stream
+	 */
+	protected abstract void evict(int slot, long index);
+
+	/**
+	 * Updates the aggregate when an event enters the window.
+	 * @param slot The position of the event in the ring buffer
+	 * @param index The index of the event in the input stream
+	 */
+	protected abstract void add(int slot, long index);
+
+	/**
+	 * Gets the value of the aggregate on the current window.
+	 * @return The value
+	 */
+	protected abstract Number getAggregate();
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_received = 0;
+		m_nonIntegral = 0;
+	}
+
+	/**
+	 * Writes the state of the processor: the number of events received and
+	 * the events of the current window, from the oldest to the newest.
+	 * Descendants write the state of their aggregate after it.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		Checkpoint.writeVarLong(out, m_width);
+		Checkpoint.writeVarLong(out, m_received);
+		for (long i = Math.max(0, m_received - m_width); i < m_received; i++)
+		{
+			int slot = (int) (i % m_width);
+			out.writeBoolean(m_integral[slot]);
+			if (m_integral[slot])
+			{
+				Checkpoint.writeVarLong(out, m_longs[slot]);
+			}
+			else
+			{
+				out.writeDouble(m_doubles[slot]);
+			}
+		}
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		Checkpoint.checkParameter("width", m_width, Checkpoint.readVarLong(in));
+		m_received = Checkpoint.readVarLong(in);
+		m_nonIntegral = 0;
+		for (long i = Math.max(0, m_received - m_width); i < m_received; i++)
+		{
+			int slot = (int) (i % m_width);
+			m_integral[slot] = in.readBoolean();
+			if (m_integral[slot])
+			{
+				m_longs[slot] = Checkpoint.readVarLong(in);
+			}
+			else
+			{
+				m_doubles[slot] = in.readDouble();
+				m_nonIntegral++;
+			}
+		}
+	}
+
+	/**
+	 * Sum of the events of the window. Evicted values are subtracted from
+	 * the sum; the sum of the values that are not integers is recomputed
+	 * from the ring buffer once per width of the window, so that rounding
+	 * errors do not accumulate.
+	 */
+	public static class Sum extends WindowAggregate
+	{
+		/**
+		 * The sum of the integers of the window.
+		 */
+		protected long m_longSum = 0;
+
+		/**
+		 * The sum of the other numbers of the window.
+		 */
+		protected double m_doubleSum = 0;
+
+		/**
+		 * The number of evictions since the sum of non-integers was last
+		 * recomputed.
+		 */
+		protected int m_sinceRecompute = 0;
+
+		public Sum(int width)
+		{
+			super(width);
+		}
+
+		@Override
+		protected void evict(int slot, long index)
+		{
+			if (m_integral[slot])
+			{
+				m_longSum -= m_longs[slot];
+			}
+			else
+			{
+				m_doubleSum -= m_doubles[slot];
+			}
+		}
+
+		@Override
+		protected void add(int slot, long index)
+		{
+			if (m_integral[slot])
+			{
+				m_longSum += m_longs[slot];
+			}
+			else
+			{
+				m_doubleSum += m_doubles[slot];
+			}
+			if (m_received >= m_width && ++m_sinceRecompute >= m_width)
+			{
+				m_sinceRecompute = 0;
+				m_doubleSum = 0;
+				for (int i = 0; i < m_width; i++)
+				{
+					if (!m_integral[i])
+					{
+						m_doubleSum += m_doubles[i];
+					}
+				}
+			}
+		}
+
+		@Override
+		protected Number getAggregate()
+		{
+			if (m_nonIntegral == 0)
+			{
+				return m_longSum;
+			}
+			return m_longSum + m_doubleSum;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_longSum = 0;
+			m_doubleSum = 0;
+			m_sinceRecompute = 0;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			super.writeState(out);
+			Checkpoint.writeVarLong(out, m_longSum);
+			out.writeDouble(m_doubleSum);
+			Checkpoint.writeVarLong(out, m_sinceRecompute);
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			super.readState(in);
+			m_longSum = Checkpoint.readVarLong(in);
+			m_doubleSum = in.readDouble();
+			m_sinceRecompute = Checkpoint.readSize(in);
+		}
+
+		@Override
+		public Sum duplicate(boolean with_state)
+		{
+			return new Sum(m_width);
+		}
+	}
+
+	/**
+	 * Average of the events of the window, always output as a
+	 * {@link Double}.
+	 */
+	public static class Avg extends Sum
+	{
+		public Avg(int width)
+		{
+			super(width);
+		}
+
+		@Override
+		protected Number getAggregate()
+		{
+			return (m_longSum + m_doubleSum) / m_width;
+		}
+
+		@Override
+		public Avg duplicate(boolean with_state)
+		{
+			return new Avg(m_width);
+		}
+	}
+
+	/**
+	 * Number of events of the window that are equal to
+	 * {@link Boolean#TRUE}, output as a {@link Long}. It is the incremental
+	 * counterpart of a window of width <i>n</i> around a cumulative sum of
+	 * 1 for each true event and 0 for each other event.
+	 */
+	public static class Count extends Sum
+	{
+		/**
+		 * The number 1.
+		 */
+		protected static final Long ONE = 1L;
+
+		/**
+		 * The number 0.
+		 */
+		protected static final Long ZERO = 0L;
+
+		public Count(int width)
+		{
+			super(width);
+		}
+
+		@Override
+		protected Number toNumber(Object o)
+		{
+			return Boolean.TRUE.equals(o) ? ONE : ZERO;
+		}
+
+		@Override
+		public Count duplicate(boolean with_state)
+		{
+			return new Count(m_width);
+		}
+	}
+
+	/**
+	 * Minimum or maximum of the events of the window. The events that can
+	 * still become the extremum of a future window are kept in a monotonic
+	 * deque: each event enters and leaves the deque at most once, and the
+	 * extremum of the window is always at the head of the deque.
+	 */
+	protected abstract static class Extremum extends WindowAggregate
+	{
+		/**
+		 * The positions in the ring buffer of the events in the deque.
+		 */
+		protected final int[] m_dequeSlots;
+
+		/**
+		 * The indices in the input stream of the events in the deque.
+		 */
+		protected final long[] m_dequeIndices;
+
+		/**
+		 * The position of the head of the deque in its arrays.
+		 */
+		protected int m_head = 0;
+
+		/**
+		 * The number of events in the deque.
+		 */
+		protected int m_size = 0;
+
+		public Extremum(int width)
+		{
+			super(width);
+			m_dequeSlots = new int[width];
+			m_dequeIndices = new long[width];
+		}
+
+		/**
+		 * Determines if the event at a position of the ring buffer makes an
+		 * event at another position useless, i.e. if it is at least as
+		 * extreme.
+		 * @param slot The position of the new event
+		 * @param other The position of the other event
+		 * @return {@code true} if the new event is at least as extreme
+		 */
+		protected abstract boolean dominates(int slot, int other);
+
+		/**
+		 * Compares the events at two positions of the ring buffer.
+		 * @param x The position of the first event
+		 * @param y The position of the second event
+		 * @return A negative number, zero or a positive number if the first
+		 * event is smaller than, equal to or greater than the second
+		 */
+		protected int compare(int x, int y)
+		{
+			if (m_integral[x] && m_integral[y])
+			{
+				return Long.compare(m_longs[x], m_longs[y]);
+			}
+			return Double.compare(doubleAt(x), doubleAt(y));
+		}
+
+		@Override
+		protected void evict(int slot, long index)
+		{
+			if (m_size > 0 && m_dequeIndices[m_head] == index)
+			{
+				m_head = (m_head + 1) % m_width;
+				m_size--;
+			}
+		}
+
+		@Override
+		protected void add(int slot, long index)
+		{
+			while (m_size > 0 && dominates(slot, m_dequeSlots[(m_head + m_size - 1) % m_width]))
+			{
+				m_size--;
+			}
+			int tail = (m_head + m_size) % m_width;
+			m_dequeSlots[tail] = slot;
+			m_dequeIndices[tail] = index;
+			m_size++;
+		}
+
+		@Override
+		protected Number getAggregate()
+		{
+			int slot = m_dequeSlots[m_head];
+			if (m_integral[slot])
+			{
+				return m_longs[slot];
+			}
+			return m_doubles[slot];
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_head = 0;
+			m_size = 0;
+		}
+
+		@Override
+		public void writeState(DataOutput out) throws IOException
+		{
+			super.writeState(out);
+			Checkpoint.writeVarLong(out, m_size);
+			for (int i = 0; i < m_size; i++)
+			{
+				Checkpoint.writeVarLong(out, m_dequeIndices[(m_head + i) % m_width]);
+			}
+		}
+
+		@Override
+		public void readState(DataInput in) throws IOException
+		{
+			super.readState(in);
+			m_head = 0;
+			m_size = Checkpoint.readSize(in);
+			if (m_size > m_width)
+			{
+				throw new IOException("Checkpoint does not match: too many events in the deque");
+			}
+			for (int i = 0; i < m_size; i++)
+			{
+				long index = Checkpoint.readVarLong(in);
+				m_dequeIndices[i] = index;
+				m_dequeSlots[i] = (int) (index % m_width);
+			}
+		}
+	}
+
+	/**
+	 * Minimum of the events of the window.
+	 */
+	public static class Min extends Extremum
+	{
+		public Min(int width)
+		{
+			super(width);
+		}
+
+		@Override
+		protected boolean dominates(int slot, int other)
+		{
+			return compare(slot, other) <= 0;
+		}
+
+		@Override
+		public Min duplicate(boolean with_state)
+		{
+			return new Min(m_width);
+		}
+	}
+
+	/**
+	 * Maximum of the events of the window.
+	 */
+	public static class Max extends Extremum
+	{
+		public Max(int width)
+		{
+			super(width);
+		}
+
+		@Override
+		protected boolean dominates(int slot, int other)
+		{
+			return compare(slot, other) >= 0;
+		}
+
+		@Override
+		public Max duplicate(boolean with_state)
+		{
+			return new Max(m_width);
+		}
+	}
+}
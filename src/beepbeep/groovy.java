@@ -2,6 +2,7 @@ package beepbeep;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.functions.Constant;
@@ -116,7 +117,8 @@ public class groovy
 
 	/**
 	 * Creates a new instance of the {@link ca.uqac.lif.cep.functions.Cumulate}
-	 * processor.
+	 * processor. See {@link #PrimitiveSum()} for a sum that does not box
+	 * its intermediate values.
 	 * @param f The function to cumulate
 	 * @return The processor
 	 */
@@ -124,16 +126,36 @@ public class groovy
 	{
 		return new ca.uqac.lif.cep.functions.Cumulate(f);
 	}
+
+	/**
+	 * Creates a {@link ca.uqac.lif.cep.functions.Cumulate} processor
+	 * computing the sum of its input events on primitive values, with a
+	 * {@link PrimitiveNumbers.CumulativeSum}. <strong>The sum is output as a
+	 * {@link Long} as long as all the events are integers, and as a
+	 * {@link Double} afterwards</strong>, whereas
+	 * <tt>Cumulate(Numbers.addition)</tt> outputs {@link Float}s; the two
+	 * processors may therefore produce different numbers for large or
+	 * non-integer values.
+	 * @return The processor
+	 */
+	public static ca.uqac.lif.cep.functions.Cumulate PrimitiveSum()
+	{
+		return new ca.uqac.lif.cep.functions.Cumulate(new PrimitiveNumbers.CumulativeSum());
+	}
 	
 	/**
 	 * Creates a new instance of the {@link ca.uqac.lif.cep.functions.FunctionTree}
-	 * function.
-	 * @param arguments The arguments to create the function tree
+	 * function. The tree is simplified at construction time by the
+	 * {@link TreeBuilder}; hence, if all the arguments are constants, the
+	 * function returned may be a {@link ca.uqac.lif.cep.functions.Constant}.
+	 * @param arguments The arguments to create the function tree. The first
+	 * is the function at the root of the tree, and the others are its
+	 * arguments.
 	 * @return The function
 	 */
-	public static ca.uqac.lif.cep.functions.FunctionTree FunctionTree(Object ... arguments)
+	public static Function FunctionTree(Object ... arguments)
 	{
-		return new ca.uqac.lif.cep.functions.FunctionTree(liftFunction(arguments));
+		return liftTree(liftFunction(arguments[0]), java.util.Arrays.copyOfRange(arguments, 1, arguments.length));
 	}
 
 	/**
@@ -255,6 +277,102 @@ public class groovy
 		return new ca.uqac.lif.cep.io.Print.Println(ps);
 	}
 
+	/**
+	 * Creates an new instance of the {@link BufferedPrint} processor,
+	 * directing it to the standard output.
+	 * @return The processor
+	 */
+	public static BufferedPrint BufferedPrint()
+	{
+		return new BufferedPrint();
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint} processor.
+	 * @param os The stream to write the events to
+	 * @return The processor
+	 */
+	public static BufferedPrint BufferedPrint(OutputStream os)
+	{
+		return new BufferedPrint(os);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint} processor.
+	 * @param os The stream to write the events to
+	 * @param buffer_size The number of characters accumulated before they
+	 * are written
+	 * @return The processor
+	 */
+	public static BufferedPrint BufferedPrint(OutputStream os, int buffer_size)
+	{
+		return new BufferedPrint(os, Charset.defaultCharset(), buffer_size);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Println} processor,
+	 * directing it to the standard output.
+	 * @return The processor
+	 */
+	public static BufferedPrint.Println BufferedPrintln()
+	{
+		return new BufferedPrint.Println();
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Println} processor.
+	 * @param os The stream to write the events to
+	 * @return The processor
+	 */
+	public static BufferedPrint.Println BufferedPrintln(OutputStream os)
+	{
+		return new BufferedPrint.Println(os);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Println} processor.
+	 * @param os The stream to write the events to
+	 * @param buffer_size The number of characters accumulated before they
+	 * are written
+	 * @return The processor
+	 */
+	public static BufferedPrint.Println BufferedPrintln(OutputStream os, int buffer_size)
+	{
+		return new BufferedPrint.Println(os, Charset.defaultCharset(), buffer_size);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Write} processor.
+	 * @param os The stream to write the events to
+	 * @return The processor
+	 */
+	public static BufferedPrint.Write BufferedWrite(OutputStream os)
+	{
+		return new BufferedPrint.Write(os);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Write} processor.
+	 * @param os The stream to write the events to
+	 * @param buffer_size The number of characters accumulated before they
+	 * are written
+	 * @return The processor
+	 */
+	public static BufferedPrint.Write BufferedWrite(OutputStream os, int buffer_size)
+	{
+		return new BufferedPrint.Write(os, Charset.defaultCharset(), buffer_size);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BufferedPrint.Write} processor
+	 * directing it to the standard output.
+	 * @return The processor
+	 */
+	public static BufferedPrint.Write BufferedStdout()
+	{
+		return BufferedWrite(System.out);
+	}
+
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.io.SpliceSource.SpliceByteSource}
 	 * processor.
@@ -281,7 +399,8 @@ public class groovy
 
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.tmf.CountDecimate}
-	 * processor.
+	 * processor. In a {@link #Checkpointed(Object...) Checkpointed} chain, it
+	 * is replaced by a variant whose state can be checkpointed.
 	 * @param interval The decimation interval
 	 * @return The processor
 	 */
@@ -290,6 +409,126 @@ public class groovy
 		return new ca.uqac.lif.cep.tmf.CountDecimate(interval);
 	}
 
+	/**
+	 * Creates a processor computing the sum of the last <i>n</i> numbers of
+	 * its input stream. It outputs one sum for the same events as a
+	 * {@link ca.uqac.lif.cep.tmf.Window} of width <i>n</i> around
+	 * <tt>Cumulate(Numbers.addition)</tt>, but updates the sum incrementally
+	 * instead of recomputing it for each window. <strong>The sum is output
+	 * as a {@link Long} when the window only holds integers, and as a
+	 * {@link Double} otherwise</strong>, whereas the window around
+	 * <tt>Cumulate(Numbers.addition)</tt> outputs {@link Float}s; the two
+	 * processors may therefore produce different numbers for large or
+	 * non-integer values.
+	 * @param width The width of the window
+	 * @return The processor
+	 */
+	public static WindowAggregate.Sum WindowSum(int width)
+	{
+		return new WindowAggregate.Sum(width);
+	}
+
+	/**
+	 * Creates a processor computing the average of the last <i>n</i> numbers
+	 * of its input stream.
+	 * @param width The width of the window
+	 * @return The processor
+	 */
+	public static WindowAggregate.Avg WindowAvg(int width)
+	{
+		return new WindowAggregate.Avg(width);
+	}
+
+	/**
+	 * Creates a processor computing the minimum of the last <i>n</i> numbers
+	 * of its input stream.
+	 * @param width The width of the window
+	 * @return The processor
+	 */
+	public static WindowAggregate.Min WindowMin(int width)
+	{
+		return new WindowAggregate.Min(width);
+	}
+
+	/**
+	 * Creates a processor computing the maximum of the last <i>n</i> numbers
+	 * of its input stream.
+	 * @param width The width of the window
+	 * @return The processor
+	 */
+	public static WindowAggregate.Max WindowMax(int width)
+	{
+		return new WindowAggregate.Max(width);
+	}
+
+	/**
+	 * Creates a processor counting the events equal to {@code true} among
+	 * the last <i>n</i> events of its input stream.
+	 * @param width The width of the window
+	 * @return The processor
+	 */
+	public static WindowAggregate.Count WindowCount(int width)
+	{
+		return new WindowAggregate.Count(width);
+	}
+
+	/**
+	 * Creates a processor outputting, for each event, the <i>k</i> greatest
+	 * events received so far.
+	 * @param k The number of events to output
+	 * @return The processor
+	 */
+	public static Ranking.RunningTopK RunningTopK(int k)
+	{
+		return new Ranking.RunningTopK(k);
+	}
+
+	/**
+	 * Creates a processor outputting, for each event, the <i>k</i> events
+	 * received so far having the greatest value of a function.
+	 * @param f The function used to compare events
+	 * @param k The number of events to output
+	 * @return The processor
+	 */
+	public static Ranking.RunningTopK RunningTopKOn(Object f, int k)
+	{
+		return new Ranking.RunningTopK(liftFunction(f), k);
+	}
+
+	/**
+	 * Creates a processor outputting, for each event, the exact number of
+	 * distinct events received so far.
+	 * @return The processor
+	 */
+	public static DistinctCount.Exact DistinctCount()
+	{
+		return new DistinctCount.Exact();
+	}
+
+	/**
+	 * Creates a processor outputting, for each event, an estimate of the
+	 * number of distinct events received so far, with a relative standard
+	 * error of about 0.81%.
+	 * @return The processor
+	 */
+	public static DistinctCount.Approximate ApproximateDistinctCount()
+	{
+		return new DistinctCount.Approximate();
+	}
+
+	/**
+	 * Creates a processor outputting, for each event, an estimate of the
+	 * number of distinct events received so far.
+	 * @param precision The precision <i>p</i> of the estimate; the processor
+	 * uses 2<sup><i>p</i></sup> bytes, and the relative standard error of
+	 * the estimate is about 1.04/&radic;2<sup><i>p</i></sup>
+	 * @return The processor
+	 */
+	public static DistinctCount.Approximate ApproximateDistinctCount(int precision)
+	{
+		return new DistinctCount.Approximate(precision);
+	}
+
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.tmf.Fork}
 	 * processor.
@@ -311,9 +550,62 @@ public class groovy
 		return new ca.uqac.lif.cep.tmf.Fork(out_arity);
 	}
 
+	/**
+	 * Creates an new instance of the {@link ParallelFork} processor, which
+	 * runs each branch on its own thread. <strong>The branches push their
+	 * events from different threads, and must therefore only reconverge
+	 * through a {@link #ParallelJoin(int)}.</strong>
+	 * @param out_arity The output arity of the fork
+	 * @return The processor
+	 */
+	public static ParallelFork ParallelFork(int out_arity)
+	{
+		return new ParallelFork(out_arity);
+	}
+
+	/**
+	 * Creates an new instance of the {@link ParallelFork} processor, which
+	 * runs each branch on its own thread. <strong>The branches push their
+	 * events from different threads, and must therefore only reconverge
+	 * through a {@link #ParallelJoin(int)}.</strong>
+	 * @param out_arity The output arity of the fork
+	 * @param capacity The maximum number of events waiting to be processed
+	 * by each branch
+	 * @return The processor
+	 */
+	public static ParallelFork ParallelFork(int out_arity, int capacity)
+	{
+		return new ParallelFork(out_arity, capacity);
+	}
+
+	/**
+	 * Creates an new instance of the {@link ParallelFork.Join} processor,
+	 * where the branches of a {@link ParallelFork} reconverge. The events
+	 * pushed by the branches are processed one at a time, and the fronts
+	 * made of one event of each branch are output from one thread at a
+	 * time. Thus:
+	 * <pre>
+	 * ParallelFork f = ParallelFork(2)
+	 * ParallelFork.Join j = ParallelJoin(2)
+	 * Connector.connect(f, 0, x, 0)
+	 * Connector.connect(f, 1, y, 0)
+	 * Connector.connect(x, 0, j, 0)
+	 * Connector.connect(y, 0, j, 1)
+	 * Connector.connect(j, ApplyFunction(Numbers.addition))</pre>
+	 * adds the outputs of processors <tt>x</tt> and <tt>y</tt>, each running
+	 * on its own thread.
+	 * @param arity The number of branches to join
+	 * @return The processor
+	 */
+	public static ParallelFork.Join ParallelJoin(int arity)
+	{
+		return new ParallelFork.Join(arity);
+	}
+
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.tmf.KeepLast}
-	 * processor.
+	 * processor. In a {@link #Checkpointed(Object...) Checkpointed} chain, it
+	 * is replaced by a variant whose state can be checkpointed.
 	 * @return The processor
 	 */
 	public static ca.uqac.lif.cep.tmf.KeepLast KeepLast()
@@ -339,12 +631,51 @@ public class groovy
 	 */
 	public static ca.uqac.lif.cep.tmf.Pump Pump(int interval)
 	{
-		return Pump(interval);
+		return new ca.uqac.lif.cep.tmf.Pump(interval);
+	}
+
+	/**
+	 * Creates an new instance of the {@link TimedPump} processor, whose pulls
+	 * are scheduled on a thread pool shared by all the timed pumps.
+	 * @param interval The interval between two pulls (in ms)
+	 * @return The processor
+	 */
+	public static TimedPump TimedPump(long interval)
+	{
+		return new TimedPump(interval);
+	}
+
+	/**
+	 * Creates an new instance of the {@link TimedPump} processor, whose pulls
+	 * are scheduled on a thread pool shared by all the timed pumps.
+	 * @param interval The interval between two batches of pulls (in ms)
+	 * @param batch_size The maximum number of events pulled in each batch
+	 * @return The processor
+	 */
+	public static TimedPump TimedPump(long interval, int batch_size)
+	{
+		return new TimedPump(interval, batch_size);
+	}
+
+	/**
+	 * Creates an new instance of the {@link TimedPump} processor, whose pulls
+	 * are scheduled on a thread pool shared by all the timed pumps.
+	 * @param interval The interval between two batches of pulls (in ms)
+	 * @param batch_size The maximum number of events pulled in each batch
+	 * @param max_rate The maximum number of events pulled per second
+	 * @return The processor
+	 */
+	public static TimedPump TimedPump(long interval, int batch_size, double max_rate)
+	{
+		return new TimedPump(interval, batch_size).setMaxRate(max_rate);
 	}
 
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.tmf.Slice}
-	 * processor.
+	 * processor. The state of this processor cannot be checkpointed; in a
+	 * {@link #Checkpointed(Object...) Checkpointed} chain, use
+	 * {@link #Slice(Object, Object, EvictingSlice.Policy)} instead, with a
+	 * policy such as <tt>MaxSlices(0)</tt> that never evicts slices.
 	 * @param f The slicing function
 	 * @param p The processor to run on each slice
 	 * @return The processor
@@ -354,9 +685,88 @@ public class groovy
 		return new ca.uqac.lif.cep.tmf.Slice(liftFunction(f), liftProcessor(p));
 	}
 
+	/**
+	 * Creates an new instance of the {@link EvictingSlice} processor, which
+	 * discards slices according to an eviction policy. The instances of
+	 * evicted slices can be reused by new slices by setting the
+	 * {@link EvictingSlice.Policy#poolSize(int) pool size} of the policy.
+	 * @param f The slicing function
+	 * @param p The processor to run on each slice
+	 * @param policy The eviction policy, obtained from
+	 * {@link #MaxSlices(int)}, {@link #IdleTimeout(long)} or
+	 * {@link #EndWhen(Object)}
+	 * @return The processor
+	 */
+	public static EvictingSlice Slice(Object f, Object p, EvictingSlice.Policy policy)
+	{
+		return new EvictingSlice(liftFunction(f), liftProcessor(p), policy);
+	}
+
+	/**
+	 * Creates a slice eviction policy that keeps at most a given number of
+	 * live slices, evicting the least recently used ones.
+	 * @param n The number of slices
+	 * @return The policy
+	 */
+	public static EvictingSlice.Policy MaxSlices(int n)
+	{
+		return new EvictingSlice.Policy().maxSlices(n);
+	}
+
+	/**
+	 * Creates a slice eviction policy that evicts the slices that have not
+	 * received any event for a given number of input events.
+	 * @param n The number of events
+	 * @return The policy
+	 */
+	public static EvictingSlice.Policy IdleTimeout(long n)
+	{
+		return new EvictingSlice.Policy().idleTimeout(n);
+	}
+
+	/**
+	 * Creates a slice eviction policy that evicts a slice when a condition
+	 * on its output is true.
+	 * @param f The 1:1 function evaluated on each output of a slice
+	 * @return The policy
+	 */
+	public static EvictingSlice.Policy EndWhen(Object f)
+	{
+		return new EvictingSlice.Policy().endWhen(liftFunction(f));
+	}
+
+	/**
+	 * Creates an new instance of the {@link ParallelSlice} processor, which
+	 * processes the slices on multiple threads and produces its outputs in
+	 * no particular order.
+	 * @param f The slicing function
+	 * @param p The processor to run on each slice
+	 * @param num_threads The number of threads
+	 * @return The processor
+	 */
+	public static ParallelSlice ParallelSlice(Object f, Object p, int num_threads)
+	{
+		return ParallelSlice(f, p, num_threads, false);
+	}
+
+	/**
+	 * Creates an new instance of the {@link ParallelSlice} processor.
+	 * @param f The slicing function
+	 * @param p The processor to run on each slice
+	 * @param num_threads The number of threads
+	 * @param ordered Set to {@code true} to produce the outputs in the order
+	 * of the input events that caused them
+	 * @return The processor
+	 */
+	public static ParallelSlice ParallelSlice(Object f, Object p, int num_threads, boolean ordered)
+	{
+		return new ParallelSlice(liftFunction(f), liftProcessor(p), num_threads, ordered);
+	}
+
 	/**
 	 * Creates an new instance of the {@link ca.uqac.lif.cep.tmf.Trim}
-	 * processor.
+	 * processor. In a {@link #Checkpointed(Object...) Checkpointed} chain, it
+	 * is replaced by a variant whose state can be checkpointed.
 	 * @param prefix The number of events to trim
 	 * @return The processor
 	 */
@@ -395,9 +805,9 @@ public class groovy
 	 * @param f2 The second term
 	 * @return The function
 	 */
-	public static ca.uqac.lif.cep.functions.FunctionTree And(Object f1, Object f2)
+	public static Function And(Object f1, Object f2)
 	{
-		return new ca.uqac.lif.cep.functions.FunctionTree(And(), liftFunction(f1), liftFunction(f2));
+		return liftTree(And(), f1, f2);
 	}
 
 	/**
@@ -416,9 +826,9 @@ public class groovy
 	 * @param f2 The second term
 	 * @return The function
 	 */
-	public static ca.uqac.lif.cep.functions.FunctionTree Or(Object f1, Object f2)
+	public static Function Or(Object f1, Object f2)
 	{
-		return new ca.uqac.lif.cep.functions.FunctionTree(Or(), liftFunction(f1), liftFunction(f2));
+		return liftTree(Or(), f1, f2);
 	}
 
 	/**
@@ -439,7 +849,7 @@ public class groovy
 	 */
 	public static Function Equals(Object f1, Object f2)
 	{
-		return new ca.uqac.lif.cep.functions.FunctionTree(Equals(), liftFunction(f1), liftFunction(f2));
+		return liftTree(Equals(), f1, f2);
 	}
 	
 	public static Function Size()
@@ -449,7 +859,12 @@ public class groovy
 	
 	public static Function Size(Object o)
 	{
-		return new FunctionTree(ca.uqac.lif.cep.util.Size.instance, liftFunction(o));
+		Function f = liftFunction(o);
+		if (f instanceof MapViews.FilterMap)
+		{
+			return ((MapViews.FilterMap) f).count();
+		}
+		return liftTree(ca.uqac.lif.cep.util.Size.instance, f);
 	}
 	
 	/**
@@ -467,6 +882,34 @@ public class groovy
 		{
 			return new FunctionTree(new Bags.ApplyToAll(liftFunction(f)), liftFunction(x));
 		}
+
+		/**
+		 * Creates a function applying a function to all the elements of a
+		 * collection, in parallel when the collection is large. See
+		 * {@link ParallelApplyToAll}.
+		 * @param f The function to apply to each element
+		 * @param x The collection
+		 * @return The function
+		 */
+		public static Function ParallelApplyToAll(Object f, Object x)
+		{
+			return new FunctionTree(new beepbeep.ParallelApplyToAll(liftFunction(f)), liftFunction(x));
+		}
+
+		/**
+		 * Creates a function applying a function to all the elements of a
+		 * collection, in parallel when the collection is large. See
+		 * {@link ParallelApplyToAll}.
+		 * @param f The function to apply to each element
+		 * @param x The collection
+		 * @param threshold The minimum number of elements of a collection
+		 * processed in parallel
+		 * @return The function
+		 */
+		public static Function ParallelApplyToAll(Object f, Object x, int threshold)
+		{
+			return new FunctionTree(new beepbeep.ParallelApplyToAll(liftFunction(f)).setThreshold(threshold), liftFunction(x));
+		}
 	}
 	
 	/**
@@ -503,14 +946,39 @@ public class groovy
 
 		/**
 		 * Produces an instance of the {@link ca.uqac.lif.cep.util.Lists.SortOn}
-		 * function.
+		 * function. The function returned is a {@link Ranking.SortOn}, which
+		 * evaluates <tt>f</tt> once for each element of the list.
 		 * @param f The function used to compare elements
 		 * @return The function
 		 */
 		@SuppressWarnings("rawtypes")
 		public static ca.uqac.lif.cep.util.Lists.SortOn SortOn(Object f)
 		{
-			return new ca.uqac.lif.cep.util.Lists.SortOn(liftFunction(f));
+			return new Ranking.SortOn(liftFunction(f));
+		}
+
+		/**
+		 * Produces an instance of the {@link Ranking.TopK} function, which
+		 * returns the <i>k</i> greatest elements of a collection.
+		 * @param k The number of elements to return
+		 * @return The function
+		 */
+		public static Ranking.TopK TopK(int k)
+		{
+			return new Ranking.TopK(k);
+		}
+
+		/**
+		 * Produces an instance of the {@link Ranking.TopK} function, which
+		 * returns the <i>k</i> elements of a collection having the greatest
+		 * value of a function.
+		 * @param f The function used to compare elements
+		 * @param k The number of elements to return
+		 * @return The function
+		 */
+		public static Ranking.TopK TopKOn(Object f, int k)
+		{
+			return new Ranking.TopK(liftFunction(f), k);
 		}
 
 		/**
@@ -562,6 +1030,50 @@ public class groovy
 		{
 			return ca.uqac.lif.cep.util.Maps.Values.instance;
 		}
+
+		/**
+		 * Creates an instance of the {@link MapViews.FilterMap} function, which
+		 * returns a read-only view of the entries of a map satisfying a
+		 * condition instead of a copy. Applying {@link groovy#Size(Object)} to
+		 * this function counts the entries without creating the view.
+		 * @param o The condition to filter the map
+		 * @return The function
+		 */
+		public static MapViews.FilterMap FilterMapView(Object o)
+		{
+			return new MapViews.FilterMap(liftFunction(o));
+		}
+
+		/**
+		 * Creates an instance of the {@link MapViews.Keys} function, which
+		 * returns a read-only view of the keys of a map instead of a copy.
+		 * @return The function
+		 */
+		public static MapViews.Keys KeysView()
+		{
+			return MapViews.Keys.instance;
+		}
+
+		/**
+		 * Creates an instance of the {@link MapViews.Values} function, which
+		 * returns a read-only view of the values of a map instead of a copy.
+		 * @return The function
+		 */
+		public static MapViews.Values ValuesView()
+		{
+			return MapViews.Values.instance;
+		}
+
+		/**
+		 * Creates an instance of the {@link MapViews.CountMatches} function,
+		 * which counts the entries of a map satisfying a condition.
+		 * @param o The condition on the entries
+		 * @return The function
+		 */
+		public static MapViews.CountMatches CountMatches(Object o)
+		{
+			return new MapViews.CountMatches(liftFunction(o));
+		}
 	}
 
 	/**
@@ -612,22 +1124,76 @@ public class groovy
 
 	public static Function LessThan(Object x, Object y)
 	{
-		return new FunctionTree(Numbers.isLessThan, liftFunction(x), liftFunction(y));
+		Function f_x = liftFunction(x), f_y = liftFunction(y);
+		if (PrimitiveNumbers.isNumeric(f_x) && PrimitiveNumbers.isNumeric(f_y))
+		{
+			return PrimitiveNumbers.lessThan(f_x, f_y);
+		}
+		return TreeBuilder.tree(Numbers.isLessThan, f_x, f_y);
 	}
 
 	public static Function GreaterThan(Object x, Object y)
 	{
-		return new FunctionTree(Numbers.isGreaterThan, liftFunction(x), liftFunction(y));
+		Function f_x = liftFunction(x), f_y = liftFunction(y);
+		if (PrimitiveNumbers.isNumeric(f_x) && PrimitiveNumbers.isNumeric(f_y))
+		{
+			return PrimitiveNumbers.greaterThan(f_x, f_y);
+		}
+		return TreeBuilder.tree(Numbers.isGreaterThan, f_x, f_y);
 	}
 
 	public static Function Minus(Object x, Object y)
 	{
-		return new FunctionTree(Numbers.subtraction, liftFunction(x), liftFunction(y));
+		return TreeBuilder.tree(Numbers.subtraction, liftFunction(x), liftFunction(y));
 	}
 	
 	public static Function Plus(Object x, Object y)
 	{
-		return new FunctionTree(Numbers.addition, liftFunction(x), liftFunction(y));
+		return TreeBuilder.tree(Numbers.addition, liftFunction(x), liftFunction(y));
+	}
+
+	/**
+	 * Creates a function subtracting two numbers. When both operands are
+	 * known to be numeric, the difference is computed on primitive values by
+	 * {@link PrimitiveNumbers}; otherwise, this is the same function as
+	 * {@link #Minus(Object, Object)}. <strong>The difference is output as a
+	 * {@link Long} if both operands are integers, and as a {@link Double}
+	 * otherwise</strong>, whereas {@link #Minus(Object, Object)} outputs
+	 * {@link Float}s.
+	 * @param x The first operand
+	 * @param y The second operand
+	 * @return The function
+	 */
+	public static Function PrimitiveMinus(Object x, Object y)
+	{
+		Function f_x = liftFunction(x), f_y = liftFunction(y);
+		if (PrimitiveNumbers.isNumeric(f_x) && PrimitiveNumbers.isNumeric(f_y))
+		{
+			return PrimitiveNumbers.minus(f_x, f_y);
+		}
+		return TreeBuilder.tree(Numbers.subtraction, f_x, f_y);
+	}
+
+	/**
+	 * Creates a function adding two numbers. When both operands are known to
+	 * be numeric, the sum is computed on primitive values by
+	 * {@link PrimitiveNumbers}; otherwise, this is the same function as
+	 * {@link #Plus(Object, Object)}. <strong>The sum is output as a
+	 * {@link Long} if both operands are integers, and as a {@link Double}
+	 * otherwise</strong>, whereas {@link #Plus(Object, Object)} outputs
+	 * {@link Float}s.
+	 * @param x The first operand
+	 * @param y The second operand
+	 * @return The function
+	 */
+	public static Function PrimitivePlus(Object x, Object y)
+	{
+		Function f_x = liftFunction(x), f_y = liftFunction(y);
+		if (PrimitiveNumbers.isNumeric(f_x) && PrimitiveNumbers.isNumeric(f_y))
+		{
+			return PrimitiveNumbers.plus(f_x, f_y);
+		}
+		return TreeBuilder.tree(Numbers.addition, f_x, f_y);
 	}
 
 	/**
@@ -697,6 +1263,157 @@ public class groovy
 		return new ca.uqac.lif.cep.util.Strings.ReplaceAll(from, to);
 	}
 
+	/**
+	 * Produces an instance of the {@link CompiledStrings.ReplaceAll}
+	 * function, which gives the same result as
+	 * {@link #ReplaceAll(String[], String[])} but replaces plain string
+	 * patterns in a single pass.
+	 * @param from An array containing all the patterns to match
+	 * @param to An array containing all the corresponding replacement patterns
+	 * @return The function
+	 */
+	public static CompiledStrings.ReplaceAll CompiledReplaceAll(String[] from, String[] to)
+	{
+		return new CompiledStrings.ReplaceAll(from, to);
+	}
+
+	/**
+	 * Produces an instance of the {@link CompiledStrings.ReplaceAll}
+	 * function, which gives the same result as
+	 * {@link #ReplaceAll(java.util.List, java.util.List)} but replaces plain
+	 * string patterns in a single pass.
+	 * @param from A list containing all the patterns to match
+	 * @param to A list containing all the corresponding replacement patterns
+	 * @return The function
+	 */
+	public static CompiledStrings.ReplaceAll CompiledReplaceAll(java.util.List<String> from, java.util.List<String> to)
+	{
+		return new CompiledStrings.ReplaceAll(from, to);
+	}
+
+	/**
+	 * Produces an instance of the {@link CompiledStrings.FindRegex}
+	 * function, which reuses its matcher across evaluations.
+	 * @param regex The regular expression to look for
+	 * @return The function
+	 */
+	public static CompiledStrings.FindRegex CompiledFindRegex(String regex)
+	{
+		return new CompiledStrings.FindRegex(regex);
+	}
+
+	/**
+	 * Produces an instance of the {@link CompiledStrings.FindRegexOnce}
+	 * function, which reuses its matcher across evaluations.
+	 * @param regex The regular expression to look for
+	 * @return The function
+	 */
+	public static CompiledStrings.FindRegexOnce CompiledFindRegexOnce(String regex)
+	{
+		return new CompiledStrings.FindRegexOnce(regex);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.ByteAt} function,
+	 * which reads a signed byte out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.ByteAt ByteAt(int offset)
+	{
+		return new ByteFunctions.ByteAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.ShortAt} function,
+	 * which reads a signed 16-bit integer out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.ShortAt ShortAt(int offset)
+	{
+		return new ByteFunctions.ShortAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.UnsignedShortAt} function,
+	 * which reads a unsigned 16-bit integer out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.UnsignedShortAt UnsignedShortAt(int offset)
+	{
+		return new ByteFunctions.UnsignedShortAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.IntAt} function,
+	 * which reads a signed 32-bit integer out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.IntAt IntAt(int offset)
+	{
+		return new ByteFunctions.IntAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.UnsignedIntAt} function,
+	 * which reads a unsigned 32-bit integer out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.UnsignedIntAt UnsignedIntAt(int offset)
+	{
+		return new ByteFunctions.UnsignedIntAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.LongAt} function,
+	 * which reads a signed 64-bit integer out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.LongAt LongAt(int offset)
+	{
+		return new ByteFunctions.LongAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.FloatAt} function,
+	 * which reads a 32-bit floating point number out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.FloatAt FloatAt(int offset)
+	{
+		return new ByteFunctions.FloatAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.DoubleAt} function,
+	 * which reads a 64-bit floating point number out of a {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the number, from the position of the buffer
+	 * @return The function
+	 */
+	public static ByteFunctions.DoubleAt DoubleAt(int offset)
+	{
+		return new ByteFunctions.DoubleAt(offset);
+	}
+
+	/**
+	 * Produces an instance of the {@link ByteFunctions.StringAt} function,
+	 * which reads a UTF-8 string stored in a field of fixed width out of a
+	 * {@link java.nio.ByteBuffer}.
+	 * @param offset The offset of the field, from the position of the buffer
+	 * @param length The width of the field, in bytes
+	 * @return The function
+	 */
+	public static ByteFunctions.StringAt StringAt(int offset, int length)
+	{
+		return new ByteFunctions.StringAt(offset, length);
+	}
+
 	/**
 	 * Produces an instance of the {@link ca.uqac.lif.cep.util.Strings.SplitString}
 	 * function.
@@ -730,7 +1447,7 @@ public class groovy
 	 */
 	public static ca.uqac.lif.cep.json.JPathFunction JPathFunction(String path)
 	{
-		return new ca.uqac.lif.cep.json.JPathFunction(path);
+		return new TreeBuilder.JPath(path);
 	}
 
 	/**
@@ -750,7 +1467,7 @@ public class groovy
 	 */
 	public static Function NumberValue(Object o)
 	{
-		return new FunctionTree(ca.uqac.lif.cep.json.NumberValue.instance, liftFunction(o));
+		return liftTree(ca.uqac.lif.cep.json.NumberValue.instance, o);
 	}
 
 	/**
@@ -768,9 +1485,47 @@ public class groovy
 	 * function with an argument.
 	 * @return The function
 	 */
-	public static FunctionTree StringValue(Object o)
+	public static Function StringValue(Object o)
+	{
+		return liftTree(ca.uqac.lif.cep.json.StringValue.instance, o);
+	}
+
+	/**
+	 * Produces an instance of the {@link JsonExtractor.Elements} function,
+	 * which extracts the JSON elements at one or more paths directly out of
+	 * the text of a document, without parsing the whole document.
+	 * @param paths The paths to extract
+	 * @return The function, which has one output per path
+	 */
+	public static JsonExtractor.Elements CompiledJPath(String ... paths)
+	{
+		return new JsonExtractor.Elements(paths);
+	}
+
+	/**
+	 * Produces an instance of the {@link JsonExtractor.Numbers} function,
+	 * which is equivalent to {@code NumberValue(JPathFunction(path))} applied
+	 * to the parsed document, but works directly on the text of the
+	 * document.
+	 * @param paths The paths to extract
+	 * @return The function, which has one output per path
+	 */
+	public static JsonExtractor.Numbers CompiledNumberValue(String ... paths)
 	{
-		return new FunctionTree(ca.uqac.lif.cep.json.StringValue.instance, liftFunction(o));
+		return new JsonExtractor.Numbers(paths);
+	}
+
+	/**
+	 * Produces an instance of the {@link JsonExtractor.Strings} function,
+	 * which is equivalent to {@code StringValue(JPathFunction(path))} applied
+	 * to the parsed document, but works directly on the text of the
+	 * document.
+	 * @param paths The paths to extract
+	 * @return The function, which has one output per path
+	 */
+	public static JsonExtractor.Strings CompiledStringValue(String ... paths)
+	{
+		return new JsonExtractor.Strings(paths);
 	}
 
 	/* ca.uqac.lif.cep.mtnp */
@@ -842,6 +1597,67 @@ public class groovy
 		return new ca.uqac.lif.cep.mtnp.UpdateTableStream(column_names);
 	}
 
+	/**
+	 * Creates an new instance of the {@link BoundedTable.Array} processor,
+	 * which keeps at most a given number of rows.
+	 * <strong>Its output events are {@link BoundedTable.View}s, not
+	 * tables</strong>: place it before {@link #ThrottledPlot}, or convert
+	 * the views with {@code ApplyFunction(BoundedTable.ToTable.instance)}
+	 * before {@code DrawPlot}.
+	 * @param capacity The maximum number of rows of the table
+	 * @param column_names The names of the columns of the table
+	 * @return The processor
+	 */
+	public static BoundedTable.Array BoundedTableArray(int capacity, String ... column_names)
+	{
+		return new BoundedTable.Array(capacity, column_names);
+	}
+
+	/**
+	 * Creates an new instance of the {@link BoundedTable.Stream} processor,
+	 * which keeps at most a given number of rows.
+	 * <strong>Its output events are {@link BoundedTable.View}s, not
+	 * tables</strong>: place it before {@link #ThrottledPlot}, or convert
+	 * the views with {@code ApplyFunction(BoundedTable.ToTable.instance)}
+	 * before {@code DrawPlot}.
+	 * @param capacity The maximum number of rows of the table
+	 * @param column_names The names of the columns of the table
+	 * @return The processor
+	 */
+	public static BoundedTable.Stream BoundedTableStream(int capacity, String ... column_names)
+	{
+		return new BoundedTable.Stream(capacity, column_names);
+	}
+
+	/**
+	 * Creates a {@link ca.uqac.lif.cep.mtnp.DrawPlot} processor that renders
+	 * the latest table it receives on a background thread, at most once per
+	 * interval. See {@link ThrottledRender}.
+	 * @param plot The plot to draw
+	 * @param type The type of image to produce
+	 * @param interval The minimum interval between two renders, in
+	 * milliseconds
+	 * @return The processor
+	 */
+	public static ThrottledRender ThrottledPlot(ca.uqac.lif.mtnp.plot.Plot plot, ca.uqac.lif.mtnp.plot.Plot.ImageType type, long interval)
+	{
+		return new ThrottledRender(DrawPlot(plot, type), interval);
+	}
+
+	/**
+	 * Creates a {@link ca.uqac.lif.cep.mtnp.DrawPlot} processor producing
+	 * PNG images, that renders the latest table it receives on a background
+	 * thread, at most once per interval. See {@link ThrottledRender}.
+	 * @param plot The plot to draw
+	 * @param interval The minimum interval between two renders, in
+	 * milliseconds
+	 * @return The processor
+	 */
+	public static ThrottledRender ThrottledPngPlot(ca.uqac.lif.mtnp.plot.Plot plot, long interval)
+	{
+		return ThrottledPlot(plot, ca.uqac.lif.mtnp.plot.Plot.ImageType.PNG, interval);
+	}
+
 	/**
 	 * Returns an instance of an empty Gnuplot scatterplot.
 	 * @return The plot
@@ -864,6 +1680,20 @@ public class groovy
 		return new ca.uqac.lif.cep.tuples.FetchAttribute(name);
 	}
 
+	/**
+	 * Produces an instance of the {@link SlotFetchAttribute} function, a
+	 * variant of {@link ca.uqac.lif.cep.tuples.FetchAttribute} that fetches
+	 * the attribute of a {@link SchemaTuple} by its slot, which is looked up
+	 * only once per schema. Other tuples are handled like
+	 * {@link #FetchAttribute(String)} does.
+	 * @param name The name of the attribute to fetch
+	 * @return The function
+	 */
+	public static SlotFetchAttribute SlotFetchAttribute(String name)
+	{
+		return new SlotFetchAttribute(name);
+	}
+
 	/**
 	 * Produces an instance of the {@link ca.uqac.lif.cep.tuples.MergeScalars}
 	 * function.
@@ -875,6 +1705,23 @@ public class groovy
 		return new ca.uqac.lif.cep.tuples.MergeScalars(names);
 	}
 
+	/**
+	 * Produces an instance of the {@link SlotMergeScalars} function, a
+	 * variant of {@link ca.uqac.lif.cep.tuples.MergeScalars} creating
+	 * {@link SchemaTuple}s that share a single schema. <strong>These tuples
+	 * have a fixed set of attributes: adding a new attribute to them,
+	 * removing an attribute or clearing them throws an
+	 * {@link UnsupportedOperationException}</strong>; use
+	 * {@link #MergeScalars(String...)} for tuples that are modified
+	 * downstream.
+	 * @param names The name of the keys in the tuple
+	 * @return The function
+	 */
+	public static SlotMergeScalars SlotMergeScalars(String ... names)
+	{
+		return new SlotMergeScalars(names);
+	}
+
 	/* I/O from the scripts */
 
 	public static SpliceLineSource ReadLinesFrom(String ... filenames)
@@ -895,6 +1742,41 @@ public class groovy
 		return new SpliceTokenSource(false, separator, filenames);
 	}
 
+	/**
+	 * Creates a source reading the lines of files that are memory-mapped
+	 * with a {@link MappedLineSource}. If no file name is given, or if one
+	 * of them is "-", the source falls back to
+	 * {@link #ReadLinesFrom(String...)}.
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static Processor MappedReadLinesFrom(String ... filenames)
+	{
+		if (filenames.length == 0 || java.util.Arrays.asList(filenames).contains("-"))
+		{
+			return ReadLinesFrom(filenames);
+		}
+		return new MappedLineSource(filenames);
+	}
+
+	/**
+	 * Creates a source reading the tokens of files that are memory-mapped
+	 * with a {@link MappedLineSource}. If no file name is given, or if one
+	 * of them is "-", the source falls back to
+	 * {@link #ReadTokensFrom(String, String...)}.
+	 * @param separator The string separating two tokens
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static Processor MappedReadTokensFrom(String separator, String ... filenames)
+	{
+		if (filenames.length == 0 || java.util.Arrays.asList(filenames).contains("-"))
+		{
+			return ReadTokensFrom(separator, filenames);
+		}
+		return new MappedLineSource(java.nio.charset.Charset.forName("UTF-8"), separator, false, filenames);
+	}
+
 	public static SpliceByteSource ReadBytesFrom(String ... filenames)
 	{
 		if (filenames.length == 0)
@@ -904,6 +1786,36 @@ public class groovy
 		return new SpliceByteSource(false, filenames);
 	}
 
+	/**
+	 * Creates a source reading files into buffers, and outputting their
+	 * contents as {@link java.nio.ByteBuffer} chunks of a fixed size with a
+	 * {@link ByteChunkSource}. Each chunk remains valid as long as it is
+	 * referenced. Calling <tt>setReuse(true)</tt> on the source reuses a
+	 * single buffer and view instead, which is only safe if each chunk is
+	 * consumed before the next one is read.
+	 * @param chunk_size The size of each chunk, in bytes
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static ByteChunkSource ReadChunksFrom(int chunk_size, String ... filenames)
+	{
+		return new ByteChunkSource(chunk_size, false, filenames);
+	}
+
+	/**
+	 * Creates a source memory-mapping files, and outputting their contents
+	 * as {@link java.nio.ByteBuffer} chunks of a fixed size with a
+	 * {@link ByteChunkSource}. Each chunk remains valid as long as it is
+	 * referenced.
+	 * @param chunk_size The size of each chunk, in bytes
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static ByteChunkSource MappedReadChunksFrom(int chunk_size, String ... filenames)
+	{
+		return new ByteChunkSource(chunk_size, true, filenames);
+	}
+
 	public static SpliceTupleSource ReadTuplesFrom(String ... filenames)
 	{
 		if (filenames.length == 0)
@@ -913,6 +1825,309 @@ public class groovy
 		return new SpliceTupleSource(false, filenames);
 	}
 
+	/**
+	 * Creates a source reading the tuples of CSV files as {@link SchemaTuple}s
+	 * with a {@link SchemaTupleSource}. The header of each file is parsed
+	 * once into a schema shared by all its tuples; attributes can be declared
+	 * as primitive numbers with
+	 * {@link SchemaTupleSource#setType(String, TupleSchema.Type)}. Like the
+	 * tuples of {@link #SlotMergeScalars(String...)}, these tuples have a
+	 * fixed set of attributes. Their attributes are fetched faster with
+	 * {@link #SlotFetchAttribute(String)}.
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static SchemaTupleSource ReadSchemaTuplesFrom(String ... filenames)
+	{
+		if (filenames.length == 0)
+		{
+			return new SchemaTupleSource("-");
+		}
+		return new SchemaTupleSource(filenames);
+	}
+
+	/**
+	 * Creates a source reading the lines of a list of files, where the
+	 * next files are read in advance by background threads with a
+	 * {@link PrefetchSource}. The events are output in the same order as
+	 * with {@link #ReadLinesFrom(String...)}. If fewer than two files are
+	 * given, or if one of them is "-", the source falls back to
+	 * {@link #ReadLinesFrom(String...)}.
+	 * @param prefetch The number of files read in advance
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static Processor ReadLinesFrom(int prefetch, String ... filenames)
+	{
+		if (prefetch < 1 || filenames.length < 2 || java.util.Arrays.asList(filenames).contains("-"))
+		{
+			return ReadLinesFrom(filenames);
+		}
+		return new PrefetchSource.Lines(prefetch, filenames);
+	}
+
+	/**
+	 * Creates a source reading the tuples of a list of CSV files, where the
+	 * next files are read in advance by background threads with a
+	 * {@link PrefetchSource}. The events are output in the same order as
+	 * with {@link #ReadTuplesFrom(String...)}. If fewer than two files are
+	 * given, or if one of them is "-", the source falls back to
+	 * {@link #ReadTuplesFrom(String...)}.
+	 * @param prefetch The number of files read in advance
+	 * @param filenames The names of the files to read
+	 * @return The processor
+	 */
+	public static Processor ReadTuplesFrom(int prefetch, String ... filenames)
+	{
+		if (prefetch < 1 || filenames.length < 2 || java.util.Arrays.asList(filenames).contains("-"))
+		{
+			return ReadTuplesFrom(filenames);
+		}
+		return new PrefetchSource.Tuples(prefetch, filenames);
+	}
+
+	/* Pipeline optimizations */
+
+	/**
+	 * Connects a chain of processors, collapsing adjacent instances of
+	 * {@link ca.uqac.lif.cep.functions.ApplyFunction} into a single processor
+	 * evaluating the composition of their functions. Thus:
+	 * <pre>
+	 * Fuse(ApplyFunction(f1), f2, ApplyFunction(f3)) | Print()</pre>
+	 * produces the same output as
+	 * <pre>
+	 * ApplyFunction(f1) | ApplyFunction(f2) | ApplyFunction(f3) | Print()</pre>
+	 * but with a single processor evaluating the three functions. See
+	 * {@link Fusion} for the conditions under which processors are fused.
+	 * @param stages The stages of the chain, in order. Objects that are not
+	 * processors are lifted with {@link #liftProcessor(Object)}.
+	 * @return The chain. If it is reduced to a single processor, this
+	 * processor is returned directly; otherwise the chain is encapsulated
+	 * in a {@link Group}.
+	 */
+	public static Processor Fuse(Object ... stages)
+	{
+		java.util.List<Processor> chain = new java.util.ArrayList<Processor>(stages.length);
+		for (Object o : stages)
+		{
+			chain.add(liftProcessor(o));
+		}
+		chain = Fusion.fuse(chain);
+		if (chain.size() == 1)
+		{
+			return chain.get(0);
+		}
+		Processor first = chain.get(0);
+		Processor last = chain.get(chain.size() - 1);
+		return connectChain(new Group(first.getInputArity(), last.getOutputArity()), chain);
+	}
+
+	/**
+	 * Wraps a processor so that statistics about the events it processes are
+	 * recorded. See {@link Profiled}.
+	 * @param p The processor, or an object lifted with
+	 * {@link #liftProcessor(Object)}
+	 * @return The profiled processor
+	 */
+	public static Profiled Profiled(Object p)
+	{
+		return new Profiled(liftProcessor(p));
+	}
+
+	/**
+	 * Wraps a processor so that statistics about the events it processes are
+	 * recorded. See {@link Profiled}.
+	 * @param name The name of the processor in the reports
+	 * @param p The processor, or an object lifted with
+	 * {@link #liftProcessor(Object)}
+	 * @return The profiled processor
+	 */
+	public static Profiled Profiled(String name, Object p)
+	{
+		return new Profiled(name, liftProcessor(p));
+	}
+
+	/**
+	 * Connects a chain of processors, each wrapped in a {@link Profiled}
+	 * processor, and encapsulates them in a group. Thus:
+	 * <pre>
+	 * ProfiledGroup g = Profile(ReadLinesFrom("a.txt"), ApplyFunction(f), Cumulate(g))
+	 * g.setReportOnEnd(System.err, false)</pre>
+	 * prints the statistics of the three processors when the end of the
+	 * input is reached. A stage that is a group is profiled as a single
+	 * processor, unless it is itself a {@link ProfiledGroup}, in which case
+	 * the report includes the statistics of the processors inside it; see
+	 * {@link #ProfiledGroup(int, int)} to profile graphs that are not
+	 * chains.
+	 * @param stages The stages of the chain, in order. Objects that are not
+	 * processors are lifted with {@link #liftProcessor(Object)}.
+	 * @return The group
+	 */
+	public static ProfiledGroup Profile(Object ... stages)
+	{
+		java.util.List<Profiled> chain = new java.util.ArrayList<Profiled>(stages.length);
+		for (Object o : stages)
+		{
+			chain.add(new Profiled(liftProcessor(o)));
+		}
+		return new ProfiledGroup(chain);
+	}
+
+	/**
+	 * Creates an empty group where each processor is wrapped in a
+	 * {@link Profiled} processor when it is added, so that any graph of
+	 * processors, including forks and joins, can be profiled. Thus:
+	 * <pre>
+	 * ProfiledGroup g = ProfiledGroup(1, 1)
+	 * Profiled f = g.add("fork", Fork(2))
+	 * Profiled x = g.add("square", ApplyFunction(h))
+	 * Profiled j = g.add("join", ApplyFunction(Numbers.addition))
+	 * Connector.connect(f, 0, x, 0)
+	 * Connector.connect(x, 0, j, 0)
+	 * Connector.connect(f, 1, j, 1)
+	 * g.associateInput(0, f, 0)
+	 * g.associateOutput(0, j, 0)
+	 * g.setReportOnEnd(System.err, false)</pre>
+	 * prints the statistics of the fork, of the square and of the join when
+	 * the end of the input is reached. The backlog of the join includes the
+	 * events of one branch waiting for the other.
+	 * @param in_arity The input arity of the group
+	 * @param out_arity The output arity of the group
+	 * @return The group
+	 */
+	public static ProfiledGroup ProfiledGroup(int in_arity, int out_arity)
+	{
+		return new ProfiledGroup(in_arity, out_arity);
+	}
+
+	/**
+	 * Connects a chain of processors and encapsulates them in a group whose
+	 * state can be saved and restored. Thus:
+	 * <pre>
+	 * CheckpointedGroup g = Checkpointed(MappedReadLinesFrom("a.txt"), ApplyFunction(f), Slice(g, PrimitiveSum(), MaxSlices(0)))
+	 * g.restore("a.ckpt")</pre>
+	 * resumes the processing of the file from the point where the
+	 * checkpoint was saved by <tt>g.save("a.ckpt")</tt>. See
+	 * {@link CheckpointedGroup} for the processors whose state can be
+	 * saved. The stages created by {@link #CountDecimate(int)},
+	 * {@link #Trim(int)} and {@link #KeepLast()} are replaced by their
+	 * variants in {@link Checkpoint}; these processors are not replaced
+	 * when they are nested in another processor of the chain, unless that
+	 * processor is itself created by <tt>Checkpointed</tt>.
+	 * @param stages The stages of the chain, in order. Objects that are not
+	 * processors are lifted with {@link #liftProcessor(Object)}.
+	 * @return The group
+	 */
+	public static CheckpointedGroup Checkpointed(Object ... stages)
+	{
+		java.util.List<Processor> chain = new java.util.ArrayList<Processor>(stages.length);
+		for (Object o : stages)
+		{
+			chain.add(Checkpoint.checkpointable(liftProcessor(o)));
+		}
+		return new CheckpointedGroup(chain);
+	}
+
+	/**
+	 * Connects a chain of processors and encapsulates them in a group whose
+	 * state is saved to a file every <i>n</i> event fronts. The fronts are
+	 * counted at the output of the last processor of the chain or, if this
+	 * processor is a sink, at its input. The file is replaced atomically by
+	 * each checkpoint, and can be given to
+	 * {@link CheckpointedGroup#restore(String)} to resume the processing
+	 * after a failure. As in {@link #Checkpointed(Object...)}, the stages
+	 * created by {@link #CountDecimate(int)}, {@link #Trim(int)} and
+	 * {@link #KeepLast()} are replaced by their variants in
+	 * {@link Checkpoint}.
+	 * @param interval The number of fronts between two checkpoints
+	 * @param filename The name of the file where the checkpoints are saved
+	 * @param stages The stages of the chain, in order. Objects that are not
+	 * processors are lifted with {@link #liftProcessor(Object)}.
+	 * @return The group
+	 */
+	public static CheckpointedGroup CheckpointEvery(long interval, String filename, Object ... stages)
+	{
+		java.util.List<Processor> chain = new java.util.ArrayList<Processor>(stages.length + 1);
+		for (Object o : stages)
+		{
+			chain.add(Checkpoint.checkpointable(liftProcessor(o)));
+		}
+		Processor last = chain.get(chain.size() - 1);
+		if (last.getOutputArity() > 0)
+		{
+			chain.add(new CheckpointedGroup.Trigger(last.getOutputArity(), interval, filename));
+		}
+		else
+		{
+			chain.add(chain.size() - 1, new CheckpointedGroup.Trigger(last.getInputArity(), interval, filename));
+		}
+		return new CheckpointedGroup(chain);
+	}
+
+	/**
+	 * Runs a processor on its own thread, behind a buffer that blocks the
+	 * upstream thread when it is full. See {@link Async}. Thus:
+	 * <pre>
+	 * ReadLinesFrom("a.txt") | ApplyFunction(f) | Async(DrawPlot(plot), 1024) | Print()</pre>
+	 * reads and parses the file on the calling thread, and draws and prints
+	 * the plots on another one.
+	 * @param p The processor, or an object lifted with
+	 * {@link #liftProcessor(Object)}
+	 * @param capacity The capacity of the buffer
+	 * @return The processor
+	 */
+	public static Async Async(Object p, int capacity)
+	{
+		return Async(p, capacity, Async.Backpressure.BLOCK);
+	}
+
+	/**
+	 * Runs a processor on its own thread, behind a buffer of bounded size.
+	 * See {@link Async}.
+	 * @param p The processor, or an object lifted with
+	 * {@link #liftProcessor(Object)}
+	 * @param capacity The capacity of the buffer
+	 * @param backpressure What to do with the input events when the buffer
+	 * is full
+	 * @return The processor
+	 */
+	public static Async Async(Object p, int capacity, Async.Backpressure backpressure)
+	{
+		return new Async(liftProcessor(p), capacity, backpressure);
+	}
+
+	/**
+	 * Connects a chain of processors and encapsulates them in a group. The
+	 * inputs of the group are those of the first processor, and its outputs
+	 * are those of the last processor.
+	 * @param g The group, whose arity must match that of the chain
+	 * @param chain The processors, in order
+	 * @return The group
+	 */
+	protected static <G extends ca.uqac.lif.cep.GroupProcessor> G connectChain(G g, java.util.List<? extends Processor> chain)
+	{
+		Processor first = chain.get(0);
+		Processor last = chain.get(chain.size() - 1);
+		for (int i = 0; i < chain.size(); i++)
+		{
+			Processor p = chain.get(i);
+			if (i > 0)
+			{
+				ca.uqac.lif.cep.Connector.connect(chain.get(i - 1), p);
+			}
+			g.addProcessor(p);
+		}
+		for (int i = 0; i < first.getInputArity(); i++)
+		{
+			g.associateInput(i, first, i);
+		}
+		for (int i = 0; i < last.getOutputArity(); i++)
+		{
+			g.associateOutput(i, last, i);
+		}
+		return g;
+	}
+
 	/**
 	 * Lifts an arbitrary object into a BeepBeep {@link Function}. 
 	 * @param o The object
@@ -927,6 +2142,25 @@ public class groovy
 		return new Constant(o);
 	}
 	
+	/**
+	 * Creates a function tree out of a function and arbitrary objects used
+	 * as its arguments. The objects are lifted with
+	 * {@link #liftFunction(Object)}, and the tree is built by the
+	 * {@link TreeBuilder}.
+	 * @param f The function at the root of the tree
+	 * @param arguments The arguments of the function
+	 * @return The function
+	 */
+	protected static Function liftTree(Function f, Object ... arguments)
+	{
+		Function[] args = new Function[arguments.length];
+		for (int i = 0; i < arguments.length; i++)
+		{
+			args[i] = liftFunction(arguments[i]);
+		}
+		return TreeBuilder.tree(f, args);
+	}
+
 	/**
 	 * Lifts an arbitrary object into a BeepBeep {@link Processor}. 
 	 * @param o The object